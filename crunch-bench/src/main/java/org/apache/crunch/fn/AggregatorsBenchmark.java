@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.fn;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@code Aggregator}s from {@link Aggregators} as they are used
+ * by a combiner or reducer: reset, updated with every value of a group, and
+ * asked for their results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregatorsBenchmark {
+
+  private static final int GROUP_SIZE = 1000;
+
+  @Param({ "SUM_LONGS", "MAX_LONGS", "MIN_N", "FIRST_N", "UNIQUE_ELEMENTS", "PAIR" })
+  public String aggregator;
+
+  private Aggregator<Object> agg;
+  private Object[] values;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    Random random = new Random(17);
+    values = new Object[GROUP_SIZE];
+    for (int i = 0; i < GROUP_SIZE; i++) {
+      long value = random.nextInt(GROUP_SIZE);
+      values[i] = "PAIR".equals(aggregator) ? Pair.of(value, value) : Long.valueOf(value);
+    }
+
+    Aggregator<?> a;
+    if ("SUM_LONGS".equals(aggregator)) {
+      a = Aggregators.SUM_LONGS();
+    } else if ("MAX_LONGS".equals(aggregator)) {
+      a = Aggregators.MAX_LONGS();
+    } else if ("MIN_N".equals(aggregator)) {
+      a = Aggregators.MIN_N(10, Long.class);
+    } else if ("FIRST_N".equals(aggregator)) {
+      a = Aggregators.FIRST_N(10);
+    } else if ("UNIQUE_ELEMENTS".equals(aggregator)) {
+      a = Aggregators.UNIQUE_ELEMENTS();
+    } else if ("PAIR".equals(aggregator)) {
+      a = Aggregators.pairAggregator(Aggregators.SUM_LONGS(), Aggregators.MAX_LONGS());
+    } else {
+      throw new IllegalArgumentException("Unknown aggregator: " + aggregator);
+    }
+    agg = (Aggregator<Object>) a;
+    agg.initialize(new Configuration());
+  }
+
+  @Benchmark
+  public Iterable<Object> aggregateGroup() {
+    agg.reset();
+    for (Object value : values) {
+      agg.update(value);
+    }
+    return agg.results();
+  }
+}
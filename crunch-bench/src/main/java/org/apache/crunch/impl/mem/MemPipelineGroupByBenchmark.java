@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.types.writable.Writables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures grouping and combining a table by key in the {@link MemPipeline}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemPipelineGroupByBenchmark {
+
+  @Param({ "100000" })
+  public int records;
+
+  @Param({ "100", "10000" })
+  public int keys;
+
+  private PTable<String, Long> table;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(17);
+    List<Pair<String, Long>> pairs = Lists.newArrayListWithCapacity(records);
+    for (int i = 0; i < records; i++) {
+      pairs.add(Pair.of("key" + random.nextInt(keys), (long) i));
+    }
+    table = MemPipeline.typedTableOf(Writables.tableOf(Writables.strings(), Writables.longs()), pairs);
+  }
+
+  @Benchmark
+  public void groupByKey(Blackhole blackhole) {
+    for (Pair<String, Iterable<Long>> group : table.groupByKey().materialize()) {
+      for (Long value : group.second()) {
+        blackhole.consume(value);
+      }
+    }
+  }
+
+  @Benchmark
+  public void combineValues(Blackhole blackhole) {
+    for (Pair<String, Long> sum : table.groupByKey().combineValues(Aggregators.SUM_LONGS()).materialize()) {
+      blackhole.consume(sum);
+    }
+  }
+}
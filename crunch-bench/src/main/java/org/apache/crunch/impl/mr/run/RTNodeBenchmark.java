@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.fn.IdentityFn;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the cost of passing a record through a chain of {@code RTNode}s,
+ * the last of which fans out to several children through an
+ * {@code IntermediateEmitter}, as a map task does for a fused chain of
+ * {@code DoFn}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTNodeBenchmark {
+
+  /** Consumes its inputs without emitting anything. */
+  private static class SinkFn extends DoFn<Object, Object> {
+    private final transient Blackhole blackhole;
+
+    public SinkFn(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void process(Object input, Emitter<Object> emitter) {
+      blackhole.consume(input);
+    }
+  }
+
+  @Param({ "1", "4" })
+  public int depth;
+
+  @Param({ "1", "3" })
+  public int fanOut;
+
+  private RTNode head;
+  private Text input;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp(Blackhole blackhole) {
+    PType<Object> ptype = (PType<Object>) (PType<?>) Writables.writables(Text.class);
+    List<RTNode> children = Lists.newArrayList();
+    for (int i = 0; i < fanOut; i++) {
+      children.add(new RTNode(new SinkFn(blackhole), ptype, "sink" + i, ImmutableList.<RTNode> of(),
+          ptype.getConverter(), ptype.getConverter(), null));
+    }
+    RTNode node = null;
+    for (int i = 0; i < depth; i++) {
+      node = new RTNode(IdentityFn.<Object> getInstance(), ptype, "S" + i, children, ptype.getConverter(), null, null);
+      children = ImmutableList.of(node);
+    }
+    this.head = node;
+
+    TaskInputOutputContext<Object, Object, Object, Object> context = mock(TaskInputOutputContext.class);
+    when(context.getConfiguration()).thenReturn(new Configuration());
+    head.initialize(new CrunchTaskContext(context, NodeContext.MAP));
+    this.input = new Text("the quick brown fox jumps over the lazy dog");
+  }
+
+  @Benchmark
+  public void process() {
+    head.process(input);
+  }
+}
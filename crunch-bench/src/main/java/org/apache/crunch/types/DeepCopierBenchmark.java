@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericData.Record;
+import org.apache.crunch.types.avro.AvroDeepCopier.AvroGenericDeepCopier;
+import org.apache.crunch.types.writable.WritableDeepCopier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the deep copies that the runtime makes of values that are emitted
+ * to more than one consumer or held on to across calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepCopierBenchmark {
+
+  private static final Schema SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"Event\",\"fields\":["
+      + "{\"name\":\"id\",\"type\":\"long\"},"
+      + "{\"name\":\"user\",\"type\":\"string\"},"
+      + "{\"name\":\"score\",\"type\":\"double\"}]}");
+
+  private WritableDeepCopier<Text> writableCopier;
+  private Text text;
+  private AvroGenericDeepCopier avroCopier;
+  private Record record;
+
+  @Setup
+  public void setUp() {
+    Configuration conf = new Configuration();
+    writableCopier = new WritableDeepCopier<Text>(Text.class);
+    writableCopier.initialize(conf);
+    text = new Text("the quick brown fox jumps over the lazy dog");
+
+    avroCopier = new AvroGenericDeepCopier(SCHEMA);
+    avroCopier.initialize(conf);
+    record = new GenericData.Record(SCHEMA);
+    record.put("id", 42L);
+    record.put("user", "crunch");
+    record.put("score", 0.5);
+  }
+
+  @Benchmark
+  public Text writable() {
+    return writableCopier.deepCopy(text);
+  }
+
+  @Benchmark
+  public Record avroGeneric() {
+    return avroCopier.deepCopy(record);
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types.writable;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.lib.join.JoinUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the serialization of the compact views of the {@code TupleWritable}s
+ * that carry pairs and tuples of the {@code Writable} type family through the
+ * shuffle, and the raw comparison of the join keys built from them. As in a
+ * task, the readers and the comparator find the tuple schema in the job
+ * configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleWritableBenchmark {
+
+  private Configuration conf;
+  private TupleWritable tuple;
+  private DataOutputBuffer out;
+  private DataInputBuffer in;
+  private byte[] serialized;
+  private byte[] left;
+  private byte[] right;
+  private JoinUtils.TupleWritableComparator comparator;
+
+  @SuppressWarnings("unchecked")
+  private static final Class<? extends Writable>[] FIELD_CLASSES = new Class[] { Text.class, IntWritable.class };
+
+  private static TupleWritable createCompactTuple(String key, int tag) {
+    TupleWritable tuple = new TupleWritable(new Writable[] { new Text(key), new IntWritable(tag) }, FIELD_CLASSES);
+    tuple.setWritten(0);
+    tuple.setWritten(1);
+    TupleWritable view = new TupleWritable();
+    view.compactView(tuple);
+    return view;
+  }
+
+  private static byte[] serialize(Writable writable) throws IOException {
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    writable.write(buffer);
+    byte[] bytes = new byte[buffer.getLength()];
+    System.arraycopy(buffer.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    TupleWritable.addSchema(conf, FIELD_CLASSES);
+    tuple = createCompactTuple("the quick brown fox", 0);
+    out = new DataOutputBuffer();
+    in = new DataInputBuffer();
+    serialized = serialize(tuple);
+    left = serialize(createCompactTuple("the quick brown fox", 0));
+    right = serialize(createCompactTuple("the quick brown fox", 1));
+
+    // Forget the schema that was registered by writing the tuples, so that it
+    // has to be loaded from the configuration, as it is in the reduce tasks.
+    TupleWritable.clearSchemas();
+    comparator = new JoinUtils.TupleWritableComparator();
+    comparator.setConf(conf);
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    out.reset();
+    tuple.write(out);
+    return out.getLength();
+  }
+
+  @Benchmark
+  public TupleWritable readFields() throws IOException {
+    in.reset(serialized, serialized.length);
+    TupleWritable copy = new TupleWritable();
+    copy.setConf(conf);
+    copy.readFields(in);
+    return copy;
+  }
+
+  @Benchmark
+  public int compareJoinKeys() {
+    return comparator.compare(left, 0, left.length, right, 0, right.length);
+  }
+}
@@ -32,6 +32,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.bloom.BloomFilter;
 
 import com.google.common.collect.ImmutableList;
@@ -66,43 +67,73 @@ public class BloomFilterFactory {
   }
 
   public static <T> PObject<BloomFilter> createFilter(PCollection<T> collection, BloomFilterFn<T> filterFn) {
-    collection.getPipeline().getConfiguration().set(BloomFilterFn.CRUNCH_FILTER_NAME, collection.getName());
-    return new FirstElementPObject<BloomFilter>(createFilterTable(collection, filterFn).values());
+    return new FirstElementPObject<BloomFilter>(createFilterCollection(collection, filterFn));
+  }
+
+  /**
+   * Returns a collection that holds the single filter generated from all of
+   * the elements of the given collection.
+   */
+  static <T> PCollection<BloomFilter> createFilterCollection(PCollection<T> collection, BloomFilterFn<T> filterFn) {
+    String name = collection.getName() == null ? "" : collection.getName();
+    collection.getPipeline().getConfiguration().set(BloomFilterFn.CRUNCH_FILTER_NAME, name);
+    return createFilterTable(collection, filterFn).values();
   }
 
   private static <T> PTable<String, BloomFilter> createFilterTable(PCollection<T> collection, BloomFilterFn<T> filterFn) {
     PTypeFamily tf = collection.getTypeFamily();
     PTable<String, BloomFilter> table = collection.parallelDo(filterFn,
         tf.tableOf(tf.strings(), Writables.writables(BloomFilter.class)));
-    return table.groupByKey(1).combineValues(new BloomFilterAggregator());
+    return table.groupByKey(1).combineValues(
+        new BloomFilterAggregator(filterFn.getVectorSize(), filterFn.getHashCount()));
   }
 
 }
 
 @SuppressWarnings("serial")
 class BloomFilterAggregator implements Aggregator<BloomFilter> {
+  private final int vectorSize;
+  private final int hashCount;
   private transient BloomFilter bloomFilter = null;
-  private transient int filterSize;
+  private transient Configuration conf;
+
+  /**
+   * Creates an aggregator whose result for no filters is an empty filter with
+   * the given number of bits and hash functions, which are those of the
+   * {@link BloomFilterFn} that creates the filters.
+   */
+  BloomFilterAggregator(int vectorSize, int hashCount) {
+    this.vectorSize = vectorSize;
+    this.hashCount = hashCount;
+  }
 
   @Override
   public void update(BloomFilter value) {
-    bloomFilter.or(value);
+    // Start from a copy of the first filter, so that filters created with any
+    // size and number of hash functions can be combined.
+    if (bloomFilter == null) {
+      bloomFilter = WritableUtils.clone(value, conf);
+    } else {
+      bloomFilter.or(value);
+    }
   }
 
   @Override
   public Iterable<BloomFilter> results() {
+    if (bloomFilter == null) {
+      return ImmutableList.of(BloomFilterFn.newFilter(vectorSize, hashCount, conf));
+    }
     return ImmutableList.of(bloomFilter);
   }
 
   @Override
   public void initialize(Configuration configuration) {
-    filterSize = BloomFilterFn.getBloomFilterSize(configuration);
+    conf = configuration;
   }
 
   @Override
   public void reset() {
-    bloomFilter = BloomFilterFn.initializeFilter(filterSize);
-
+    bloomFilter = null;
   }
 
 }
\ No newline at end of file
@@ -35,12 +35,41 @@ import org.apache.hadoop.util.hash.Hash;
 public abstract class BloomFilterFn<S> extends DoFn<S, Pair<String, BloomFilter>> {
   public static final String CRUNCH_FILTER_SIZE = "crunch.filter.size";
   public static final String CRUNCH_FILTER_NAME = "crunch.filter.name";
+  private static final int DEFAULT_HASH_COUNT = 5;
+  private final int vectorSize;
+  private final int hashCount;
   private transient BloomFilter bloomFilter = null;
 
+  /**
+   * Creates filters of {@link #CRUNCH_FILTER_SIZE} bits, which defaults to
+   * 1024.
+   */
+  protected BloomFilterFn() {
+    this(0, DEFAULT_HASH_COUNT);
+  }
+
+  /**
+   * Creates filters with the given number of bits and hash functions, e.g. as
+   * computed by {@link #getOptimalVectorSize(long, double)} and
+   * {@link #getOptimalHashCount(long, int)}.
+   */
+  protected BloomFilterFn(int vectorSize, int hashCount) {
+    this.vectorSize = vectorSize;
+    this.hashCount = hashCount;
+  }
+
   @Override
   public void initialize() {
     super.initialize();
-    bloomFilter = initializeFilter(getBloomFilterSize(getConfiguration()));
+    bloomFilter = newFilter(vectorSize, hashCount, getConfiguration());
+  }
+
+  int getVectorSize() {
+    return vectorSize;
+  }
+
+  int getHashCount() {
+    return hashCount;
   }
 
   @Override
@@ -58,8 +87,41 @@ public abstract class BloomFilterFn<S> extends DoFn<S, Pair<String, BloomFilter>
     emitter.emit(Pair.of(filterName, bloomFilter));
   }
 
+  /**
+   * Returns the number of bits that a filter needs to hold the given number of
+   * elements with the given false positive rate.
+   */
+  public static int getOptimalVectorSize(long expectedElements, double falsePositiveRate) {
+    if (expectedElements <= 0 || falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+      throw new IllegalArgumentException("Invalid filter parameters: " + expectedElements + " elements, "
+          + falsePositiveRate + " false positive rate");
+    }
+    double bits = Math.ceil(-expectedElements * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    return (int) Math.min(Integer.MAX_VALUE, bits);
+  }
+
+  /**
+   * Returns the number of hash functions that minimizes the false positive
+   * rate of a filter with the given number of bits and elements.
+   */
+  public static int getOptimalHashCount(long expectedElements, int vectorSize) {
+    return Math.max(1, (int) Math.round((double) vectorSize / Math.max(1L, expectedElements) * Math.log(2)));
+  }
+
   static BloomFilter initializeFilter(int size) {
-    return new BloomFilter(size, 5, Hash.MURMUR_HASH);
+    return newFilter(size, DEFAULT_HASH_COUNT);
+  }
+
+  static BloomFilter newFilter(int vectorSize, int hashCount) {
+    return new BloomFilter(vectorSize, hashCount, Hash.MURMUR_HASH);
+  }
+
+  /**
+   * Returns an empty filter with the given number of bits and hash functions,
+   * or of {@link #CRUNCH_FILTER_SIZE} bits if no number of bits is given.
+   */
+  static BloomFilter newFilter(int vectorSize, int hashCount, Configuration conf) {
+    return vectorSize > 0 ? newFilter(vectorSize, hashCount) : initializeFilter(getBloomFilterSize(conf));
   }
 
   static int getBloomFilterSize(Configuration configuration) {
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.contrib.bloomfilter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.ParallelDoOptions;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.io.ReadableSourceTarget;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.materialize.MaterializableIterable;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeSerializer;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.crunch.util.DistCache;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+
+/**
+ * Utility for doing reduce side inner joins of a large table with a small one
+ * whose keys match few of the large table's rows.
+ * <p>
+ * A {@link BloomFilter} of the keys of the small, right-side table is built
+ * first, sized for the expected number of keys and a target false positive
+ * rate. The filter is shipped to the tasks that read the large, left-side
+ * table through the distributed cache, and left-side rows whose keys aren't in
+ * the filter are dropped before the shuffle. The remaining rows are joined with
+ * {@link Join#innerJoin(PTable, PTable)}.
+ * <p>
+ * Keys are added to and looked up in the filter by their serialized bytes, so
+ * the keys of both tables must have the same {@link PType}.
+ */
+public class BloomFilterJoin {
+
+  /** The false positive rate that filters are sized for by default. */
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+  /**
+   * Performs an inner join of two tables, estimating the number of distinct
+   * keys of the right-side table with {@link Aggregate#approxDistinct} to size
+   * the filter. Estimating the keys runs the pipeline up to the right-side
+   * table.
+   *
+   * @param left
+   *          The large left-side table of the join, whose rows are filtered
+   * @param right
+   *          The small right-side table of the join, whose keys are added to
+   *          the filter
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(PTable<K, U> left, PTable<K, V> right) {
+    // There is no estimate when the right-side table is empty.
+    Long distinctKeys = Aggregate.approxDistinct(right.keys()).getValue();
+    long expectedKeys = distinctKeys == null ? 1L : Math.max(1L, distinctKeys);
+    return join(left, right, expectedKeys, DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * Performs an inner join of two tables, with a filter sized for the given
+   * number of right-side keys and false positive rate.
+   *
+   * @param left
+   *          The large left-side table of the join, whose rows are filtered
+   * @param right
+   *          The small right-side table of the join, whose keys are added to
+   *          the filter
+   * @param expectedKeys
+   *          The expected number of distinct keys in the right-side table
+   * @param falsePositiveRate
+   *          The fraction of left-side keys without a match that may pass the
+   *          filter
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(PTable<K, U> left, PTable<K, V> right, long expectedKeys,
+      double falsePositiveRate) {
+    int vectorSize = BloomFilterFn.getOptimalVectorSize(expectedKeys, falsePositiveRate);
+    int hashCount = BloomFilterFn.getOptimalHashCount(expectedKeys, vectorSize);
+    KeySerializer<K> keySerializer = new KeySerializer<K>(right.getKeyType());
+    Iterable<BloomFilter> filters = BloomFilterFactory.createFilterCollection(right,
+        new KeyFilterFn<K, V>(keySerializer, vectorSize, hashCount)).materialize();
+
+    PruneFn<K, U> pruneFn;
+    ParallelDoOptions.Builder optionsBuilder = ParallelDoOptions.builder();
+    if (filters instanceof MaterializableIterable) {
+      MaterializableIterable<BloomFilter> mi = (MaterializableIterable<BloomFilter>) filters;
+      pruneFn = new PruneFn<K, U>(keySerializer, mi.getPath().toString(), null);
+      if (mi.isSourceTarget()) {
+        optionsBuilder.sourceTargets((SourceTarget) mi.getSource());
+      }
+    } else { // in-memory pipeline
+      Iterator<BloomFilter> iter = filters.iterator();
+      BloomFilter filter = iter.hasNext() ? iter.next() : BloomFilterFn.newFilter(vectorSize, hashCount);
+      pruneFn = new PruneFn<K, U>(keySerializer, null, toBytes(filter));
+    }
+    PTable<K, U> pruned = left.parallelDo("bloomFilterJoinPrune", pruneFn, left.getPTableType(),
+        optionsBuilder.build());
+    return Join.innerJoin(pruned, right);
+  }
+
+  private static byte[] toBytes(BloomFilter filter) {
+    DataOutputBuffer out = new DataOutputBuffer();
+    try {
+      filter.write(out);
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    }
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Turns join keys into filter keys that hold their serialized bytes.
+   */
+  static class KeySerializer<K> implements Serializable {
+    private final PTypeSerializer<K> serializer;
+    private transient DataOutputBuffer buffer;
+
+    public KeySerializer(PType<K> keyType) {
+      this.serializer = new PTypeSerializer<K>(keyType);
+    }
+
+    public void initialize(Configuration conf) {
+      serializer.initialize(conf);
+      buffer = new DataOutputBuffer();
+    }
+
+    public Key toKey(K key) {
+      buffer.reset();
+      try {
+        serializer.write(key, buffer);
+      } catch (IOException e) {
+        throw new CrunchRuntimeException(e);
+      }
+      byte[] bytes = new byte[buffer.getLength()];
+      System.arraycopy(buffer.getData(), 0, bytes, 0, bytes.length);
+      return new Key(bytes);
+    }
+  }
+
+  /**
+   * Adds the keys of the right-side table to a filter.
+   */
+  static class KeyFilterFn<K, V> extends BloomFilterFn<Pair<K, V>> {
+    private final KeySerializer<K> keySerializer;
+
+    public KeyFilterFn(KeySerializer<K> keySerializer, int vectorSize, int hashCount) {
+      super(vectorSize, hashCount);
+      this.keySerializer = keySerializer;
+    }
+
+    @Override
+    public void initialize() {
+      super.initialize();
+      keySerializer.initialize(getConfiguration());
+    }
+
+    @Override
+    public Collection<Key> generateKeys(Pair<K, V> input) {
+      return Collections.singleton(keySerializer.toKey(input.first()));
+    }
+  }
+
+  /**
+   * Drops the left-side rows whose keys aren't in the filter. The filter is
+   * read from the distributed cache or, for in-memory pipelines, from its
+   * serialized bytes.
+   */
+  static class PruneFn<K, U> extends FilterFn<Pair<K, U>> {
+    private final KeySerializer<K> keySerializer;
+    private final String filterPath;
+    private final byte[] filterBytes;
+    private transient BloomFilter filter;
+
+    public PruneFn(KeySerializer<K> keySerializer, String filterPath, byte[] filterBytes) {
+      this.keySerializer = keySerializer;
+      this.filterPath = filterPath;
+      this.filterBytes = filterBytes;
+    }
+
+    @Override
+    public void configure(Configuration conf) {
+      if (filterPath != null) {
+        DistCache.addCacheFile(new Path(filterPath), conf);
+      }
+    }
+
+    @Override
+    public void initialize() {
+      super.initialize();
+      Configuration conf = getConfiguration();
+      keySerializer.initialize(conf);
+      try {
+        if (filterPath != null) {
+          filter = readFilter(conf);
+        } else {
+          DataInputBuffer in = new DataInputBuffer();
+          in.reset(filterBytes, filterBytes.length);
+          filter = new BloomFilter();
+          filter.readFields(in);
+        }
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Error reading the filter of a bloom filter join: ", e);
+      }
+    }
+
+    private BloomFilter readFilter(Configuration conf) throws IOException {
+      Path local = DistCache.getPathToCacheFile(new Path(filterPath), conf);
+      if (local == null) {
+        throw new CrunchRuntimeException("Can't find local cache file for '" + filterPath + "'");
+      }
+      PType<BloomFilter> ptype = Writables.writables(BloomFilter.class);
+      ptype.initialize(conf);
+      ReadableSourceTarget<BloomFilter> source = ptype.getDefaultFileSource(local);
+      Iterator<BloomFilter> iter = source.read(conf).iterator();
+      if (!iter.hasNext()) {
+        throw new CrunchRuntimeException("No filter found in '" + filterPath + "'");
+      }
+      return ptype.getDetachedValue(iter.next());
+    }
+
+    @Override
+    public boolean accept(Pair<K, U> input) {
+      return filter.membershipTest(keySerializer.toKey(input.first()));
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.contrib.bloomfilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.crunch.test.CrunchTestSupport;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.hash.Hash;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class BloomFilterJoinTest {
+
+  @Test
+  public void testOptimalSizing() {
+    assertEquals(9586, BloomFilterFn.getOptimalVectorSize(1000, 0.01));
+    assertEquals(7, BloomFilterFn.getOptimalHashCount(1000, 9586));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFalsePositiveRate() {
+    BloomFilterFn.getOptimalVectorSize(1000, 1.0);
+  }
+
+  private static byte[] toBytes(BloomFilter filter) throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Test
+  public void testEmptyAggregatorResultHasJoinSize() throws Exception {
+    BloomFilterAggregator aggregator = new BloomFilterAggregator(9586, 7);
+    aggregator.initialize(new Configuration());
+    BloomFilter empty = aggregator.results().iterator().next();
+    assertEquals(9586, empty.getVectorSize());
+    assertArrayEquals(toBytes(new BloomFilter(9586, 7, Hash.MURMUR_HASH)), toBytes(empty));
+  }
+
+  @Test
+  public void testPruneFalsePositiveRate() throws Exception {
+    int keys = 1000;
+    int vectorSize = BloomFilterFn.getOptimalVectorSize(keys, 0.01);
+    BloomFilterJoin.KeySerializer<Long> keySerializer = new BloomFilterJoin.KeySerializer<Long>(Avros.longs());
+    BloomFilterJoin.KeyFilterFn<Long, String> filterFn = new BloomFilterJoin.KeyFilterFn<Long, String>(
+        keySerializer, vectorSize, BloomFilterFn.getOptimalHashCount(keys, vectorSize));
+    Configuration conf = new Configuration();
+    conf.set(BloomFilterFn.CRUNCH_FILTER_NAME, "test");
+    filterFn.setContext(CrunchTestSupport.getTestContext(conf));
+    filterFn.initialize();
+    InMemoryEmitter<Pair<String, BloomFilter>> emitter = new InMemoryEmitter<Pair<String, BloomFilter>>();
+    for (long i = 0; i < keys; i++) {
+      filterFn.process(Pair.of(i, "v"), emitter);
+    }
+    filterFn.cleanup(emitter);
+    byte[] bytes = toBytes(emitter.getOutput().get(0).second());
+
+    BloomFilterJoin.PruneFn<Long, String> pruneFn = new BloomFilterJoin.PruneFn<Long, String>(keySerializer,
+        null, bytes);
+    pruneFn.setContext(CrunchTestSupport.getTestContext(conf));
+    pruneFn.initialize();
+    for (long i = 0; i < keys; i++) {
+      assertTrue(pruneFn.accept(Pair.of(i, "u")));
+    }
+    int falsePositives = 0;
+    for (long i = keys; i < 11 * keys; i++) {
+      if (pruneFn.accept(Pair.of(i, "u"))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("Too many false positives: " + falsePositives, falsePositives < 0.02 * 10 * keys);
+  }
+
+  @Test
+  public void testJoin() {
+    List<Pair<String, Integer>> leftValues = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      leftValues.add(Pair.of("k" + i, i));
+    }
+    PTable<String, Integer> left = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.ints()), leftValues);
+    PTable<String, String> right = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.strings()),
+        "k1", "a", "k500", "b", "missing", "c");
+
+    PTable<String, Pair<Integer, String>> joined = BloomFilterJoin.join(left, right, 3, 0.01);
+    assertEquals(ImmutableSet.of(Pair.of("k1", Pair.of(1, "a")), Pair.of("k500", Pair.of(500, "b"))),
+        Sets.newHashSet(joined.materialize()));
+  }
+
+  @Test
+  public void testJoinEstimatesDistinctKeys() {
+    PTable<String, Integer> left = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.ints()), "k1", 1, "k2", 2, "k3", 3);
+    PTable<String, String> right = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.strings()),
+        "k1", "a", "k1", "b", "k1", "c", "k3", "d");
+
+    PTable<String, Pair<Integer, String>> joined = BloomFilterJoin.join(left, right);
+    assertEquals(ImmutableSet.of(Pair.of("k1", Pair.of(1, "a")), Pair.of("k1", Pair.of(1, "b")),
+        Pair.of("k1", Pair.of(1, "c")), Pair.of("k3", Pair.of(3, "d"))), Sets.newHashSet(joined.materialize()));
+  }
+
+  @Test
+  public void testJoinWithEmptyRightSide() {
+    PTable<String, Integer> left = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.ints()), "k1", 1, "k2", 2);
+    PTable<String, String> right = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.strings()), ImmutableList.<Pair<String, String>>of());
+
+    assertTrue(Iterables.isEmpty(BloomFilterJoin.join(left, right).materialize()));
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.impl.mr.plan.PlanningParameters;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * Tests that a later run of a pipeline reads the intermediate outputs of an
+ * earlier run from the result cache.
+ */
+public class ResultCacheIT implements Serializable {
+
+  @Rule
+  public transient TemporaryPath tmpDir = TemporaryPaths.create();
+
+  @Test
+  public void testSecondRunReadsCachedOutputs() throws IOException {
+    String input = tmpDir.copyResourceFileName("shakes.txt");
+    String cacheDir = tmpDir.getFileName("cache");
+    List<String> first = run(input, cacheDir, 2);
+    List<String> second = run(input, cacheDir, 1);
+    assertEquals(first, second);
+  }
+
+  private List<String> run(String input, String cacheDir, int expectedJobs) throws IOException {
+    Configuration conf = tmpDir.getDefaultConfiguration();
+    conf.set(PlanningParameters.RESULT_CACHE_DIR, cacheDir);
+    Pipeline pipeline = new MRPipeline(ResultCacheIT.class, conf);
+    PCollection<String> words = pipeline.readTextFile(input).parallelDo(new DoFn<String, String>() {
+      @Override
+      public void process(String line, Emitter<String> emitter) {
+        for (String word : line.split("\\s+")) {
+          emitter.emit(word);
+        }
+      }
+    }, Writables.strings());
+
+    // Counting the words and then the counts takes two jobs, the first of
+    // which writes the word counts to the cache.
+    PTable<Long, Long> countsOfCounts = Aggregate.count(Aggregate.count(words).values());
+    Iterable<Pair<Long, Long>> materialized = countsOfCounts.materialize();
+    PipelineResult result = pipeline.run();
+    assertEquals(expectedJobs, result.getStageResults().size());
+
+    List<String> outputs = Lists.newArrayList();
+    for (Pair<Long, Long> pair : materialized) {
+      outputs.add(pair.toString());
+    }
+    pipeline.done();
+    return Ordering.natural().sortedCopy(outputs);
+  }
+}
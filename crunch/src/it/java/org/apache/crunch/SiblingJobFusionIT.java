@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.impl.mr.plan.PlanningParameters;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * Tests that groupings which read the same input share a single MapReduce job.
+ */
+public class SiblingJobFusionIT implements Serializable {
+
+  @Rule
+  public transient TemporaryPath tmpDir = TemporaryPaths.create();
+
+  @Test
+  public void testSiblingGroupingsShareOneJob() throws IOException {
+    List<List<String>> unfused = run(false, 3);
+    List<List<String>> fused = run(true, 1);
+    assertEquals(unfused, fused);
+  }
+
+  private List<List<String>> run(boolean fuse, int expectedJobs) throws IOException {
+    Configuration conf = tmpDir.getDefaultConfiguration();
+    conf.setBoolean(PlanningParameters.FUSE_SIBLING_JOBS, fuse);
+    Pipeline pipeline = new MRPipeline(SiblingJobFusionIT.class, conf);
+    PCollection<String> lines = pipeline.readTextFile(tmpDir.copyResourceFileName("shakes.txt"));
+
+    // Two groupings with combiners and different key types, and one without.
+    PTable<String, Long> wordCounts = Aggregate.count(lines.parallelDo(new DoFn<String, String>() {
+      @Override
+      public void process(String line, Emitter<String> emitter) {
+        for (String word : line.split("\\s+")) {
+          emitter.emit(word);
+        }
+      }
+    }, Writables.strings()));
+    PTable<Integer, Long> lengthCounts = Aggregate.count(lines.parallelDo(new MapFn<String, Integer>() {
+      @Override
+      public Integer map(String line) {
+        return line.length();
+      }
+    }, Writables.ints()));
+    PCollection<String> firstLines = lines.by(new MapFn<String, String>() {
+      @Override
+      public String map(String line) {
+        return line.isEmpty() ? "" : line.substring(0, 1);
+      }
+    }, Writables.strings()).groupByKey().parallelDo(new MapFn<Pair<String, Iterable<String>>, String>() {
+      @Override
+      public String map(Pair<String, Iterable<String>> input) {
+        return input.first() + ":" + Ordering.natural().min(input.second());
+      }
+    }, Writables.strings());
+
+    Iterable<Pair<String, Long>> words = wordCounts.materialize();
+    Iterable<Pair<Integer, Long>> lengths = lengthCounts.materialize();
+    Iterable<String> first = firstLines.materialize();
+    PipelineResult result = pipeline.run();
+    assertEquals(expectedJobs, result.getStageResults().size());
+
+    List<List<String>> outputs = ImmutableList.of(sorted(words), sorted(lengths), sorted(first));
+    pipeline.done();
+    return outputs;
+  }
+
+  private static List<String> sorted(Iterable<?> values) {
+    List<String> strings = Lists.newArrayList();
+    for (Object value : values) {
+      strings.add(value.toString());
+    }
+    return Ordering.natural().sortedCopy(strings);
+  }
+}
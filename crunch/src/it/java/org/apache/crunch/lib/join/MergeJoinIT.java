@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.io.PartitionFileNamingScheme;
+import org.apache.crunch.io.avro.AvroFileSourceTarget;
+import org.apache.crunch.io.seq.SeqFileTableSourceTarget;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.avro.AvroType;
+import org.apache.crunch.types.avro.AvroTypeFamily;
+import org.apache.crunch.types.writable.WritableTypeFamily;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Tests merge joins of tables that were grouped and written by a pipeline.
+ * <p>
+ * The local job runner only runs one reduce task, so a partition is only
+ * empty here if a whole table is. Reduce outputs that skip partitions are
+ * covered by {@code CrunchJobHooksTest}.
+ */
+public class MergeJoinIT {
+
+  private static final int PARTITIONS = 16;
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private static class SplitFn extends MapFn<String, Pair<Integer, String>> {
+    @Override
+    public Pair<Integer, String> map(String input) {
+      String[] fields = input.split("\\|");
+      return Pair.of(Integer.parseInt(fields[0]), fields[1]);
+    }
+  }
+
+  private String writeInput(String name, int... keys) throws IOException {
+    List<String> lines = Lists.newArrayList();
+    for (int key : keys) {
+      lines.add(key + "|" + name + key + "-a");
+      lines.add(key + "|" + name + key + "-b");
+    }
+    File file = tmpDir.getFile(name + ".txt");
+    Files.write(Joiner.on('\n').join(lines), file, Charsets.UTF_8);
+    return file.getAbsolutePath();
+  }
+
+  private SourceTarget<Pair<Integer, String>> createTarget(String name, PTableType<Integer, String> tableType) {
+    Path path = tmpDir.getPath(name);
+    if (tableType instanceof AvroType) {
+      return new AvroFileSourceTarget<Pair<Integer, String>>(path, (AvroType<Pair<Integer, String>>) tableType,
+          new PartitionFileNamingScheme());
+    }
+    return new SeqFileTableSourceTarget<Integer, String>(path, tableType, new PartitionFileNamingScheme());
+  }
+
+  private void runMergeJoin(PTypeFamily ptf, int... rightKeys) throws Exception {
+    PTableType<Integer, String> tableType = ptf.tableOf(ptf.ints(), ptf.strings());
+    GroupingOptions options = GroupingOptions.builder().numReducers(PARTITIONS).build();
+    MRPipeline pipeline = new MRPipeline(MergeJoinIT.class, tmpDir.getDefaultConfiguration());
+
+    PTable<Integer, String> left = pipeline.readTextFile(writeInput("left", 6, 1, 4, 2, 5, 3))
+        .parallelDo(new SplitFn(), tableType);
+    PTable<Integer, String> right = pipeline.readTextFile(writeInput("right", rightKeys))
+        .parallelDo(new SplitFn(), tableType);
+    SourceTarget<Pair<Integer, String>> leftTarget = createTarget("left", tableType);
+    SourceTarget<Pair<Integer, String>> rightTarget = createTarget("right", tableType);
+    pipeline.write(left.groupByKey(options).ungroup(), leftTarget);
+    pipeline.write(right.groupByKey(options).ungroup(), rightTarget);
+    pipeline.run();
+
+    HashMultiset<Pair<Integer, Pair<String, String>>> expected = HashMultiset.create(
+        Join.join(left, right).materialize());
+    HashMultiset<Pair<Integer, Pair<String, String>>> joined = HashMultiset.create(
+        MergeJoin.join(pipeline, leftTarget, rightTarget, options).materialize());
+    pipeline.done();
+
+    assertEquals(rightKeys.length == 0, expected.isEmpty());
+    assertEquals(expected, joined);
+  }
+
+  @Test
+  public void testWritables() throws Exception {
+    runMergeJoin(WritableTypeFamily.getInstance(), 9, 3, 7, 5);
+  }
+
+  @Test
+  public void testAvro() throws Exception {
+    runMergeJoin(AvroTypeFamily.getInstance(), 9, 3, 7, 5);
+  }
+
+  @Test
+  public void testEmptyRightSide() throws Exception {
+    runMergeJoin(WritableTypeFamily.getInstance());
+  }
+}
@@ -119,6 +119,21 @@ public abstract class DoFn<S, T> implements Serializable {
     return 1.2f;
   }
 
+  /**
+   * Returns true if this function neither modifies its inputs nor holds on to
+   * them after {@link #process(Object, Emitter)} returns. When a value is
+   * emitted to several functions, Crunch gives each of them a deep copy of it,
+   * except for the functions that return true here and whose downstream
+   * functions do as well; those share the emitted value itself.
+   * 
+   * <p>
+   * Subclasses of {@code DoFn} that only read their inputs may override this
+   * method to avoid the cost of those copies.
+   */
+  public boolean disableDeepCopy() {
+    return false;
+  }
+
   protected TaskInputOutputContext<?, ?, ?, ?> getContext() {
     return context;
   }
@@ -18,6 +18,7 @@
 package org.apache.crunch.fn;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -26,14 +27,24 @@ import java.util.SortedSet;
 import org.apache.crunch.Aggregator;
 import org.apache.crunch.CombineFn;
 import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
 import org.apache.crunch.PGroupedTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.Tuple;
 import org.apache.crunch.Tuple3;
 import org.apache.crunch.Tuple4;
 import org.apache.crunch.TupleN;
+import org.apache.crunch.types.PGroupedTableType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.crunch.util.HyperLogLog;
+import org.apache.crunch.util.QuantileSketch;
+import org.apache.crunch.util.SpaceSaving;
 import org.apache.crunch.util.Tuples;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
@@ -403,6 +414,70 @@ public final class Aggregators {
     return new SetAggregator<V>(maximumSampleSize);
   }
   
+  /**
+   * Merge serialized {@link HyperLogLog} sketches of the given precision, such
+   * as those built by {@link org.apache.crunch.lib.Aggregate#approxDistinct},
+   * into a single sketch.
+   *
+   * @param precision The precision of the sketches, between
+   *     {@link HyperLogLog#MIN_PRECISION} and {@link HyperLogLog#MAX_PRECISION}
+   * @return The newly constructed instance
+   */
+  public static Aggregator<ByteBuffer> APPROX_DISTINCT(int precision) {
+    if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " + HyperLogLog.MIN_PRECISION + " and "
+          + HyperLogLog.MAX_PRECISION + ", not " + precision);
+    }
+    return new ApproxDistinctAggregator(precision);
+  }
+
+  /**
+   * Merge {@link QuantileSketch}es, such as those built by
+   * {@link org.apache.crunch.lib.Aggregate#quantileSketches}, into a single
+   * sketch of the default size.
+   *
+   * @return The newly constructed instance
+   */
+  public static Aggregator<QuantileSketch> QUANTILES() {
+    return QUANTILES(QuantileSketch.DEFAULT_K);
+  }
+
+  /**
+   * Merge {@link QuantileSketch}es into a single sketch with the given value
+   * of k, whose rank error is about {@code 1.7 / k}.
+   *
+   * @param k The size of the merged sketch, at least
+   *     {@link QuantileSketch#MIN_K}
+   * @return The newly constructed instance
+   */
+  public static Aggregator<QuantileSketch> QUANTILES(int k) {
+    if (k < QuantileSketch.MIN_K) {
+      throw new IllegalArgumentException("k must be at least " + QuantileSketch.MIN_K + ", not " + k);
+    }
+    return new QuantilesAggregator(k);
+  }
+
+  /**
+   * Find the most frequent items among pairs of items and their counts, such
+   * as {@code (item, 1L)} for each occurrence of an item, with a
+   * {@link SpaceSaving} summary. At most {@code capacity} pairs with the
+   * largest estimated counts are returned, so that the results of combiners
+   * can be aggregated again.
+   * <p>
+   * If the counts add up to {@code N}, each estimated count is at most
+   * {@code N / capacity} larger than the true count, for each time the
+   * results are aggregated again.
+   *
+   * @param capacity The number of items to count
+   * @return The newly constructed instance
+   */
+  public static <V> Aggregator<Pair<V, Long>> HEAVY_HITTERS(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive, not " + capacity);
+    }
+    return new HeavyHittersAggregator<V>(capacity);
+  }
+
   /**
    * Apply separate aggregators to each component of a {@link Pair}.
    */
@@ -454,6 +529,74 @@ public final class Aggregators {
     }
   }
 
+  /**
+   * Base class for {@link LongAggregator}s that do not require any
+   * initialization, which boxes the values and results of the generic
+   * {@link Aggregator} methods.
+   */
+  public static abstract class SimpleLongAggregator extends SimpleAggregator<Long> implements LongAggregator {
+    @Override
+    public void update(Long next) {
+      update(next.longValue());
+    }
+
+    @Override
+    public Iterable<Long> results() {
+      return hasResult() ? ImmutableList.of(result()) : ImmutableList.<Long> of();
+    }
+  }
+
+  /**
+   * Base class for {@link IntAggregator}s that do not require any
+   * initialization, which boxes the values and results of the generic
+   * {@link Aggregator} methods.
+   */
+  public static abstract class SimpleIntAggregator extends SimpleAggregator<Integer> implements IntAggregator {
+    @Override
+    public void update(Integer next) {
+      update(next.intValue());
+    }
+
+    @Override
+    public Iterable<Integer> results() {
+      return hasResult() ? ImmutableList.of(result()) : ImmutableList.<Integer> of();
+    }
+  }
+
+  /**
+   * Base class for {@link FloatAggregator}s that do not require any
+   * initialization, which boxes the values and results of the generic
+   * {@link Aggregator} methods.
+   */
+  public static abstract class SimpleFloatAggregator extends SimpleAggregator<Float> implements FloatAggregator {
+    @Override
+    public void update(Float next) {
+      update(next.floatValue());
+    }
+
+    @Override
+    public Iterable<Float> results() {
+      return hasResult() ? ImmutableList.of(result()) : ImmutableList.<Float> of();
+    }
+  }
+
+  /**
+   * Base class for {@link DoubleAggregator}s that do not require any
+   * initialization, which boxes the values and results of the generic
+   * {@link Aggregator} methods.
+   */
+  public static abstract class SimpleDoubleAggregator extends SimpleAggregator<Double> implements DoubleAggregator {
+    @Override
+    public void update(Double next) {
+      update(next.doubleValue());
+    }
+
+    @Override
+    public Iterable<Double> results() {
+      return hasResult() ? ImmutableList.of(result()) : ImmutableList.<Double> of();
+    }
+  }
+
   /**
    * A {@code CombineFn} that delegates all of the actual work to an
    * {@code Aggregator} instance.
@@ -474,35 +617,125 @@ public final class Aggregators {
     @Override
     public void process(Pair<K, Iterable<V>> input, Emitter<Pair<K, V>> emitter) {
       aggregator.reset();
-      for (V v : input.second()) {
-        aggregator.update(v);
+      if (aggregator instanceof LongAggregator) {
+        LongAggregator agg = (LongAggregator) aggregator;
+        updateLongs(agg, input.second());
+        if (agg.hasResult()) {
+          emitter.emit(Pair.of(input.first(), (V) Long.valueOf(agg.result())));
+        }
+      } else if (aggregator instanceof IntAggregator) {
+        IntAggregator agg = (IntAggregator) aggregator;
+        updateInts(agg, input.second());
+        if (agg.hasResult()) {
+          emitter.emit(Pair.of(input.first(), (V) Integer.valueOf(agg.result())));
+        }
+      } else if (aggregator instanceof DoubleAggregator) {
+        DoubleAggregator agg = (DoubleAggregator) aggregator;
+        updateDoubles(agg, input.second());
+        if (agg.hasResult()) {
+          emitter.emit(Pair.of(input.first(), (V) Double.valueOf(agg.result())));
+        }
+      } else if (aggregator instanceof FloatAggregator) {
+        FloatAggregator agg = (FloatAggregator) aggregator;
+        updateFloats(agg, input.second());
+        if (agg.hasResult()) {
+          emitter.emit(Pair.of(input.first(), (V) Float.valueOf(agg.result())));
+        }
+      } else {
+        for (V v : input.second()) {
+          aggregator.update(v);
+        }
+        for (V v : aggregator.results()) {
+          emitter.emit(Pair.of(input.first(), v));
+        }
+      }
+    }
+  }
+
+  // The input functions of the Writable PTypes of primitives, which are used to
+  // tell whether grouped values can be read straight from their writables.
+  private static final MapFn<?, ?> LONG_WRITABLE_FN = Writables.longs().getInputMapFn();
+  private static final MapFn<?, ?> INT_WRITABLE_FN = Writables.ints().getInputMapFn();
+  private static final MapFn<?, ?> DOUBLE_WRITABLE_FN = Writables.doubles().getInputMapFn();
+  private static final MapFn<?, ?> FLOAT_WRITABLE_FN = Writables.floats().getInputMapFn();
+
+  private static void updateLongs(LongAggregator agg, Iterable<?> values) {
+    Iterable<Object> writables = PGroupedTableType.getSerializedValues(values, LONG_WRITABLE_FN);
+    if (writables != null) {
+      for (Object w : writables) {
+        agg.update(((LongWritable) w).get());
       }
-      for (V v : aggregator.results()) {
-        emitter.emit(Pair.of(input.first(), v));
+    } else {
+      for (Object v : values) {
+        agg.update(((Long) v).longValue());
       }
     }
   }
 
-  private static class SumLongs extends SimpleAggregator<Long> {
-    private long sum = 0;
+  private static void updateInts(IntAggregator agg, Iterable<?> values) {
+    Iterable<Object> writables = PGroupedTableType.getSerializedValues(values, INT_WRITABLE_FN);
+    if (writables != null) {
+      for (Object w : writables) {
+        agg.update(((IntWritable) w).get());
+      }
+    } else {
+      for (Object v : values) {
+        agg.update(((Integer) v).intValue());
+      }
+    }
+  }
+
+  private static void updateDoubles(DoubleAggregator agg, Iterable<?> values) {
+    Iterable<Object> writables = PGroupedTableType.getSerializedValues(values, DOUBLE_WRITABLE_FN);
+    if (writables != null) {
+      for (Object w : writables) {
+        agg.update(((DoubleWritable) w).get());
+      }
+    } else {
+      for (Object v : values) {
+        agg.update(((Double) v).doubleValue());
+      }
+    }
+  }
+
+  private static void updateFloats(FloatAggregator agg, Iterable<?> values) {
+    Iterable<Object> writables = PGroupedTableType.getSerializedValues(values, FLOAT_WRITABLE_FN);
+    if (writables != null) {
+      for (Object w : writables) {
+        agg.update(((FloatWritable) w).get());
+      }
+    } else {
+      for (Object v : values) {
+        agg.update(((Float) v).floatValue());
+      }
+    }
+  }
+
+  private static class SumLongs extends SimpleLongAggregator {
+    private long sum = 0L;
 
     @Override
     public void reset() {
-      sum = 0;
+      sum = 0L;
     }
 
     @Override
-    public void update(Long next) {
+    public void update(long next) {
       sum += next;
     }
 
     @Override
-    public Iterable<Long> results() {
-      return ImmutableList.of(sum);
+    public boolean hasResult() {
+      return true;
+    }
+
+    @Override
+    public long result() {
+      return sum;
     }
   }
 
-  private static class SumInts extends SimpleAggregator<Integer> {
+  private static class SumInts extends SimpleIntAggregator {
     private int sum = 0;
 
     @Override
@@ -511,18 +744,23 @@ public final class Aggregators {
     }
 
     @Override
-    public void update(Integer next) {
+    public void update(int next) {
       sum += next;
     }
 
     @Override
-    public Iterable<Integer> results() {
-      return ImmutableList.of(sum);
+    public boolean hasResult() {
+      return true;
+    }
+
+    @Override
+    public int result() {
+      return sum;
     }
   }
 
-  private static class SumFloats extends SimpleAggregator<Float> {
-    private float sum = 0;
+  private static class SumFloats extends SimpleFloatAggregator {
+    private float sum = 0f;
 
     @Override
     public void reset() {
@@ -530,32 +768,42 @@ public final class Aggregators {
     }
 
     @Override
-    public void update(Float next) {
+    public void update(float next) {
       sum += next;
     }
 
     @Override
-    public Iterable<Float> results() {
-      return ImmutableList.of(sum);
+    public boolean hasResult() {
+      return true;
+    }
+
+    @Override
+    public float result() {
+      return sum;
     }
   }
 
-  private static class SumDoubles extends SimpleAggregator<Double> {
-    private double sum = 0;
+  private static class SumDoubles extends SimpleDoubleAggregator {
+    private double sum = 0.0;
 
     @Override
     public void reset() {
-      sum = 0f;
+      sum = 0.0;
     }
 
     @Override
-    public void update(Double next) {
+    public void update(double next) {
       sum += next;
     }
 
     @Override
-    public Iterable<Double> results() {
-      return ImmutableList.of(sum);
+    public boolean hasResult() {
+      return true;
+    }
+
+    @Override
+    public double result() {
+      return sum;
     }
   }
 
@@ -578,87 +826,115 @@ public final class Aggregators {
     }
   }
 
-  private static class MaxLongs extends SimpleAggregator<Long> {
-    private Long max = null;
+  private static class MaxLongs extends SimpleLongAggregator {
+    private long max;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      max = null;
+      empty = true;
     }
 
     @Override
-    public void update(Long next) {
-      if (max == null || max < next) {
+    public void update(long next) {
+      if (empty || max < next) {
         max = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Long> results() {
-      return ImmutableList.of(max);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public long result() {
+      return max;
     }
   }
 
-  private static class MaxInts extends SimpleAggregator<Integer> {
-    private Integer max = null;
+  private static class MaxInts extends SimpleIntAggregator {
+    private int max;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      max = null;
+      empty = true;
     }
 
     @Override
-    public void update(Integer next) {
-      if (max == null || max < next) {
+    public void update(int next) {
+      if (empty || max < next) {
         max = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Integer> results() {
-      return ImmutableList.of(max);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public int result() {
+      return max;
     }
   }
 
-  private static class MaxFloats extends SimpleAggregator<Float> {
-    private Float max = null;
+  private static class MaxFloats extends SimpleFloatAggregator {
+    private float max;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      max = null;
+      empty = true;
     }
 
     @Override
-    public void update(Float next) {
-      if (max == null || max < next) {
+    public void update(float next) {
+      if (empty || max < next) {
         max = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Float> results() {
-      return ImmutableList.of(max);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public float result() {
+      return max;
     }
   }
 
-  private static class MaxDoubles extends SimpleAggregator<Double> {
-    private Double max = null;
+  private static class MaxDoubles extends SimpleDoubleAggregator {
+    private double max;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      max = null;
+      empty = true;
     }
 
     @Override
-    public void update(Double next) {
-      if (max == null || max < next) {
+    public void update(double next) {
+      if (empty || max < next) {
         max = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Double> results() {
-      return ImmutableList.of(max);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public double result() {
+      return max;
     }
   }
 
@@ -683,87 +959,115 @@ public final class Aggregators {
     }
   }
 
-  private static class MinLongs extends SimpleAggregator<Long> {
-    private Long min = null;
+  private static class MinLongs extends SimpleLongAggregator {
+    private long min;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      min = null;
+      empty = true;
     }
 
     @Override
-    public void update(Long next) {
-      if (min == null || min > next) {
+    public void update(long next) {
+      if (empty || min > next) {
         min = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Long> results() {
-      return ImmutableList.of(min);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public long result() {
+      return min;
     }
   }
 
-  private static class MinInts extends SimpleAggregator<Integer> {
-    private Integer min = null;
+  private static class MinInts extends SimpleIntAggregator {
+    private int min;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      min = null;
+      empty = true;
     }
 
     @Override
-    public void update(Integer next) {
-      if (min == null || min > next) {
+    public void update(int next) {
+      if (empty || min > next) {
         min = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Integer> results() {
-      return ImmutableList.of(min);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public int result() {
+      return min;
     }
   }
 
-  private static class MinFloats extends SimpleAggregator<Float> {
-    private Float min = null;
+  private static class MinFloats extends SimpleFloatAggregator {
+    private float min;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      min = null;
+      empty = true;
     }
 
     @Override
-    public void update(Float next) {
-      if (min == null || min > next) {
+    public void update(float next) {
+      if (empty || min > next) {
         min = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Float> results() {
-      return ImmutableList.of(min);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public float result() {
+      return min;
     }
   }
 
-  private static class MinDoubles extends SimpleAggregator<Double> {
-    private Double min = null;
+  private static class MinDoubles extends SimpleDoubleAggregator {
+    private double min;
+    private boolean empty = true;
 
     @Override
     public void reset() {
-      min = null;
+      empty = true;
     }
 
     @Override
-    public void update(Double next) {
-      if (min == null || min > next) {
+    public void update(double next) {
+      if (empty || min > next) {
         min = next;
+        empty = false;
       }
     }
 
     @Override
-    public Iterable<Double> results() {
-      return ImmutableList.of(min);
+    public boolean hasResult() {
+      return !empty;
+    }
+
+    @Override
+    public double result() {
+      return min;
     }
   }
 
@@ -788,6 +1092,87 @@ public final class Aggregators {
     }
   }
 
+  private static class ApproxDistinctAggregator extends SimpleAggregator<ByteBuffer> {
+    private final int precision;
+    private transient HyperLogLog sketch;
+
+    public ApproxDistinctAggregator(int precision) {
+      this.precision = precision;
+    }
+
+    @Override
+    public void reset() {
+      if (sketch == null) {
+        sketch = new HyperLogLog(precision);
+      } else {
+        sketch.clear();
+      }
+    }
+
+    @Override
+    public void update(ByteBuffer next) {
+      sketch.merge(next);
+    }
+
+    @Override
+    public Iterable<ByteBuffer> results() {
+      return ImmutableList.of(sketch.toByteBuffer());
+    }
+  }
+
+  private static class QuantilesAggregator extends SimpleAggregator<QuantileSketch> {
+    private final int k;
+    private transient QuantileSketch sketch;
+
+    public QuantilesAggregator(int k) {
+      this.k = k;
+    }
+
+    @Override
+    public void reset() {
+      // The previous sketch may have been handed out by results().
+      sketch = new QuantileSketch(k);
+    }
+
+    @Override
+    public void update(QuantileSketch next) {
+      sketch.merge(next);
+    }
+
+    @Override
+    public Iterable<QuantileSketch> results() {
+      return ImmutableList.of(sketch);
+    }
+  }
+
+  private static class HeavyHittersAggregator<V> extends SimpleAggregator<Pair<V, Long>> {
+    private final int capacity;
+    private transient SpaceSaving<V> summary;
+
+    public HeavyHittersAggregator(int capacity) {
+      this.capacity = capacity;
+    }
+
+    @Override
+    public void reset() {
+      if (summary == null) {
+        summary = new SpaceSaving<V>(capacity);
+      } else {
+        summary.clear();
+      }
+    }
+
+    @Override
+    public void update(Pair<V, Long> value) {
+      summary.offer(value.first(), value.second());
+    }
+
+    @Override
+    public Iterable<Pair<V, Long>> results() {
+      return summary.top(capacity);
+    }
+  }
+
   private static class MaxNAggregator<V extends Comparable<V>> extends SimpleAggregator<V> {
     private final int arity;
     private transient SortedSet<V> elements;
@@ -57,6 +57,11 @@ public class CompositeMapFn<R, S, T> extends MapFn<R, T> {
     return second.map(first.map(input));
   }
 
+  @Override
+  public boolean disableDeepCopy() {
+    return first.disableDeepCopy() && second.disableDeepCopy();
+  }
+
   @Override
   public void cleanup(Emitter<T> emitter) {
     first.cleanup(null);
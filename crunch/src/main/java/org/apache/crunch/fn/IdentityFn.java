@@ -36,4 +36,9 @@ public class IdentityFn<T> extends MapFn<T, T> {
   public T map(T input) {
     return input;
   }
+
+  @Override
+  public boolean disableDeepCopy() {
+    return true;
+  }
 }
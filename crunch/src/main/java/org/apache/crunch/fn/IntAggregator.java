@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.fn;
+
+import org.apache.crunch.Aggregator;
+
+/**
+ * An {@link Aggregator} of {@code int} values that can be updated and read
+ * without boxing them. When the values of a grouping are combined with one,
+ * they are passed to {@link #update(int)} and its result is read with
+ * {@link #result()}, instead of going through {@link #update(Object)} and
+ * {@link #results()}.
+ */
+public interface IntAggregator extends Aggregator<Integer> {
+
+  /**
+   * Incorporate the given value into the aggregate state maintained by this
+   * instance.
+   */
+  void update(int value);
+
+  /**
+   * Returns true if the values seen since the last reset have a result.
+   */
+  boolean hasResult();
+
+  /**
+   * Returns the result of the values seen since the last reset, which is only
+   * defined if {@link #hasResult()} returns true.
+   */
+  int result();
+}
@@ -60,9 +60,14 @@ public class CrunchControlledJob {
   private final Hook prepareHook;
   private final Hook completionHook;
   private State state;
+  // the final state of a job that has finished running but whose completion
+  // hook has not run yet
+  private State completedState;
   // some info for human consumption, e.g. the reason why the job failed
   private String message;
   private String lastKnownProgress;
+  // ready jobs with a higher priority are submitted first
+  private long priority;
 
   /**
    * Construct a job.
@@ -132,6 +137,24 @@ public class CrunchControlledJob {
     return this.jobID;
   }
 
+  /**
+   * @return the priority of this job. When not every ready job can be
+   *         submitted, the jobs with the highest priority go first.
+   */
+  public synchronized long getPriority() {
+    return this.priority;
+  }
+
+  /**
+   * Set the priority of this job.
+   * 
+   * @param priority
+   *          the new priority for this job
+   */
+  public synchronized void setPriority(long priority) {
+    this.priority = priority;
+  }
+
   /**
    * @return the mapred ID of this job as assigned by the mapred framework.
    */
@@ -223,16 +246,20 @@ public class CrunchControlledJob {
   }
 
   /**
-   * Check the state of this running job. The state may remain the same, become
-   * SUCCEEDED or FAILED.
+   * Check the state of this running job. If it has finished, its final state
+   * is held back until {@link #complete()} has run its completion hook, and the
+   * job stays RUNNING in the meantime.
    */
   private void checkRunningState() throws IOException, InterruptedException {
+    if (completedState != null) {
+      return;
+    }
     try {
       if (job.isComplete()) {
         if (job.isSuccessful()) {
-          this.state = State.SUCCESS;
+          this.completedState = State.SUCCESS;
         } else {
-          this.state = State.FAILED;
+          this.completedState = State.FAILED;
           this.message = "Job failed!";
         }
       } else {
@@ -242,7 +269,7 @@ public class CrunchControlledJob {
         }
       }
     } catch (IOException ioe) {
-      this.state = State.FAILED;
+      this.completedState = State.FAILED;
       this.message = StringUtils.stringifyException(ioe);
       try {
         if (job != null) {
@@ -251,9 +278,34 @@ public class CrunchControlledJob {
       } catch (IOException e) {
       }
     }
-    if (isCompleted()) {
+  }
+
+  /**
+   * @return true if this job has finished running and is waiting for
+   *         {@link #complete()} to be called
+   */
+  public synchronized boolean isAwaitingCompletion() {
+    return this.state == State.RUNNING && this.completedState != null;
+  }
+
+  /**
+   * Run the completion hook of a job that has finished running and move the
+   * job into its final state. The job becomes FAILED if the hook fails.
+   */
+  protected void complete() {
+    State finalState;
+    synchronized (this) {
+      finalState = this.completedState;
+    }
+    try {
       completionHook.run();
+    } catch (Exception e) {
+      finalState = State.FAILED;
+      setMessage(StringUtils.stringifyException(e));
+      LOG.info("Error occurred completing job \"" + getJobName() + "\":");
+      LOG.info(getMessage());
     }
+    setJobState(finalState);
   }
 
   /**
@@ -299,16 +351,16 @@ public class CrunchControlledJob {
    * Submit this job to mapred. The state becomes RUNNING if submission is
    * successful, FAILED otherwise.
    */
-  protected synchronized void submit() {
+  protected void submit() {
     try {
       prepareHook.run();
       job.submit();
-      this.state = State.RUNNING;
+      setJobState(State.RUNNING);
       LOG.info("Running job \"" + getJobName() + "\"");
       LOG.info("Job status available at: " + job.getTrackingURL());
     } catch (Exception ioe) {
-      this.state = State.FAILED;
-      this.message = StringUtils.stringifyException(ioe);
+      setMessage(StringUtils.stringifyException(ioe));
+      setJobState(State.FAILED);
       LOG.info("Error occurred starting job \"" + getJobName() + "\":");
       LOG.info(getMessage());
     }
@@ -19,14 +19,25 @@ package org.apache.crunch.hadoop.mapreduce.lib.jobcontrol;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob.State;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * This class encapsulates a set of MapReduce jobs and its dependency.
  * 
@@ -36,6 +47,22 @@ import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob.Sta
  * This class provides APIs for the client app to add a job to the group and to
  * get the jobs in the group in different states. When a job is added, an ID
  * unique to the group is assigned to the job.
+ * 
+ * Ready jobs are submitted, and the completion hooks of finished jobs are run,
+ * on a pool of threads, so that a slow submission or a slow move of output
+ * files does not hold up other jobs. A job stays in the running table while
+ * either is in progress, and {@link #awaitEvent} wakes up as soon as one of
+ * them is done.
+ * 
+ * Hadoop does not notify clients when a job finishes on the cluster, so the
+ * completion of running jobs is still found by polling: each call to
+ * {@link #pollJobStatusAndStartNewOnes} asks every running job whether it is
+ * complete, and the caller waits in {@link #awaitEvent} for at most its poll
+ * interval between calls.
+ * 
+ * Ready jobs are submitted in order of decreasing priority. If the number of
+ * running jobs is capped, the jobs that do not fit stay ready until a running
+ * job finishes.
  */
 public class CrunchJobControl {
 
@@ -49,6 +76,25 @@ public class CrunchJobControl {
 
   private final String groupName;
 
+  private static final Comparator<CrunchControlledJob> PRIORITY_ORDER = new Comparator<CrunchControlledJob>() {
+    @Override
+    public int compare(CrunchControlledJob left, CrunchControlledJob right) {
+      long lp = left.getPriority();
+      long rp = right.getPriority();
+      if (lp != rp) {
+        return lp > rp ? -1 : 1;
+      }
+      return left.getJobID() - right.getJobID();
+    }
+  };
+
+  private final int maxRunningJobs;
+  private final ExecutorService executor;
+  // the IDs of the jobs that are being submitted or completed on the executor
+  private final Set<Integer> inFlightJobs = Sets.newHashSet();
+  private final Semaphore events = new Semaphore(0);
+  private boolean killed = false;
+
   /**
    * Construct a job control for a group of jobs.
    * 
@@ -56,12 +102,42 @@ public class CrunchJobControl {
    *          a name identifying this group
    */
   public CrunchJobControl(String groupName) {
+    this(groupName, 1);
+  }
+
+  /**
+   * Construct a job control for a group of jobs.
+   * 
+   * @param groupName
+   *          a name identifying this group
+   * @param threads
+   *          the number of threads used to submit and complete jobs
+   */
+  public CrunchJobControl(String groupName, int threads) {
+    this(groupName, threads, 0);
+  }
+
+  /**
+   * Construct a job control for a group of jobs.
+   * 
+   * @param groupName
+   *          a name identifying this group
+   * @param threads
+   *          the number of threads used to submit and complete jobs
+   * @param maxRunningJobs
+   *          the number of jobs that may run at the same time, or zero for no
+   *          limit
+   */
+  public CrunchJobControl(String groupName, int threads, int maxRunningJobs) {
     this.waitingJobs = new Hashtable<Integer, CrunchControlledJob>();
     this.readyJobs = new Hashtable<Integer, CrunchControlledJob>();
     this.runningJobs = new Hashtable<Integer, CrunchControlledJob>();
     this.successfulJobs = new Hashtable<Integer, CrunchControlledJob>();
     this.failedJobs = new Hashtable<Integer, CrunchControlledJob>();
     this.groupName = groupName;
+    this.maxRunningJobs = maxRunningJobs;
+    this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("CrunchJobControl-%d").build());
   }
 
   private static List<CrunchControlledJob> toList(Map<Integer, CrunchControlledJob> jobs) {
@@ -152,9 +228,23 @@ public class CrunchJobControl {
     oldJobs = this.runningJobs;
     this.runningJobs = new Hashtable<Integer, CrunchControlledJob>();
 
-    for (CrunchControlledJob nextJob : oldJobs.values()) {
+    for (final CrunchControlledJob nextJob : oldJobs.values()) {
+      if (isInFlight(nextJob)) {
+        addToQueue(nextJob, this.runningJobs);
+        continue;
+      }
       nextJob.checkState();
-      this.addToQueue(nextJob);
+      if (nextJob.isAwaitingCompletion()) {
+        runInFlight(nextJob, new Runnable() {
+          @Override
+          public void run() {
+            nextJob.complete();
+          }
+        });
+        addToQueue(nextJob, this.runningJobs);
+      } else {
+        this.addToQueue(nextJob);
+      }
     }
   }
 
@@ -171,29 +261,128 @@ public class CrunchJobControl {
   }
 
   synchronized private void startReadyJobs() {
-    Map<Integer, CrunchControlledJob> oldJobs = null;
-    oldJobs = this.readyJobs;
+    List<CrunchControlledJob> oldJobs = Lists.newArrayList(this.readyJobs.values());
+    Collections.sort(oldJobs, PRIORITY_ORDER);
     this.readyJobs = new Hashtable<Integer, CrunchControlledJob>();
 
-    for (CrunchControlledJob nextJob : oldJobs.values()) {
+    int running = countActiveJobs();
+    for (final CrunchControlledJob nextJob : oldJobs) {
+      if (maxRunningJobs > 0 && running >= maxRunningJobs) {
+        addToQueue(nextJob, this.readyJobs);
+        continue;
+      }
+      running++;
       // Submitting Job to Hadoop
-      nextJob.submit();
-      this.addToQueue(nextJob);
+      runInFlight(nextJob, new Runnable() {
+        @Override
+        public void run() {
+          if (isKilled()) {
+            return;
+          }
+          nextJob.submit();
+          if (isKilled() && nextJob.getJobState() == State.RUNNING) {
+            // The job was submitted while all running jobs were being killed.
+            killJob(nextJob);
+          }
+        }
+      });
+      addToQueue(nextJob, this.runningJobs);
     }
   }
 
-  synchronized public void killAllRunningJobs() {
+  /**
+   * Counts the jobs that are being submitted or are running on the cluster,
+   * leaving out the finished jobs whose completion hooks are still running.
+   */
+  private synchronized int countActiveJobs() {
+    int active = 0;
     for (CrunchControlledJob job : runningJobs.values()) {
-      if (!job.isCompleted()) {
+      if (!job.isAwaitingCompletion()) {
+        active++;
+      }
+    }
+    return active;
+  }
+
+  private synchronized boolean isInFlight(CrunchControlledJob job) {
+    return inFlightJobs.contains(job.getJobID());
+  }
+
+  private synchronized boolean isKilled() {
+    return killed;
+  }
+
+  /**
+   * Runs the given submission or completion of a job on the executor, and
+   * signals an event when it is done.
+   */
+  private synchronized void runInFlight(final CrunchControlledJob job, final Runnable task) {
+    inFlightJobs.add(job.getJobID());
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
         try {
-          job.killJob();
-        } catch (Exception e) {
-          log.error("Exception killing job: " + job.getJobName(), e);
+          task.run();
+        } catch (RuntimeException e) {
+          log.error("Exception in job: " + job.getJobName(), e);
+          job.setMessage(e.toString());
+          job.setJobState(State.FAILED);
+        } finally {
+          synchronized (CrunchJobControl.this) {
+            inFlightJobs.remove(job.getJobID());
+          }
+          signal();
         }
       }
+    });
+  }
+
+  private void killJob(CrunchControlledJob job) {
+    try {
+      job.killJob();
+    } catch (Exception e) {
+      log.error("Exception killing job: " + job.getJobName(), e);
     }
   }
 
+  synchronized public void killAllRunningJobs() {
+    killed = true;
+    for (CrunchControlledJob job : runningJobs.values()) {
+      if (!job.isCompleted() && job.getJobState() == State.RUNNING) {
+        killJob(job);
+      }
+    }
+  }
+
+  /**
+   * Stops the threads used to submit and complete jobs once they have finished
+   * the work that is already in progress.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Wakes up a thread that is waiting in {@link #awaitEvent}.
+   */
+  public void signal() {
+    events.release();
+  }
+
+  /**
+   * Waits until a job has been submitted or completed, or until
+   * {@link #signal()} is called, or until the timeout expires. Jobs that finish
+   * running on the cluster do not end the wait, so the timeout bounds how long
+   * it takes to notice them.
+   * 
+   * @return true if the wait ended because of an event
+   */
+  public boolean awaitEvent(long timeout, TimeUnit unit) throws InterruptedException {
+    boolean event = events.tryAcquire(timeout, unit);
+    events.drainPermits();
+    return event;
+  }
+
   synchronized public boolean allFinished() {
     return this.waitingJobs.size() == 0 && this.readyJobs.size() == 0
         && this.runningJobs.size() == 0;
@@ -54,6 +54,34 @@ import com.google.common.collect.Sets;
 
 public class MemPipeline implements Pipeline {
 
+  /**
+   * Configuration key for the number of threads used to apply a {@code DoFn}
+   * to an in-memory collection. Values greater than one split the collection
+   * into chunks that are processed concurrently, each by its own serialized
+   * copy of the {@code DoFn}. Defaults to 1, which processes every collection
+   * on the calling thread.
+   */
+  public static final String PARALLELISM = "crunch.mem.parallelism";
+
+  /**
+   * Configuration key for the number of bytes of serialized records that a
+   * {@code groupByKey} on a typed in-memory table may buffer before it sorts
+   * them and spills them to local disk. Values are serialized and compared as
+   * they would be in a MapReduce shuffle, honoring any sort and grouping
+   * comparators in the {@code GroupingOptions}. Unset by default, in which case
+   * all of the grouped data is kept on the heap.
+   * <p>
+   * A spilled grouping is not cached, so every iteration of the grouped table
+   * itself sorts and spills the table that it groups again.
+   */
+  public static final String SHUFFLE_BUFFER_BYTES = "crunch.mem.shuffle.buffer.bytes";
+
+  /**
+   * Configuration key for the local directory that shuffle spills are written
+   * to. Defaults to the {@code java.io.tmpdir} directory.
+   */
+  public static final String SHUFFLE_SPILL_DIR = "crunch.mem.shuffle.spill.dir";
+
   private static final Log LOG = LogFactory.getLog(MemPipeline.class);
   private static Counters COUNTERS = new Counters();
   private static final MemPipeline INSTANCE = new MemPipeline();
@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyFactory;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Applies a {@link DoFn} to the contents of an in-memory collection.
+ * <p>
+ * When {@link MemPipeline#PARALLELISM} is greater than one, the input is split
+ * into that many contiguous chunks that are processed concurrently. Every chunk
+ * gets its own deserialized copy of the {@code DoFn}, which is initialized and
+ * cleaned up independently, and the chunk outputs are concatenated in input
+ * order. Data that is not held in a {@link List}, such as the output of a
+ * shuffle that spilled to disk, is always streamed through a single instance.
+ * <p>
+ * There is one shared pool of daemon threads for each level of parallelism
+ * that has been used. Pools are never shut down, so that changing the
+ * parallelism can't fail a run that is still using the old pool.
+ */
+final class DoFnRunner {
+
+  private static final Map<Integer, ExecutorService> EXECUTORS = Maps.newHashMap();
+  private static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<Boolean>();
+
+  public static <S, T> List<T> run(DoFn<S, T> doFn, Iterable<S> data, Configuration conf) {
+    int parallelism = conf.getInt(MemPipeline.PARALLELISM, 1);
+    if (parallelism <= 1 || !(data instanceof List) || ((List<S>) data).size() < 2) {
+      return runChunk(doFn, data, conf, MemPipeline.getCounters());
+    }
+
+    List<S> input = (List<S>) data;
+    int chunkSize = (input.size() + parallelism - 1) / parallelism;
+    List<Callable<List<T>>> tasks = Lists.newArrayList();
+    for (List<S> chunk : Lists.partition(input, chunkSize)) {
+      tasks.add(new ChunkTask<S, T>(doFn, chunk, conf));
+    }
+
+    List<T> output = Lists.newArrayList();
+    for (List<T> chunkOutput : invokeAll(tasks, parallelism)) {
+      output.addAll(chunkOutput);
+    }
+    return output;
+  }
+
+  /**
+   * Runs the given tasks on a pool of the given number of threads and returns
+   * their results in task order, rethrowing the first failure.
+   */
+  static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int threads) {
+    if (Boolean.TRUE.equals(IN_POOL.get())) {
+      // Waiting on the pool from one of its own threads could deadlock it.
+      return callAll(tasks);
+    }
+    List<Future<T>> futures = Lists.newArrayList();
+    ExecutorService service = getExecutor(threads);
+    for (final Callable<T> task : tasks) {
+      futures.add(service.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          IN_POOL.set(Boolean.TRUE);
+          try {
+            return task.call();
+          } finally {
+            IN_POOL.remove();
+          }
+        }
+      }));
+    }
+
+    List<T> results = Lists.newArrayList();
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CrunchRuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new CrunchRuntimeException((Exception) cause);
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  private static <T> List<T> callAll(List<? extends Callable<T>> tasks) {
+    List<T> results = Lists.newArrayList();
+    for (Callable<T> task : tasks) {
+      try {
+        results.add(task.call());
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CrunchRuntimeException(e);
+      }
+    }
+    return results;
+  }
+
+  private static <S, T> List<T> runChunk(DoFn<S, T> doFn, Iterable<S> input, Configuration conf,
+      Counters counters) {
+    InMemoryEmitter<T> emitter = new InMemoryEmitter<T>();
+    doFn.setContext(getInMemoryContext(conf, counters));
+    doFn.initialize();
+    for (S s : input) {
+      doFn.process(s, emitter);
+    }
+    doFn.cleanup(emitter);
+    return emitter.getOutput();
+  }
+
+  static synchronized ExecutorService getExecutor(int threads) {
+    ExecutorService executor = EXECUTORS.get(threads);
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("MemPipeline-" + threads + "-%d").build());
+      EXECUTORS.put(threads, executor);
+    }
+    return executor;
+  }
+
+  private static class ChunkTask<S, T> implements Callable<List<T>> {
+
+    private final DoFn<S, T> doFn;
+    private final List<S> chunk;
+    private final Configuration conf;
+
+    public ChunkTask(DoFn<S, T> doFn, List<S> chunk, Configuration conf) {
+      this.doFn = doFn;
+      this.chunk = chunk;
+      this.conf = conf;
+    }
+
+    @Override
+    public List<T> call() throws Exception {
+      DoFn<S, T> copy = (DoFn<S, T>) SerializationUtils.clone(doFn);
+      Counters counters = new Counters();
+      List<T> output = runChunk(copy, chunk, conf, counters);
+      synchronized (MemPipeline.class) {
+        MemPipeline.getCounters().incrAllCounters(counters);
+      }
+      return output;
+    }
+  }
+
+  /**
+   * The method creates a {@link TaskInputOutputContext} that will just provide
+   * {@linkplain Configuration}. The method has been implemented with javaassist
+   * as there are API changes in versions of Hadoop. In hadoop 1.0.3 the
+   * {@linkplain TaskInputOutputContext} is abstract class while in version 2
+   * the same is an interface.
+   * <p>
+   * Note: The intention of this is to provide the bare essentials that are
+   * required to make the {@linkplain MemPipeline} work. It lacks even the basic
+   * things that can proved some support for unit testing pipeline.
+   */
+  private static TaskInputOutputContext<?, ?, ?, ?> getInMemoryContext(final Configuration conf,
+      final Counters counters) {
+    ProxyFactory factory = new ProxyFactory();
+    Class<TaskInputOutputContext> superType = TaskInputOutputContext.class;
+    Class[] types = new Class[0];
+    Object[] args = new Object[0];
+    if (superType.isInterface()) {
+      factory.setInterfaces(new Class[] { superType });
+    } else {
+      types = new Class[] { Configuration.class, TaskAttemptID.class, RecordWriter.class, OutputCommitter.class,
+          StatusReporter.class };
+      args = new Object[] { conf, new TaskAttemptID(), null, null, null };
+      factory.setSuperclass(superType);
+    }
+    factory.setFilter(new MethodFilter() {
+      @Override
+      public boolean isHandled(Method m) {
+        String name = m.getName();
+        return "getConfiguration".equals(name) || "getCounter".equals(name) || "progress".equals(name);
+      }
+    });
+    MethodHandler handler = new MethodHandler() {
+      @Override
+      public Object invoke(Object arg0, Method m, Method arg2, Object[] args) throws Throwable {
+        String name = m.getName();
+        if ("getConfiguration".equals(name)) {
+          return conf;
+        } else if ("progress".equals(name)) {
+          // no-op
+          return null;
+        } else { // getCounter
+          if (args.length == 1) {
+            return counters.findCounter((Enum<?>) args[0]);
+          } else {
+            return counters.findCounter((String) args[0], (String) args[1]);
+          }
+        }
+      }
+    };
+    try {
+      Object newInstance = factory.create(types, args, handler);
+      return (TaskInputOutputContext<?, ?, ?, ?>) newInstance;
+    } catch (Exception e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Not instantiated
+  private DoFnRunner() {
+  }
+}
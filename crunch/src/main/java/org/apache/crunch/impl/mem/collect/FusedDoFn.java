@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * A {@link DoFn} that pipes the output of one {@code DoFn} directly into the
+ * next, so that a chain of {@code parallelDo} calls on an in-memory collection
+ * is evaluated in a single pass.
+ * <p>
+ * Every value that a {@code DoFn} in the chain emits is also emitted, paired
+ * with the position of that {@code DoFn} in the chain, so that the contents of
+ * each collection in the chain can be cached and none of the {@code DoFn}s has
+ * to be applied again.
+ */
+class FusedDoFn<S> extends DoFn<S, Pair<Integer, Object>> {
+
+  private final DoFn<S, Object> fn;
+  private final int tag;
+  private final FusedDoFn<Object> next;
+  private transient TeeEmitter tee;
+
+  /**
+   * Creates a chain that applies the given {@code DoFn}, whose outputs are
+   * tagged with the given position, and then the given rest of the chain,
+   * which may be null.
+   */
+  public FusedDoFn(DoFn<S, ?> fn, int tag, FusedDoFn<Object> next) {
+    this.fn = (DoFn<S, Object>) fn;
+    this.tag = tag;
+    this.next = next;
+  }
+
+  @Override
+  public void configure(Configuration conf) {
+    fn.configure(conf);
+    if (next != null) {
+      next.configure(conf);
+    }
+  }
+
+  @Override
+  public void setContext(TaskInputOutputContext<?, ?, ?, ?> context) {
+    super.setContext(context);
+    fn.setContext(context);
+    if (next != null) {
+      next.setContext(context);
+    }
+  }
+
+  @Override
+  public void initialize() {
+    fn.initialize();
+    if (next != null) {
+      next.initialize();
+    }
+  }
+
+  @Override
+  public void process(S input, Emitter<Pair<Integer, Object>> emitter) {
+    fn.process(input, teeTo(emitter));
+  }
+
+  @Override
+  public void cleanup(Emitter<Pair<Integer, Object>> emitter) {
+    fn.cleanup(teeTo(emitter));
+    if (next != null) {
+      next.cleanup(emitter);
+    }
+  }
+
+  @Override
+  public float scaleFactor() {
+    return next == null ? fn.scaleFactor() : fn.scaleFactor() * next.scaleFactor();
+  }
+
+  private Emitter<Object> teeTo(Emitter<Pair<Integer, Object>> emitter) {
+    if (tee == null || tee.downstream != emitter) {
+      tee = new TeeEmitter(emitter);
+    }
+    return tee;
+  }
+
+  private class TeeEmitter implements Emitter<Object> {
+    private final Emitter<Pair<Integer, Object>> downstream;
+
+    public TeeEmitter(Emitter<Pair<Integer, Object>> downstream) {
+      this.downstream = downstream;
+    }
+
+    @Override
+    public void emit(Object emitted) {
+      downstream.emit(Pair.of(tag, emitted));
+      if (next != null) {
+        next.process(emitted, downstream);
+      }
+    }
+
+    @Override
+    public void flush() {
+      downstream.flush();
+    }
+  }
+}
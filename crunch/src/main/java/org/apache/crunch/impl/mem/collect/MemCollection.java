@@ -17,12 +17,8 @@
  */
 package org.apache.crunch.impl.mem.collect;
 
-import java.lang.reflect.Method;
 import java.util.Collection;
-
-import javassist.util.proxy.MethodFilter;
-import javassist.util.proxy.MethodHandler;
-import javassist.util.proxy.ProxyFactory;
+import java.util.List;
 
 import org.apache.crunch.DoFn;
 import org.apache.crunch.FilterFn;
@@ -36,27 +32,25 @@ import org.apache.crunch.Pipeline;
 import org.apache.crunch.Target;
 import org.apache.crunch.fn.ExtractKeyFn;
 import org.apache.crunch.impl.mem.MemPipeline;
-import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
 import org.apache.crunch.lib.Aggregate;
 import org.apache.crunch.materialize.pobject.CollectionPObject;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.mapreduce.OutputCommitter;
-import org.apache.hadoop.mapreduce.RecordWriter;
-import org.apache.hadoop.mapreduce.StatusReporter;
-import org.apache.hadoop.mapreduce.TaskAttemptID;
-import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 public class MemCollection<S> implements PCollection<S> {
 
-  private final Collection<S> collect;
+  private Iterable<S> collect;
+  private final MemCollection<Object> parent;
+  private final DoFn<Object, S> fn;
   private final PType<S> ptype;
   private String name;
+  private int children;
 
   public MemCollection(Iterable<S> collect) {
     this(collect, null, null);
@@ -68,6 +62,33 @@ public class MemCollection<S> implements PCollection<S> {
 
   public MemCollection(Iterable<S> collect, PType<S> ptype, String name) {
     this.collect = ImmutableList.copyOf(collect);
+    this.parent = null;
+    this.fn = null;
+    this.ptype = ptype;
+    this.name = name;
+  }
+
+  /**
+   * Creates a collection whose contents are produced by {@link #compute()} the
+   * first time they are needed.
+   */
+  MemCollection(PType<S> ptype, String name) {
+    this.collect = null;
+    this.parent = null;
+    this.fn = null;
+    this.ptype = ptype;
+    this.name = name;
+  }
+
+  /**
+   * Creates a collection whose contents are computed by applying the given
+   * {@code DoFn} to the parent collection the first time they are needed.
+   * Each {@code parallelDo} on a collection creates one of these as its child.
+   */
+  MemCollection(MemCollection<?> parent, DoFn<?, S> fn, PType<S> ptype, String name) {
+    this.collect = null;
+    this.parent = (MemCollection<Object>) parent;
+    this.fn = (DoFn<Object, S>) fn;
     this.ptype = ptype;
     this.name = name;
   }
@@ -90,7 +111,7 @@ public class MemCollection<S> implements PCollection<S> {
         output.add(s);
       }
     }
-    output.addAll(collect);
+    output.addAll(getCollection());
     return new MemCollection<S>(output, collections[0].getPType());
   }
 
@@ -107,14 +128,8 @@ public class MemCollection<S> implements PCollection<S> {
   @Override
   public <T> PCollection<T> parallelDo(String name, DoFn<S, T> doFn, PType<T> type,
       ParallelDoOptions options) {
-    InMemoryEmitter<T> emitter = new InMemoryEmitter<T>();
-    doFn.setContext(getInMemoryContext(getPipeline().getConfiguration()));
-    doFn.initialize();
-    for (S s : collect) {
-      doFn.process(s, emitter);
-    }
-    doFn.cleanup(emitter);
-    return new MemCollection<T>(emitter.getOutput(), type, name);
+    addChild();
+    return new MemCollection<T>(this, doFn, type, name);
   }
 
   @Override
@@ -130,14 +145,8 @@ public class MemCollection<S> implements PCollection<S> {
   @Override
   public <K, V> PTable<K, V> parallelDo(String name, DoFn<S, Pair<K, V>> doFn, PTableType<K, V> type,
       ParallelDoOptions options) {
-    InMemoryEmitter<Pair<K, V>> emitter = new InMemoryEmitter<Pair<K, V>>();
-    doFn.setContext(getInMemoryContext(getPipeline().getConfiguration()));
-    doFn.initialize();
-    for (S s : collect) {
-      doFn.process(s, emitter);
-    }
-    doFn.cleanup(emitter);
-    return new MemTable<K, V>(emitter.getOutput(), type, name);
+    addChild();
+    return new MemTable<K, V>(this, doFn, type, name);
   }
 
   @Override
@@ -152,9 +161,23 @@ public class MemCollection<S> implements PCollection<S> {
     return this;
   }
 
+  private synchronized void addChild() {
+    children++;
+  }
+
+  /**
+   * Returns whether the {@code DoFn} of this collection can be fused into the
+   * computation of its only child. Once a second child is chained, the
+   * contents of this collection are computed once and cached instead, so that
+   * the branches don't each apply its {@code DoFn} and those of its ancestors.
+   */
+  private synchronized boolean isFusable() {
+    return collect == null && fn != null && children == 1;
+  }
+
   @Override
   public Iterable<S> materialize() {
-    return collect;
+    return getData();
   }
 
   /** {@inheritDoc} */
@@ -164,9 +187,67 @@ public class MemCollection<S> implements PCollection<S> {
   }
 
   public Collection<S> getCollection() {
+    Iterable<S> data = getData();
+    if (data instanceof Collection) {
+      return (Collection<S>) data;
+    }
+    return ImmutableList.copyOf(data);
+  }
+
+  private synchronized Iterable<S> getData() {
+    if (collect == null) {
+      collect = compute();
+    }
     return collect;
   }
 
+  /**
+   * Computes the contents of a collection that was not created from existing
+   * data. The result must support repeated iteration.
+   * <p>
+   * The {@code DoFn}s of the pending ancestors that have no other children are
+   * fused with this collection's and applied in a single pass over the nearest
+   * ancestor whose contents are cached. The contents of the fused ancestors are
+   * cached as they are produced, so that each {@code DoFn} is applied only once
+   * even if an ancestor is later materialized or given another child.
+   */
+  Iterable<S> compute() {
+    List<MemCollection<Object>> chain = Lists.newArrayList();
+    MemCollection<Object> source = (MemCollection<Object>) this;
+    do {
+      chain.add(source);
+      source = source.parent;
+    } while (source.isFusable());
+    Configuration conf = getPipeline().getConfiguration();
+    if (chain.size() == 1) {
+      return ImmutableList.copyOf(DoFnRunner.run(fn, source.getData(), conf));
+    }
+
+    // The chain runs from the outermost ancestor down to this collection, and
+    // tags each output with the index of its collection in the list.
+    FusedDoFn<Object> fused = null;
+    for (int i = 0; i < chain.size(); i++) {
+      fused = new FusedDoFn<Object>(chain.get(i).fn, i, fused);
+    }
+    List<ImmutableList.Builder<Object>> outputs = Lists.newArrayList();
+    for (int i = 0; i < chain.size(); i++) {
+      outputs.add(ImmutableList.<Object> builder());
+    }
+    for (Pair<Integer, Object> tagged : DoFnRunner.run(fused, source.getData(), conf)) {
+      outputs.get(tagged.first()).add(tagged.second());
+    }
+    for (int i = 1; i < chain.size(); i++) {
+      chain.get(i).setData(outputs.get(i).build());
+    }
+    return (Iterable<S>) outputs.get(0).build();
+  }
+
+  private synchronized void setData(Iterable<S> data) {
+    if (collect == null) {
+      collect = data;
+    }
+  }
+
   @Override
   public PType<S> getPType() {
     return ptype;
@@ -182,7 +263,7 @@ public class MemCollection<S> implements PCollection<S> {
 
   @Override
   public long getSize() {
-    return collect.isEmpty() ? 0 : 1; // getSize is only used for pipeline optimization in MR
+    return Iterables.isEmpty(getData()) ? 0 : 1; // getSize is only used for pipeline optimization in MR
   }
 
   @Override
@@ -192,7 +273,7 @@ public class MemCollection<S> implements PCollection<S> {
 
   @Override
   public String toString() {
-    return collect.toString();
+    return Iterables.toString(getData());
   }
 
   @Override
@@ -234,62 +315,4 @@ public class MemCollection<S> implements PCollection<S> {
   public <K> PTable<K, S> by(String name, MapFn<S, K> mapFn, PType<K> keyType) {
     return parallelDo(name, new ExtractKeyFn<K, S>(mapFn), getTypeFamily().tableOf(keyType, getPType()));
   }
-
-  /**
-   * The method creates a {@link TaskInputOutputContext} that will just provide
-   * {@linkplain Configuration}. The method has been implemented with javaassist
-   * as there are API changes in versions of Hadoop. In hadoop 1.0.3 the
-   * {@linkplain TaskInputOutputContext} is abstract class while in version 2
-   * the same is an interface.
-   * <p>
-   * Note: The intention of this is to provide the bare essentials that are
-   * required to make the {@linkplain MemPipeline} work. It lacks even the basic
-   * things that can proved some support for unit testing pipeline.
-   */
-  private static TaskInputOutputContext<?, ?, ?, ?> getInMemoryContext(final Configuration conf) {
-    ProxyFactory factory = new ProxyFactory();
-    Class<TaskInputOutputContext> superType = TaskInputOutputContext.class;
-    Class[] types = new Class[0];
-    Object[] args = new Object[0];
-    if (superType.isInterface()) {
-      factory.setInterfaces(new Class[] { superType });
-    } else {
-      types = new Class[] { Configuration.class, TaskAttemptID.class, RecordWriter.class, OutputCommitter.class,
-          StatusReporter.class };
-      args = new Object[] { conf, new TaskAttemptID(), null, null, null };
-      factory.setSuperclass(superType);
-    }
-    factory.setFilter(new MethodFilter() {
-      @Override
-      public boolean isHandled(Method m) {
-        String name = m.getName();
-        return "getConfiguration".equals(name) || "getCounter".equals(name) || "progress".equals(name);
-      }
-    });
-    MethodHandler handler = new MethodHandler() {
-      @Override
-      public Object invoke(Object arg0, Method m, Method arg2, Object[] args) throws Throwable {
-        String name = m.getName();
-        if ("getConfiguration".equals(name)) {
-          return conf;
-        } else if ("progress".equals(name)) {
-          // no-op
-          return null;
-        } else { // getCounter
-          if (args.length == 1) {
-            return MemPipeline.getCounters().findCounter((Enum<?>) args[0]);
-          } else {
-            return MemPipeline.getCounters().findCounter((String) args[0], (String) args[1]);
-          }
-        }
-      }
-    };
-    try {
-      Object newInstance = factory.create(types, args, handler);
-      return (TaskInputOutputContext<?, ?, ?, ?>) newInstance;
-    } catch (Exception e) {
-      e.printStackTrace();
-      throw new RuntimeException(e);
-    }
-  }
 }
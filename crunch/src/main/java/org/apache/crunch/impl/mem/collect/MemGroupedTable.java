@@ -17,10 +17,7 @@
  */
 package org.apache.crunch.impl.mem.collect;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Iterator;
 
 import org.apache.crunch.Aggregator;
 import org.apache.crunch.CombineFn;
@@ -29,36 +26,79 @@ import org.apache.crunch.PCollection;
 import org.apache.crunch.PGroupedTable;
 import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
-import org.apache.crunch.Pipeline;
 import org.apache.crunch.Target;
 import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.impl.mem.MemPipeline;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
-import org.apache.hadoop.io.RawComparator;
-import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.conf.Configuration;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableList;
 
 class MemGroupedTable<K, V> extends MemCollection<Pair<K, Iterable<V>>> implements PGroupedTable<K, V> {
 
   private final MemTable<K, V> parent;
+  private final GroupingOptions options;
 
-  private static <S, T> Iterable<Pair<S, Iterable<T>>> buildMap(MemTable<S, T> parent, GroupingOptions options) {
-    PType<S> keyType = parent.getKeyType();
-    Shuffler<S, T> shuffler = Shuffler.create(keyType, options, parent.getPipeline());
+  private static <S, T> PType<Pair<S, Iterable<T>>> groupedTypeOf(MemTable<S, T> parent) {
+    PTableType<S, T> parentType = parent.getPTableType();
+    return parentType == null ? null : parentType.getGroupedTableType();
+  }
 
-    for (Pair<S, T> pair : parent.materialize()) {
-      shuffler.add(pair);
+  public MemGroupedTable(MemTable<K, V> parent, GroupingOptions options) {
+    super(groupedTypeOf(parent), null);
+    this.parent = parent;
+    this.options = options;
+  }
+
+  @Override
+  Iterable<Pair<K, Iterable<V>>> compute() {
+    Configuration conf = getPipeline().getConfiguration();
+    int parallelism = conf.getInt(MemPipeline.PARALLELISM, 1);
+    if (parallelism > 1 && isHashPartitionable(conf)) {
+      return PartitionedShuffler.group(ImmutableList.copyOf(parent.materialize()), getKeyType(), parallelism);
     }
 
+    if (!Shuffler.isSpilling(parent.getPTableType(), conf)) {
+      return ImmutableList.copyOf(shuffle());
+    }
+    // A spilling shuffle deletes its runs as they are read, so it can only be
+    // iterated once. The parent is shuffled when the grouped table is iterated
+    // rather than here, so that a table that is never read leaves no runs
+    // behind, and every iteration sorts and spills the parent again.
+    return new Iterable<Pair<K, Iterable<V>>>() {
+      @Override
+      public Iterator<Pair<K, Iterable<V>>> iterator() {
+        return shuffle().iterator();
+      }
+    };
+  }
+
+  private Shuffler<K, V> shuffle() {
+    Shuffler<K, V> shuffler = Shuffler.create(parent.getPTableType(), options, getPipeline());
+    for (Pair<K, V> pair : parent.materialize()) {
+      shuffler.add(pair);
+    }
     return shuffler;
   }
 
-  public MemGroupedTable(MemTable<K, V> parent, GroupingOptions options) {
-    super(buildMap(parent, options));
-    this.parent = parent;
+  /**
+   * Returns true if the grouping only depends on key equality, so that the
+   * values of each key can be gathered by hashing rather than by sorting, and
+   * the data is allowed to stay on the heap.
+   */
+  private boolean isHashPartitionable(Configuration conf) {
+    if (Shuffler.isSpilling(parent.getPTableType(), conf)) {
+      return false;
+    }
+    return options == null
+        || (options.getSortComparatorClass() == null && options.getGroupingComparatorClass() == null);
+  }
+
+  private PType<K> getKeyType() {
+    PTableType<K, V> tableType = parent.getPTableType();
+    return tableType == null ? null : tableType.getKeyType();
   }
 
   @Override
@@ -72,15 +112,6 @@ class MemGroupedTable<K, V> extends MemCollection<Pair<K, Iterable<V>>> implemen
     return this;
   }
 
-  @Override
-  public PType<Pair<K, Iterable<V>>> getPType() {
-    PTableType<K, V> parentType = parent.getPTableType();
-    if (parentType != null) {
-      return parentType.getGroupedTableType();
-    }
-    return null;
-  }
-
   @Override
   public PTypeFamily getTypeFamily() {
     return parent.getTypeFamily();
@@ -102,7 +133,21 @@ class MemGroupedTable<K, V> extends MemCollection<Pair<K, Iterable<V>>> implemen
   }
 
   @Override
-  public PTable<K, V> combineValues(Aggregator<V> agg) {
+  public PTable<K, V> combineValues(final Aggregator<V> agg) {
+    Configuration conf = getPipeline().getConfiguration();
+    if (conf.getInt(MemPipeline.PARALLELISM, 1) > 1 && isHashPartitionable(conf)) {
+      // Group and fold the keys in parallel, with copies of the aggregator that
+      // fold the values of each key as they arrive.
+      return new MemTable<K, V>(parent.getPTableType(), null) {
+        @Override
+        Iterable<Pair<K, V>> compute() {
+          Configuration conf = getPipeline().getConfiguration();
+          int parallelism = Math.max(1, conf.getInt(MemPipeline.PARALLELISM, 1));
+          return PartitionedShuffler.combine(ImmutableList.copyOf(parent.materialize()), getKeyType(), agg, conf,
+              parallelism);
+        }
+      };
+    }
     return combineValues(Aggregators.<K, V>toCombineFn(agg));
   }
 
@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.crunch.DoFn;
 import org.apache.crunch.FilterFn;
 import org.apache.crunch.GroupingOptions;
 import org.apache.crunch.PCollection;
@@ -53,6 +54,20 @@ public class MemTable<K, V> extends MemCollection<Pair<K, V>> implements PTable<
     this.ptype = ptype;
   }
 
+  /**
+   * Creates a table whose contents are produced by {@link #compute()} the first
+   * time they are needed.
+   */
+  MemTable(PTableType<K, V> ptype, String name) {
+    super(ptype, name);
+    this.ptype = ptype;
+  }
+
+  MemTable(MemCollection<?> parent, DoFn<?, Pair<K, V>> fn, PTableType<K, V> ptype, String name) {
+    super(parent, fn, ptype, name);
+    this.ptype = ptype;
+  }
+
   @Override
   public PTable<K, V> union(PTable<K, V> other) {
     return union(new PTable[] { other });
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PType;
+import org.apache.hadoop.conf.Configuration;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A hash-partitioned, multi-threaded version of the in-memory shuffle.
+ * <p>
+ * The input is split into one contiguous chunk per partition. In the first
+ * phase every chunk is routed by key hash into its own set of partition maps,
+ * so that the partitions fill in parallel without any locking. In the second
+ * phase every partition merges the maps built for it by each chunk, in chunk
+ * order, so the values of a key keep their input order. Keys are sorted at the
+ * end only if the key type is {@link Comparable}, matching the order of the
+ * single-threaded {@link Shuffler}.
+ * <p>
+ * When grouping for {@link #combine}, one copy of the {@link Aggregator} is
+ * deserialized for each partition, and is used by that partition's router and
+ * then by its merger, which never run at the same time. The values buffered
+ * for a key are folded by the aggregator whenever they grow by
+ * {@link #FOLD_THRESHOLD}, as a combiner would, so only the partial results of
+ * each key are kept rather than all of its values. The aggregator is reset
+ * between keys.
+ */
+final class PartitionedShuffler {
+
+  /** The number of values that are buffered for a key before they are folded. */
+  static final int FOLD_THRESHOLD = 64;
+
+  /**
+   * Groups the values of each key.
+   */
+  public static <K, V> List<Pair<K, Iterable<V>>> group(List<Pair<K, V>> input, PType<K> keyType,
+      int partitions) {
+    List<Aggregator<V>> aggregators = Collections.<Aggregator<V>>nCopies(partitions, null);
+    List<Pair<K, List<V>>> grouped = shuffle(input, keyType, partitions, aggregators);
+    List<Pair<K, Iterable<V>>> output = Lists.newArrayListWithCapacity(grouped.size());
+    for (Pair<K, List<V>> p : grouped) {
+      output.add(Pair.<K, Iterable<V>>of(p.first(), p.second()));
+    }
+    return output;
+  }
+
+  /**
+   * Aggregates the values of each key with copies of the given aggregator.
+   */
+  public static <K, V> List<Pair<K, V>> combine(List<Pair<K, V>> input, PType<K> keyType,
+      Aggregator<V> aggregator, Configuration conf, int partitions) {
+    byte[] serialized = SerializationUtils.serialize(aggregator);
+    List<Aggregator<V>> aggregators = Lists.newArrayListWithCapacity(partitions);
+    for (int i = 0; i < partitions; i++) {
+      Aggregator<V> copy = (Aggregator<V>) SerializationUtils.deserialize(serialized);
+      copy.initialize(conf);
+      aggregators.add(copy);
+    }
+    List<Pair<K, V>> output = Lists.newArrayList();
+    for (Pair<K, List<V>> p : shuffle(input, keyType, partitions, aggregators)) {
+      for (V v : p.second()) {
+        output.add(Pair.of(p.first(), v));
+      }
+    }
+    return output;
+  }
+
+  /**
+   * Routes and merges the values of each key, where the values of the keys in
+   * each partition are folded by the aggregator at the same index, or just
+   * gathered if it is null.
+   */
+  private static <K, V> List<Pair<K, List<V>>> shuffle(List<Pair<K, V>> input, PType<K> keyType,
+      int partitions, List<Aggregator<V>> aggregators) {
+    int chunkSize = Math.max(1, (input.size() + partitions - 1) / partitions);
+    List<List<Pair<K, V>>> chunks = Lists.partition(input, chunkSize);
+
+    List<Callable<List<Map<K, Values<V>>>>> routers = Lists.newArrayList();
+    for (int i = 0; i < chunks.size(); i++) {
+      routers.add(new Router<K, V>(chunks.get(i), partitions, aggregators.get(i)));
+    }
+    List<List<Map<K, Values<V>>>> routed = DoFnRunner.invokeAll(routers, partitions);
+
+    List<Callable<List<Pair<K, List<V>>>>> mergers = Lists.newArrayList();
+    for (int i = 0; i < partitions; i++) {
+      mergers.add(new Merger<K, V>(routed, i, aggregators.get(i)));
+    }
+    List<Pair<K, List<V>>> output = Lists.newArrayList();
+    for (List<Pair<K, List<V>>> partition : DoFnRunner.invokeAll(mergers, partitions)) {
+      output.addAll(partition);
+    }
+
+    if (keyType != null && Comparable.class.isAssignableFrom(keyType.getTypeClass())) {
+      Collections.sort(output, new Comparator<Pair<K, List<V>>>() {
+        @Override
+        public int compare(Pair<K, List<V>> o1, Pair<K, List<V>> o2) {
+          return ((Comparable) o1.first()).compareTo(o2.first());
+        }
+      });
+    }
+    return output;
+  }
+
+  private static int partition(Object key, int partitions) {
+    int hash = key == null ? 0 : key.hashCode();
+    return (hash & Integer.MAX_VALUE) % partitions;
+  }
+
+  /**
+   * The values of a single key, together with the number of them that are the
+   * partial results of the last fold.
+   */
+  private static class Values<V> {
+    private final List<V> values = Lists.newArrayList();
+    private int folded;
+  }
+
+  /**
+   * Adds a value to the state of a key, and folds the state with the given
+   * aggregator, if there is one, once enough values have been added to it.
+   */
+  private static <V> void add(Values<V> state, V value, Aggregator<V> agg) {
+    state.values.add(value);
+    if (agg != null && state.values.size() >= state.folded + FOLD_THRESHOLD) {
+      fold(state, agg);
+    }
+  }
+
+  private static <V> void fold(Values<V> state, Aggregator<V> agg) {
+    agg.reset();
+    for (V v : state.values) {
+      agg.update(v);
+    }
+    state.values.clear();
+    for (V v : agg.results()) {
+      state.values.add(v);
+    }
+    state.folded = state.values.size();
+  }
+
+  private static class Router<K, V> implements Callable<List<Map<K, Values<V>>>> {
+    private final List<Pair<K, V>> chunk;
+    private final int partitions;
+    private final Aggregator<V> agg;
+
+    public Router(List<Pair<K, V>> chunk, int partitions, Aggregator<V> agg) {
+      this.chunk = chunk;
+      this.partitions = partitions;
+      this.agg = agg;
+    }
+
+    @Override
+    public List<Map<K, Values<V>>> call() {
+      List<Map<K, Values<V>>> maps = Lists.newArrayListWithCapacity(partitions);
+      for (int i = 0; i < partitions; i++) {
+        maps.add(Maps.<K, Values<V>>newLinkedHashMap());
+      }
+      for (Pair<K, V> p : chunk) {
+        Map<K, Values<V>> map = maps.get(partition(p.first(), partitions));
+        Values<V> state = map.get(p.first());
+        if (state == null) {
+          state = new Values<V>();
+          map.put(p.first(), state);
+        }
+        add(state, p.second(), agg);
+      }
+      return maps;
+    }
+  }
+
+  private static class Merger<K, V> implements Callable<List<Pair<K, List<V>>>> {
+    private final List<List<Map<K, Values<V>>>> routed;
+    private final int partition;
+    private final Aggregator<V> agg;
+
+    public Merger(List<List<Map<K, Values<V>>>> routed, int partition, Aggregator<V> agg) {
+      this.routed = routed;
+      this.partition = partition;
+      this.agg = agg;
+    }
+
+    @Override
+    public List<Pair<K, List<V>>> call() {
+      Map<K, Values<V>> merged = Maps.newLinkedHashMap();
+      for (List<Map<K, Values<V>>> chunkMaps : routed) {
+        for (Map.Entry<K, Values<V>> e : chunkMaps.get(partition).entrySet()) {
+          Values<V> state = merged.get(e.getKey());
+          if (state == null) {
+            merged.put(e.getKey(), e.getValue());
+          } else {
+            for (V v : e.getValue().values) {
+              add(state, v, agg);
+            }
+          }
+        }
+      }
+      List<Pair<K, List<V>>> output = Lists.newArrayListWithCapacity(merged.size());
+      for (Map.Entry<K, Values<V>> e : merged.entrySet()) {
+        if (agg != null) {
+          fold(e.getValue(), agg);
+        }
+        output.add(Pair.of(e.getKey(), e.getValue().values));
+      }
+      return output;
+    }
+  }
+
+  // Not instantiated
+  private PartitionedShuffler() {
+  }
+}
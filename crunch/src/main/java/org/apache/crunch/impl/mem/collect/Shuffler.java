@@ -29,7 +29,10 @@ import java.util.TreeMap;
 import org.apache.crunch.GroupingOptions;
 import org.apache.crunch.Pair;
 import org.apache.crunch.Pipeline;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.util.ReflectionUtils;
 
@@ -45,6 +48,14 @@ import com.google.common.collect.Maps;
 abstract class Shuffler<K, V> implements Iterable<Pair<K, Iterable<V>>> {
 
   public abstract void add(Pair<K, V> record);
+
+  /**
+   * Returns true if all of the shuffled data is held on the heap, in which case
+   * the grouped output may be copied into memory as well.
+   */
+  public boolean isInMemory() {
+    return true;
+  }
   
   private static <K, V> Map<K, V> getMapForKeyType(PType<?> ptype) {
     if (ptype != null && Comparable.class.isAssignableFrom(ptype.getTypeClass())) {
@@ -54,8 +65,23 @@ abstract class Shuffler<K, V> implements Iterable<Pair<K, Iterable<V>>> {
     }
   }
   
-  public static <S, T> Shuffler<S, T> create(PType<S> keyType, GroupingOptions options,
+  /**
+   * Returns true if a table of the given type is shuffled by a
+   * {@link SpillingShuffler} under the given configuration.
+   */
+  public static boolean isSpilling(PTableType<?, ?> tableType, Configuration conf) {
+    return tableType != null && conf.getLong(MemPipeline.SHUFFLE_BUFFER_BYTES, -1L) > 0;
+  }
+
+  public static <S, T> Shuffler<S, T> create(PTableType<S, T> tableType, GroupingOptions options,
       Pipeline pipeline) {
+    Configuration conf = pipeline.getConfiguration();
+    if (isSpilling(tableType, conf)) {
+      return new SpillingShuffler<S, T>(tableType, options, conf,
+          conf.getLong(MemPipeline.SHUFFLE_BUFFER_BYTES, -1L));
+    }
+
+    PType<S> keyType = tableType == null ? null : tableType.getKeyType();
     Map<S, Collection<T>> map = getMapForKeyType(keyType);
     
     if (options != null) {
@@ -64,7 +90,7 @@ abstract class Shuffler<K, V> implements Iterable<Pair<K, Iterable<V>>> {
         return new SecondarySortShuffler(getMapForKeyType(pairKey));
       } else if (options.getSortComparatorClass() != null) {
         RawComparator<S> rc = ReflectionUtils.newInstance(options.getSortComparatorClass(),
-            pipeline.getConfiguration());
+            conf);
         map = new TreeMap<S, Collection<T>>(rc);
       }
     }
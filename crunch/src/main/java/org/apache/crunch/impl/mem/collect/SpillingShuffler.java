@@ -0,0 +1,417 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.Converter;
+import org.apache.crunch.types.PGroupedTableType;
+import org.apache.crunch.types.PTableType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapreduce.Job;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link Shuffler} that holds at most {@link MemPipeline#SHUFFLE_BUFFER_BYTES}
+ * of serialized records in memory, sorting and spilling the buffer to a local
+ * file whenever it fills up.
+ * <p>
+ * Records are serialized and compared exactly as they would be in the shuffle
+ * of a MapReduce job: the {@link PGroupedTableType} configures a {@link Job}
+ * with the {@link GroupingOptions}, and the map output serializations, sort
+ * comparator and grouping comparator are taken from that job. Iteration does a
+ * k-way merge of the spilled runs and the in-memory buffer and groups adjacent
+ * keys with the grouping comparator. Only the values of a single key are
+ * deserialized into memory at a time.
+ * <p>
+ * A shuffler can only be iterated once. Each spilled run is deleted as soon as
+ * it has been read, or when the iterator, which is {@link Closeable}, is
+ * closed. Runs that are never read, because the shuffler or its iterator was
+ * abandoned, are deleted when the JVM exits.
+ */
+class SpillingShuffler<K, V> extends Shuffler<K, V> {
+
+  private static final Log LOG = LogFactory.getLog(SpillingShuffler.class);
+
+  /** Approximate heap overhead of a buffered record beyond its serialized bytes. */
+  private static final int RECORD_OVERHEAD = 64;
+
+  private final PGroupedTableType<K, V> groupedType;
+  private final long bufferBytes;
+  private final File spillDir;
+
+  private final MapFn outputFn;
+  private final Converter<Object, Object, Object, Object> converter;
+  private final SerializationFactory serializationFactory;
+  private final Class<Object> keyClass;
+  private final Class<Object> valueClass;
+  private final RawComparator<Object> sortComparator;
+  private final RawComparator<Object> groupingComparator;
+  private final Serializer<Object> keySerializer;
+  private final Serializer<Object> valueSerializer;
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+  private final DataOutputBuffer valueBuffer = new DataOutputBuffer();
+
+  private final List<SerializedRecord> buffer = Lists.newArrayList();
+  private final List<File> runs = Lists.newArrayList();
+  private long bufferedBytes = 0;
+  private boolean iterated;
+
+  public SpillingShuffler(PTableType<K, V> tableType, GroupingOptions options, Configuration conf,
+      long bufferBytes) {
+    this.groupedType = tableType.getGroupedTableType();
+    this.bufferBytes = bufferBytes;
+    String dir = conf.get(MemPipeline.SHUFFLE_SPILL_DIR);
+    this.spillDir = dir == null ? null : new File(dir);
+    try {
+      Job job = new Job(new Configuration(conf));
+      groupedType.configureShuffle(job, options);
+      Configuration jobConf = job.getConfiguration();
+      groupedType.initialize(jobConf);
+      this.outputFn = groupedType.getOutputMapFn();
+      outputFn.initialize();
+      this.converter = groupedType.getGroupingConverter();
+      this.serializationFactory = new SerializationFactory(jobConf);
+      this.keyClass = (Class<Object>) job.getMapOutputKeyClass();
+      this.valueClass = (Class<Object>) job.getMapOutputValueClass();
+      this.sortComparator = (RawComparator<Object>) job.getSortComparator();
+      this.groupingComparator = (RawComparator<Object>) job.getGroupingComparator();
+      this.keySerializer = serializationFactory.getSerializer(keyClass);
+      this.valueSerializer = serializationFactory.getSerializer(valueClass);
+      keySerializer.open(keyBuffer);
+      valueSerializer.open(valueBuffer);
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    }
+  }
+
+  @Override
+  public void add(Pair<K, V> record) {
+    Object mapped = outputFn.map(record);
+    try {
+      keyBuffer.reset();
+      keySerializer.serialize(converter.outputKey(mapped));
+      valueBuffer.reset();
+      valueSerializer.serialize(converter.outputValue(mapped));
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    }
+    SerializedRecord sr = new SerializedRecord(copy(keyBuffer), copy(valueBuffer));
+    buffer.add(sr);
+    bufferedBytes += sr.key.length + sr.value.length + RECORD_OVERHEAD;
+    if (bufferedBytes >= bufferBytes) {
+      spill();
+    }
+  }
+
+  private static byte[] copy(DataOutputBuffer buf) {
+    byte[] bytes = new byte[buf.getLength()];
+    System.arraycopy(buf.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private void sortBuffer() {
+    Collections.sort(buffer, new Comparator<SerializedRecord>() {
+      @Override
+      public int compare(SerializedRecord r1, SerializedRecord r2) {
+        return r1.compareTo(r2, sortComparator);
+      }
+    });
+  }
+
+  private void spill() {
+    sortBuffer();
+    File run = null;
+    try {
+      run = File.createTempFile("crunch-shuffle-", ".run", spillDir);
+      run.deleteOnExit();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+      try {
+        for (SerializedRecord sr : buffer) {
+          sr.write(out);
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      if (run != null) {
+        run.delete();
+      }
+      throw new CrunchRuntimeException("Could not spill shuffle buffer to " + run, e);
+    }
+    LOG.debug("Spilled " + buffer.size() + " records to " + run);
+    runs.add(run);
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  @Override
+  public boolean isInMemory() {
+    return false;
+  }
+
+  @Override
+  public Iterator<Pair<K, Iterable<V>>> iterator() {
+    if (iterated) {
+      throw new IllegalStateException("A spilling shuffle can only be iterated once");
+    }
+    iterated = true;
+    sortBuffer();
+    List<Iterator<SerializedRecord>> sources = Lists.newArrayList();
+    for (File run : runs) {
+      sources.add(new RunIterator(run));
+    }
+    sources.add(buffer.iterator());
+    return new GroupIterator(new MergeIterator(sources));
+  }
+
+  private static class SerializedRecord {
+    private final byte[] key;
+    private final byte[] value;
+
+    public SerializedRecord(byte[] key, byte[] value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public int compareTo(SerializedRecord other, RawComparator<?> comparator) {
+      return comparator.compare(key, 0, key.length, other.key, 0, other.key.length);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+      out.writeInt(key.length);
+      out.write(key);
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    public static SerializedRecord read(DataInputStream in) throws IOException {
+      int keyLength;
+      try {
+        keyLength = in.readInt();
+      } catch (EOFException e) {
+        return null;
+      }
+      byte[] key = new byte[keyLength];
+      in.readFully(key);
+      byte[] value = new byte[in.readInt()];
+      in.readFully(value);
+      return new SerializedRecord(key, value);
+    }
+  }
+
+  /**
+   * Streams the records of a spilled run back from disk, and deletes the run
+   * once it has been read or the iterator is closed.
+   */
+  private static class RunIterator extends AbstractIterator<SerializedRecord> implements Closeable {
+    private final File run;
+    private DataInputStream in;
+    private boolean closed;
+
+    public RunIterator(File run) {
+      this.run = run;
+    }
+
+    @Override
+    protected SerializedRecord computeNext() {
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+        SerializedRecord next = SerializedRecord.read(in);
+        if (next == null) {
+          close();
+          return endOfData();
+        }
+        return next;
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Could not read shuffle run " + run, e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (in != null) {
+          in.close();
+        }
+      } finally {
+        if (!run.delete()) {
+          LOG.warn("Could not delete shuffle run " + run);
+        }
+      }
+    }
+  }
+
+  /**
+   * Merges sorted record sources. Ties are broken by source index, so records
+   * with equal keys come back in the order they were added.
+   */
+  private class MergeIterator extends AbstractIterator<SerializedRecord> implements Closeable {
+    private final List<Iterator<SerializedRecord>> sources;
+    private final PriorityQueue<Pair<SerializedRecord, Integer>> heads;
+
+    public MergeIterator(List<Iterator<SerializedRecord>> sources) {
+      this.sources = sources;
+      this.heads = new PriorityQueue<Pair<SerializedRecord, Integer>>(Math.max(1, sources.size()),
+          new Comparator<Pair<SerializedRecord, Integer>>() {
+            @Override
+            public int compare(Pair<SerializedRecord, Integer> h1, Pair<SerializedRecord, Integer> h2) {
+              int cmp = h1.first().compareTo(h2.first(), sortComparator);
+              return cmp != 0 ? cmp : h1.second().compareTo(h2.second());
+            }
+          });
+      for (int i = 0; i < sources.size(); i++) {
+        advance(i);
+      }
+    }
+
+    private void advance(int source) {
+      Iterator<SerializedRecord> iter = sources.get(source);
+      if (iter.hasNext()) {
+        heads.add(Pair.of(iter.next(), source));
+      }
+    }
+
+    @Override
+    protected SerializedRecord computeNext() {
+      Pair<SerializedRecord, Integer> head = heads.poll();
+      if (head == null) {
+        return endOfData();
+      }
+      advance(head.second());
+      return head.first();
+    }
+
+    @Override
+    public void close() throws IOException {
+      heads.clear();
+      for (Iterator<SerializedRecord> source : sources) {
+        if (source instanceof Closeable) {
+          ((Closeable) source).close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Groups the merged records with the grouping comparator and converts each
+   * group back into a key and its values, as the reduce side of a MapReduce
+   * job would.
+   */
+  private class GroupIterator implements Iterator<Pair<K, Iterable<V>>>, Closeable {
+    private final MergeIterator records;
+    private final Deserializer<Object> keyDeserializer;
+    private final Deserializer<Object> valueDeserializer;
+    private final DataInputBuffer input = new DataInputBuffer();
+    private final Converter<Object, Object, Object, Object> groupingConverter;
+    private final MapFn<Object, Pair<K, Iterable<V>>> inputFn;
+    private SerializedRecord next;
+
+    public GroupIterator(MergeIterator records) {
+      this.records = records;
+      this.keyDeserializer = serializationFactory.getDeserializer(keyClass);
+      this.valueDeserializer = serializationFactory.getDeserializer(valueClass);
+      this.groupingConverter = groupedType.getGroupingConverter();
+      this.inputFn = groupedType.getInputMapFn();
+      inputFn.initialize();
+      try {
+        keyDeserializer.open(input);
+        valueDeserializer.open(input);
+      } catch (IOException e) {
+        throw new CrunchRuntimeException(e);
+      }
+      this.next = records.hasNext() ? records.next() : null;
+    }
+
+    private Object deserialize(Deserializer<Object> deserializer, byte[] bytes) throws IOException {
+      input.reset(bytes, bytes.length);
+      return deserializer.deserialize(null);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Pair<K, Iterable<V>> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      SerializedRecord first = next;
+      List<Object> values = Lists.newArrayList();
+      try {
+        Object key = deserialize(keyDeserializer, first.key);
+        do {
+          values.add(deserialize(valueDeserializer, next.value));
+          next = records.hasNext() ? records.next() : null;
+        } while (next != null && next.compareTo(first, groupingComparator) == 0);
+        return inputFn.map(groupingConverter.convertIterableInput(key, values));
+      } catch (IOException e) {
+        throw new CrunchRuntimeException(e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+      next = null;
+      records.close();
+    }
+  }
+}
@@ -67,6 +67,10 @@ public class DoCollectionImpl<S> extends PCollectionImpl<S> {
     return ImmutableList.<PCollectionImpl<?>> of(parent);
   }
 
+  public DoFn<?, S> getDoFn() {
+    return fn;
+  }
+
   @Override
   public DoNode createDoNode() {
     return DoNode.createFnNode(getName(), fn, ntype);
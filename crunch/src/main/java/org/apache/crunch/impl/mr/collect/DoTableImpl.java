@@ -78,6 +78,10 @@ public class DoTableImpl<K, V> extends PTableBase<K, V> implements PTable<K, V>
     return DoNode.createFnNode(getName(), fn, type);
   }
 
+  public DoFn<?, Pair<K, V>> getDoFn() {
+    return fn;
+  }
+
   public boolean hasCombineFn() {
     return fn instanceof CombineFn;
   }
@@ -35,6 +35,7 @@ import org.apache.crunch.fn.Aggregators;
 import org.apache.crunch.impl.mr.plan.DoNode;
 import org.apache.crunch.types.PGroupedTableType;
 import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.WritableTypeFamily;
 import org.apache.crunch.util.PartitionUtils;
 import org.apache.hadoop.mapreduce.Job;
 
@@ -63,8 +64,15 @@ public class PGroupedTableImpl<K, V> extends PCollectionImpl<Pair<K, Iterable<V>
 
   public void configureShuffle(Job job) {
     ptype.configureShuffle(job, groupingOptions);
+  }
+
+  /**
+   * Sets the number of reduce tasks for the given estimate of the number of
+   * bytes that will be shuffled, unless the {@link GroupingOptions} fix it.
+   */
+  public void configureReducers(Job job, long estimatedBytes) {
     if (groupingOptions == null || groupingOptions.getNumReducers() <= 0) {
-      int numReduceTasks = PartitionUtils.getRecommendedPartitions(this, getPipeline().getConfiguration());
+      int numReduceTasks = PartitionUtils.getRecommendedPartitions(estimatedBytes, getPipeline().getConfiguration());
       if (numReduceTasks > 0) {
         job.setNumReduceTasks(numReduceTasks);
         LOG.info(String.format("Setting num reduce tasks to %d", numReduceTasks));
@@ -84,6 +92,14 @@ public class PGroupedTableImpl<K, V> extends PCollectionImpl<Pair<K, Iterable<V>
     return ptype;
   }
 
+  public PGroupedTableType<K, V> getGroupedTableType() {
+    return ptype;
+  }
+
+  public GroupingOptions getGroupingOptions() {
+    return groupingOptions;
+  }
+
   @Override
   public PTable<K, V> combineValues(CombineFn<K, V> combineFn) {
     return new DoTableImpl<K, V>("combine", getChainingCollection(), combineFn, parent.getPTableType());
@@ -134,6 +150,23 @@ public class PGroupedTableImpl<K, V> extends PCollectionImpl<Pair<K, Iterable<V>
   public DoNode getGroupingNode() {
     return DoNode.createGroupingNode("", ptype);
   }
+
+  /**
+   * Returns a grouping node that tags its outputs, for use when this grouping
+   * shares the shuffle of a MapReduce job with other groupings.
+   */
+  public DoNode getGroupingNode(int tag) {
+    return DoNode.createTaggedGroupingNode("", ptype, tag);
+  }
+
+  /**
+   * Returns true if this grouping can share the shuffle of a MapReduce job
+   * with other groupings, which requires {@code Writable} keys and values and
+   * the default partitioner and comparators.
+   */
+  public boolean isShuffleShareable() {
+    return groupingOptions == null && ptype.getFamily() == WritableTypeFamily.getInstance();
+  }
   
   @Override
   protected PCollectionImpl<Pair<K, Iterable<V>>> getChainingCollection() {
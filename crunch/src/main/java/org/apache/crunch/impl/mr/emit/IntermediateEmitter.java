@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.crunch.DoFn;
 import org.apache.crunch.Emitter;
 import org.apache.crunch.impl.mr.run.RTNode;
+import org.apache.crunch.impl.mr.run.RuntimeParameters;
 import org.apache.crunch.types.PType;
 import org.apache.hadoop.conf.Configuration;
 
@@ -37,7 +38,7 @@ public class IntermediateEmitter implements Emitter<Object> {
   private final List<RTNode> children;
   private final Configuration conf;
   private final PType<Object> outputPType;
-  private final boolean needDetachedValues;
+  private final boolean[] needDetachedValues;
 
   public IntermediateEmitter(PType<Object> outputPType, List<RTNode> children, Configuration conf) {
     this.outputPType = outputPType;
@@ -45,16 +46,21 @@ public class IntermediateEmitter implements Emitter<Object> {
     this.conf = conf;
 
     outputPType.initialize(conf);
-    needDetachedValues = this.children.size() > 1;
+    boolean disableDeepCopy = conf.getBoolean(RuntimeParameters.DISABLE_DEEP_COPY, false);
+    needDetachedValues = new boolean[this.children.size()];
+    for (int i = 0; i < needDetachedValues.length; i++) {
+      needDetachedValues[i] = needDetachedValues.length > 1 && !disableDeepCopy
+          && !this.children.get(i).canShareInputs();
+    }
   }
 
   public void emit(Object emitted) {
-    for (RTNode child : children) {
+    for (int i = 0; i < needDetachedValues.length; i++) {
       Object value = emitted;
-      if (needDetachedValues) {
+      if (needDetachedValues[i]) {
         value = this.outputPType.getDetachedValue(emitted);
       }
-      child.process(value);
+      children.get(i).process(value);
     }
   }
 
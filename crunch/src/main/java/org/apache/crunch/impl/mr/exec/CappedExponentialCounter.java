@@ -25,13 +25,22 @@ package org.apache.crunch.impl.mr.exec;
 public class CappedExponentialCounter {
 
   private long current;
+  private final long start;
   private final long limit;
 
   public CappedExponentialCounter(long start, long limit) {
     this.current = start;
+    this.start = start;
     this.limit = limit;
   }
 
+  /**
+   * Restarts the series from its first number.
+   */
+  public void reset() {
+    current = start;
+  }
+
   public long get() {
     long result = current;
     current = Math.min(current * 2, limit);
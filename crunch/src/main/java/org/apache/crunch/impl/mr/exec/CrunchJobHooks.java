@@ -18,6 +18,7 @@
 package org.apache.crunch.impl.mr.exec;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,10 +35,28 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
+import com.google.common.collect.ImmutableList;
+
 public final class CrunchJobHooks {
 
   private CrunchJobHooks() {}
 
+  /** Runs a sequence of hooks in order. */
+  public static final class CompositeHook implements CrunchControlledJob.Hook {
+    private final List<CrunchControlledJob.Hook> hooks;
+
+    public CompositeHook(CrunchControlledJob.Hook... hooks) {
+      this.hooks = ImmutableList.copyOf(hooks);
+    }
+
+    @Override
+    public void run() throws IOException {
+      for (CrunchControlledJob.Hook hook : hooks) {
+        hook.run();
+      }
+    }
+  }
+
   /** Creates missing input directories before job is submitted. */
   public static final class PrepareHook implements CrunchControlledJob.Hook {
     private final Job job;
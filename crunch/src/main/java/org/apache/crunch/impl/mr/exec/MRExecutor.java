@@ -34,6 +34,7 @@ import org.apache.crunch.Target;
 import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
 import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchJobControl;
 import org.apache.crunch.impl.mr.collect.PCollectionImpl;
+import org.apache.crunch.impl.mr.run.RuntimeParameters;
 import org.apache.crunch.materialize.MaterializableIterable;
 import org.apache.hadoop.conf.Configuration;
 
@@ -44,7 +45,9 @@ import com.google.common.collect.Lists;
  *
  * This class has a thread that submits jobs when they become ready, monitors
  * the states of the running jobs, and updates the states of jobs based on the
- * state changes of their depending jobs states.
+ * state changes of their depending jobs states. Jobs are submitted and
+ * completed in parallel by the {@link CrunchJobControl}, and the thread checks
+ * on the jobs again as soon as any of them is submitted or completed.
  *
  * It is thread-safe.
  */
@@ -64,9 +67,14 @@ public class MRExecutor implements PipelineExecution {
 
   private String planDotFile;
   
-  public MRExecutor(Class<?> jarClass, Map<PCollectionImpl<?>, Set<Target>> outputTargets,
+  public MRExecutor(Class<?> jarClass, Configuration conf, Map<PCollectionImpl<?>, Set<Target>> outputTargets,
       Map<PCollectionImpl<?>, MaterializableIterable> toMaterialize) {
-    this.control = new CrunchJobControl(jarClass.toString());
+    // The local job runner can give concurrently submitted jobs the same ID.
+    int threads = isLocalMode(conf)
+        ? 1
+        : conf.getInt(RuntimeParameters.JOB_CONTROL_THREADS, RuntimeParameters.DEFAULT_JOB_CONTROL_THREADS);
+    this.control = new CrunchJobControl(jarClass.toString(), threads,
+        conf.getInt(RuntimeParameters.MAX_RUNNING_JOBS, 0));
     this.outputTargets = outputTargets;
     this.toMaterialize = toMaterialize;
     this.monitorThread = new Thread(new Runnable() {
@@ -75,7 +83,7 @@ public class MRExecutor implements PipelineExecution {
         monitorLoop();
       }
     });
-    this.pollInterval = isLocalMode()
+    this.pollInterval = isLocalMode(conf)
       ? new CappedExponentialCounter(50, 1000)
       : new CappedExponentialCounter(500, 10000);
   }
@@ -84,6 +92,14 @@ public class MRExecutor implements PipelineExecution {
     this.control.addJob(job);
   }
 
+  /**
+   * Returns the jobs that are waiting to run, which before {@link #execute()}
+   * is called are all of the planned jobs.
+   */
+  public List<CrunchControlledJob> getWaitingJobs() {
+    return control.getWaitingJobList();
+  }
+
   public void setPlanDotFile(String planDotFile) {
     this.planDotFile = planDotFile;
   }
@@ -98,9 +114,13 @@ public class MRExecutor implements PipelineExecution {
     try {
       while (killSignal.getCount() > 0 && !control.allFinished()) {
         control.pollJobStatusAndStartNewOnes();
-        killSignal.await(pollInterval.get(), TimeUnit.MILLISECONDS);
+        if (control.awaitEvent(pollInterval.get(), TimeUnit.MILLISECONDS)) {
+          // Poll the jobs that were just submitted at the shortest interval.
+          pollInterval.reset();
+        }
       }
       control.killAllRunningJobs();
+      control.shutdown();
 
       List<CrunchControlledJob> failures = control.getFailedJobList();
       if (!failures.isEmpty()) {
@@ -186,10 +206,10 @@ public class MRExecutor implements PipelineExecution {
   @Override
   public void kill() throws InterruptedException {
     killSignal.countDown();
+    control.signal();
   }
 
-  private static boolean isLocalMode() {
-    Configuration conf = new Configuration();
+  private static boolean isLocalMode(Configuration conf) {
     // Try to handle MapReduce version 0.20 or 0.22
     String jobTrackerAddress = conf.get("mapreduce.jobtracker.address",
         conf.get("mapred.job.tracker", "local"));
@@ -24,6 +24,7 @@ import org.apache.crunch.DoFn;
 import org.apache.crunch.Source;
 import org.apache.crunch.impl.mr.run.NodeContext;
 import org.apache.crunch.impl.mr.run.RTNode;
+import org.apache.crunch.impl.mr.run.TaggedConverter;
 import org.apache.crunch.types.Converter;
 import org.apache.crunch.types.PGroupedTableType;
 import org.apache.crunch.types.PType;
@@ -63,6 +64,16 @@ public class DoNode {
     return new DoNode(fn, name, ptype, NO_CHILDREN, ptype.getGroupingConverter(), null);
   }
 
+  /**
+   * Creates a grouping node whose outputs are tagged, for a grouping that
+   * shares the shuffle of a MapReduce job with others.
+   */
+  public static <K, V> DoNode createTaggedGroupingNode(String name, PGroupedTableType<K, V> ptype, int tag) {
+    DoFn<?, ?> fn = ptype.getOutputMapFn();
+    Converter converter = new TaggedConverter(ptype.getGroupingConverter(), tag);
+    return new DoNode(fn, name, ptype, NO_CHILDREN, converter, null);
+  }
+
   public static <S> DoNode createOutputNode(String name, PType<S> ptype) {
     Converter outputConverter = ptype.getConverter();
     DoFn<?, ?> fn = ptype.getOutputMapFn();
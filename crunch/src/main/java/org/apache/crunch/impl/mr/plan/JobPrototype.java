@@ -23,7 +23,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.crunch.CombineFn;
 import org.apache.crunch.Pipeline;
+import org.apache.crunch.SourceTarget;
 import org.apache.crunch.Target;
 import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
 import org.apache.crunch.impl.mr.collect.DoTableImpl;
@@ -34,8 +36,12 @@ import org.apache.crunch.impl.mr.run.CrunchCombiner;
 import org.apache.crunch.impl.mr.run.CrunchInputFormat;
 import org.apache.crunch.impl.mr.run.CrunchMapper;
 import org.apache.crunch.impl.mr.run.CrunchReducer;
+import org.apache.crunch.impl.mr.run.InMapperCombineFn;
 import org.apache.crunch.impl.mr.run.NodeContext;
 import org.apache.crunch.impl.mr.run.RTNode;
+import org.apache.crunch.impl.mr.run.TaggedWritable;
+import org.apache.crunch.types.Converter;
+import org.apache.crunch.types.PTableType;
 import org.apache.crunch.util.DistCache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -52,37 +58,73 @@ class JobPrototype {
 
   public static JobPrototype createMapReduceJob(int jobID, PGroupedTableImpl<?, ?> group,
       Set<NodePath> inputs, Path workingPath) {
-    return new JobPrototype(jobID, inputs, group, workingPath);
+    return new JobPrototype(jobID, ImmutableList.of(new Shuffle(group, inputs)), workingPath);
   }
 
   public static JobPrototype createMapOnlyJob(int jobID, HashMultimap<Target, NodePath> mapNodePaths, Path workingPath) {
     return new JobPrototype(jobID, mapNodePaths, workingPath);
   }
 
+  /**
+   * Combines MapReduce jobs that read the same inputs into a single job, in
+   * which the inputs are read once and the map outputs of all of the jobs are
+   * tagged and share the shuffle. The combined job takes the ID and working
+   * path of the first of the given jobs.
+   */
+  public static JobPrototype createFusedJob(List<JobPrototype> siblings) {
+    List<Shuffle> shuffles = Lists.newArrayList();
+    for (JobPrototype sibling : siblings) {
+      if (sibling.isMapOnly()) {
+        throw new IllegalArgumentException("Cannot fuse map-only job " + sibling.getJobID());
+      }
+      shuffles.addAll(sibling.shuffles);
+    }
+    JobPrototype first = siblings.get(0);
+    JobPrototype fused = new JobPrototype(first.jobID, shuffles, first.workingPath);
+    for (JobPrototype sibling : siblings) {
+      fused.dependencies.addAll(sibling.dependencies);
+    }
+    return fused;
+  }
+
+  /**
+   * A grouping along with the map-side paths that feed it and the reduce-side
+   * paths that it feeds.
+   */
+  private static class Shuffle {
+    private final PGroupedTableImpl<?, ?> group;
+    private final Set<NodePath> mapNodePaths;
+    private HashMultimap<Target, NodePath> reduceNodePaths;
+
+    public Shuffle(PGroupedTableImpl<?, ?> group, Set<NodePath> mapNodePaths) {
+      this.group = group;
+      this.mapNodePaths = ImmutableSet.copyOf(mapNodePaths);
+    }
+  }
+
   private final int jobID; // TODO: maybe stageID sounds better
-  private final Set<NodePath> mapNodePaths;
-  private final PGroupedTableImpl<?, ?> group;
+  private final List<Shuffle> shuffles;
   private final Set<JobPrototype> dependencies = Sets.newHashSet();
   private final Map<PCollectionImpl<?>, DoNode> nodes = Maps.newHashMap();
   private final Path workingPath;
 
   private HashMultimap<Target, NodePath> targetsToNodePaths;
   private DoTableImpl<?, ?> combineFnTable;
+  private ResultCache resultCache;
+  private final Map<String, SourceTarget<?>> cachedOutputs = Maps.newHashMap();
 
   private CrunchControlledJob job;
 
-  private JobPrototype(int jobID, Set<NodePath> inputs, PGroupedTableImpl<?, ?> group, Path workingPath) {
+  private JobPrototype(int jobID, List<Shuffle> shuffles, Path workingPath) {
     this.jobID = jobID;
-    this.mapNodePaths = ImmutableSet.copyOf(inputs);
-    this.group = group;
+    this.shuffles = ImmutableList.copyOf(shuffles);
     this.workingPath = workingPath;
     this.targetsToNodePaths = null;
   }
 
   private JobPrototype(int jobID, HashMultimap<Target, NodePath> outputPaths, Path workingPath) {
     this.jobID = jobID;
-    this.group = null;
-    this.mapNodePaths = null;
+    this.shuffles = ImmutableList.of();
     this.workingPath = workingPath;
     this.targetsToNodePaths = outputPaths;
   }
@@ -92,98 +134,183 @@ class JobPrototype {
   }
 
   public boolean isMapOnly() {
-    return this.group == null;
+    return shuffles.isEmpty();
   }
 
   Set<NodePath> getMapNodePaths() {
+    if (isMapOnly()) {
+      return null;
+    }
+    Set<NodePath> mapNodePaths = Sets.newHashSet();
+    for (Shuffle shuffle : shuffles) {
+      mapNodePaths.addAll(shuffle.mapNodePaths);
+    }
     return mapNodePaths;
   }
 
-  PGroupedTableImpl<?, ?> getGroupingTable() {
-    return group;
+  List<PGroupedTableImpl<?, ?>> getGroupingTables() {
+    List<PGroupedTableImpl<?, ?>> groups = Lists.newArrayList();
+    for (Shuffle shuffle : shuffles) {
+      groups.add(shuffle.group);
+    }
+    return groups;
   }
 
   HashMultimap<Target, NodePath> getTargetsToNodePaths() {
-    return targetsToNodePaths;
+    if (isMapOnly()) {
+      return targetsToNodePaths;
+    }
+    HashMultimap<Target, NodePath> reduceNodePaths = HashMultimap.create();
+    for (Shuffle shuffle : shuffles) {
+      reduceNodePaths.putAll(shuffle.reduceNodePaths);
+    }
+    return reduceNodePaths;
   }
 
   public void addReducePaths(HashMultimap<Target, NodePath> outputPaths) {
-    if (group == null) {
-      throw new IllegalStateException("Cannot add a reduce phase to a map-only job");
+    if (shuffles.size() != 1) {
+      throw new IllegalStateException("Cannot add a reduce phase to a map-only or fused job");
     }
-    this.targetsToNodePaths = outputPaths;
+    shuffles.get(0).reduceNodePaths = outputPaths;
   }
 
   public void addDependency(JobPrototype dependency) {
     this.dependencies.add(dependency);
   }
 
-  public CrunchControlledJob getCrunchJob(Class<?> jarClass, Configuration conf, Pipeline pipeline) throws IOException {
+  Set<JobPrototype> getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * Adds an output of this job to the given result cache once the job has
+   * succeeded.
+   */
+  void addCachedOutput(ResultCache cache, String fingerprint, SourceTarget<?> target) {
+    this.resultCache = cache;
+    cachedOutputs.put(fingerprint, target);
+  }
+
+  /**
+   * Estimates the cost of running this job as the number of bytes that it
+   * shuffles, or that it writes if it is a map-only job, as they are known at
+   * planning time.
+   */
+  long estimateCost() {
+    try {
+      long size = 0;
+      if (!isMapOnly()) {
+        for (Shuffle shuffle : shuffles) {
+          size += shuffle.group.getSize();
+        }
+        return size;
+      }
+      for (NodePath nodePath : targetsToNodePaths.values()) {
+        size += nodePath.tail().getSize();
+      }
+      return size;
+    } catch (RuntimeException e) {
+      // An input that does not exist yet, such as a directory that is created
+      // just before the job is submitted.
+      return 0;
+    }
+  }
+
+  public CrunchControlledJob getCrunchJob(Class<?> jarClass, Configuration conf, Pipeline pipeline,
+      ScaleFactorHistory history) throws IOException {
     if (job == null) {
-      job = build(jarClass, conf, pipeline);
+      job = build(jarClass, conf, pipeline, history);
       for (JobPrototype proto : dependencies) {
-        job.addDependingJob(proto.getCrunchJob(jarClass, conf, pipeline));
+        job.addDependingJob(proto.getCrunchJob(jarClass, conf, pipeline, history));
       }
     }
     return job;
   }
 
-  private CrunchControlledJob build(Class<?> jarClass, Configuration conf, Pipeline pipeline) throws IOException {
+  private CrunchControlledJob build(Class<?> jarClass, Configuration conf, Pipeline pipeline,
+      ScaleFactorHistory history) throws IOException {
     Job job = new Job(conf);
     conf = job.getConfiguration();
     conf.set(PlanningParameters.CRUNCH_WORKING_DIRECTORY, workingPath.toString());
     job.setJarByClass(jarClass);
 
-    Set<DoNode> outputNodes = Sets.newHashSet();
-    Set<Target> targets = targetsToNodePaths.keySet();
     Path outputPath = new Path(workingPath, "output");
-    MSCROutputHandler outputHandler = new MSCROutputHandler(job, outputPath, group == null);
-    for (Target target : targets) {
-      DoNode node = null;
-      for (NodePath nodePath : targetsToNodePaths.get(target)) {
-        if (node == null) {
-          PCollectionImpl<?> collect = nodePath.tail();
-          node = DoNode.createOutputNode(target.toString(), collect.getPType());
-          outputHandler.configureNode(node, target);
-        }
-        outputNodes.add(walkPath(nodePath.descendingIterator(), node));
-      }
-    }
+    MSCROutputHandler outputHandler = new MSCROutputHandler(job, outputPath, isMapOnly());
 
     job.setMapperClass(CrunchMapper.class);
     List<DoNode> inputNodes;
     DoNode reduceNode = null;
-    if (group != null) {
+    ReducerEstimator reducerEstimator = null;
+    if (!isMapOnly()) {
       job.setReducerClass(CrunchReducer.class);
-      List<DoNode> reduceNodes = Lists.newArrayList(outputNodes);
+      // When several groupings share the shuffle, their map outputs are tagged
+      // with the index of their grouping, which the reducer uses to pick the
+      // node that processes them.
+      boolean tagged = shuffles.size() > 1;
+      boolean inMapperCombine = conf.getBoolean(PlanningParameters.IN_MAPPER_COMBINE, false);
+      List<DoNode> reduceNodes = Lists.newArrayList();
+      List<DoNode> combineNodes = Lists.newArrayList();
+      List<DoTableImpl<?, ?>> combineFnTables = Lists.newArrayList();
+      boolean hasCombiner = false;
+      for (int tag = 0; tag < shuffles.size(); tag++) {
+        Shuffle shuffle = shuffles.get(tag);
+        combineFnTable = null;
+        Set<DoNode> groupNodes = walkOutputPaths(shuffle.reduceNodePaths, outputHandler);
+        reduceNodes.add(groupNodes.iterator().next());
+        combineFnTables.add(combineFnTable);
+
+        DoNode combinerInputNode = null;
+        if (combineFnTable != null && !inMapperCombine) {
+          combinerInputNode = shuffle.group.createDoNode();
+          DoNode combineNode = combineFnTable.createDoNode();
+          combineNode.addChild(getGroupingNode(shuffle.group, tagged, tag));
+          combinerInputNode.addChild(combineNode);
+          hasCombiner = true;
+        }
+        combineNodes.add(combinerInputNode);
+      }
       serialize(reduceNodes, conf, workingPath, NodeContext.REDUCE);
       reduceNode = reduceNodes.get(0);
 
-      if (combineFnTable != null) {
+      if (hasCombiner) {
         job.setCombinerClass(CrunchCombiner.class);
-        DoNode combinerInputNode = group.createDoNode();
-        DoNode combineNode = combineFnTable.createDoNode();
-        combineNode.addChild(group.getGroupingNode());
-        combinerInputNode.addChild(combineNode);
-        serialize(ImmutableList.of(combinerInputNode), conf, workingPath, NodeContext.COMBINE);
+        serialize(combineNodes, conf, workingPath, NodeContext.COMBINE);
       }
 
-      group.configureShuffle(job);
+      if (tagged) {
+        List<Converter> groupingConverters = Lists.newArrayList();
+        for (Shuffle shuffle : shuffles) {
+          groupingConverters.add(shuffle.group.getGroupedTableType().getGroupingConverter());
+        }
+        TaggedWritable.configureShuffle(job, groupingConverters);
+      } else {
+        shuffles.get(0).group.configureShuffle(job);
+      }
+      // The number of reduce tasks is chosen when the job is submitted, once
+      // the outputs of the jobs it depends on are available.
+      reducerEstimator = new ReducerEstimator(job, getGroupingTables(), getMapNodePaths(),
+          pipeline.getName(), history);
 
-      DoNode mapOutputNode = group.getGroupingNode();
       Set<DoNode> mapNodes = Sets.newHashSet();
-      for (NodePath nodePath : mapNodePaths) {
-        // Advance these one step, since we've already configured
-        // the grouping node, and the PGroupedTableImpl is the tail
-        // of the NodePath.
-        Iterator<PCollectionImpl<?>> iter = nodePath.descendingIterator();
-        iter.next();
-        mapNodes.add(walkPath(iter, mapOutputNode));
+      for (int tag = 0; tag < shuffles.size(); tag++) {
+        Shuffle shuffle = shuffles.get(tag);
+        DoNode mapOutputNode = getGroupingNode(shuffle.group, tagged, tag);
+        if (inMapperCombine && combineFnTables.get(tag) != null) {
+          mapOutputNode = createInMapperCombineNode(combineFnTables.get(tag)).addChild(mapOutputNode);
+        }
+        for (NodePath nodePath : shuffle.mapNodePaths) {
+          // Advance these one step, since we've already configured
+          // the grouping node, and the PGroupedTableImpl is the tail
+          // of the NodePath.
+          Iterator<PCollectionImpl<?>> iter = nodePath.descendingIterator();
+          iter.next();
+          mapNodes.add(walkPath(iter, mapOutputNode));
+        }
       }
       inputNodes = Lists.newArrayList(mapNodes);
     } else { // No grouping
       job.setNumReduceTasks(0);
-      inputNodes = Lists.newArrayList(outputNodes);
+      inputNodes = Lists.newArrayList(walkOutputPaths(targetsToNodePaths, outputHandler));
     }
     serialize(inputNodes, conf, workingPath, NodeContext.MAP);
 
@@ -199,18 +326,60 @@ class JobPrototype {
     }
     job.setJobName(createJobName(pipeline.getName(), inputNodes, reduceNode));
 
-    return new CrunchControlledJob(
-        jobID,
-        job,
-        new CrunchJobHooks.PrepareHook(job),
-        new CrunchJobHooks.CompletionHook(job, outputPath, outputHandler.getMultiPaths(), group == null));
+    CrunchControlledJob.Hook prepareHook = new CrunchJobHooks.PrepareHook(job);
+    CrunchControlledJob.Hook completionHook = new CrunchJobHooks.CompletionHook(job, outputPath,
+        outputHandler.getMultiPaths(), isMapOnly());
+    if (reducerEstimator != null) {
+      prepareHook = new CrunchJobHooks.CompositeHook(prepareHook, reducerEstimator.getPrepareHook());
+      completionHook = new CrunchJobHooks.CompositeHook(completionHook, reducerEstimator.getCompletionHook());
+    }
+    if (!cachedOutputs.isEmpty()) {
+      completionHook = new CrunchJobHooks.CompositeHook(completionHook,
+          resultCache.getCommitHook(job, cachedOutputs));
+    }
+    return new CrunchControlledJob(jobID, job, prepareHook, completionHook);
+  }
+
+  /**
+   * Creates the output nodes for the given targets and walks the paths that
+   * lead to them, returning the nodes at the heads of the paths.
+   */
+  private Set<DoNode> walkOutputPaths(HashMultimap<Target, NodePath> outputPaths,
+      MSCROutputHandler outputHandler) {
+    Set<DoNode> headNodes = Sets.newHashSet();
+    for (Target target : outputPaths.keySet()) {
+      DoNode node = null;
+      for (NodePath nodePath : outputPaths.get(target)) {
+        if (node == null) {
+          PCollectionImpl<?> collect = nodePath.tail();
+          node = DoNode.createOutputNode(target.toString(), collect.getPType());
+          outputHandler.configureNode(node, target);
+        }
+        headNodes.add(walkPath(nodePath.descendingIterator(), node));
+      }
+    }
+    return headNodes;
+  }
+
+  /**
+   * Creates a node that combines the map outputs of a grouping with the
+   * {@code CombineFn} that is applied to it on the reduce side.
+   */
+  private static <K, V> DoNode createInMapperCombineNode(DoTableImpl<K, V> combineFnTable) {
+    CombineFn<K, V> combineFn = (CombineFn<K, V>) combineFnTable.getDoFn();
+    PTableType<K, V> ptype = combineFnTable.getPTableType();
+    return DoNode.createFnNode("inMapperCombine", new InMapperCombineFn<K, V>(combineFn, ptype), ptype);
+  }
+
+  private static DoNode getGroupingNode(PGroupedTableImpl<?, ?> group, boolean tagged, int tag) {
+    return tagged ? group.getGroupingNode(tag) : group.getGroupingNode();
   }
 
   private void serialize(List<DoNode> nodes, Configuration conf, Path workingPath, NodeContext context)
       throws IOException {
     List<RTNode> rtNodes = Lists.newArrayList();
     for (DoNode node : nodes) {
-      rtNodes.add(node.toRTNode(true, conf, context));
+      rtNodes.add(node == null ? null : node.toRTNode(true, conf, context));
     }
     Path path = new Path(workingPath, context.toString());
     DistCache.write(conf, path, rtNodes);
@@ -27,11 +27,13 @@ import java.util.TreeMap;
 
 import org.apache.crunch.SourceTarget;
 import org.apache.crunch.Target;
+import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
 import org.apache.crunch.impl.mr.MRPipeline;
 import org.apache.crunch.impl.mr.collect.InputCollection;
 import org.apache.crunch.impl.mr.collect.PCollectionImpl;
 import org.apache.crunch.impl.mr.collect.PGroupedTableImpl;
 import org.apache.crunch.impl.mr.exec.MRExecutor;
+import org.apache.crunch.impl.mr.run.TaggedWritable;
 import org.apache.crunch.materialize.MaterializableIterable;
 import org.apache.hadoop.conf.Configuration;
 
@@ -47,6 +49,9 @@ public class MSCRPlanner {
   private final Map<PCollectionImpl<?>, Set<Target>> outputs;
   private final Map<PCollectionImpl<?>, MaterializableIterable> toMaterialize;
   private int lastJobID = 0;
+  private ResultCache resultCache;
+  private PlanFingerprinter fingerprinter;
+  private final Map<PCollectionImpl<?>, String> cachedOutputs = Maps.newHashMap();
 
   public MSCRPlanner(MRPipeline pipeline, Map<PCollectionImpl<?>, Set<Target>> outputs,
       Map<PCollectionImpl<?>, MaterializableIterable> toMaterialize) {
@@ -73,6 +78,15 @@ public class MSCRPlanner {
   };  
 
   public MRExecutor plan(Class<?> jarClass, Configuration conf) throws IOException {
+    resultCache = ResultCache.load(conf);
+    if (resultCache != null) {
+      fingerprinter = new PlanFingerprinter(conf);
+      Set<PCollectionImpl<?>> visited = Sets.newHashSet();
+      for (PCollectionImpl<?> output : outputs.keySet()) {
+        useCachedResults(output, visited);
+      }
+    }
+
     Map<PCollectionImpl<?>, Set<SourceTarget<?>>> targetDeps = Maps.newTreeMap(DEPTH_COMPARATOR);
     for (PCollectionImpl<?> pcollect : outputs.keySet()) {
       targetDeps.put(pcollect, pcollect.getTargetDependencies());
@@ -113,7 +127,7 @@ public class MSCRPlanner {
       // For dependency handling, we only need to care about which
       // job prototype a particular GBK is assigned to.
       for (List<Vertex> component : components) {
-        assignments.putAll(constructJobPrototypes(component));
+        assignments.putAll(constructJobPrototypes(component, graph));
       }
 
       // Add in the job dependency information here.
@@ -127,6 +141,17 @@ public class MSCRPlanner {
         }
       }
       
+      // Have the jobs that write outputs to the result cache add them to it.
+      for (Map.Entry<PCollectionImpl<?>, String> e : cachedOutputs.entrySet()) {
+        Vertex vertex = graph.getVertexAt(e.getKey());
+        if (vertex != null) {
+          for (JobPrototype proto : assignments.get(vertex)) {
+            proto.addCachedOutput(resultCache, e.getValue(), e.getKey().getMaterializedAt());
+          }
+        }
+      }
+      cachedOutputs.clear();
+
       // Add cross-stage dependencies.
       for (PCollectionImpl<?> output : currentStage) {
         Set<Target> targets = outputs.get(output);
@@ -153,10 +178,15 @@ public class MSCRPlanner {
     
     // Finally, construct the jobs from the prototypes and return.
     DotfileWriter dotfileWriter = new DotfileWriter();
-    MRExecutor exec = new MRExecutor(jarClass, outputs, toMaterialize);
-    for (JobPrototype proto : Sets.newHashSet(assignments.values())) {
+    MRExecutor exec = new MRExecutor(jarClass, conf, outputs, toMaterialize);
+    ScaleFactorHistory history = ScaleFactorHistory.load(conf);
+    Set<JobPrototype> protos = Sets.newHashSet(assignments.values());
+    Map<JobPrototype, Long> criticalPaths = getCriticalPathCosts(protos);
+    for (JobPrototype proto : protos) {
       dotfileWriter.addJobPrototype(proto);
-      exec.addJob(proto.getCrunchJob(jarClass, conf, pipeline));
+      CrunchControlledJob job = proto.getCrunchJob(jarClass, conf, pipeline, history);
+      job.setPriority(criticalPaths.get(proto));
+      exec.addJob(job);
     }
 
     String planDotFile = dotfileWriter.buildDotfile();
@@ -166,6 +196,40 @@ public class MSCRPlanner {
     return exec;
   }
   
+  /**
+   * Computes, for every job, the cost of the most expensive chain of jobs that
+   * starts with it and runs through the jobs that depend on it. Each job costs
+   * one unit plus its estimated size in bytes, so that among jobs of the same
+   * size, the ones with more jobs waiting on them come first.
+   */
+  private static Map<JobPrototype, Long> getCriticalPathCosts(Set<JobPrototype> protos) {
+    Multimap<JobPrototype, JobPrototype> dependents = HashMultimap.create();
+    for (JobPrototype proto : protos) {
+      for (JobPrototype dependency : proto.getDependencies()) {
+        dependents.put(dependency, proto);
+      }
+    }
+    Map<JobPrototype, Long> costs = Maps.newHashMap();
+    for (JobPrototype proto : protos) {
+      getCriticalPathCost(proto, dependents, costs);
+    }
+    return costs;
+  }
+
+  private static long getCriticalPathCost(JobPrototype proto, Multimap<JobPrototype, JobPrototype> dependents,
+      Map<JobPrototype, Long> costs) {
+    Long cost = costs.get(proto);
+    if (cost == null) {
+      long downstream = 0;
+      for (JobPrototype dependent : dependents.get(proto)) {
+        downstream = Math.max(downstream, getCriticalPathCost(dependent, dependents, costs));
+      }
+      cost = 1 + Math.max(0, proto.estimateCost()) + downstream;
+      costs.put(proto, cost);
+    }
+    return cost;
+  }
+
   private Graph prepareFinalGraph(Graph baseGraph) {
     Graph graph = new Graph();
     
@@ -241,7 +305,30 @@ public class MSCRPlanner {
     return graph;
   }
   
-  private Multimap<Vertex, JobPrototype> constructJobPrototypes(List<Vertex> component) {
+  /**
+   * Replaces the given collection, or the closest of its ancestors, with a
+   * read of a matching output from the result cache.
+   */
+  private void useCachedResults(PCollectionImpl<?> pcollect, Set<PCollectionImpl<?>> visited) {
+    if (!visited.add(pcollect) || pcollect.getMaterializedAt() != null) {
+      return;
+    }
+    if (!(pcollect instanceof PGroupedTableImpl)) {
+      String fingerprint = fingerprinter.getFingerprint(pcollect);
+      if (fingerprint != null) {
+        SourceTarget cached = resultCache.lookup(fingerprint, pcollect.getPType());
+        if (cached != null) {
+          pcollect.materializeAt(cached);
+          return;
+        }
+      }
+    }
+    for (PCollectionImpl<?> parent : pcollect.getParents()) {
+      useCachedResults(parent, visited);
+    }
+  }
+
+  private Multimap<Vertex, JobPrototype> constructJobPrototypes(List<Vertex> component, Graph graph) {
     Multimap<Vertex, JobPrototype> assignment = HashMultimap.create();
     List<Vertex> gbks = Lists.newArrayList();
     for (Vertex v : component) {
@@ -274,6 +361,7 @@ public class MSCRPlanner {
       }
     } else {
       Set<Edge> usedEdges = Sets.newHashSet();
+      Map<Vertex, JobPrototype> gbkJobs = Maps.newLinkedHashMap();
       for (Vertex g : gbks) {
         Set<NodePath> inputs = Sets.newHashSet();
         for (Edge e : g.getIncomingEdges()) {
@@ -283,6 +371,7 @@ public class MSCRPlanner {
         JobPrototype prototype = JobPrototype.createMapReduceJob(
             ++lastJobID, (PGroupedTableImpl) g.getPCollection(), inputs, pipeline.createTempPath());
         assignment.put(g, prototype);
+        gbkJobs.put(g, prototype);
         for (Edge e : g.getIncomingEdges()) {
           assignment.put(e.getHead(), prototype);
           usedEdges.add(e);
@@ -341,10 +430,82 @@ public class MSCRPlanner {
           assignment.put(orphan, prototype);
         }
       }
+
+      if (pipeline.getConfiguration().getBoolean(PlanningParameters.FUSE_SIBLING_JOBS, false)) {
+        fuseSiblingJobs(gbkJobs, graph, assignment);
+      }
     }
     
     return assignment;
   }
+
+  /**
+   * Fuses the MapReduce jobs of a component that read the same inputs into
+   * jobs that read each input once and share a tagged shuffle. Only jobs whose
+   * inputs are not written by another job of the same stage, and whose
+   * groupings can share a shuffle, are considered.
+   */
+  private void fuseSiblingJobs(Map<Vertex, JobPrototype> gbkJobs, Graph graph,
+      Multimap<Vertex, JobPrototype> assignment) {
+    // Clusters of jobs, along with the inputs read by any job in the cluster.
+    List<List<JobPrototype>> clusters = Lists.newArrayList();
+    List<Set<Vertex>> clusterInputs = Lists.newArrayList();
+    for (Map.Entry<Vertex, JobPrototype> e : gbkJobs.entrySet()) {
+      Set<Vertex> inputs = getFusableInputs(e.getKey(), graph);
+      if (inputs == null) {
+        continue;
+      }
+      List<JobPrototype> cluster = Lists.newArrayList(e.getValue());
+      for (int i = clusters.size() - 1; i >= 0; i--) {
+        if (!Sets.intersection(inputs, clusterInputs.get(i)).isEmpty()) {
+          cluster.addAll(0, clusters.remove(i));
+          inputs.addAll(clusterInputs.remove(i));
+        }
+      }
+      clusters.add(cluster);
+      clusterInputs.add(inputs);
+    }
+
+    Map<JobPrototype, JobPrototype> fusedJobs = Maps.newHashMap();
+    for (List<JobPrototype> cluster : clusters) {
+      for (List<JobPrototype> siblings : Lists.partition(cluster, TaggedWritable.MAX_TAGS)) {
+        if (siblings.size() > 1) {
+          JobPrototype fused = JobPrototype.createFusedJob(siblings);
+          for (JobPrototype sibling : siblings) {
+            fusedJobs.put(sibling, fused);
+          }
+        }
+      }
+    }
+    if (!fusedJobs.isEmpty()) {
+      for (Map.Entry<Vertex, JobPrototype> e : Lists.newArrayList(assignment.entries())) {
+        JobPrototype fused = fusedJobs.get(e.getValue());
+        if (fused != null) {
+          assignment.remove(e.getKey(), e.getValue());
+          assignment.put(e.getKey(), fused);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the inputs of the given GBK if its job may be fused with others,
+   * or null if it may not.
+   */
+  private static Set<Vertex> getFusableInputs(Vertex gbk, Graph graph) {
+    if (!((PGroupedTableImpl<?, ?>) gbk.getPCollection()).isShuffleShareable()) {
+      return null;
+    }
+    Set<Vertex> inputs = Sets.newHashSet();
+    for (Edge e : gbk.getIncomingEdges()) {
+      Vertex input = e.getHead();
+      if (!input.isInput() || !graph.getParents(input).isEmpty()) {
+        return null;
+      }
+      inputs.add(input);
+    }
+    return inputs;
+  }
   
   private InputCollection<?> handleSplitTarget(PCollectionImpl<?> splitTarget) {
     if (!outputs.containsKey(splitTarget)) {
@@ -368,11 +529,33 @@ public class MSCRPlanner {
     if (targetToReplace != null) {
       outputs.get(splitTarget).remove(targetToReplace);
     } else if (srcTarget == null) {
-      srcTarget = pipeline.createIntermediateOutput(splitTarget.getPType());
+      srcTarget = createCachedOutput(splitTarget);
+      if (srcTarget == null) {
+        srcTarget = pipeline.createIntermediateOutput(splitTarget.getPType());
+      }
     }
     outputs.get(splitTarget).add(srcTarget);
     splitTarget.materializeAt(srcTarget);
 
     return (InputCollection<?>) pipeline.read(srcTarget);
-  }  
+  }
+
+  /**
+   * Returns a target in the result cache for an intermediate output, or null
+   * if the cache is not enabled or the output cannot be cached.
+   */
+  private SourceTarget<?> createCachedOutput(PCollectionImpl<?> splitTarget) {
+    if (resultCache == null) {
+      return null;
+    }
+    String fingerprint = fingerprinter.getFingerprint(splitTarget);
+    if (fingerprint == null) {
+      return null;
+    }
+    SourceTarget<?> srcTarget = resultCache.create(fingerprint, splitTarget.getPType());
+    if (srcTarget != null) {
+      cachedOutputs.put(splitTarget, fingerprint);
+    }
+    return srcTarget;
+  }
 }
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.Source;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.impl.mr.collect.DoCollectionImpl;
+import org.apache.crunch.impl.mr.collect.DoTableImpl;
+import org.apache.crunch.impl.mr.collect.InputCollection;
+import org.apache.crunch.impl.mr.collect.PCollectionImpl;
+import org.apache.crunch.impl.mr.collect.PGroupedTableImpl;
+import org.apache.crunch.impl.mr.collect.UnionCollection;
+import org.apache.crunch.io.PathTarget;
+import org.apache.crunch.io.impl.FileSourceImpl;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Computes fingerprints that identify the contents of a {@code PCollection}
+ * across runs of a pipeline.
+ * <p>
+ * The fingerprint of a collection covers the class and serialized form of
+ * every {@code DoFn} and {@code PType} that leads to it, the grouping
+ * comparators and partitioners of its groupings, and the paths, sizes and
+ * modification times of the files it is read from. A collection that depends
+ * on a source that is not read from files has no fingerprint.
+ */
+class PlanFingerprinter implements PCollectionImpl.Visitor {
+
+  private static final Log LOG = LogFactory.getLog(PlanFingerprinter.class);
+
+  private final Configuration conf;
+  private final Map<PCollectionImpl<?>, String> fingerprints = Maps.newHashMap();
+  private String fingerprint;
+
+  public PlanFingerprinter(Configuration conf) {
+    this.conf = conf;
+  }
+
+  /**
+   * Returns the fingerprint of the given collection, or null if it cannot be
+   * fingerprinted.
+   */
+  public String getFingerprint(PCollectionImpl<?> collection) {
+    if (!fingerprints.containsKey(collection)) {
+      collection.accept(this);
+      fingerprints.put(collection, fingerprint);
+    }
+    return fingerprints.get(collection);
+  }
+
+  @Override
+  public void visitInputCollection(InputCollection<?> collection) {
+    Source<?> source = collection.getSource();
+    Path path = getPath(source);
+    Hasher hasher = newHasher("input");
+    fingerprint = null;
+    if (path != null && putPathStatus(hasher, path)) {
+      hasher.putString(source.getClass().getName(), Charsets.UTF_8);
+      hasher.putString(source.toString(), Charsets.UTF_8);
+      fingerprint = finish(hasher, collection);
+    }
+  }
+
+  @Override
+  public void visitUnionCollection(UnionCollection<?> collection) {
+    Hasher hasher = newHasher("union");
+    fingerprint = putParents(hasher, collection.getParents()) ? finish(hasher, collection) : null;
+  }
+
+  @Override
+  public void visitDoFnCollection(DoCollectionImpl<?> collection) {
+    Hasher hasher = newHasher("do");
+    boolean valid = putParents(hasher, collection.getParents()) && putObject(hasher, collection.getDoFn());
+    fingerprint = valid ? finish(hasher, collection) : null;
+  }
+
+  @Override
+  public void visitDoTable(DoTableImpl<?, ?> collection) {
+    Hasher hasher = newHasher("do");
+    boolean valid = putParents(hasher, collection.getParents()) && putObject(hasher, collection.getDoFn());
+    fingerprint = valid ? finish(hasher, collection) : null;
+  }
+
+  @Override
+  public void visitGroupedTable(PGroupedTableImpl<?, ?> collection) {
+    Hasher hasher = newHasher("group");
+    GroupingOptions options = collection.getGroupingOptions();
+    if (options != null) {
+      putClass(hasher, options.getPartitionerClass());
+      putClass(hasher, options.getGroupingComparatorClass());
+      putClass(hasher, options.getSortComparatorClass());
+    }
+    fingerprint = putParents(hasher, collection.getParents()) ? finish(hasher, collection) : null;
+  }
+
+  private static Hasher newHasher(String kind) {
+    Hasher hasher = Hashing.md5().newHasher();
+    hasher.putString(kind, Charsets.UTF_8);
+    return hasher;
+  }
+
+  /**
+   * Adds the type of the collection and the files of the collections it
+   * waits on to the given hasher, and returns the fingerprint it computes.
+   */
+  private String finish(Hasher hasher, PCollectionImpl<?> collection) {
+    if (!putObject(hasher, collection.getPType())) {
+      return null;
+    }
+    List<SourceTarget<?>> dependencies = Ordering.usingToString().sortedCopy(collection.getTargetDependencies());
+    for (SourceTarget<?> dependency : dependencies) {
+      Path path = getPath(dependency);
+      if (path == null || !putPathStatus(hasher, path)) {
+        return null;
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private boolean putParents(Hasher hasher, List<? extends PCollectionImpl<?>> parents) {
+    List<String> parentFingerprints = Lists.newArrayList();
+    for (PCollectionImpl<?> parent : parents) {
+      String parentFingerprint = getFingerprint(parent);
+      if (parentFingerprint == null) {
+        return false;
+      }
+      parentFingerprints.add(parentFingerprint);
+    }
+    for (String parentFingerprint : parentFingerprints) {
+      hasher.putString(parentFingerprint, Charsets.UTF_8);
+    }
+    return true;
+  }
+
+  private static boolean putObject(Hasher hasher, Serializable object) {
+    hasher.putString(object.getClass().getName(), Charsets.UTF_8);
+    try {
+      hasher.putBytes(SerializationUtils.serialize(object));
+      return true;
+    } catch (SerializationException e) {
+      LOG.debug("Cannot fingerprint " + object, e);
+      return false;
+    }
+  }
+
+  private static void putClass(Hasher hasher, Class<?> clazz) {
+    hasher.putString(clazz == null ? "" : clazz.getName(), Charsets.UTF_8);
+  }
+
+  /**
+   * Adds the path along with the number, total size and latest modification
+   * time of the files under it to the given hasher.
+   */
+  private boolean putPathStatus(Hasher hasher, Path path) {
+    try {
+      FileSystem fs = path.getFileSystem(conf);
+      FileStatus[] statuses = fs.globStatus(path);
+      if (statuses == null || statuses.length == 0) {
+        return false;
+      }
+      long files = 0;
+      long length = 0;
+      long modificationTime = 0;
+      for (FileStatus status : statuses) {
+        FileStatus[] children = status.isDir() ? fs.listStatus(status.getPath()) : new FileStatus[] { status };
+        modificationTime = Math.max(modificationTime, status.getModificationTime());
+        for (FileStatus child : children) {
+          files++;
+          length += child.getLen();
+          modificationTime = Math.max(modificationTime, child.getModificationTime());
+        }
+      }
+      hasher.putString(fs.makeQualified(path).toString(), Charsets.UTF_8);
+      hasher.putLong(files).putLong(length).putLong(modificationTime);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Cannot fingerprint " + path, e);
+      return false;
+    }
+  }
+
+  private static Path getPath(Object source) {
+    if (source instanceof FileSourceImpl) {
+      return ((FileSourceImpl<?>) source).getPath();
+    } else if (source instanceof PathTarget) {
+      return ((PathTarget) source).getPath();
+    }
+    return null;
+  }
+}
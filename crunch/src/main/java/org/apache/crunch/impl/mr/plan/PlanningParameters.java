@@ -33,6 +33,48 @@ public class PlanningParameters {
    */
   public static final String PIPELINE_PLAN_DOTFILE = "crunch.planner.dotfile";
 
+  /**
+   * Configuration key for the path of a file in which the planner keeps the ratio of map output
+   * bytes to input bytes observed for each MapReduce job of a pipeline. When set, later runs of
+   * the same pipeline use these ratios in place of {@code DoFn#scaleFactor()} when choosing the
+   * number of reduce tasks.
+   */
+  public static final String SCALE_FACTOR_HISTORY = "crunch.planner.scale.factor.history";
+
+  /**
+   * Configuration key for whether the planner combines MapReduce jobs that read the same inputs
+   * into a single job whose shuffle is shared by their groupings, so that each input is read once.
+   * Only groupings of {@code Writable} keys and values without custom {@code GroupingOptions} are
+   * combined. Defaults to false.
+   */
+  public static final String FUSE_SIBLING_JOBS = "crunch.planner.fuse.sibling.jobs";
+
+  /**
+   * Configuration key for a directory in which the planner keeps the intermediate outputs that
+   * connect the MapReduce jobs of a pipeline, keyed by a fingerprint of the sources, {@code DoFn}s
+   * and {@code PType}s that produced them. When set, later runs read a matching output from the
+   * directory instead of recomputing it. The cache does not track configuration values read by
+   * {@code DoFn}s, so it should only be enabled for pipelines whose results depend on their inputs
+   * and functions alone.
+   */
+  public static final String RESULT_CACHE_DIR = "crunch.planner.result.cache.dir";
+
+  /**
+   * Configuration key for the number of bytes that the outputs in the result cache may take up.
+   * The least recently used outputs are deleted once this is exceeded. Defaults to 100 GB.
+   */
+  public static final String RESULT_CACHE_MAX_BYTES = "crunch.planner.result.cache.max.bytes";
+
+  /**
+   * Configuration key for whether the map tasks of a grouping that is followed by
+   * {@code combineValues} combine their outputs themselves before writing them to the shuffle,
+   * instead of having a MapReduce combiner combine them after they're sorted. The number of keys
+   * that each map task keeps is set by
+   * {@link org.apache.crunch.impl.mr.run.RuntimeParameters#IN_MAPPER_COMBINE_MAX_KEYS}. Defaults
+   * to false.
+   */
+  public static final String IN_MAPPER_COMBINE = "crunch.planner.in.mapper.combine";
+
   private PlanningParameters() {
   }
 }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
+import org.apache.crunch.impl.mr.collect.PCollectionImpl;
+import org.apache.crunch.impl.mr.collect.PGroupedTableImpl;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Chooses the number of reduce tasks for a MapReduce job just before it is
+ * submitted, once the jobs it depends on have written their outputs.
+ * <p>
+ * The shuffle size is estimated from the current size of the job's inputs. If
+ * an earlier run of the pipeline observed the ratio of map output bytes to
+ * input bytes for the same chain of {@code DoFn}s, that ratio is applied to
+ * the input size; otherwise the estimate falls back to the
+ * {@code DoFn#scaleFactor()} of each stage. When the job succeeds, its observed
+ * ratio is recorded in the {@link ScaleFactorHistory} for the next run.
+ */
+class ReducerEstimator {
+
+  private static final Log LOG = LogFactory.getLog(ReducerEstimator.class);
+
+  // The legacy counter group name is understood by both Hadoop 1 and Hadoop 2.
+  private static final String TASK_COUNTER_GROUP = "org.apache.hadoop.mapred.Task$Counter";
+  private static final String MAP_OUTPUT_BYTES = "MAP_OUTPUT_BYTES";
+
+  private final Job job;
+  private final List<PGroupedTableImpl<?, ?>> groups;
+  private final Set<PCollectionImpl<?>> inputs;
+  private final String signature;
+  private final ScaleFactorHistory history;
+  private long inputBytes = -1L;
+
+  public ReducerEstimator(Job job, List<PGroupedTableImpl<?, ?>> groups, Set<NodePath> mapNodePaths,
+      String pipelineName, ScaleFactorHistory history) {
+    this.job = job;
+    this.groups = groups;
+    this.inputs = Sets.newHashSet();
+    for (NodePath nodePath : mapNodePaths) {
+      inputs.add(nodePath.head());
+    }
+    this.signature = signature(pipelineName, mapNodePaths);
+    this.history = history;
+  }
+
+  /**
+   * Builds a key for the map side of a job from the names of the collections
+   * that each of its paths passes through. The inputs themselves are left
+   * out, since intermediate outputs are written to a new path on every run.
+   */
+  static String signature(String pipelineName, Set<NodePath> mapNodePaths) {
+    List<String> paths = Lists.newArrayList();
+    for (NodePath nodePath : mapNodePaths) {
+      List<String> names = Lists.newArrayList();
+      Iterator<PCollectionImpl<?>> iter = nodePath.iterator();
+      iter.next();
+      while (iter.hasNext()) {
+        names.add(iter.next().getName());
+      }
+      paths.add(Joiner.on('>').join(names));
+    }
+    Collections.sort(paths);
+    return (pipelineName + ":" + Joiner.on(',').join(paths)).replaceAll("\\s", " ");
+  }
+
+  String getSignature() {
+    return signature;
+  }
+
+  /**
+   * Returns the estimated number of bytes that the job will shuffle.
+   */
+  long estimateShuffleBytes() {
+    inputBytes = 0;
+    for (PCollectionImpl<?> input : inputs) {
+      inputBytes += input.getSize();
+    }
+    Double factor = history.get(signature);
+    if (factor != null) {
+      LOG.debug(String.format("Using observed scale factor %.3f for %s", factor, signature));
+      return (long) (factor * inputBytes);
+    }
+    long estimate = 0;
+    for (PGroupedTableImpl<?, ?> group : groups) {
+      estimate += group.getSize();
+    }
+    return estimate;
+  }
+
+  /** Sets the number of reduce tasks before the job is submitted. */
+  public CrunchControlledJob.Hook getPrepareHook() {
+    return new CrunchControlledJob.Hook() {
+      @Override
+      public void run() throws IOException {
+        // Groupings only share a shuffle when none of them fixes the number
+        // of reduce tasks, so the first one can stand in for all of them.
+        groups.get(0).configureReducers(job, estimateShuffleBytes());
+      }
+    };
+  }
+
+  /** Records the observed scale factor once the job has succeeded. */
+  public CrunchControlledJob.Hook getCompletionHook() {
+    return new CrunchControlledJob.Hook() {
+      @Override
+      public void run() throws IOException {
+        if (inputBytes <= 0 || !job.isSuccessful()) {
+          return;
+        }
+        Counter counter = job.getCounters().findCounter(TASK_COUNTER_GROUP, MAP_OUTPUT_BYTES);
+        if (counter != null) {
+          history.record(signature, ((double) counter.getValue()) / inputBytes);
+        }
+      }
+    };
+  }
+}
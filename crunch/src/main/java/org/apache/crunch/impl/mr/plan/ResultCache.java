@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
+import org.apache.crunch.types.PType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The intermediate outputs of earlier runs of a pipeline, kept in the
+ * directory named by {@link PlanningParameters#RESULT_CACHE_DIR} and keyed by
+ * the fingerprint of the {@code PCollection} they hold.
+ * <p>
+ * The cache keeps an index of its entries, with the size of each and the time
+ * it was last used. Only outputs that were completely written by a successful
+ * job are added to the index. Once the entries take up more than
+ * {@link PlanningParameters#RESULT_CACHE_MAX_BYTES}, the least recently used
+ * ones are deleted, except for those that are read or written by the current
+ * run.
+ */
+class ResultCache {
+
+  private static final Log LOG = LogFactory.getLog(ResultCache.class);
+
+  private static final String INDEX = "index";
+
+  private static final long DEFAULT_MAX_BYTES = 100L * 1024 * 1024 * 1024;
+
+  private static class Entry {
+    private final long bytes;
+    private long lastUsed;
+
+    public Entry(long bytes, long lastUsed) {
+      this.bytes = bytes;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private final Configuration conf;
+  private final Path dir;
+  private final long maxBytes;
+  private final Map<String, Entry> entries;
+  private final Set<String> pinned = Sets.newHashSet();
+
+  /**
+   * Returns the result cache named by the given configuration, or null if the
+   * cache is not enabled.
+   */
+  public static ResultCache load(Configuration conf) {
+    String location = conf.get(PlanningParameters.RESULT_CACHE_DIR);
+    if (location == null) {
+      return null;
+    }
+    Path dir = new Path(location);
+    Path index = new Path(dir, INDEX);
+    Map<String, Entry> entries = Maps.newHashMap();
+    try {
+      FileSystem fs = dir.getFileSystem(conf);
+      if (fs.exists(index)) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(index), Charsets.UTF_8));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length == 3) {
+              entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not read result cache index from " + index, e);
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring malformed result cache index in " + index, e);
+      entries.clear();
+    }
+    long maxBytes = conf.getLong(PlanningParameters.RESULT_CACHE_MAX_BYTES, DEFAULT_MAX_BYTES);
+    return new ResultCache(conf, dir, maxBytes, entries);
+  }
+
+  private ResultCache(Configuration conf, Path dir, long maxBytes, Map<String, Entry> entries) {
+    this.conf = conf;
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.entries = entries;
+  }
+
+  /**
+   * Returns the cached output with the given fingerprint, or null if there is
+   * none.
+   */
+  public synchronized <T> SourceTarget<T> lookup(String fingerprint, PType<T> ptype) {
+    Entry entry = entries.get(fingerprint);
+    if (entry == null) {
+      return null;
+    }
+    Path path = new Path(dir, fingerprint);
+    try {
+      if (!path.getFileSystem(conf).exists(path)) {
+        entries.remove(fingerprint);
+        return null;
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not check cached output " + path, e);
+      return null;
+    }
+    LOG.info("Reading cached output " + path);
+    entry.lastUsed = System.currentTimeMillis();
+    pinned.add(fingerprint);
+    save();
+    return ptype.getDefaultFileSource(path);
+  }
+
+  /**
+   * Returns a target to which the output with the given fingerprint can be
+   * written, which is added to the cache by the hook returned from
+   * {@link #getCommitHook}. Returns null if the target cannot be prepared.
+   */
+  public synchronized <T> SourceTarget<T> create(String fingerprint, PType<T> ptype) {
+    Path path = new Path(dir, fingerprint);
+    try {
+      // Clear out anything left behind by a run that failed to write it.
+      FileSystem fs = path.getFileSystem(conf);
+      if (fs.exists(path)) {
+        fs.delete(path, true);
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not prepare cached output " + path, e);
+      return null;
+    }
+    entries.remove(fingerprint);
+    pinned.add(fingerprint);
+    return ptype.getDefaultFileSource(path);
+  }
+
+  /**
+   * Adds the given outputs to the cache once the job that writes them has
+   * succeeded.
+   */
+  public CrunchControlledJob.Hook getCommitHook(final Job job, final Map<String, SourceTarget<?>> outputs) {
+    return new CrunchControlledJob.Hook() {
+      @Override
+      public void run() throws IOException {
+        if (!job.isSuccessful()) {
+          return;
+        }
+        for (Map.Entry<String, SourceTarget<?>> e : outputs.entrySet()) {
+          commit(e.getKey(), e.getValue().getSize(conf));
+        }
+      }
+    };
+  }
+
+  private synchronized void commit(String fingerprint, long bytes) {
+    entries.put(fingerprint, new Entry(bytes, System.currentTimeMillis()));
+    evict();
+    save();
+  }
+
+  private void evict() {
+    long total = 0;
+    for (Entry entry : entries.values()) {
+      total += entry.bytes;
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    List<Map.Entry<String, Entry>> candidates = Lists.newArrayList();
+    for (Map.Entry<String, Entry> e : entries.entrySet()) {
+      if (!pinned.contains(e.getKey())) {
+        candidates.add(e);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Map.Entry<String, Entry>>() {
+      @Override
+      public int compare(Map.Entry<String, Entry> left, Map.Entry<String, Entry> right) {
+        return Long.valueOf(left.getValue().lastUsed).compareTo(right.getValue().lastUsed);
+      }
+    });
+    for (Map.Entry<String, Entry> e : candidates) {
+      if (total <= maxBytes) {
+        break;
+      }
+      Path path = new Path(dir, e.getKey());
+      try {
+        path.getFileSystem(conf).delete(path, true);
+      } catch (IOException ex) {
+        LOG.warn("Could not delete cached output " + path, ex);
+        continue;
+      }
+      LOG.info("Evicted cached output " + path);
+      total -= e.getValue().bytes;
+      entries.remove(e.getKey());
+    }
+  }
+
+  private void save() {
+    Path index = new Path(dir, INDEX);
+    try {
+      Writer writer = new OutputStreamWriter(index.getFileSystem(conf).create(index, true), Charsets.UTF_8);
+      try {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+          writer.write(e.getKey() + "\t" + e.getValue().bytes + "\t" + e.getValue().lastUsed + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not write result cache index to " + index, e);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * The scale factors observed for the map side of the MapReduce jobs of a
+ * pipeline, keyed by a signature of the chain of {@code DoFn}s that feeds each
+ * shuffle.
+ * <p>
+ * A scale factor is the number of map output bytes a job wrote for every byte
+ * of input it read. If {@link PlanningParameters#SCALE_FACTOR_HISTORY} is set,
+ * the factors are loaded from and saved to the file at that path, so that the
+ * planner can use the factors observed in earlier runs of the same pipeline in
+ * place of the {@code DoFn#scaleFactor()} estimates.
+ */
+class ScaleFactorHistory {
+
+  private static final Log LOG = LogFactory.getLog(ScaleFactorHistory.class);
+
+  private final Configuration conf;
+  private final Path path;
+  private final Map<String, Double> factors;
+
+  public static ScaleFactorHistory load(Configuration conf) {
+    String location = conf.get(PlanningParameters.SCALE_FACTOR_HISTORY);
+    Path path = location == null ? null : new Path(location);
+    Map<String, Double> factors = Maps.newHashMap();
+    if (path != null) {
+      try {
+        FileSystem fs = path.getFileSystem(conf);
+        if (fs.exists(path)) {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), Charsets.UTF_8));
+          try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+              int tab = line.lastIndexOf('\t');
+              if (tab > 0) {
+                factors.put(line.substring(0, tab), Double.valueOf(line.substring(tab + 1)));
+              }
+            }
+          } finally {
+            reader.close();
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Could not read scale factor history from " + path, e);
+      } catch (NumberFormatException e) {
+        LOG.warn("Ignoring malformed scale factor history in " + path, e);
+        factors.clear();
+      }
+    }
+    return new ScaleFactorHistory(conf, path, factors);
+  }
+
+  ScaleFactorHistory(Configuration conf, Path path, Map<String, Double> factors) {
+    this.conf = conf;
+    this.path = path;
+    this.factors = factors;
+  }
+
+  /**
+   * Returns the last scale factor observed for the given signature, or null if
+   * there is none.
+   */
+  public synchronized Double get(String signature) {
+    return factors.get(signature);
+  }
+
+  /**
+   * Records the scale factor observed for the given signature and, if the
+   * history is backed by a file, saves it.
+   */
+  public synchronized void record(String signature, double factor) {
+    factors.put(signature, factor);
+    if (path != null) {
+      try {
+        save();
+      } catch (IOException e) {
+        LOG.warn("Could not write scale factor history to " + path, e);
+      }
+    }
+  }
+
+  private void save() throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    Writer writer = new OutputStreamWriter(fs.create(path, true), Charsets.UTF_8);
+    try {
+      for (Map.Entry<String, Double> e : factors.entrySet()) {
+        writer.write(e.getKey() + "\t" + e.getValue() + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+}
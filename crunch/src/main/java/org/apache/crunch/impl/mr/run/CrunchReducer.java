@@ -29,6 +29,7 @@ public class CrunchReducer extends Reducer<Object, Object, Object, Object> {
 
   private static final Log LOG = LogFactory.getLog(CrunchReducer.class);
 
+  private List<RTNode> nodes;
   private RTNode node;
   private CrunchTaskContext ctxt;
   private boolean debug;
@@ -41,7 +42,7 @@ public class CrunchReducer extends Reducer<Object, Object, Object, Object> {
   protected void setup(Reducer<Object, Object, Object, Object>.Context context) {
     this.ctxt = new CrunchTaskContext(context, getNodeContext());
     try {
-      List<RTNode> nodes = ctxt.getNodes();
+      this.nodes = ctxt.getNodes();
       this.node = nodes.get(0);
     } catch (IOException e) {
       LOG.info("Crunch deserialization error", e);
@@ -52,20 +53,50 @@ public class CrunchReducer extends Reducer<Object, Object, Object, Object> {
 
   @Override
   protected void reduce(Object key, Iterable<Object> values, Reducer<Object, Object, Object, Object>.Context context) {
+    RTNode target = node;
+    if (key instanceof TaggedKey) {
+      // The shuffle is shared by several groupings, each with its own node.
+      TaggedKey taggedKey = (TaggedKey) key;
+      target = nodes.get(taggedKey.getTag());
+      if (target == null) {
+        // Only a combiner may leave a grouping out, in which case its values
+        // are passed through unchanged.
+        passThrough(key, values, context);
+        return;
+      }
+      key = taggedKey.get();
+      values = TaggedValue.untag(values);
+    }
     if (debug) {
       try {
-        node.processIterable(key, values);
+        target.processIterable(key, values);
       } catch (Exception e) {
         LOG.error("Reducer exception", e);
       }
     } else {
-      node.processIterable(key, values);
+      target.processIterable(key, values);
+    }
+  }
+
+  private void passThrough(Object key, Iterable<Object> values, Reducer<Object, Object, Object, Object>.Context context) {
+    try {
+      for (Object value : values) {
+        context.write(key, value);
+      }
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    } catch (InterruptedException e) {
+      throw new CrunchRuntimeException(e);
     }
   }
 
   @Override
   protected void cleanup(Reducer<Object, Object, Object, Object>.Context context) {
-    node.cleanup();
+    for (RTNode n : nodes) {
+      if (n != null) {
+        n.cleanup();
+      }
+    }
     ctxt.cleanup();
   }
 }
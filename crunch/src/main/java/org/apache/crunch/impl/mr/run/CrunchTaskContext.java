@@ -54,7 +54,10 @@ class CrunchTaskContext {
     List<RTNode> nodes = (List<RTNode>) DistCache.read(conf, path);
     if (nodes != null) {
       for (RTNode node : nodes) {
-        node.initialize(this);
+        // A node may be missing for a grouping that has no combiner.
+        if (node != null) {
+          node.initialize(this);
+        }
       }
     }
     return nodes;
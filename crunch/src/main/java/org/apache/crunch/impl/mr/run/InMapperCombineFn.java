@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.crunch.CombineFn;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.crunch.types.PTableType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Combines the map outputs of a grouping with its {@code CombineFn} before they
+ * are written to the shuffle, in place of a MapReduce combiner.
+ * <p>
+ * The partial values of up to
+ * {@link RuntimeParameters#IN_MAPPER_COMBINE_MAX_KEYS} keys are kept in a map,
+ * and the values of a key are combined each time enough of them have been
+ * buffered. When a new key would exceed the limit, the key that was least
+ * recently updated is combined and emitted, and all remaining keys are emitted
+ * when the task ends.
+ */
+public class InMapperCombineFn<K, V> extends DoFn<Pair<K, V>, Pair<K, V>> {
+
+  /** The number of values of a key that are buffered before they're combined. */
+  private static final int VALUES_PER_COMBINE = 16;
+
+  private final CombineFn<K, V> combineFn;
+  private final PTableType<K, V> ptype;
+  private transient int maxKeys;
+  private transient LinkedHashMap<K, List<V>> partials;
+  private transient InMemoryEmitter<Pair<K, V>> combined;
+
+  public InMapperCombineFn(CombineFn<K, V> combineFn, PTableType<K, V> ptype) {
+    this.combineFn = combineFn;
+    this.ptype = ptype;
+  }
+
+  @Override
+  public void configure(Configuration conf) {
+    combineFn.configure(conf);
+  }
+
+  @Override
+  public void setContext(TaskInputOutputContext<?, ?, ?, ?> context) {
+    super.setContext(context);
+    combineFn.setContext(context);
+  }
+
+  @Override
+  public void initialize() {
+    combineFn.initialize();
+    ptype.initialize(getConfiguration());
+    maxKeys = getConfiguration().getInt(RuntimeParameters.IN_MAPPER_COMBINE_MAX_KEYS,
+        RuntimeParameters.DEFAULT_IN_MAPPER_COMBINE_MAX_KEYS);
+    // Ordered by access, so that the least recently updated key comes first.
+    partials = new LinkedHashMap<K, List<V>>(16, 0.75f, true);
+    combined = new InMemoryEmitter<Pair<K, V>>();
+  }
+
+  @Override
+  public void process(Pair<K, V> input, Emitter<Pair<K, V>> emitter) {
+    // The inputs are held on to, so they're detached from objects that the
+    // functions before this one may reuse.
+    V value = ptype.getValueType().getDetachedValue(input.second());
+    List<V> values = partials.get(input.first());
+    if (values == null) {
+      if (partials.size() >= maxKeys) {
+        Iterator<Map.Entry<K, List<V>>> iter = partials.entrySet().iterator();
+        Map.Entry<K, List<V>> eldest = iter.next();
+        iter.remove();
+        emit(eldest.getKey(), eldest.getValue(), emitter);
+      }
+      values = Lists.newArrayList();
+      partials.put(ptype.getKeyType().getDetachedValue(input.first()), values);
+    }
+    values.add(value);
+    if (values.size() >= VALUES_PER_COMBINE) {
+      List<V> partial = Lists.newArrayList();
+      for (Pair<K, V> p : combine(input.first(), values)) {
+        partial.add(p.second());
+      }
+      values.clear();
+      values.addAll(partial);
+    }
+  }
+
+  private List<Pair<K, V>> combine(K key, List<V> values) {
+    combined.getOutput().clear();
+    combineFn.process(Pair.<K, Iterable<V>> of(key, values), combined);
+    return combined.getOutput();
+  }
+
+  private void emit(K key, List<V> values, Emitter<Pair<K, V>> emitter) {
+    for (Pair<K, V> p : combine(key, values)) {
+      emitter.emit(p);
+    }
+  }
+
+  @Override
+  public void cleanup(Emitter<Pair<K, V>> emitter) {
+    for (Map.Entry<K, List<V>> e : partials.entrySet()) {
+      emit(e.getKey(), e.getValue(), emitter);
+    }
+    partials.clear();
+    combined.getOutput().clear();
+    combineFn.cleanup(combined);
+    for (Pair<K, V> p : combined.getOutput()) {
+      emitter.emit(p);
+    }
+  }
+}
@@ -84,6 +84,26 @@ public class RTNode implements Serializable {
     }
   }
 
+  /**
+   * Returns true if neither this node nor any node downstream of it modifies or holds on to its
+   * inputs, so that it can be given the same input value as its siblings.
+   */
+  public boolean canShareInputs() {
+    if (outputConverter != null) {
+      // The output function of a PType converts its input, which is then written out right away.
+      return true;
+    }
+    if (!fn.disableDeepCopy()) {
+      return false;
+    }
+    for (RTNode child : children) {
+      if (!child.canShareInputs()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public boolean isLeafNode() {
     return outputConverter != null && children.isEmpty();
   }
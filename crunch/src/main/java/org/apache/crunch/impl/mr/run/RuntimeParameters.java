@@ -32,6 +32,38 @@ public class RuntimeParameters {
 
   public static final String CREATE_DIR = "mapreduce.jobcontrol.createdir.ifnotexist";
 
+  /**
+   * The number of threads used to submit jobs and to run their completion hooks, which move
+   * their outputs into place. Defaults to {@link #DEFAULT_JOB_CONTROL_THREADS}. Jobs that run
+   * with the local job runner are always submitted one at a time.
+   */
+  public static final String JOB_CONTROL_THREADS = "crunch.job.control.threads";
+
+  public static final int DEFAULT_JOB_CONTROL_THREADS = 4;
+
+  /**
+   * The maximum number of jobs of a pipeline that may run at the same time. When more jobs are
+   * ready, the ones on the longest remaining path through the pipeline run first. Zero, the
+   * default, places no limit on the number of running jobs.
+   */
+  public static final String MAX_RUNNING_JOBS = "crunch.max.running.jobs";
+
+  /**
+   * Whether values that are emitted to several functions in a task are shared by all of them
+   * instead of being deep copied for each one, as if every {@code DoFn} returned true from
+   * {@link org.apache.crunch.DoFn#disableDeepCopy()}. Defaults to false.
+   */
+  public static final String DISABLE_DEEP_COPY = "crunch.disable.deep.copy";
+
+  /**
+   * The number of keys whose partially combined values are kept in memory by each map task that
+   * combines its outputs itself. Defaults to {@link #DEFAULT_IN_MAPPER_COMBINE_MAX_KEYS}. See
+   * {@link org.apache.crunch.impl.mr.plan.PlanningParameters#IN_MAPPER_COMBINE}.
+   */
+  public static final String IN_MAPPER_COMBINE_MAX_KEYS = "crunch.in.mapper.combine.max.keys";
+
+  public static final int DEFAULT_IN_MAPPER_COMBINE_MAX_KEYS = 10000;
+
   // Not instantiated
   private RuntimeParameters() {
   }
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import org.apache.crunch.types.Converter;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Wraps the map output keys and values written by the grouping converter of
+ * one of the groupings that share the shuffle of a MapReduce job with the tag
+ * of that grouping.
+ */
+public class TaggedConverter implements Converter<Object, Object, Object, Object> {
+
+  private final Converter<Object, Object, Object, Object> converter;
+  private final int tag;
+
+  // The outputs are serialized as soon as they are written, so they can be
+  // reused from one record to the next.
+  private transient TaggedKey key;
+  private transient TaggedValue value;
+
+  public TaggedConverter(Converter<Object, Object, Object, Object> converter, int tag) {
+    this.converter = converter;
+    this.tag = tag;
+  }
+
+  @Override
+  public Object convertInput(Object key, Object value) {
+    return converter.convertInput(key, value);
+  }
+
+  @Override
+  public Object convertIterableInput(Object key, Iterable<Object> values) {
+    return converter.convertIterableInput(key, values);
+  }
+
+  @Override
+  public Object outputKey(Object output) {
+    if (key == null) {
+      key = new TaggedKey();
+    }
+    key.set(tag, (Writable) converter.outputKey(output));
+    return key;
+  }
+
+  @Override
+  public Object outputValue(Object output) {
+    if (value == null) {
+      value = new TaggedValue();
+    }
+    value.set(tag, (Writable) converter.outputValue(output));
+    return value;
+  }
+
+  @Override
+  public Class<Object> getKeyClass() {
+    return (Class) TaggedKey.class;
+  }
+
+  @Override
+  public Class<Object> getValueClass() {
+    return (Class) TaggedValue.class;
+  }
+}
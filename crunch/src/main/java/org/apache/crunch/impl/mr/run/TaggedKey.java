@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * The map output key of a MapReduce job whose shuffle is shared by several
+ * groupings. Keys are sorted by tag first, and then by the order of the keys
+ * of their grouping.
+ */
+public class TaggedKey extends TaggedWritable implements WritableComparable<TaggedKey> {
+
+  public static final String CLASSES = "crunch.shuffle.tagged.key.classes";
+
+  public TaggedKey() {
+  }
+
+  public TaggedKey(int tag, Writable key) {
+    super(tag, key);
+  }
+
+  @Override
+  protected String getClassesKey() {
+    return CLASSES;
+  }
+
+  @Override
+  public int compareTo(TaggedKey other) {
+    if (getTag() != other.getTag()) {
+      return getTag() < other.getTag() ? -1 : 1;
+    }
+    return ((Comparable) get()).compareTo(other.get());
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof TaggedKey)) {
+      return false;
+    }
+    TaggedKey o = (TaggedKey) other;
+    return getTag() == o.getTag() && get().equals(o.get());
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * get().hashCode() + getTag();
+  }
+
+  @Override
+  public String toString() {
+    return getTag() + ":" + get();
+  }
+
+  /**
+   * Compares serialized keys by their tags, and then with the raw comparator
+   * of the key class for their tag.
+   */
+  public static class Comparator implements RawComparator<TaggedKey>, Configurable {
+
+    private Configuration conf;
+    private RawComparator[] comparators;
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+      Class<? extends Writable>[] classes = getClasses(conf, CLASSES);
+      this.comparators = new RawComparator[classes.length];
+      for (int i = 0; i < classes.length; i++) {
+        comparators[i] = WritableComparator.get(classes[i].asSubclass(WritableComparable.class));
+        ReflectionUtils.setConf(comparators[i], conf);
+      }
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int cmp = b1[s1] - b2[s2];
+      if (cmp != 0) {
+        return cmp;
+      }
+      return comparators[b1[s1]].compare(b1, s1 + 1, l1 - 1, b2, s2 + 1, l2 - 1);
+    }
+
+    @Override
+    public int compare(TaggedKey left, TaggedKey right) {
+      return left.compareTo(right);
+    }
+  }
+}
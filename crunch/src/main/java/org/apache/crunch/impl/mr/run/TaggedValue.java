@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import org.apache.hadoop.io.Writable;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+
+/**
+ * The map output value of a MapReduce job whose shuffle is shared by several
+ * groupings.
+ */
+public class TaggedValue extends TaggedWritable {
+
+  public static final String CLASSES = "crunch.shuffle.tagged.value.classes";
+
+  private static final Function<Object, Object> UNTAG = new Function<Object, Object>() {
+    @Override
+    public Object apply(Object input) {
+      return ((TaggedValue) input).get();
+    }
+  };
+
+  public TaggedValue() {
+  }
+
+  public TaggedValue(int tag, Writable value) {
+    super(tag, value);
+  }
+
+  @Override
+  protected String getClassesKey() {
+    return CLASSES;
+  }
+
+  /**
+   * Returns a view of the given tagged values that unwraps each of them.
+   */
+  public static Iterable<Object> untag(Iterable<Object> values) {
+    return Iterables.transform(values, UNTAG);
+  }
+
+  @Override
+  public String toString() {
+    return getTag() + ":" + get();
+  }
+}
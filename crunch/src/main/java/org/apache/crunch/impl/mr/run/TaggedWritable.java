@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.types.Converter;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link Writable} that wraps one of several types of values along with a
+ * tag that identifies its type, which allows the map outputs of several
+ * groupings to share the shuffle of a single MapReduce job.
+ * <p>
+ * The class for each tag is read from the job configuration, so only the tag
+ * is written with each record.
+ */
+public abstract class TaggedWritable implements Writable, Configurable {
+
+  /**
+   * The maximum number of groupings that can share a shuffle.
+   */
+  public static final int MAX_TAGS = Byte.MAX_VALUE;
+
+  private Configuration conf;
+  private Class<? extends Writable>[] classes;
+  private int tag;
+  private Writable value;
+
+  protected TaggedWritable() {
+  }
+
+  protected TaggedWritable(int tag, Writable value) {
+    set(tag, value);
+  }
+
+  /**
+   * Returns the configuration key under which the classes of the values for
+   * each tag are listed.
+   */
+  protected abstract String getClassesKey();
+
+  public int getTag() {
+    return tag;
+  }
+
+  public Writable get() {
+    return value;
+  }
+
+  public void set(int tag, Writable value) {
+    this.tag = tag;
+    this.value = value;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(tag);
+    value.write(out);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    tag = in.readByte();
+    if (classes == null) {
+      throw new IllegalStateException("No configuration for " + getClass().getSimpleName());
+    }
+    Class<? extends Writable> valueClass = classes[tag];
+    if (value == null || value.getClass() != valueClass) {
+      value = ReflectionUtils.newInstance(valueClass, conf);
+    }
+    value.readFields(in);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    this.classes = getClasses(conf, getClassesKey());
+  }
+
+  static Class<? extends Writable>[] getClasses(Configuration conf, String key) {
+    String[] names = conf.getStrings(key);
+    if (names == null) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    Class<? extends Writable>[] classes = new Class[names.length];
+    for (int i = 0; i < names.length; i++) {
+      try {
+        classes[i] = conf.getClassByName(names[i]).asSubclass(Writable.class);
+      } catch (ClassNotFoundException e) {
+        throw new CrunchRuntimeException(e);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Configures the given job to shuffle the outputs of several groupings,
+   * which must use {@code Writable} keys and values, tagged with the index of
+   * their grouping converter in the given list.
+   */
+  public static void configureShuffle(Job job, List<Converter> groupingConverters) {
+    if (groupingConverters.size() > MAX_TAGS) {
+      throw new IllegalArgumentException("Cannot share a shuffle among more than " + MAX_TAGS + " groupings");
+    }
+    List<String> keyClasses = Lists.newArrayList();
+    List<String> valueClasses = Lists.newArrayList();
+    for (Converter converter : groupingConverters) {
+      keyClasses.add(converter.getKeyClass().getName());
+      valueClasses.add(converter.getValueClass().getName());
+    }
+    Configuration conf = job.getConfiguration();
+    conf.setStrings(TaggedKey.CLASSES, keyClasses.toArray(new String[0]));
+    conf.setStrings(TaggedValue.CLASSES, valueClasses.toArray(new String[0]));
+    job.setMapOutputKeyClass(TaggedKey.class);
+    job.setMapOutputValueClass(TaggedValue.class);
+    job.setSortComparatorClass(TaggedKey.Comparator.class);
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.crunch.io;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collections;
@@ -72,31 +73,45 @@ public class CompositePathIterable<T> implements Iterable<T> {
     this.readerFactory = readerFactory;
   }
 
+  /**
+   * Returns an iterator over the records of each file in turn, which is
+   * {@link Closeable} so that the file that is being read can be closed
+   * before it's exhausted.
+   */
   @Override
   public Iterator<T> iterator() {
+    return new PathIterator();
+  }
+
+  private class PathIterator extends UnmodifiableIterator<T> implements Closeable {
+    private int index = 0;
+    private Iterator<T> iter = readerFactory.read(fs, stati[index++].getPath());
 
-    return new UnmodifiableIterator<T>() {
-      private int index = 0;
-      private Iterator<T> iter = readerFactory.read(fs, stati[index++].getPath());
-
-      @Override
-      public boolean hasNext() {
-        if (!iter.hasNext()) {
-          while (index < stati.length) {
-            iter = readerFactory.read(fs, stati[index++].getPath());
-            if (iter.hasNext()) {
-              return true;
-            }
+    @Override
+    public boolean hasNext() {
+      if (!iter.hasNext()) {
+        while (index < stati.length) {
+          iter = readerFactory.read(fs, stati[index++].getPath());
+          if (iter.hasNext()) {
+            return true;
           }
-          return false;
         }
-        return true;
+        return false;
       }
+      return true;
+    }
 
-      @Override
-      public T next() {
-        return iter.next();
+    @Override
+    public T next() {
+      return iter.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+      index = stati.length;
+      if (iter instanceof Closeable) {
+        ((Closeable) iter).close();
       }
-    };
+    }
   }
 }
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * {@link FileNamingScheme} that names the output of each reduce task after its
+ * partition number, so that the files keep the partitioning of the job that
+ * wrote them even when some reduce tasks write no file at all. Map task
+ * outputs are numbered in the same way as by {@link SequentialFileNamingScheme}.
+ * <p>
+ * Since the reduce outputs of two jobs would have the same names, an output
+ * directory can only hold the reduce outputs of one job.
+ */
+public class PartitionFileNamingScheme implements FileNamingScheme {
+
+  private final SequentialFileNamingScheme mapNaming = new SequentialFileNamingScheme();
+
+  @Override
+  public String getMapOutputName(Configuration configuration, Path outputDirectory) throws IOException {
+    return mapNaming.getMapOutputName(configuration, outputDirectory);
+  }
+
+  @Override
+  public String getReduceOutputName(Configuration configuration, Path outputDirectory, int partitionId)
+      throws IOException {
+    String name = String.format("part-r-%05d", partitionId);
+    FileSystem fileSystem = outputDirectory.getFileSystem(configuration);
+    FileStatus[] withExtension = fileSystem.globStatus(new Path(outputDirectory, name + ".*"));
+    if (fileSystem.exists(new Path(outputDirectory, name)) || (withExtension != null && withExtension.length > 0)) {
+      throw new IOException("The output for partition " + partitionId + " already exists in " + outputDirectory);
+    }
+    return name;
+  }
+}
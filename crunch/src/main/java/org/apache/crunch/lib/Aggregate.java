@@ -17,10 +17,14 @@
  */
 package org.apache.crunch.lib;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 
 import org.apache.crunch.CombineFn;
@@ -38,8 +42,13 @@ import org.apache.crunch.materialize.pobject.FirstElementPObject;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypes;
+import org.apache.crunch.util.HyperLogLog;
+import org.apache.crunch.util.QuantileSketch;
+import org.apache.crunch.util.SpaceSaving;
 
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Doubles;
 
 /**
  * Methods for performing various types of aggregations over {@link PCollection} instances.
@@ -82,6 +91,392 @@ public class Aggregate {
     return new FirstElementPObject<Long>(count);
   }
 
+  /**
+   * Returns an estimate of the number of distinct elements in the provided
+   * PCollection, with a relative standard error of about 0.8%.
+   *
+   * @see #approxDistinct(PCollection, int)
+   */
+  public static <S> PObject<Long> approxDistinct(PCollection<S> collect) {
+    return approxDistinct(collect, HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Returns an estimate of the number of distinct elements in the provided
+   * PCollection. Each map task adds the elements it reads to a
+   * {@link HyperLogLog} sketch of the given precision, and only the sketches
+   * are shuffled and merged. Elements are told apart by their serialized
+   * bytes.
+   *
+   * @param collect The PCollection whose distinct elements should be counted.
+   * @param precision The precision of the sketch, which takes
+   *     {@code 2^precision} bytes and has a relative standard error of about
+   *     {@code 1.04 / sqrt(2^precision)}.
+   * @return A {@code PObject} containing the estimated number of distinct
+   *     elements in the {@code PCollection}.
+   */
+  public static <S> PObject<Long> approxDistinct(PCollection<S> collect, int precision) {
+    PTypeFamily tf = collect.getTypeFamily();
+    PCollection<Long> count = collect
+        .parallelDo("Aggregate.approxDistinct", new SketchFn<S>(new ElementHasher<S>(collect.getPType()), precision),
+            tf.tableOf(tf.booleans(), tf.bytes()))
+        .groupByKey(1)
+        .combineValues(Aggregators.APPROX_DISTINCT(precision))
+        .values()
+        .parallelDo("Aggregate.cardinality", new CardinalityFn(), tf.longs());
+    return new FirstElementPObject<Long>(count);
+  }
+
+  /**
+   * Returns a {@code PTable} that maps each key of the provided table to an
+   * estimate of the number of its distinct values, with a relative standard
+   * error of about 0.8%.
+   *
+   * @see #approxDistinctValues(PTable, int)
+   */
+  public static <K, V> PTable<K, Long> approxDistinctValues(PTable<K, V> table) {
+    return approxDistinctValues(table, HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Returns a {@code PTable} that maps each key of the provided table to an
+   * estimate of the number of its distinct values. The values of each key are
+   * added to a {@link HyperLogLog} sketch of the given precision. Each map
+   * task keeps the sketches of up to 1000 recently seen keys, and the sketches
+   * are merged as they are combined. Values are told apart by their serialized
+   * bytes.
+   *
+   * @param table The table whose distinct values should be counted per key.
+   * @param precision The precision of the sketches, each of which takes at
+   *     most {@code 2^precision} bytes and has a relative standard error of
+   *     about {@code 1.04 / sqrt(2^precision)}.
+   */
+  public static <K, V> PTable<K, Long> approxDistinctValues(PTable<K, V> table, int precision) {
+    PTypeFamily tf = table.getTypeFamily();
+    return table
+        .parallelDo("Aggregate.approxDistinctValues",
+            new DistinctValuesFn<K, V>(table.getKeyType(), new ElementHasher<V>(table.getValueType()), precision),
+            tf.tableOf(table.getKeyType(), tf.bytes()))
+        .groupByKey()
+        .combineValues(Aggregators.APPROX_DISTINCT(precision))
+        .parallelDo("Aggregate.cardinality", new MapValuesFn<K, ByteBuffer, Long>() {
+          @Override
+          public Long map(ByteBuffer v) {
+            return HyperLogLog.fromByteBuffer(v).cardinality();
+          }
+        }, tf.tableOf(table.getKeyType(), tf.longs()));
+  }
+
+  /**
+   * Returns an estimate of the {@code limit} most frequent elements of the
+   * provided PCollection and their counts, counting ten times as many elements
+   * as are returned.
+   *
+   * @see #approxTop(PCollection, int, int)
+   */
+  public static <S> PTable<S, Long> approxTop(PCollection<S> collect, int limit) {
+    return approxTop(collect, limit, 10 * limit);
+  }
+
+  /**
+   * Returns an estimate of the {@code limit} most frequent elements of the
+   * provided PCollection and their counts, in a single pass instead of the
+   * full {@link #count(PCollection)} that {@link #top(PTable, int, boolean)}
+   * needs. Each map task counts the elements it reads with a
+   * {@link SpaceSaving} summary of the given capacity, and only the summaries
+   * are shuffled and merged with {@link Aggregators#HEAVY_HITTERS(int)}.
+   * <p>
+   * If the PCollection has {@code N} elements, each count is overestimated by
+   * at most {@code N / capacity} for each time the summaries are merged, which
+   * is usually twice, and every element whose count is larger than that is
+   * found.
+   *
+   * @param collect The PCollection whose most frequent elements should be found.
+   * @param limit The number of elements to return.
+   * @param capacity The number of elements to count, at least {@code limit}.
+   * @return A {@code PTable} of the most frequent elements and their estimated
+   *     counts.
+   */
+  public static <S> PTable<S, Long> approxTop(PCollection<S> collect, int limit, int capacity) {
+    if (capacity < limit) {
+      throw new IllegalArgumentException("Cannot find the top " + limit + " elements by counting " + capacity);
+    }
+    PTypeFamily tf = collect.getTypeFamily();
+    PType<S> ptype = collect.getPType();
+    return collect
+        .parallelDo("Aggregate.approxTop", new HeavyHittersFn<S>(ptype, capacity),
+            tf.tableOf(tf.booleans(), tf.pairs(ptype, tf.longs())))
+        .groupByKey(1)
+        .combineValues(Aggregators.<S>HEAVY_HITTERS(capacity))
+        .values()
+        .parallelDo("Aggregate.approxTopLimit", new TopCountsFn<S>(ptype, limit), tf.tableOf(ptype, tf.longs()));
+  }
+
+  /**
+   * Returns a {@code PTable} that maps each key of the provided table to a
+   * {@link QuantileSketch} of its values, with a rank error of about 1%.
+   *
+   * @see #quantileSketches(PTable, int)
+   */
+  public static <K, V extends Number> PTable<K, QuantileSketch> quantileSketches(PTable<K, V> table) {
+    return quantileSketches(table, QuantileSketch.DEFAULT_K);
+  }
+
+  /**
+   * Returns a {@code PTable} that maps each key of the provided table to a
+   * {@link QuantileSketch} of its values. Each map task adds the values of a
+   * key to one sketch, keeping the sketches of up to 1000 recently seen keys,
+   * and the sketches are merged as they are combined. The sketches can be
+   * written out and merged with later ones by grouping them and combining them
+   * with {@link Aggregators#QUANTILES(int)}.
+   *
+   * @param table The table whose values should be sketched per key.
+   * @param k The size of the sketches, whose rank error is about
+   *     {@code 1.7 / k}.
+   */
+  public static <K, V extends Number> PTable<K, QuantileSketch> quantileSketches(PTable<K, V> table, int k) {
+    PTypeFamily tf = table.getTypeFamily();
+    return table
+        .parallelDo("Aggregate.quantileSketches", new QuantileSketchFn<K, V>(table.getKeyType(), k),
+            tf.tableOf(table.getKeyType(), PTypes.quantileSketches(tf)))
+        .groupByKey()
+        .combineValues(Aggregators.QUANTILES(k));
+  }
+
+  /**
+   * Returns a {@code PTable} that maps each key of the provided table to the
+   * estimated values at the given quantiles of its values, in the same order
+   * as the quantiles.
+   *
+   * @param table The table whose values should be summarized per key.
+   * @param quantiles The quantiles to estimate, each between 0 and 1.
+   * @see #quantileSketches(PTable)
+   */
+  public static <K, V extends Number> PTable<K, Collection<Double>> quantiles(PTable<K, V> table,
+      double... quantiles) {
+    for (double q : quantiles) {
+      if (!(q >= 0.0 && q <= 1.0)) {
+        throw new IllegalArgumentException("Quantiles must be between 0 and 1, not " + q);
+      }
+    }
+    PTypeFamily tf = table.getTypeFamily();
+    final double[] qs = quantiles.clone();
+    return quantileSketches(table).parallelDo("Aggregate.quantiles",
+        new MapValuesFn<K, QuantileSketch, Collection<Double>>() {
+          @Override
+          public Collection<Double> map(QuantileSketch v) {
+            return Doubles.asList(v.getQuantiles(qs));
+          }
+        }, tf.tableOf(table.getKeyType(), tf.collections(tf.doubles())));
+  }
+
+  /**
+   * Adds the elements that a task reads to one sketch, which it emits when it
+   * ends.
+   */
+  private static class SketchFn<S> extends DoFn<S, Pair<Boolean, ByteBuffer>> {
+    private final ElementHasher<S> hasher;
+    private final int precision;
+    private transient HyperLogLog sketch;
+
+    public SketchFn(ElementHasher<S> hasher, int precision) {
+      this.hasher = hasher;
+      this.precision = precision;
+    }
+
+    @Override
+    public void initialize() {
+      hasher.initialize(getConfiguration());
+      sketch = new HyperLogLog(precision);
+    }
+
+    @Override
+    public void process(S input, Emitter<Pair<Boolean, ByteBuffer>> emitter) {
+      sketch.offerHash(hasher.hash(input));
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<Boolean, ByteBuffer>> emitter) {
+      emitter.emit(Pair.of(true, sketch.toByteBuffer()));
+    }
+  }
+
+  /**
+   * Adds the hashes of the values of each key that a task reads to one sketch.
+   * The sketch of the key that was least recently updated is emitted when
+   * there are too many of them, and the rest are emitted when the task ends.
+   */
+  private static class DistinctValuesFn<K, V> extends DoFn<Pair<K, V>, Pair<K, ByteBuffer>> {
+    private static final int MAX_KEYS = 1000;
+
+    private final PType<K> keyType;
+    private final ElementHasher<V> hasher;
+    private final int precision;
+    private transient LinkedHashMap<K, HyperLogLog> sketches;
+
+    public DistinctValuesFn(PType<K> keyType, ElementHasher<V> hasher, int precision) {
+      this.keyType = keyType;
+      this.hasher = hasher;
+      this.precision = precision;
+    }
+
+    @Override
+    public void initialize() {
+      keyType.initialize(getConfiguration());
+      hasher.initialize(getConfiguration());
+      // Ordered by access, so that the least recently updated key comes first.
+      sketches = new LinkedHashMap<K, HyperLogLog>(16, 0.75f, true);
+    }
+
+    @Override
+    public void process(Pair<K, V> input, Emitter<Pair<K, ByteBuffer>> emitter) {
+      HyperLogLog sketch = sketches.get(input.first());
+      if (sketch == null) {
+        if (sketches.size() >= MAX_KEYS) {
+          Iterator<Map.Entry<K, HyperLogLog>> iter = sketches.entrySet().iterator();
+          Map.Entry<K, HyperLogLog> eldest = iter.next();
+          iter.remove();
+          emitter.emit(Pair.of(eldest.getKey(), eldest.getValue().toByteBuffer()));
+        }
+        sketch = new HyperLogLog(precision);
+        sketches.put(keyType.getDetachedValue(input.first()), sketch);
+      }
+      sketch.offerHash(hasher.hash(input.second()));
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<K, ByteBuffer>> emitter) {
+      for (Map.Entry<K, HyperLogLog> e : sketches.entrySet()) {
+        emitter.emit(Pair.of(e.getKey(), e.getValue().toByteBuffer()));
+      }
+      sketches.clear();
+    }
+  }
+
+  /**
+   * Adds the values of each key that a task reads to one sketch. The sketch of
+   * the key that was least recently updated is emitted when there are too many
+   * of them, and the rest are emitted when the task ends.
+   */
+  private static class QuantileSketchFn<K, V extends Number> extends DoFn<Pair<K, V>, Pair<K, QuantileSketch>> {
+    private static final int MAX_KEYS = 1000;
+
+    private final PType<K> keyType;
+    private final int k;
+    private transient LinkedHashMap<K, QuantileSketch> sketches;
+
+    public QuantileSketchFn(PType<K> keyType, int k) {
+      this.keyType = keyType;
+      this.k = k;
+    }
+
+    @Override
+    public void initialize() {
+      keyType.initialize(getConfiguration());
+      // Ordered by access, so that the least recently updated key comes first.
+      sketches = new LinkedHashMap<K, QuantileSketch>(16, 0.75f, true);
+    }
+
+    @Override
+    public void process(Pair<K, V> input, Emitter<Pair<K, QuantileSketch>> emitter) {
+      QuantileSketch sketch = sketches.get(input.first());
+      if (sketch == null) {
+        if (sketches.size() >= MAX_KEYS) {
+          Iterator<Map.Entry<K, QuantileSketch>> iter = sketches.entrySet().iterator();
+          Map.Entry<K, QuantileSketch> eldest = iter.next();
+          iter.remove();
+          emitter.emit(Pair.of(eldest.getKey(), eldest.getValue()));
+        }
+        sketch = new QuantileSketch(k);
+        sketches.put(keyType.getDetachedValue(input.first()), sketch);
+      }
+      sketch.update(input.second().doubleValue());
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<K, QuantileSketch>> emitter) {
+      for (Map.Entry<K, QuantileSketch> e : sketches.entrySet()) {
+        emitter.emit(Pair.of(e.getKey(), e.getValue()));
+      }
+      sketches.clear();
+    }
+  }
+
+  /**
+   * Counts the elements that a task reads with one summary, which it emits
+   * when it ends.
+   */
+  private static class HeavyHittersFn<S> extends DoFn<S, Pair<Boolean, Pair<S, Long>>> {
+    private final PType<S> ptype;
+    private final int capacity;
+    private transient SpaceSaving<S> summary;
+
+    public HeavyHittersFn(PType<S> ptype, int capacity) {
+      this.ptype = ptype;
+      this.capacity = capacity;
+    }
+
+    @Override
+    public void initialize() {
+      ptype.initialize(getConfiguration());
+      summary = new SpaceSaving<S>(capacity);
+    }
+
+    @Override
+    public void process(S input, Emitter<Pair<Boolean, Pair<S, Long>>> emitter) {
+      // Only the elements that the summary keeps need to be detached.
+      summary.offer(summary.contains(input) ? input : ptype.getDetachedValue(input), 1L);
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<Boolean, Pair<S, Long>>> emitter) {
+      for (Pair<S, Long> counted : summary.top(capacity)) {
+        emitter.emit(Pair.of(true, counted));
+      }
+    }
+  }
+
+  /**
+   * Emits the elements with the largest counts from the single reducer of
+   * {@link Aggregate#approxTop(PCollection, int, int)}.
+   */
+  private static class TopCountsFn<S> extends DoFn<Pair<S, Long>, Pair<S, Long>> {
+    private final PType<S> ptype;
+    private final int limit;
+    private transient List<Pair<S, Long>> counts;
+
+    public TopCountsFn(PType<S> ptype, int limit) {
+      this.ptype = ptype;
+      this.limit = limit;
+    }
+
+    @Override
+    public void initialize() {
+      ptype.initialize(getConfiguration());
+      counts = Lists.newArrayList();
+    }
+
+    @Override
+    public void process(Pair<S, Long> input, Emitter<Pair<S, Long>> emitter) {
+      counts.add(Pair.of(ptype.getDetachedValue(input.first()), input.second()));
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<S, Long>> emitter) {
+      Collections.sort(counts, new PairValueComparator<S, Long>(false));
+      for (Pair<S, Long> counted : counts.subList(0, Math.min(limit, counts.size()))) {
+        emitter.emit(counted);
+      }
+    }
+  }
+
+  private static class CardinalityFn extends MapFn<ByteBuffer, Long> {
+    @Override
+    public Long map(ByteBuffer input) {
+      return HyperLogLog.fromByteBuffer(input).cardinality();
+    }
+  }
+
   public static class PairValueComparator<K, V> implements Comparator<Pair<K, V>> {
     private final boolean ascending;
 
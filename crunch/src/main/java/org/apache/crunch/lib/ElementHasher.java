@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeSerializer;
+import org.apache.crunch.util.HyperLogLog;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Hashes the elements of a {@link PType} to 64 bits by their serialized bytes,
+ * so that equal elements have the same hash in every task.
+ */
+class ElementHasher<T> implements Serializable {
+  private final PTypeSerializer<T> serializer;
+  private transient DataOutputBuffer buffer;
+
+  public ElementHasher(PType<T> ptype) {
+    this.serializer = new PTypeSerializer<T>(ptype);
+  }
+
+  public void initialize(Configuration conf) {
+    serializer.initialize(conf);
+    buffer = new DataOutputBuffer();
+  }
+
+  public long hash(T element) {
+    buffer.reset();
+    try {
+      serializer.write(element, buffer);
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    }
+    return HyperLogLog.hash(buffer.getData(), 0, buffer.getLength());
+  }
+}
@@ -34,6 +34,12 @@ import org.apache.crunch.types.PTypeFamily;
 /**
  * Utilities for joining multiple {@code PTable} instances based on a common
  * lastKey.
+ * <p>
+ * The join functions buffer the values of one side for each key while they
+ * stream the values of the other side, spilling them to local disk past
+ * {@link JoinFn#SPILL_THRESHOLD} values. The inner and outer joins in this
+ * class buffer whichever of the two tables is estimated to be smaller by
+ * {@link PTable#getSize()}.
  */
 public class Join {
   /**
@@ -75,6 +81,10 @@ public class Join {
    * @return The joined result.
    */
   public static <K, U, V> PTable<K, Pair<U, V>> innerJoin(PTable<K, U> left, PTable<K, V> right) {
+    if (bufferRight(left, right)) {
+      return swap(join(right, left, new InnerJoinFn<K, V, U>(right.getKeyType(), right.getValueType())),
+          left, right);
+    }
     return join(left, right, new InnerJoinFn<K, U, V>(left.getKeyType(), left.getValueType()));
   }
 
@@ -97,6 +107,10 @@ public class Join {
    * @return The joined result.
    */
   public static <K, U, V> PTable<K, Pair<U, V>> leftJoin(PTable<K, U> left, PTable<K, V> right) {
+    if (bufferRight(left, right)) {
+      return swap(join(right, left, new RightOuterJoinFn<K, V, U>(right.getKeyType(), right.getValueType())),
+          left, right);
+    }
     return join(left, right, new LeftOuterJoinFn<K, U, V>(left.getKeyType(), left.getValueType()));
   }
 
@@ -120,6 +134,10 @@ public class Join {
    * @return The joined result.
    */
   public static <K, U, V> PTable<K, Pair<U, V>> rightJoin(PTable<K, U> left, PTable<K, V> right) {
+    if (bufferRight(left, right)) {
+      return swap(join(right, left, new LeftOuterJoinFn<K, V, U>(right.getKeyType(), right.getValueType())),
+          left, right);
+    }
     return join(left, right, new RightOuterJoinFn<K, U, V>(left.getKeyType(), left.getValueType()));
   }
 
@@ -141,6 +159,10 @@ public class Join {
    * @return The joined result.
    */
   public static <K, U, V> PTable<K, Pair<U, V>> fullJoin(PTable<K, U> left, PTable<K, V> right) {
+    if (bufferRight(left, right)) {
+      return swap(join(right, left, new FullOuterJoinFn<K, V, U>(right.getKeyType(), right.getValueType())),
+          left, right);
+    }
     return join(left, right, new FullOuterJoinFn<K, U, V>(left.getKeyType(), left.getValueType()));
   }
 
@@ -153,6 +175,32 @@ public class Join {
     return grouped.parallelDo(joinFn.getJoinType() + grouped.getName(), joinFn, ret);
   }
 
+  /**
+   * Whether the right table should be buffered by the join function instead of
+   * the left one, because it is estimated to be smaller.
+   */
+  private static boolean bufferRight(PTable<?, ?> left, PTable<?, ?> right) {
+    return right.getSize() < left.getSize();
+  }
+
+  /**
+   * Swaps the values of a join of {@code right} with {@code left} back into
+   * the order of a join of {@code left} with {@code right}.
+   */
+  private static <K, U, V> PTable<K, Pair<U, V>> swap(PTable<K, Pair<V, U>> joined, PTable<K, U> left,
+      PTable<K, V> right) {
+    PTypeFamily ptf = left.getTypeFamily();
+    PTableType<K, Pair<U, V>> ret = ptf
+        .tableOf(left.getKeyType(), ptf.pairs(left.getValueType(), right.getValueType()));
+    return joined.parallelDo("joinSwap", new MapFn<Pair<K, Pair<V, U>>, Pair<K, Pair<U, V>>>() {
+      @Override
+      public Pair<K, Pair<U, V>> map(Pair<K, Pair<V, U>> input) {
+        Pair<V, U> values = input.second();
+        return Pair.of(input.first(), Pair.of(values.second(), values.first()));
+      }
+    }, ret);
+  }
+
   private static <K, U, V> PGroupedTable<Pair<K, Integer>, Pair<U, V>> preJoin(PTable<K, U> left, PTable<K, V> right) {
     PTypeFamily ptf = left.getTypeFamily();
     PTableType<Pair<K, Integer>, Pair<U, V>> ptt = ptf.tableOf(ptf.pairs(left.getKeyType(), ptf.ints()),
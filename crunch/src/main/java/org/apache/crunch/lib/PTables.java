@@ -30,6 +30,7 @@ import org.apache.crunch.types.PGroupedTableType;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypeUtils;
 
 import com.google.common.collect.Lists;
 
@@ -89,6 +90,9 @@ public class PTables {
    * @see PType#getDetachedValue(Object)
    */
   public static <K, V> Pair<K, V> getDetachedValue(PTableType<K, V> tableType, Pair<K, V> value) {
+    if (PTypeUtils.isImmutable(tableType)) {
+      return value;
+    }
     return Pair.of(tableType.getKeyType().getDetachedValue(value.first()), tableType.getValueType()
         .getDetachedValue(value.second()));
   }
@@ -17,14 +17,10 @@
  */
 package org.apache.crunch.lib.join;
 
-import java.util.List;
-
 import org.apache.crunch.Emitter;
 import org.apache.crunch.Pair;
 import org.apache.crunch.types.PType;
 
-import com.google.common.collect.Lists;
-
 /**
  * Used to perform the last step of an full outer join.
  * 
@@ -36,7 +32,7 @@ public class FullOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
 
   private transient int lastId;
   private transient K lastKey;
-  private transient List<U> leftValues;
+  private transient SpillableValues<U> leftValues;
 
   public FullOuterJoinFn(PType<K> keyType, PType<U> leftValueType) {
     super(keyType, leftValueType);
@@ -48,7 +44,7 @@ public class FullOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
     super.initialize();
     lastId = 1;
     lastKey = null;
-    this.leftValues = Lists.newArrayList();
+    this.leftValues = new SpillableValues<U>(leftValueType, getConfiguration());
   }
 
   /** {@inheritDoc} */
@@ -73,7 +69,7 @@ public class FullOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
       for (Pair<U, V> pair : pairs) {
         // Make sure that right side gets emitted.
         if (leftValues.isEmpty()) {
-          leftValues.add(null);
+          emitter.emit(Pair.of(lastKey, Pair.of((U) null, pair.second())));
         }
         for (U u : leftValues) {
           emitter.emit(Pair.of(lastKey, Pair.of(u, pair.second())));
@@ -84,6 +80,12 @@ public class FullOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
     lastId = id;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  protected void closeSpilledValues() {
+    leftValues.closeIterators();
+  }
+
   /** {@inheritDoc} */
   @Override
   public void cleanup(Emitter<Pair<K, Pair<U, V>>> emitter) {
@@ -92,6 +94,7 @@ public class FullOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
         emitter.emit(Pair.of(lastKey, Pair.of(u, (V) null)));
       }
     }
+    leftValues.close();
   }
 
   /** {@inheritDoc} */
@@ -17,14 +17,10 @@
  */
 package org.apache.crunch.lib.join;
 
-import java.util.List;
-
 import org.apache.crunch.Emitter;
 import org.apache.crunch.Pair;
 import org.apache.crunch.types.PType;
 
-import com.google.common.collect.Lists;
-
 /**
  * Used to perform the last step of an inner join.
  * 
@@ -35,7 +31,7 @@ import com.google.common.collect.Lists;
 public class InnerJoinFn<K, U, V> extends JoinFn<K, U, V> {
 
   private transient K lastKey;
-  private transient List<U> leftValues;
+  private transient SpillableValues<U> leftValues;
 
   public InnerJoinFn(PType<K> keyType, PType<U> leftValueType) {
     super(keyType, leftValueType);
@@ -46,7 +42,7 @@ public class InnerJoinFn<K, U, V> extends JoinFn<K, U, V> {
   public void initialize() {
     super.initialize();
     lastKey = null;
-    this.leftValues = Lists.newArrayList();
+    this.leftValues = new SpillableValues<U>(leftValueType, getConfiguration());
   }
 
   /** {@inheritDoc} */
@@ -70,6 +66,18 @@ public class InnerJoinFn<K, U, V> extends JoinFn<K, U, V> {
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  protected void closeSpilledValues() {
+    leftValues.closeIterators();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void cleanup(Emitter<Pair<K, Pair<U, V>>> emitter) {
+    leftValues.close();
+  }
+
   /** {@inheritDoc} */
   @Override
   public String getJoinType() {
@@ -32,6 +32,22 @@ import org.apache.crunch.types.PType;
 public abstract class JoinFn<K, U, V> extends
     DoFn<Pair<Pair<K, Integer>, Iterable<Pair<U, V>>>, Pair<K, Pair<U, V>>> {
 
+  /**
+   * Configuration key for the number of left-side values of a single key that
+   * a join keeps in memory. Any further values are spilled to a local file and
+   * read back from it for each right-side value of the key. Defaults to
+   * {@link #DEFAULT_SPILL_THRESHOLD}.
+   */
+  public static final String SPILL_THRESHOLD = "crunch.join.spill.threshold";
+
+  public static final int DEFAULT_SPILL_THRESHOLD = 100000;
+
+  /**
+   * Configuration key for the local directory that join values are spilled
+   * to. Defaults to the {@code java.io.tmpdir} directory.
+   */
+  public static final String SPILL_DIR = "crunch.join.spill.dir";
+
   protected PType<K> keyType;
   protected PType<U> leftValueType;
 
@@ -67,6 +83,14 @@ public abstract class JoinFn<K, U, V> extends
   public abstract void join(K key, int id, Iterable<Pair<U, V>> pairs,
       Emitter<Pair<K, Pair<U, V>>> emitter);
 
+  /**
+   * Closes any spill files that {@link #join} was still reading values from
+   * when it stopped, e.g. because the emitter threw an exception. Does nothing
+   * by default.
+   */
+  protected void closeSpilledValues() {
+  }
+
   /**
    * Split up the input record to make coding a bit more manageable.
    * 
@@ -76,6 +100,10 @@ public abstract class JoinFn<K, U, V> extends
   @Override
   public void process(Pair<Pair<K, Integer>, Iterable<Pair<U, V>>> input,
       Emitter<Pair<K, Pair<U, V>>> emitter) {
-    join(input.first().first(), input.first().second(), input.second(), emitter);
+    try {
+      join(input.first().first(), input.first().second(), input.second(), emitter);
+    } finally {
+      closeSpilledValues();
+    }
   }
 }
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A registry of the join indexes that are open in this JVM, so that tasks that
+ * run one after another in a reused JVM, or in threads of the same mapper,
+ * share one copy of each index.
+ * <p>
+ * Indexes are counted by the number of tasks that use them. An index that no
+ * task uses is kept for the next task in the JVM, and is only dropped once an
+ * index with a different key is loaded.
+ */
+final class JoinIndexCache {
+
+  private static final Log LOG = LogFactory.getLog(JoinIndexCache.class);
+
+  /**
+   * Loads an index that isn't in the cache.
+   */
+  interface Loader<K, V> {
+    MappedJoinIndex<K, V> load() throws IOException;
+  }
+
+  private static class Entry {
+    private final MappedJoinIndex<?, ?> index;
+    private int references;
+
+    public Entry(MappedJoinIndex<?, ?> index) {
+      this.index = index;
+    }
+  }
+
+  private static final Map<String, Entry> ENTRIES = Maps.newHashMap();
+
+  private JoinIndexCache() {
+  }
+
+  /**
+   * Returns the index with the given key, loading it if it isn't cached, and
+   * counts a reference to it. Each call must be matched by a call to
+   * {@link #release(String)}.
+   *
+   * @param key
+   *          The key of the index, which should identify both the file it is
+   *          loaded from and the version of that file
+   * @param loader
+   *          Loads the index if it isn't cached
+   */
+  public static synchronized <K, V> MappedJoinIndex<K, V> acquire(String key, Loader<K, V> loader)
+      throws IOException {
+    Entry entry = ENTRIES.get(key);
+    if (entry == null) {
+      evictUnreferenced();
+      entry = new Entry(loader.load());
+      ENTRIES.put(key, entry);
+    } else {
+      LOG.info("Reusing the join index " + key);
+    }
+    entry.references++;
+    return (MappedJoinIndex<K, V>) entry.index;
+  }
+
+  /**
+   * Releases a reference to the index with the given key, and returns whether
+   * no task in this JVM uses it anymore.
+   */
+  public static synchronized boolean release(String key) {
+    Entry entry = ENTRIES.get(key);
+    if (entry == null || entry.references == 0) {
+      throw new IllegalStateException("The join index " + key + " was released more often than acquired");
+    }
+    entry.references--;
+    return entry.references == 0;
+  }
+
+  private static void evictUnreferenced() {
+    Iterator<Entry> iter = ENTRIES.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().references == 0) {
+        iter.remove();
+      }
+    }
+  }
+
+  static synchronized int size() {
+    return ENTRIES.size();
+  }
+}
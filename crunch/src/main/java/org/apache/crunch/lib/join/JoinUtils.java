@@ -30,7 +30,6 @@ import org.apache.crunch.types.writable.TupleWritable;
 import org.apache.crunch.types.writable.WritableTypeFamily;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
-import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -65,30 +64,23 @@ public class JoinUtils {
     }
   }
 
-  public static class TupleWritableComparator implements RawComparator<TupleWritable> {
+  /**
+   * Compares join keys by their first field only, in place when the keys are
+   * compact tuples of the same schema.
+   */
+  public static class TupleWritableComparator extends TupleWritable.Comparator {
 
-    private DataInputBuffer buffer = new DataInputBuffer();
-    private TupleWritable key1 = new TupleWritable();
-    private TupleWritable key2 = new TupleWritable();
-
-    @Override
-    public int compare(TupleWritable o1, TupleWritable o2) {
-      return ((WritableComparable) o1.get(0)).compareTo((WritableComparable) o2.get(0));
+    public TupleWritableComparator() {
+      setFieldOrders(new int[] { 1 });
     }
 
     @Override
-    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
-      try {
-        buffer.reset(b1, s1, l1);
-        key1.readFields(buffer);
-
-        buffer.reset(b2, s2, l2);
-        key2.readFields(buffer);
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
+    public int compare(WritableComparable a, WritableComparable b) {
+      return compare((TupleWritable) a, (TupleWritable) b);
+    }
 
-      return compare(key1, key2);
+    public int compare(TupleWritable o1, TupleWritable o2) {
+      return ((WritableComparable) o1.get(0)).compareTo((WritableComparable) o2.get(0));
     }
   }
 
@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PTableType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A read-only hash index of the pairs of a table, kept in a local file that is
+ * mapped into memory rather than read onto the heap.
+ * <p>
+ * Keys are hashed and compared by their serialized bytes, and values are only
+ * deserialized when their key is looked up. The file holds the entries, each
+ * of which links to the previous entry in its bucket, followed by the offsets
+ * of the last entry in each bucket and a trailer:
+ * 
+ * <pre>
+ * entry:   long next, int hash, int key length, key bytes, value
+ * buckets: long offset of the last entry, or -1, for each bucket
+ * trailer: int bucket count, long offset of the buckets, int magic
+ * </pre>
+ * 
+ * Since a mapped buffer can't be larger than 2GB, the file is mapped in
+ * segments, and entries may span two segments.
+ */
+class MappedJoinIndex<K, V> {
+
+  private static final int MAGIC = 0x43524a49;
+  private static final int TRAILER_SIZE = 16;
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * Writes an index of the given pairs to a file. The pairs are read twice:
+   * once to count them and once to write them.
+   */
+  public static <K, V> void write(Iterable<Pair<K, V>> pairs, PTableType<K, V> ptype, Configuration conf,
+      File file) throws IOException {
+    long count = 0;
+    for (Pair<K, V> pair : pairs) {
+      count++;
+    }
+    int buckets = bucketsFor(count);
+    long[] heads = new long[buckets];
+    Arrays.fill(heads, -1L);
+
+    ValueSerializer<K> keySerializer = ValueSerializer.create(ptype.getKeyType(), conf);
+    ValueSerializer<V> valueSerializer = ValueSerializer.create(ptype.getValueType(), conf);
+    DataOutputBuffer keyBuffer = new DataOutputBuffer();
+    CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    DataOutputStream out = new DataOutputStream(counter);
+    try {
+      for (Pair<K, V> pair : pairs) {
+        keyBuffer.reset();
+        keySerializer.write(pair.first(), keyBuffer);
+        int hash = hash(keyBuffer.getData(), keyBuffer.getLength());
+        int bucket = hash & (buckets - 1);
+        long offset = counter.getCount();
+        out.writeLong(heads[bucket]);
+        out.writeInt(hash);
+        out.writeInt(keyBuffer.getLength());
+        out.write(keyBuffer.getData(), 0, keyBuffer.getLength());
+        valueSerializer.write(pair.second(), out);
+        heads[bucket] = offset;
+      }
+      long bucketsOffset = counter.getCount();
+      for (long head : heads) {
+        out.writeLong(head);
+      }
+      out.writeInt(buckets);
+      out.writeLong(bucketsOffset);
+      out.writeInt(MAGIC);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static int bucketsFor(long count) {
+    // A power of two at least as large as the count, so that chains are short.
+    int buckets = 1;
+    while (buckets < count && buckets < (1 << 30)) {
+      buckets <<= 1;
+    }
+    return buckets;
+  }
+
+  private static int hash(byte[] bytes, int length) {
+    int h = WritableComparator.hashBytes(bytes, length);
+    return h ^ (h >>> 16);
+  }
+
+  private final File file;
+  private final ByteBuffer[] segments;
+  private final int buckets;
+  private final long bucketsOffset;
+  private final ThreadLocal<Probe> probes;
+
+  /**
+   * Maps an index file that was written by
+   * {@link #write(Iterable, PTableType, Configuration, File)} into memory. The
+   * index may be shared by threads, each of which looks up keys with its own
+   * buffers and deserializers.
+   */
+  public MappedJoinIndex(File file, final PTableType<K, V> ptype, final Configuration conf) throws IOException {
+    this.file = file;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long length = channel.size();
+      if (length < TRAILER_SIZE) {
+        throw new IOException("Not a join index: " + file);
+      }
+      int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+      this.segments = new ByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = (long) i * SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+      }
+      SegmentInputStream segmentIn = new SegmentInputStream(segments);
+      DataInputStream in = new DataInputStream(segmentIn);
+      segmentIn.seek(length - TRAILER_SIZE);
+      this.buckets = in.readInt();
+      this.bucketsOffset = in.readLong();
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a join index: " + file);
+      }
+    } finally {
+      raf.close();
+    }
+    this.probes = new ThreadLocal<Probe>() {
+      @Override
+      protected Probe initialValue() {
+        return new Probe(ptype, conf);
+      }
+    };
+  }
+
+  /**
+   * Returns the values of the given key, deserializing them from the index.
+   */
+  public List<V> get(K key) {
+    try {
+      return probes.get().get(key);
+    } catch (IOException e) {
+      throw new CrunchRuntimeException("Could not read join index " + file, e);
+    }
+  }
+
+  /**
+   * The state of the lookups of one thread.
+   */
+  private class Probe {
+    private final ValueSerializer<K> keySerializer;
+    private final ValueSerializer<V> valueSerializer;
+    private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+    private final SegmentInputStream segmentIn;
+    private final DataInputStream in;
+    private byte[] probeBuffer = new byte[64];
+
+    public Probe(PTableType<K, V> ptype, Configuration conf) {
+      this.keySerializer = ValueSerializer.create(ptype.getKeyType(), conf);
+      this.valueSerializer = ValueSerializer.create(ptype.getValueType(), conf);
+      this.segmentIn = new SegmentInputStream(segments);
+      this.in = new DataInputStream(segmentIn);
+    }
+
+    public List<V> get(K key) throws IOException {
+      keyBuffer.reset();
+      keySerializer.write(key, keyBuffer);
+      int length = keyBuffer.getLength();
+      int hash = hash(keyBuffer.getData(), length);
+      segmentIn.seek(bucketsOffset + 8L * (hash & (buckets - 1)));
+      long offset = in.readLong();
+      List<V> values = null;
+      while (offset >= 0) {
+        segmentIn.seek(offset);
+        long next = in.readLong();
+        if (in.readInt() == hash && in.readInt() == length && keyMatches(length)) {
+          if (values == null) {
+            values = Lists.newArrayList();
+          }
+          values.add(valueSerializer.read(in));
+        }
+        offset = next;
+      }
+      return values == null ? Collections.<V> emptyList() : values;
+    }
+
+    private boolean keyMatches(int length) throws IOException {
+      if (probeBuffer.length < length) {
+        probeBuffer = new byte[Math.max(length, 2 * probeBuffer.length)];
+      }
+      in.readFully(probeBuffer, 0, length);
+      byte[] key = keyBuffer.getData();
+      for (int i = 0; i < length; i++) {
+        if (probeBuffer[i] != key[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reads the mapped segments of an index as one stream, from any offset.
+   */
+  private static class SegmentInputStream extends InputStream {
+    private final ByteBuffer[] segments;
+    private ByteBuffer current;
+    private int index;
+
+    public SegmentInputStream(ByteBuffer[] segments) {
+      this.segments = new ByteBuffer[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        this.segments[i] = segments[i].duplicate();
+      }
+    }
+
+    public void seek(long offset) {
+      index = (int) (offset / SEGMENT_SIZE);
+      current = segments[index];
+      current.position((int) (offset % SEGMENT_SIZE));
+    }
+
+    private boolean advance() {
+      while (!current.hasRemaining()) {
+        if (index + 1 == segments.length) {
+          return false;
+        }
+        current = segments[++index];
+        current.position(0);
+      }
+      return true;
+    }
+
+    @Override
+    public int read() {
+      if (!advance()) {
+        return -1;
+      }
+      return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!advance()) {
+        return -1;
+      }
+      int n = Math.min(len, current.remaining());
+      current.get(b, off, n);
+      return n;
+    }
+  }
+}
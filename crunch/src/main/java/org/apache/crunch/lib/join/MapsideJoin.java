@@ -17,6 +17,8 @@
  */
 package org.apache.crunch.lib.join;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.apache.crunch.CrunchRuntimeException;
@@ -26,17 +28,17 @@ import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.ParallelDoOptions;
 import org.apache.crunch.SourceTarget;
-import org.apache.crunch.io.ReadableSourceTarget;
 import org.apache.crunch.materialize.MaterializableIterable;
-import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PTypeFamily;
 import org.apache.crunch.util.DistCache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
 
 /**
  * Utility for doing map side joins on a common key between two {@link PTable}s.
@@ -47,22 +49,51 @@ import com.google.common.collect.Multimap;
  * the join is not sorted, which is the case with a conventional (reducer-based)
  * join.
  * <p>
+ * Each task keeps the right side in a hash index in a local file that is
+ * mapped into memory rather than read onto the heap, and that is shared by the
+ * tasks of the same job on the same node. Tasks that run in the same JVM, one
+ * after another or in the threads of a multithreaded mapper, also share the
+ * mapped index. Keys are matched by their serialized bytes, and values are only
+ * deserialized for keys that are found.
+ * <p>
+ * Because keys are matched by their serialized bytes, keys that are equal must
+ * serialize to the same bytes. This doesn't hold for keys whose serialization
+ * depends on the order in which their contents were added, such as Avro maps
+ * or records that contain maps, and collections of such values, so tables with
+ * keys like these should be joined with {@link org.apache.crunch.lib.Join}
+ * instead.
+ * <p>
  * <b>Note:</b>This utility is only supported when running with a
  * {@link MRPipeline} as the pipeline.
  */
 public class MapsideJoin {
 
   /**
-   * Join two tables using a map side join. The right-side table will be loaded
-   * fully in memory, so this method should only be used if the right side
-   * table's contents can fit in the memory allocated to mappers. The join
-   * performed by this method is an inner join.
+   * The local directory that the index of the right side of a join is written
+   * to. By default, it is written to the job's local directory on each node,
+   * which is removed when the job finishes, or to {@code java.io.tmpdir} if
+   * there is none. Index files in any other directory are deleted once the
+   * tasks in a JVM are done with them.
+   */
+  public static final String INDEX_DIR = "crunch.mapside.join.index.dir";
+
+  // The job's local directory on a node, which Hadoop 2 also reads as
+  // mapreduce.job.local.dir.
+  private static final String JOB_LOCAL_DIR = "job.local.dir";
+
+  /**
+   * Join two tables using a map side join. The right-side table will be
+   * indexed in a local file on every node and mapped into memory, so this
+   * method should only be used if the right side table's contents fit on the
+   * local disks of the mappers and are small enough to look up quickly. The
+   * join performed by this method is an inner join. Equal keys must have equal
+   * serialized forms, as described above.
    * 
    * @param left
    *          The left-side table of the join
    * @param right
-   *          The right-side table of the join, whose contents will be fully
-   *          read into memory
+   *          The right-side table of the join, whose contents will be indexed
+   *          on every node
    * @return A table keyed on the join key, containing pairs of joined values
    */
   public static <K, U, V> PTable<K, Pair<U, V>> join(PTable<K, U> left, PTable<K, V> right) {
@@ -72,7 +103,7 @@ public class MapsideJoin {
     if (iterable instanceof MaterializableIterable) {
       MaterializableIterable<Pair<K, V>> mi = (MaterializableIterable<Pair<K, V>>) iterable;
       MapsideJoinDoFn<K, U, V> mapJoinDoFn = new MapsideJoinDoFn<K, U, V>(mi.getPath().toString(),
-          right.getPType());
+          right.getPTableType());
       ParallelDoOptions.Builder optionsBuilder = ParallelDoOptions.builder();
       if (mi.isSourceTarget()) {
         optionsBuilder.sourceTargets((SourceTarget) mi.getSource());
@@ -111,10 +142,13 @@ public class MapsideJoin {
   static class MapsideJoinDoFn<K, U, V> extends DoFn<Pair<K, U>, Pair<K, Pair<U, V>>> {
 
     private String inputPath;
-    private PType<Pair<K, V>> ptype;
-    private Multimap<K, V> joinMap;
+    private PTableType<K, V> ptype;
+    private transient String indexKey;
+    private transient File indexFile;
+    private transient boolean deleteIndexFile;
+    private transient MappedJoinIndex<K, V> joinIndex;
 
-    public MapsideJoinDoFn(String inputPath, PType<Pair<K, V>> ptype) {
+    public MapsideJoinDoFn(String inputPath, PTableType<K, V> ptype) {
       this.inputPath = inputPath;
       this.ptype = ptype;
     }
@@ -135,19 +169,57 @@ public class MapsideJoin {
     @Override
     public void initialize() {
       super.initialize();
-
-      ReadableSourceTarget<Pair<K, V>> sourceTarget = ptype.getDefaultFileSource(
-          getCacheFilePath());
-      Iterable<Pair<K, V>> iterable = null;
+      final Configuration conf = getConfiguration();
+      ptype.initialize(conf);
+      final Path local = getCacheFilePath();
       try {
-        iterable = sourceTarget.read(getConfiguration());
+        // Tasks that reuse this JVM, and the other threads of a multithreaded
+        // mapper, share the index of the same version of the cache file.
+        long modificationTime = local.getFileSystem(conf).getFileStatus(local).getModificationTime();
+        indexKey = local + "@" + modificationTime;
+        String jobDir = conf.get(JOB_LOCAL_DIR);
+        String dir = conf.get(INDEX_DIR, jobDir != null ? jobDir : System.getProperty("java.io.tmpdir"));
+        deleteIndexFile = !dir.equals(jobDir);
+        indexFile = new File(dir, "crunch-mapjoin-" + getContext().getJobID() + "-"
+            + Hashing.md5().hashString(inputPath + "@" + modificationTime, Charsets.UTF_8) + ".idx");
+        joinIndex = JoinIndexCache.acquire(indexKey, new JoinIndexCache.Loader<K, V>() {
+          @Override
+          public MappedJoinIndex<K, V> load() throws IOException {
+            buildIndexFile(local, conf);
+            try {
+              return new MappedJoinIndex<K, V>(indexFile, ptype, conf);
+            } catch (FileNotFoundException e) {
+              // Another JVM deleted the index after mapping it.
+              buildIndexFile(local, conf);
+              return new MappedJoinIndex<K, V>(indexFile, ptype, conf);
+            }
+          }
+        });
       } catch (IOException e) {
         throw new CrunchRuntimeException("Error reading right-side of map side join: ", e);
       }
+    }
 
-      joinMap = ArrayListMultimap.create();
-      for (Pair<K, V> joinPair : iterable) {
-        joinMap.put(joinPair.first(), joinPair.second());
+    /**
+     * Builds the index of the right side from the cache file, unless another
+     * task of this job on this node has built it already.
+     */
+    private void buildIndexFile(Path local, Configuration conf) throws IOException {
+      if (indexFile.exists()) {
+        return;
+      }
+      File dir = indexFile.getParentFile();
+      dir.mkdirs();
+      // Tasks that build the index at the same time each write their own
+      // file and rename it into place, so a reader never sees a partial one.
+      File tmp = File.createTempFile("crunch-mapjoin-", ".tmp", dir);
+      try {
+        MappedJoinIndex.write(ptype.getDefaultFileSource(local).read(conf), ptype, conf, tmp);
+        if (!tmp.renameTo(indexFile) && !indexFile.exists()) {
+          throw new IOException("Could not rename " + tmp + " to " + indexFile);
+        }
+      } finally {
+        tmp.delete();
       }
     }
 
@@ -155,10 +227,21 @@ public class MapsideJoin {
     public void process(Pair<K, U> input, Emitter<Pair<K, Pair<U, V>>> emitter) {
       K key = input.first();
       U value = input.second();
-      for (V joinValue : joinMap.get(key)) {
+      for (V joinValue : joinIndex.get(key)) {
         Pair<U, V> valuePair = Pair.of(value, joinValue);
         emitter.emit(Pair.of(key, valuePair));
       }
     }
+
+    @Override
+    public void cleanup(Emitter<Pair<K, Pair<U, V>>> emitter) {
+      if (joinIndex != null) {
+        // A mapped index stays readable after its file is deleted.
+        if (JoinIndexCache.release(indexKey) && deleteIndexFile) {
+          indexFile.delete();
+        }
+        joinIndex = null;
+      }
+    }
   }
 }
@@ -0,0 +1,447 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.avro.Schema;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Pipeline;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.io.PartitionFileNamingScheme;
+import org.apache.crunch.io.PathTarget;
+import org.apache.crunch.io.text.NLineFileSource;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypeSerializer;
+import org.apache.crunch.types.avro.AvroType;
+import org.apache.crunch.types.writable.WritableType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+
+/**
+ * Utility for joining two tables that are already partitioned and sorted by
+ * their keys in the same way, without a shuffle.
+ * <p>
+ * Both tables must be directories of sequence or Avro files that were written
+ * from the output of a {@code groupByKey} with the same partitioner and number
+ * of reducers, and whose file names give the partition that each file holds,
+ * as {@code part-r-NNNNN}. Such files are written by targets with a
+ * {@link PartitionFileNamingScheme}. The default
+ * {@link org.apache.crunch.io.SequentialFileNamingScheme} can't be used, since
+ * it numbers the files by how many are already in the directory and reduce
+ * tasks that write no records don't write a file, so the numbers of later
+ * partitions would shift.
+ * <p>
+ * Each map task of the join reads one pair of partition files with the same
+ * number and merges them, buffering the right-side values of one key at a
+ * time in the same way as the reduce side joins of
+ * {@link org.apache.crunch.lib.Join}. A partition that has no file on either
+ * side is empty, and is skipped. The map tasks don't read the partition files
+ * through input splits, so they aren't scheduled for data locality.
+ * <p>
+ * The partition files are listed when the join is planned, so they must
+ * already exist. If the tables were sorted with a sort comparator, the same
+ * {@link GroupingOptions} must be given to the join so that it compares the
+ * keys in the same order; otherwise the keys are compared in their natural
+ * order. If the options give the number of reducers, the join fails when
+ * either table has a partition file with a higher number.
+ */
+public class MergeJoin {
+
+  private static final Pattern PARTITION_FILE = Pattern.compile("part-r-(\\d{5})(\\.avro)?");
+
+  /**
+   * Performs an inner join of two tables that were written to files.
+   *
+   * @param pipeline
+   *          The pipeline that runs the join
+   * @param left
+   *          The left-side table of the join, which must be a {@link PathTarget}
+   *          with a {@link PartitionFileNamingScheme} whose type is a
+   *          {@link PTableType}
+   * @param right
+   *          The right-side table of the join, which must be a
+   *          {@link PathTarget} with a {@link PartitionFileNamingScheme} whose
+   *          type is a {@link PTableType}
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(Pipeline pipeline, SourceTarget<Pair<K, U>> left,
+      SourceTarget<Pair<K, V>> right) {
+    return join(pipeline, left, right, null);
+  }
+
+  /**
+   * Performs an inner join of two tables that were written to files after
+   * being grouped with the given options.
+   *
+   * @param pipeline
+   *          The pipeline that runs the join
+   * @param left
+   *          The left-side table of the join, which must be a {@link PathTarget}
+   *          with a {@link PartitionFileNamingScheme} whose type is a
+   *          {@link PTableType}
+   * @param right
+   *          The right-side table of the join, which must be a
+   *          {@link PathTarget} with a {@link PartitionFileNamingScheme} whose
+   *          type is a {@link PTableType}
+   * @param options
+   *          The options that both tables were grouped with, whose sort
+   *          comparator, if any, is used to compare the keys
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(Pipeline pipeline, SourceTarget<Pair<K, U>> left,
+      SourceTarget<Pair<K, V>> right, GroupingOptions options) {
+    return join(pipeline, getPath(left), getTableType(left), getPath(right), getTableType(right), options);
+  }
+
+  /**
+   * Performs an inner join of two tables that were written to the given
+   * directories.
+   *
+   * @param pipeline
+   *          The pipeline that runs the join
+   * @param leftPath
+   *          The directory of the left-side table of the join
+   * @param leftType
+   *          The type of the left-side table
+   * @param rightPath
+   *          The directory of the right-side table of the join
+   * @param rightType
+   *          The type of the right-side table
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(Pipeline pipeline, Path leftPath, PTableType<K, U> leftType,
+      Path rightPath, PTableType<K, V> rightType) {
+    return join(pipeline, leftPath, leftType, rightPath, rightType, null);
+  }
+
+  /**
+   * Performs an inner join of two tables that were written to the given
+   * directories after being grouped with the given options.
+   *
+   * @param pipeline
+   *          The pipeline that runs the join
+   * @param leftPath
+   *          The directory of the left-side table of the join
+   * @param leftType
+   *          The type of the left-side table
+   * @param rightPath
+   *          The directory of the right-side table of the join
+   * @param rightType
+   *          The type of the right-side table
+   * @param options
+   *          The options that both tables were grouped with, whose sort
+   *          comparator, if any, is used to compare the keys, and whose number
+   *          of reducers, if any, bounds the partition numbers
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(Pipeline pipeline, Path leftPath, PTableType<K, U> leftType,
+      Path rightPath, PTableType<K, V> rightType, GroupingOptions options) {
+    Configuration conf = pipeline.getConfiguration();
+    SortedMap<Integer, String> leftFiles;
+    SortedMap<Integer, String> rightFiles;
+    try {
+      leftFiles = getPartitionFiles(leftPath, conf);
+      rightFiles = getPartitionFiles(rightPath, conf);
+    } catch (IOException e) {
+      throw new CrunchRuntimeException("Could not list the partition files of a merge join", e);
+    }
+    int numReducers = options == null ? 0 : options.getNumReducers();
+    if (numReducers > 0) {
+      checkPartitions(leftPath, leftFiles, numReducers);
+      checkPartitions(rightPath, rightFiles, numReducers);
+    }
+
+    PTypeFamily ptf = leftType.getFamily();
+    Set<Integer> partitionIds = Sets.intersection(leftFiles.keySet(), rightFiles.keySet());
+    PCollection<String> partitions = readPartitions(pipeline, partitionIds);
+    Class<? extends RawComparator> sortComparatorClass = options == null ? null : options.getSortComparatorClass();
+    MergeJoinFn<K, U, V> fn = new MergeJoinFn<K, U, V>(leftFiles, leftType, rightFiles, rightType,
+        sortComparatorClass);
+    return partitions.parallelDo("mergeJoin", fn,
+        ptf.tableOf(leftType.getKeyType(), ptf.pairs(leftType.getValueType(), rightType.getValueType())));
+  }
+
+  private static Path getPath(SourceTarget<?> source) {
+    if (!(source instanceof PathTarget)) {
+      throw new IllegalArgumentException("A merge join can only read files, not " + source);
+    }
+    PathTarget target = (PathTarget) source;
+    if (!(target.getFileNamingScheme() instanceof PartitionFileNamingScheme)) {
+      throw new IllegalArgumentException("A merge join can only read files named by their partition, but " + source
+          + " uses " + target.getFileNamingScheme().getClass().getSimpleName());
+    }
+    return target.getPath();
+  }
+
+  private static <K, V> PTableType<K, V> getTableType(SourceTarget<Pair<K, V>> source) {
+    if (!(source.getType() instanceof PTableType)) {
+      throw new IllegalArgumentException("A merge join can only read tables, not " + source);
+    }
+    return (PTableType<K, V>) source.getType();
+  }
+
+  /**
+   * Returns the partition files in the given directory by their partition
+   * number. Empty partitions may have no file.
+   */
+  static SortedMap<Integer, String> getPartitionFiles(Path dir, Configuration conf) throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    FileStatus[] statuses = fs.listStatus(dir);
+    if (statuses == null) {
+      throw new IllegalArgumentException("The merge join input " + dir + " does not exist");
+    }
+    SortedMap<Integer, String> files = Maps.newTreeMap();
+    for (FileStatus status : statuses) {
+      Matcher matcher = PARTITION_FILE.matcher(status.getPath().getName());
+      if (matcher.matches()) {
+        files.put(Integer.parseInt(matcher.group(1), 10), status.getPath().toString());
+      }
+    }
+    return files;
+  }
+
+  private static void checkPartitions(Path dir, SortedMap<Integer, String> files, int numReducers) {
+    if (!files.isEmpty() && files.lastKey() >= numReducers) {
+      throw new IllegalArgumentException("The partition files in " + dir + " go up to partition " + files.lastKey()
+          + ", but the tables were grouped into " + numReducers + " partitions");
+    }
+  }
+
+  /**
+   * Returns a collection of the given partition numbers, which is read from a
+   * file with one number per line so that each partition is joined by its own
+   * map task. The numbers are always read as text, whatever the type family of
+   * the tables.
+   */
+  private static PCollection<String> readPartitions(Pipeline pipeline, Set<Integer> partitionIds) {
+    List<String> lines = Lists.newArrayListWithCapacity(partitionIds.size());
+    for (Integer partitionId : partitionIds) {
+      lines.add(String.valueOf(partitionId));
+    }
+    if (!(pipeline instanceof MRPipeline)) {
+      return MemPipeline.typedCollectionOf(Writables.strings(), lines);
+    }
+    Path path = ((MRPipeline) pipeline).createTempPath();
+    try {
+      PrintWriter out = new PrintWriter(path.getFileSystem(pipeline.getConfiguration()).create(path));
+      try {
+        for (String line : lines) {
+          out.println(line);
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new CrunchRuntimeException("Could not write the partitions of a merge join to " + path, e);
+    }
+    return pipeline.read(new NLineFileSource<String>(path, Writables.strings(), 1));
+  }
+
+  /**
+   * Compares keys in the order that the shuffle sorted them in, which is their
+   * natural order unless a sort comparator is given, in which case they are
+   * serialized in the same way as in the shuffle and compared by it.
+   */
+  static class KeyComparator<K> implements Serializable {
+    private final PType<K> keyType;
+    private final Class<? extends RawComparator> sortComparatorClass;
+    private transient MapFn<K, Object> outputFn;
+    private transient Schema schema;
+    private transient RawComparator<?> sortComparator;
+    private transient PTypeSerializer<K> serializer;
+    private transient DataOutputBuffer buffer1;
+    private transient DataOutputBuffer buffer2;
+
+    public KeyComparator(PType<K> keyType, Class<? extends RawComparator> sortComparatorClass) {
+      this.keyType = keyType;
+      this.sortComparatorClass = sortComparatorClass;
+    }
+
+    public void initialize(Configuration conf) {
+      outputFn = keyType.getOutputMapFn();
+      outputFn.initialize();
+      if (keyType instanceof AvroType) {
+        schema = ((AvroType<K>) keyType).getSchema();
+      } else if (!(keyType instanceof WritableType)) {
+        throw new IllegalStateException("Cannot compare merge join keys of type " + keyType);
+      }
+      if (sortComparatorClass != null) {
+        sortComparator = ReflectionUtils.newInstance(sortComparatorClass, conf);
+        serializer = new PTypeSerializer<K>(keyType);
+        serializer.initialize(conf);
+        buffer1 = new DataOutputBuffer();
+        buffer2 = new DataOutputBuffer();
+      }
+    }
+
+    public int compare(K k1, K k2) {
+      if (sortComparator != null) {
+        serialize(k1, buffer1);
+        serialize(k2, buffer2);
+        return sortComparator.compare(buffer1.getData(), 0, buffer1.getLength(), buffer2.getData(), 0,
+            buffer2.getLength());
+      }
+      if (schema != null) {
+        return ReflectData.get().compare(outputFn.map(k1), outputFn.map(k2), schema);
+      }
+      return ((WritableComparable) outputFn.map(k1)).compareTo(outputFn.map(k2));
+    }
+
+    private void serialize(K key, DataOutputBuffer buffer) {
+      buffer.reset();
+      try {
+        serializer.write(key, buffer);
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Could not serialize a merge join key", e);
+      }
+    }
+  }
+
+  /**
+   * Merges the left-side and right-side partition files with the number that
+   * it's given.
+   */
+  static class MergeJoinFn<K, U, V> extends DoFn<String, Pair<K, Pair<U, V>>> {
+    private final Map<Integer, String> leftFiles;
+    private final PTableType<K, U> leftType;
+    private final Map<Integer, String> rightFiles;
+    private final PTableType<K, V> rightType;
+    private final KeyComparator<K> comparator;
+    private transient SpillableValues<V> rightValues;
+
+    public MergeJoinFn(SortedMap<Integer, String> leftFiles, PTableType<K, U> leftType,
+        SortedMap<Integer, String> rightFiles, PTableType<K, V> rightType,
+        Class<? extends RawComparator> sortComparatorClass) {
+      // Copied, so that they can be serialized
+      this.leftFiles = Maps.newTreeMap(leftFiles);
+      this.leftType = leftType;
+      this.rightFiles = Maps.newTreeMap(rightFiles);
+      this.rightType = rightType;
+      this.comparator = new KeyComparator<K>(leftType.getKeyType(), sortComparatorClass);
+    }
+
+    @Override
+    public void initialize() {
+      Configuration conf = getConfiguration();
+      leftType.initialize(conf);
+      rightType.initialize(conf);
+      comparator.initialize(conf);
+      rightValues = new SpillableValues<V>(rightType.getValueType(), conf);
+    }
+
+    private <T> Iterator<Pair<K, T>> read(String file, PTableType<K, T> ptype) {
+      try {
+        return ptype.getDefaultFileSource(new Path(file)).read(getConfiguration()).iterator();
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Could not read the merge join partition " + file, e);
+      }
+    }
+
+    @Override
+    public void process(String input, Emitter<Pair<K, Pair<U, V>>> emitter) {
+      int partition = Integer.parseInt(input.trim());
+      Iterator<Pair<K, U>> leftReader = read(leftFiles.get(partition), leftType);
+      Iterator<Pair<K, V>> rightReader = null;
+      try {
+        rightReader = read(rightFiles.get(partition), rightType);
+        merge(Iterators.peekingIterator(leftReader), Iterators.peekingIterator(rightReader), emitter);
+      } finally {
+        // One side may run out before the other is read to its end.
+        close(leftReader);
+        close(rightReader);
+        rightValues.closeIterators();
+      }
+    }
+
+    private static void close(Iterator<?> reader) {
+      if (reader instanceof Closeable) {
+        Closeables.closeQuietly((Closeable) reader);
+      }
+    }
+
+    private void merge(PeekingIterator<Pair<K, U>> left, PeekingIterator<Pair<K, V>> right,
+        Emitter<Pair<K, Pair<U, V>>> emitter) {
+      PType<K> keyType = leftType.getKeyType();
+      PType<V> rightValueType = rightType.getValueType();
+      while (left.hasNext() && right.hasNext()) {
+        int cmp = comparator.compare(left.peek().first(), right.peek().first());
+        if (cmp < 0) {
+          left.next();
+        } else if (cmp > 0) {
+          right.next();
+        } else {
+          // The readers may reuse their objects, so the key and the buffered
+          // values are detached from them.
+          K key = keyType.getDetachedValue(right.peek().first());
+          rightValues.clear();
+          while (right.hasNext() && comparator.compare(key, right.peek().first()) == 0) {
+            rightValues.add(rightValueType.getDetachedValue(right.next().second()));
+          }
+          while (left.hasNext() && comparator.compare(key, left.peek().first()) == 0) {
+            U u = left.next().second();
+            for (V v : rightValues) {
+              emitter.emit(Pair.of(key, Pair.of(u, v)));
+            }
+          }
+        }
+      }
+    }
+
+    @Override
+    public void cleanup(Emitter<Pair<K, Pair<U, V>>> emitter) {
+      rightValues.close();
+    }
+  }
+}
@@ -17,14 +17,10 @@
  */
 package org.apache.crunch.lib.join;
 
-import java.util.List;
-
 import org.apache.crunch.Emitter;
 import org.apache.crunch.Pair;
 import org.apache.crunch.types.PType;
 
-import com.google.common.collect.Lists;
-
 /**
  * Used to perform the last step of an right outer join.
  * 
@@ -35,7 +31,7 @@ import com.google.common.collect.Lists;
 public class RightOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
 
   private transient K lastKey;
-  private transient List<U> leftValues;
+  private transient SpillableValues<U> leftValues;
 
   public RightOuterJoinFn(PType<K> keyType, PType<U> leftValueType) {
     super(keyType, leftValueType);
@@ -46,7 +42,7 @@ public class RightOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
   public void initialize() {
     super.initialize();
     lastKey = null;
-    this.leftValues = Lists.newArrayList();
+    this.leftValues = new SpillableValues<U>(leftValueType, getConfiguration());
   }
 
   /** {@inheritDoc} */
@@ -65,7 +61,7 @@ public class RightOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
       for (Pair<U, V> pair : pairs) {
         // Make sure that right side gets emitted.
         if (leftValues.isEmpty()) {
-          leftValues.add(null);
+          emitter.emit(Pair.of(lastKey, Pair.of((U) null, pair.second())));
         }
 
         for (U u : leftValues) {
@@ -75,6 +71,18 @@ public class RightOuterJoinFn<K, U, V> extends JoinFn<K, U, V> {
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  protected void closeSpilledValues() {
+    leftValues.closeIterators();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void cleanup(Emitter<Pair<K, Pair<U, V>>> emitter) {
+    leftValues.close();
+  }
+
   /** {@inheritDoc} */
   @Override
   public String getJoinType() {
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.ParallelDoOptions;
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.io.ReadableSourceTarget;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.lib.Sample;
+import org.apache.crunch.materialize.MaterializableIterable;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.util.DistCache;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Utility for doing reduce side joins on a common key between two
+ * {@link PTable}s when a few keys of the left-side table have far more values
+ * than the others.
+ * <p>
+ * The keys of a sample of the left-side table are counted first, and every
+ * key that makes up at least a given fraction of the sample is treated as a
+ * hot key. The left-side values of a hot key are spread over a number of
+ * shards, each of which is joined in its own reduce call and may go to a
+ * different reducer, and its right-side values are copied to every shard.
+ * Other keys are joined as they would be by {@link Join}.
+ * <p>
+ * The hot keys are found by a separate grouping of the pipeline that is not
+ * run when the join is planned. They are written to an intermediate output
+ * that the salting functions of both sides depend on and read from the
+ * distributed cache when they are initialized, so the sample is taken when the
+ * pipeline runs, before the two sides are salted.
+ */
+public class SkewJoin {
+
+  /** The default number of left-side keys that are sampled. */
+  public static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+  /**
+   * The default fraction of the sampled keys that a key must make up to be
+   * treated as a hot key.
+   */
+  public static final double DEFAULT_HOT_KEY_FRACTION = 0.01;
+
+  /** The default number of shards that the values of a hot key are spread over. */
+  public static final int DEFAULT_SHARDS = 16;
+
+  /**
+   * Performs an inner join of two tables, spreading the left-side values of
+   * hot keys over {@link #DEFAULT_SHARDS} shards.
+   *
+   * @param left
+   *          The left-side table of the join, which has the skewed keys
+   * @param right
+   *          The right-side table of the join, whose values of hot keys are
+   *          copied to every shard
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(PTable<K, U> left, PTable<K, V> right) {
+    return join(left, right, DEFAULT_SAMPLE_SIZE, DEFAULT_HOT_KEY_FRACTION, DEFAULT_SHARDS);
+  }
+
+  /**
+   * Performs an inner join of two tables, spreading the left-side values of
+   * hot keys over the given number of shards.
+   *
+   * @param left
+   *          The left-side table of the join, which has the skewed keys
+   * @param right
+   *          The right-side table of the join, whose values of hot keys are
+   *          copied to every shard
+   * @param sampleSize
+   *          The number of left-side keys to sample
+   * @param hotKeyFraction
+   *          The fraction of the sampled keys that a key must make up to be
+   *          treated as a hot key
+   * @param shards
+   *          The number of shards to spread the values of each hot key over
+   * @return A table keyed on the join key, containing pairs of joined values
+   */
+  public static <K, U, V> PTable<K, Pair<U, V>> join(PTable<K, U> left, PTable<K, V> right, int sampleSize,
+      double hotKeyFraction, int shards) {
+    if (sampleSize <= 0 || hotKeyFraction <= 0.0 || shards <= 0) {
+      throw new IllegalArgumentException("Sample size, hot key fraction and shards must be positive");
+    }
+    PTypeFamily ptf = left.getTypeFamily();
+    PType<K> keyType = left.getKeyType();
+    PCollection<K> hotKeys = hotKeys(left, sampleSize, hotKeyFraction);
+
+    HotKeys<K> hot;
+    ParallelDoOptions.Builder optionsBuilder = ParallelDoOptions.builder();
+    Iterable<K> iterable = hotKeys.materialize();
+    if (iterable instanceof MaterializableIterable) {
+      MaterializableIterable<K> mi = (MaterializableIterable<K>) iterable;
+      hot = new HotKeys<K>(mi.getPath().toString(), keyType);
+      if (mi.isSourceTarget()) {
+        optionsBuilder.sourceTargets((SourceTarget) mi.getSource());
+      }
+    } else { // in-memory pipeline
+      hot = new HotKeys<K>(Sets.newHashSet(iterable));
+    }
+    ParallelDoOptions options = optionsBuilder.build();
+
+    PType<Pair<K, Integer>> saltedKeyType = ptf.pairs(keyType, ptf.ints());
+    PTable<Pair<K, Integer>, U> saltedLeft = left.parallelDo("skewJoinSplitLeft",
+        new SplitFn<K, U>(hot, shards), ptf.tableOf(saltedKeyType, left.getValueType()), options);
+    PTable<Pair<K, Integer>, V> saltedRight = right.parallelDo("skewJoinCopyRight",
+        new CopyFn<K, V>(hot, shards), ptf.tableOf(saltedKeyType, right.getValueType()), options);
+
+    // The right side is buffered, since each shard gets all of its values
+    // for a key but only some of the left side's.
+    PTable<Pair<K, Integer>, Pair<V, U>> joined = Join.join(saltedRight, saltedLeft,
+        new InnerJoinFn<Pair<K, Integer>, V, U>(saltedKeyType, right.getValueType()));
+    PTableType<K, Pair<U, V>> ret = ptf.tableOf(keyType, ptf.pairs(left.getValueType(), right.getValueType()));
+    return joined.parallelDo("skewJoinUnsalt",
+        new MapFn<Pair<Pair<K, Integer>, Pair<V, U>>, Pair<K, Pair<U, V>>>() {
+          @Override
+          public Pair<K, Pair<U, V>> map(Pair<Pair<K, Integer>, Pair<V, U>> input) {
+            Pair<V, U> values = input.second();
+            return Pair.of(input.first().first(), Pair.of(values.second(), values.first()));
+          }
+        }, ret);
+  }
+
+  /**
+   * Returns the keys that make up at least the given fraction of a sample of
+   * the keys of the given table.
+   */
+  static <K, U> PCollection<K> hotKeys(PTable<K, U> table, int sampleSize, double hotKeyFraction) {
+    final long minCount = Math.max(2L, (long) Math.ceil(sampleSize * hotKeyFraction));
+    PTable<K, Long> counts = Aggregate.count(Sample.reservoirSample(table.keys(), sampleSize));
+    return counts.filter("skewJoinHotKeys", new FilterFn<Pair<K, Long>>() {
+      @Override
+      public boolean accept(Pair<K, Long> input) {
+        return input.second() >= minCount;
+      }
+    }).keys();
+  }
+
+  /**
+   * The hot keys of a join, which are either read from the distributed cache
+   * or, for in-memory pipelines, held directly.
+   */
+  static class HotKeys<K> implements Serializable {
+    private final String path;
+    private final PType<K> keyType;
+    private Set<K> keys;
+
+    public HotKeys(String path, PType<K> keyType) {
+      this.path = path;
+      this.keyType = keyType;
+    }
+
+    public HotKeys(Set<K> keys) {
+      this.path = null;
+      this.keyType = null;
+      this.keys = keys;
+    }
+
+    public void configure(Configuration conf) {
+      if (path != null) {
+        DistCache.addCacheFile(new Path(path), conf);
+      }
+    }
+
+    public void initialize(Configuration conf) {
+      if (path == null || keys != null) {
+        return;
+      }
+      Path local = DistCache.getPathToCacheFile(new Path(path), conf);
+      if (local == null) {
+        throw new CrunchRuntimeException("Can't find local cache file for '" + path + "'");
+      }
+      keyType.initialize(conf);
+      ReadableSourceTarget<K> source = keyType.getDefaultFileSource(local);
+      keys = Sets.newHashSet();
+      try {
+        for (K key : source.read(conf)) {
+          keys.add(keyType.getDetachedValue(key));
+        }
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Error reading hot keys of skew join: ", e);
+      }
+    }
+
+    public boolean contains(K key) {
+      return keys.contains(key);
+    }
+  }
+
+  private abstract static class SaltFn<K, T> extends DoFn<Pair<K, T>, Pair<Pair<K, Integer>, T>> {
+    protected final HotKeys<K> hotKeys;
+    protected final int shards;
+
+    protected SaltFn(HotKeys<K> hotKeys, int shards) {
+      this.hotKeys = hotKeys;
+      this.shards = shards;
+    }
+
+    @Override
+    public void configure(Configuration conf) {
+      hotKeys.configure(conf);
+    }
+
+    @Override
+    public void initialize() {
+      hotKeys.initialize(getConfiguration());
+    }
+  }
+
+  /**
+   * Sends each left-side value of a hot key to a random shard.
+   */
+  static class SplitFn<K, U> extends SaltFn<K, U> {
+    private transient Random random;
+
+    public SplitFn(HotKeys<K> hotKeys, int shards) {
+      super(hotKeys, shards);
+    }
+
+    @Override
+    public void initialize() {
+      super.initialize();
+      random = new Random();
+    }
+
+    @Override
+    public void process(Pair<K, U> input, Emitter<Pair<Pair<K, Integer>, U>> emitter) {
+      int shard = hotKeys.contains(input.first()) ? random.nextInt(shards) : 0;
+      emitter.emit(Pair.of(Pair.of(input.first(), shard), input.second()));
+    }
+  }
+
+  /**
+   * Copies each right-side value of a hot key to every shard.
+   */
+  static class CopyFn<K, V> extends SaltFn<K, V> {
+
+    public CopyFn(HotKeys<K> hotKeys, int shards) {
+      super(hotKeys, shards);
+    }
+
+    @Override
+    public void process(Pair<K, V> input, Emitter<Pair<Pair<K, Integer>, V>> emitter) {
+      if (hotKeys.contains(input.first())) {
+        for (int shard = 0; shard < shards; shard++) {
+          emitter.emit(Pair.of(Pair.of(input.first(), shard), input.second()));
+        }
+      } else {
+        emitter.emit(Pair.of(Pair.of(input.first(), 0), input.second()));
+      }
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.types.PType;
+import org.apache.hadoop.conf.Configuration;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+/**
+ * The values of one side of a join for a single key. At most
+ * {@link JoinFn#SPILL_THRESHOLD} values are kept on the heap; the rest are
+ * serialized with their {@link PType} to a local file, which is read back each
+ * time the values are iterated over.
+ * <p>
+ * Values must be added before they are iterated over, and must be detached
+ * from any object that the caller reuses. An iteration over spilled values
+ * that stops before reaching the end leaves the spill file open until
+ * {@link #closeIterators()}, {@link #clear()} or {@link #close()} is called.
+ */
+class SpillableValues<T> implements Iterable<T> {
+
+  private static final Log LOG = LogFactory.getLog(SpillableValues.class);
+
+  private final PType<T> ptype;
+  private final Configuration conf;
+  private final int threshold;
+  private final File spillDir;
+  private final List<T> values = Lists.newArrayList();
+  private final List<SpillIterator> openIterators = Lists.newArrayList();
+
+  private ValueSerializer<T> serializer;
+  private File spillFile;
+  private DataOutputStream out;
+  private int spilled;
+
+  public SpillableValues(PType<T> ptype, Configuration conf) {
+    this.ptype = ptype;
+    this.conf = conf;
+    this.threshold = conf.getInt(JoinFn.SPILL_THRESHOLD, JoinFn.DEFAULT_SPILL_THRESHOLD);
+    String dir = conf.get(JoinFn.SPILL_DIR);
+    this.spillDir = dir == null ? null : new File(dir);
+  }
+
+  public void add(T value) {
+    if (values.size() < threshold) {
+      values.add(value);
+      return;
+    }
+    try {
+      if (out == null) {
+        openSpill();
+      }
+      serializer.write(value, out);
+      spilled++;
+    } catch (IOException e) {
+      throw new CrunchRuntimeException("Could not spill join values to " + spillFile, e);
+    }
+  }
+
+  private void openSpill() throws IOException {
+    if (serializer == null) {
+      serializer = ValueSerializer.create(ptype, conf);
+    }
+    if (spillFile == null) {
+      spillFile = File.createTempFile("crunch-join-", ".spill", spillDir);
+      spillFile.deleteOnExit();
+      LOG.info("Spilling join values beyond the first " + threshold + " of a key to " + spillFile);
+    }
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+  }
+
+  public boolean isEmpty() {
+    return values.isEmpty() && spilled == 0;
+  }
+
+  /**
+   * Discards all of the values, so that the values of the next key can be
+   * added. The spill file is kept and overwritten by the next spill.
+   */
+  public void clear() {
+    values.clear();
+    closeIterators();
+    closeSpill();
+    spilled = 0;
+  }
+
+  private void closeSpill() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new CrunchRuntimeException(e);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Closes the spill file for the iterators that haven't reached the end of
+   * the spilled values, which then return no more values.
+   */
+  public void closeIterators() {
+    while (!openIterators.isEmpty()) {
+      openIterators.get(openIterators.size() - 1).close();
+    }
+  }
+
+  /**
+   * Discards all of the values and deletes the spill file.
+   */
+  public void close() {
+    clear();
+    if (spillFile != null) {
+      spillFile.delete();
+      spillFile = null;
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (spilled == 0) {
+      return values.iterator();
+    }
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new CrunchRuntimeException(e);
+    }
+    return Iterators.concat(values.iterator(), new SpillIterator(spilled));
+  }
+
+  /**
+   * Reads the spilled values back from disk, one at a time.
+   */
+  private class SpillIterator extends AbstractIterator<T> implements Closeable {
+    private final int count;
+    private DataInputStream in;
+    private int read;
+
+    public SpillIterator(int count) {
+      this.count = count;
+    }
+
+    @Override
+    protected T computeNext() {
+      if (read == count) {
+        close();
+        return endOfData();
+      }
+      try {
+        if (in == null) {
+          in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+          openIterators.add(this);
+        }
+        read++;
+        return serializer.read(in);
+      } catch (IOException e) {
+        throw new CrunchRuntimeException("Could not read spilled join values from " + spillFile, e);
+      }
+    }
+
+    @Override
+    public void close() {
+      read = count;
+      if (in != null) {
+        openIterators.remove(this);
+        try {
+          in.close();
+        } catch (IOException e) {
+          throw new CrunchRuntimeException(e);
+        } finally {
+          in = null;
+        }
+      }
+    }
+  }
+}
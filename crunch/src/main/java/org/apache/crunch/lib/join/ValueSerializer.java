@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeSerializer;
+import org.apache.crunch.types.avro.AvroType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.WritableType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Writes the values of a {@link PType} to and reads them from local files, in
+ * the binary format of their writables or Avro datums.
+ */
+abstract class ValueSerializer<T> {
+
+  public static <T> ValueSerializer<T> create(PType<T> ptype, Configuration conf) {
+    if (ptype instanceof WritableType) {
+      return new WritableValueSerializer<T>((WritableType<T, ?>) ptype, conf);
+    } else if (ptype instanceof AvroType) {
+      return new AvroValueSerializer<T>((AvroType<T>) ptype, conf);
+    }
+    throw new IllegalStateException("Cannot serialize join values of type " + ptype);
+  }
+
+  protected final MapFn<Object, T> inputFn;
+  private final PTypeSerializer<T> serializer;
+
+  protected ValueSerializer(PType<T> ptype, Configuration conf) {
+    this.inputFn = ptype.getInputMapFn();
+    inputFn.initialize();
+    this.serializer = new PTypeSerializer<T>(ptype);
+    serializer.initialize(conf);
+  }
+
+  public void write(T value, DataOutputStream out) throws IOException {
+    serializer.write(value, out);
+  }
+
+  public abstract T read(DataInputStream in) throws IOException;
+
+  private static class WritableValueSerializer<T> extends ValueSerializer<T> {
+    private final Class<? extends Writable> writableClass;
+    private final Configuration conf;
+    private final boolean immutable;
+    private Writable reused;
+
+    public WritableValueSerializer(WritableType<T, ?> ptype, Configuration conf) {
+      super(ptype, conf);
+      this.writableClass = ptype.getSerializationClass();
+      this.conf = conf;
+      this.immutable = ptype.isImmutable();
+    }
+
+    @Override
+    public T read(DataInputStream in) throws IOException {
+      // Values of immutable types don't refer to the writable they were read
+      // from, so the writable can be reused.
+      Writable writable = reused;
+      if (writable == null) {
+        writable = ReflectionUtils.newInstance(writableClass, conf);
+        if (immutable) {
+          reused = writable;
+        }
+      }
+      writable.readFields(in);
+      return inputFn.map(writable);
+    }
+  }
+
+  private static class AvroValueSerializer<T> extends ValueSerializer<T> {
+    private final DatumReader<Object> reader;
+    private BinaryDecoder decoder;
+
+    public AvroValueSerializer(AvroType<T> ptype, Configuration conf) {
+      super(ptype, conf);
+      if (ptype.hasReflect()) {
+        this.reader = Avros.getReflectDataFactory(conf).getReader(ptype.getSchema());
+      } else {
+        this.reader = new SpecificDatumReader<Object>(ptype.getSchema());
+      }
+    }
+
+    @Override
+    public T read(DataInputStream in) throws IOException {
+      decoder = DecoderFactory.get().directBinaryDecoder(in, decoder);
+      return inputFn.map(reader.read(null, decoder));
+    }
+  }
+}
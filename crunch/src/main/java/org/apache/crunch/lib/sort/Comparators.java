@@ -26,7 +26,6 @@ import org.apache.avro.reflect.ReflectData;
 import org.apache.crunch.lib.Sort.ColumnOrder;
 import org.apache.crunch.lib.Sort.Order;
 import org.apache.crunch.types.writable.TupleWritable;
-import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.io.RawComparator;
@@ -92,17 +91,16 @@ public class Comparators {
     }
   }
 
-  public static class TupleWritableComparator extends WritableComparator implements Configurable {
+  /**
+   * Compares {@code TupleWritable} keys by the configured column orders. Keys
+   * that can be compared in place are compared without deserializing them.
+   */
+  public static class TupleWritableComparator extends TupleWritable.Comparator {
 
     private static final String CRUNCH_ORDERING_PROPERTY = "crunch.ordering";
 
-    private Configuration conf;
     private ColumnOrder[] columnOrders;
 
-    public TupleWritableComparator() {
-      super(TupleWritable.class, true);
-    }
-
     public static void configureOrdering(Configuration conf, Order... orders) {
       conf.set(CRUNCH_ORDERING_PROPERTY,
           Joiner.on(",").join(Iterables.transform(Arrays.asList(orders), new Function<Order, String>() {
@@ -163,24 +161,26 @@ public class Comparators {
       return 0; // ordering using specified cols found no differences
     }
 
-    @Override
-    public Configuration getConf() {
-      return conf;
-    }
-
     @Override
     public void setConf(Configuration conf) {
-      this.conf = conf;
+      super.setConf(conf);
       if (conf != null) {
         String ordering = conf.get(CRUNCH_ORDERING_PROPERTY);
         String[] columnOrderNames = ordering.split(",");
         columnOrders = new ColumnOrder[columnOrderNames.length];
+        int[] fieldOrders = new int[columnOrderNames.length];
         for (int i = 0; i < columnOrders.length; i++) {
           String[] split = columnOrderNames[i].split(";");
           int column = Integer.parseInt(split[0]);
           Order order = Order.valueOf(split[1]);
           columnOrders[i] = ColumnOrder.by(column, order);
+          if (order == Order.ASCENDING) {
+            fieldOrders[i] = 1;
+          } else if (order == Order.DESCENDING) {
+            fieldOrders[i] = -1;
+          }
         }
+        setFieldOrders(fieldOrders);
       }
     }
   }
@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types;
+
+/**
+ * Implemented by {@link PType}s that know whether their values can be modified once they are
+ * created. {@code PType}s that don't implement it are treated as having mutable values.
+ * 
+ * @see PTypeUtils#isImmutable(PType)
+ */
+public interface ImmutabilityAware {
+
+  /**
+   * Returns true if values of this type can't be modified once they are created, in which case
+   * {@link PType#getDetachedValue(Object)} returns the value itself instead of a copy.
+   */
+  boolean isImmutable();
+}
@@ -73,6 +73,19 @@ public abstract class PGroupedTableType<K, V> implements PType<Pair<K, Iterable<
     }
   }
 
+  /**
+   * Returns the serialized values that the given grouped values are read from,
+   * if they are read with a function of the same class as the given input map
+   * function, or null otherwise. This lets functions that know how a PType
+   * serializes its values read them without creating objects for them.
+   */
+  public static Iterable<Object> getSerializedValues(Iterable<?> values, MapFn<?, ?> inputFn) {
+    if (values instanceof PTypeIterable && ((PTypeIterable<?>) values).mapFn.getClass() == inputFn.getClass()) {
+      return ((PTypeIterable<?>) values).iterable;
+    }
+    return null;
+  }
+
   public static class PairIterableMapFn<K, V> extends MapFn<Pair<Object, Iterable<Object>>, Pair<K, Iterable<V>>> {
     private final MapFn<Object, K> keys;
     private final MapFn<Object, V> values;
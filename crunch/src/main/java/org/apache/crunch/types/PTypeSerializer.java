@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.types.avro.AvroType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.WritableType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Writes values of a {@link PType} in the binary format of their writables or
+ * Avro datums, which is the format they are shuffled and stored in. Equal
+ * values are written as equal bytes in every task.
+ * 
+ * @param <T> The type of value that will be written
+ */
+public class PTypeSerializer<T> implements Serializable {
+
+  private final PType<T> ptype;
+  private transient MapFn<T, Object> outputFn;
+  private transient DatumWriter<Object> datumWriter;
+  private transient BinaryEncoder encoder;
+
+  public PTypeSerializer(PType<T> ptype) {
+    this.ptype = ptype;
+  }
+
+  /**
+   * Initialize the serializer with a job-specific configuration
+   * 
+   * @param conf Job-specific configuration
+   * @throws IllegalStateException if the values are neither writables nor Avro
+   *     datums
+   */
+  public void initialize(Configuration conf) {
+    ptype.initialize(conf);
+    outputFn = ptype.getOutputMapFn();
+    outputFn.initialize();
+    if (ptype instanceof AvroType) {
+      datumWriter = Avros.getReflectDataFactory(conf).getWriter(((AvroType<T>) ptype).getSchema());
+    } else if (!(ptype instanceof WritableType)) {
+      throw new IllegalStateException("Cannot serialize values of type " + ptype);
+    }
+  }
+
+  /**
+   * Writes a value to the given stream.
+   * 
+   * @param value The value to be written
+   * @param out The stream to write it to
+   */
+  public void write(T value, DataOutputStream out) throws IOException {
+    Object output = outputFn.map(value);
+    if (datumWriter != null) {
+      encoder = EncoderFactory.get().directBinaryEncoder(out, encoder);
+      datumWriter.write(output, encoder);
+    } else {
+      ((Writable) output).write(out);
+    }
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.crunch.types;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.crunch.Pair;
 import org.apache.crunch.Tuple;
@@ -26,6 +27,8 @@ import org.apache.crunch.Tuple3;
 import org.apache.crunch.Tuple4;
 import org.apache.crunch.TupleN;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * Utilities for converting between {@code PType}s from different
  * {@code PTypeFamily} implementations.
@@ -33,6 +36,12 @@ import org.apache.crunch.TupleN;
  */
 public class PTypeUtils {
 
+  private static final Set<Class<?>> IMMUTABLE_CLASSES = ImmutableSet.<Class<?>> of(String.class, Boolean.class,
+      Integer.class, Long.class, Float.class, Double.class, Void.class);
+
+  private static final Set<Class<?>> TUPLE_CLASSES = ImmutableSet.<Class<?>> of(Pair.class, Tuple3.class,
+      Tuple4.class, TupleN.class);
+
   public static <T> PType<T> convert(PType<T> ptype, PTypeFamily tf) {
     if (ptype instanceof PTableType) {
       PTableType ptt = (PTableType) ptype;
@@ -61,6 +70,37 @@ public class PTypeUtils {
     return tf.records(typeClass);
   }
 
+  /**
+   * Returns true if the given {@code PType} is {@link ImmutabilityAware} and its values can't be
+   * modified once they are created.
+   */
+  public static boolean isImmutable(PType<?> ptype) {
+    return ptype instanceof ImmutabilityAware && ((ImmutabilityAware) ptype).isImmutable();
+  }
+
+  /**
+   * Returns true if values of the given class can't be modified once they are created, as is
+   * the case for boxed primitives, strings and Crunch's own tuples of immutable values.
+   * 
+   * @param typeClass The class of the values of a {@code PType}
+   * @param subTypes The subtypes of the {@code PType}
+   * @see ImmutabilityAware#isImmutable()
+   */
+  public static boolean isImmutable(Class<?> typeClass, List<PType> subTypes) {
+    if (IMMUTABLE_CLASSES.contains(typeClass)) {
+      return true;
+    }
+    if (TUPLE_CLASSES.contains(typeClass)) {
+      for (PType<?> subType : subTypes) {
+        if (!isImmutable(subType)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
   private PTypeUtils() {
   }
 }
@@ -23,6 +23,7 @@ import java.util.UUID;
 
 import org.apache.crunch.CrunchRuntimeException;
 import org.apache.crunch.MapFn;
+import org.apache.crunch.util.QuantileSketch;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.thrift.TBase;
 import org.apache.thrift.TDeserializer;
@@ -49,6 +50,10 @@ public class PTypes {
     return ptf.derived(UUID.class, BYTE_TO_UUID, UUID_TO_BYTE, ptf.bytes());
   }
   
+  public static PType<QuantileSketch> quantileSketches(PTypeFamily ptf) {
+    return ptf.derived(QuantileSketch.class, BYTE_TO_QUANTILE_SKETCH, QUANTILE_SKETCH_TO_BYTE, ptf.bytes());
+  }
+
   public static <T> PType<T> jsonString(Class<T> clazz, PTypeFamily typeFamily) {
     return typeFamily
         .derived(clazz, new JacksonInputMapFn<T>(clazz), new JacksonOutputMapFn<T>(), typeFamily.strings());
@@ -78,6 +83,18 @@ public class PTypes {
     }
   };
 
+  public static MapFn<ByteBuffer, QuantileSketch> BYTE_TO_QUANTILE_SKETCH = new MapFn<ByteBuffer, QuantileSketch>() {
+    public QuantileSketch map(ByteBuffer input) {
+      return input == null ? null : QuantileSketch.fromByteBuffer(input);
+    }
+  };
+
+  public static MapFn<QuantileSketch, ByteBuffer> QUANTILE_SKETCH_TO_BYTE = new MapFn<QuantileSketch, ByteBuffer>() {
+    public ByteBuffer map(QuantileSketch input) {
+      return input == null ? null : input.toByteBuffer();
+    }
+  };
+
   private static class JacksonInputMapFn<T> extends MapFn<String, T> {
 
     private final Class<T> clazz;
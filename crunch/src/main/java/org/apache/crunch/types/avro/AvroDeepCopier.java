@@ -31,6 +31,7 @@ import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.crunch.CrunchRuntimeException;
@@ -38,7 +39,9 @@ import org.apache.crunch.types.DeepCopier;
 import org.apache.hadoop.conf.Configuration;
 
 /**
- * Performs deep copies of Avro-serializable objects.
+ * Performs deep copies of Avro-serializable objects. Generic and specific
+ * records are copied datum by datum; reflect-based objects are serialized and
+ * deserialized through a reused buffer.
  * <p>
  * <b>Warning:</b> Methods in this class are not thread-safe. This shouldn't be a problem when
  * running in a map-reduce context where each mapper/reducer is running in its own JVM, but it may
@@ -51,10 +54,20 @@ abstract class AvroDeepCopier<T> implements DeepCopier<T>, Serializable {
   private transient Schema schema;
   private BinaryEncoder binaryEncoder;
   private BinaryDecoder binaryDecoder;
+  private transient BufferOutputStream byteOutStream;
 
   private transient DatumWriter<T> datumWriter;
   private transient DatumReader<T> datumReader;
 
+  /**
+   * A {@code ByteArrayOutputStream} whose buffer can be read without copying it.
+   */
+  private static class BufferOutputStream extends ByteArrayOutputStream {
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
   public AvroDeepCopier(Schema schema) {
     this.jsonSchema = schema.toString();
   }
@@ -104,6 +117,10 @@ abstract class AvroDeepCopier<T> implements DeepCopier<T>, Serializable {
       return new SpecificDatumReader<T>(getSchema());
     }
 
+    @Override
+    public T deepCopy(T source) {
+      return (T) SpecificData.get().deepCopy(getSchema(), source);
+    }
   }
 
   /**
@@ -131,6 +148,11 @@ abstract class AvroDeepCopier<T> implements DeepCopier<T>, Serializable {
     protected DatumWriter<Record> createDatumWriter(Configuration conf) {
       return new GenericDatumWriter<Record>(getSchema());
     }
+
+    @Override
+    public Record deepCopy(Record source) {
+      return (Record) GenericData.get().deepCopy(getSchema(), source);
+    }
   }
 
   /**
@@ -180,14 +202,17 @@ abstract class AvroDeepCopier<T> implements DeepCopier<T>, Serializable {
     if (datumWriter == null) {
       datumWriter = createDatumWriter(conf);
     }
-    ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+    if (byteOutStream == null) {
+      byteOutStream = new BufferOutputStream();
+    }
+    byteOutStream.reset();
     binaryEncoder = EncoderFactory.get().binaryEncoder(byteOutStream, binaryEncoder);
     T target = createCopyTarget();
     try {
       datumWriter.write(source, binaryEncoder);
       binaryEncoder.flush();
       binaryDecoder = DecoderFactory.get()
-          .binaryDecoder(byteOutStream.toByteArray(), binaryDecoder);
+          .binaryDecoder(byteOutStream.getBuffer(), 0, byteOutStream.size(), binaryDecoder);
       datumReader.read(target, binaryDecoder);
     } catch (Exception e) {
       throw new CrunchRuntimeException("Error while deep copying avro value " + source, e);
@@ -25,6 +25,7 @@ import org.apache.crunch.lib.PTables;
 import org.apache.crunch.types.PGroupedTableType;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeUtils;
 import org.apache.crunch.types.TupleDeepCopier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
@@ -148,4 +149,9 @@ class AvroTableType<K, V> extends AvroType<Pair<K, V>> implements PTableType<K,
   public Pair<K, V> getDetachedValue(Pair<K, V> value) {
     return PTables.getDetachedValue(this, value);
   }
+
+  @Override
+  public boolean isImmutable() {
+    return PTypeUtils.isImmutable(getKeyType()) && PTypeUtils.isImmutable(getValueType());
+  }
 }
@@ -29,8 +29,10 @@ import org.apache.crunch.io.ReadableSourceTarget;
 import org.apache.crunch.io.avro.AvroFileSourceTarget;
 import org.apache.crunch.types.Converter;
 import org.apache.crunch.types.DeepCopier;
+import org.apache.crunch.types.ImmutabilityAware;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypeUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 
@@ -42,7 +44,7 @@ import com.google.common.collect.Lists;
  * The implementation of the PType interface for Avro-based serialization.
  * 
  */
-public class AvroType<T> implements PType<T> {
+public class AvroType<T> implements PType<T>, ImmutabilityAware {
 
   private static final Converter AVRO_CONVERTER = new AvroKeyConverter();
 
@@ -53,6 +55,7 @@ public class AvroType<T> implements PType<T> {
   private final MapFn baseOutputMapFn;
   private final List<PType> subTypes;
   private DeepCopier<T> deepCopier;
+  private final boolean immutable;
   private boolean initialized = false;
 
   public AvroType(Class<T> typeClass, Schema schema, DeepCopier<T> deepCopier, PType... ptypes) {
@@ -68,6 +71,7 @@ public class AvroType<T> implements PType<T> {
     this.baseOutputMapFn = outputMapFn;
     this.deepCopier = deepCopier;
     this.subTypes = ImmutableList.<PType> builder().add(ptypes).build();
+    this.immutable = PTypeUtils.isImmutable(typeClass, this.subTypes);
   }
 
   @Override
@@ -176,9 +180,17 @@ public class AvroType<T> implements PType<T> {
     if (!initialized) {
       throw new IllegalStateException("Cannot call getDetachedValue on an uninitialized PType");
     }
+    if (immutable) {
+      return value;
+    }
     return deepCopier.deepCopy(value);
   }
 
+  @Override
+  public boolean isImmutable() {
+    return immutable;
+  }
+
   @Override
   public boolean equals(Object other) {
     if (other == null || !(other instanceof AvroType)) {
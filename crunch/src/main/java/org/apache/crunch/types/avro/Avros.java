@@ -54,6 +54,7 @@ import org.apache.crunch.types.PTypes;
 import org.apache.crunch.types.TupleDeepCopier;
 import org.apache.crunch.types.TupleFactory;
 import org.apache.crunch.types.writable.WritableDeepCopier;
+import org.apache.crunch.util.QuantileSketch;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
@@ -630,6 +631,14 @@ public class Avros {
     return PTypes.jsonString(clazz, AvroTypeFamily.getInstance());
   }
 
+  /**
+   * Returns a PType for {@link QuantileSketch}es, which are stored in their
+   * serialized form so that they can be merged again when they're read.
+   */
+  public static PType<QuantileSketch> quantileSketches() {
+    return PTypes.quantileSketches(AvroTypeFamily.getInstance());
+  }
+
   public static final <K, V> AvroTableType<K, V> tableOf(PType<K> key, PType<V> value) {
     if (key instanceof PTableType) {
       PTableType ptt = (PTableType) key;
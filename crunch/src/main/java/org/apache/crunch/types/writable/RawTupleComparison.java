@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types.writable;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compares the serialized fields of two compact {@link TupleWritable}s in
+ * place, without deserializing them or allocating objects.
+ */
+final class RawTupleComparison {
+
+  /**
+   * Returned when two tuples can't be compared in place, e.g. because one of
+   * them is self-describing, their schemas differ or one of their fields has a
+   * class whose serialized length isn't known here.
+   */
+  static final long UNKNOWN = Long.MIN_VALUE;
+
+  /**
+   * Finds the length of one serialized field and compares two of them.
+   */
+  private abstract static class RawField {
+    /**
+     * Returns the length of the field that starts at the given offset, or -1
+     * if it can't be determined.
+     */
+    abstract int length(byte[] b, int s) throws IOException;
+
+    abstract long compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2);
+  }
+
+  private static class FixedLengthField extends RawField {
+    private final int length;
+    private final RawComparator<?> comparator;
+
+    FixedLengthField(int length, Class<? extends WritableComparable> writableClass) {
+      this.length = length;
+      this.comparator = WritableComparator.get(writableClass);
+    }
+
+    @Override
+    int length(byte[] b, int s) {
+      return length;
+    }
+
+    @Override
+    long compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return comparator.compare(b1, s1, l1, b2, s2, l2);
+    }
+  }
+
+  private static final RawField TEXT = new RawField() {
+    private final RawComparator<?> comparator = WritableComparator.get(Text.class);
+
+    @Override
+    int length(byte[] b, int s) throws IOException {
+      return WritableUtils.decodeVIntSize(b[s]) + WritableComparator.readVInt(b, s);
+    }
+
+    @Override
+    long compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return comparator.compare(b1, s1, l1, b2, s2, l2);
+    }
+  };
+
+  private static final RawField BYTES = new RawField() {
+    private final RawComparator<?> comparator = WritableComparator.get(BytesWritable.class);
+
+    @Override
+    int length(byte[] b, int s) {
+      return 4 + WritableComparator.readInt(b, s);
+    }
+
+    @Override
+    long compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return comparator.compare(b1, s1, l1, b2, s2, l2);
+    }
+  };
+
+  /**
+   * A nested tuple, which is compared in its natural order.
+   */
+  private static final RawField TUPLE = new RawField() {
+    private final SchemaCache schemas = new SchemaCache();
+
+    @Override
+    int length(byte[] b, int s) throws IOException {
+      if (b[s] != TupleWritable.COMPACT) {
+        return -1;
+      }
+      RawSchema schema = schemas.get(WritableComparator.readInt(b, s + 1));
+      if (schema == null || schema.knownFields < schema.fields.length) {
+        return -1;
+      }
+      long written = WritableComparator.readVLong(b, s + 5);
+      int p = s + 5 + WritableUtils.decodeVIntSize(b[s + 5]);
+      for (int i = 0; i < schema.fields.length; i++) {
+        if (has(written, i)) {
+          int length = schema.fields[i].length(b, p);
+          if (length < 0) {
+            return -1;
+          }
+          p += length;
+        }
+      }
+      return p - s;
+    }
+
+    @Override
+    long compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return compareCompact(b1, s1, b2, s2, null, schemas);
+    }
+  };
+
+  private static final Map<Class<?>, RawField> FIELDS = ImmutableMap.<Class<?>, RawField> builder()
+      .put(BooleanWritable.class, new FixedLengthField(1, BooleanWritable.class))
+      .put(ByteWritable.class, new FixedLengthField(1, ByteWritable.class))
+      .put(IntWritable.class, new FixedLengthField(4, IntWritable.class))
+      .put(FloatWritable.class, new FixedLengthField(4, FloatWritable.class))
+      .put(LongWritable.class, new FixedLengthField(8, LongWritable.class))
+      .put(DoubleWritable.class, new FixedLengthField(8, DoubleWritable.class))
+      .put(NullWritable.class, new FixedLengthField(0, NullWritable.class))
+      .put(Text.class, TEXT)
+      .put(BytesWritable.class, BYTES)
+      .put(TupleWritable.class, TUPLE)
+      .build();
+
+  /**
+   * The raw fields of a registered tuple schema.
+   */
+  private static final class RawSchema {
+    private final int id;
+    private final RawField[] fields;
+    /** The number of leading fields that can be compared in place. */
+    private final int knownFields;
+
+    private RawSchema(int id, Class<? extends Writable>[] fieldClasses) {
+      this.id = id;
+      this.fields = new RawField[fieldClasses.length];
+      int known = 0;
+      while (known < fieldClasses.length && FIELDS.containsKey(fieldClasses[known])) {
+        fields[known] = FIELDS.get(fieldClasses[known]);
+        known++;
+      }
+      this.knownFields = known;
+    }
+  }
+
+  /**
+   * Remembers the last schema looked up, so that comparing keys of the same
+   * schema doesn't box their ids. The cached schema is immutable, so sharing a
+   * cache among threads is safe.
+   */
+  static final class SchemaCache {
+    private RawSchema last;
+
+    RawSchema get(int id) {
+      RawSchema schema = last;
+      if (schema == null || schema.id != id) {
+        Class<? extends Writable>[] fieldClasses = TupleWritable.getFieldClasses(id);
+        if (fieldClasses == null) {
+          return null;
+        }
+        schema = new RawSchema(id, fieldClasses);
+        last = schema;
+      }
+      return schema;
+    }
+  }
+
+  private RawTupleComparison() {
+  }
+
+  private static boolean has(long written, int i) {
+    return 0 != ((1 << i) & written);
+  }
+
+  /**
+   * Compares two serialized tuples field by field, in the same way as
+   * {@link TupleWritable#compareTo(TupleWritable)} when {@code fieldOrders} is
+   * null, or otherwise using the given order for each field: 1 for ascending,
+   * -1 for descending and 0 to ignore the field. Fields past the end of
+   * {@code fieldOrders} are not compared.
+   *
+   * @return the result of the comparison, or {@link #UNKNOWN} if the tuples
+   *         can't be compared in place
+   */
+  static long compareCompact(byte[] b1, int s1, byte[] b2, int s2, int[] fieldOrders, SchemaCache schemas) {
+    if (b1[s1] != TupleWritable.COMPACT || b2[s2] != TupleWritable.COMPACT) {
+      return UNKNOWN;
+    }
+    int id = WritableComparator.readInt(b1, s1 + 1);
+    if (id != WritableComparator.readInt(b2, s2 + 1)) {
+      return UNKNOWN;
+    }
+    RawSchema schema = schemas.get(id);
+    if (schema == null) {
+      return UNKNOWN;
+    }
+    int fields = fieldOrders == null ? schema.fields.length : Math.min(fieldOrders.length, schema.fields.length);
+    if (schema.knownFields < fields) {
+      return UNKNOWN;
+    }
+    try {
+      long written1 = WritableComparator.readVLong(b1, s1 + 5);
+      long written2 = WritableComparator.readVLong(b2, s2 + 5);
+      int p1 = s1 + 5 + WritableUtils.decodeVIntSize(b1[s1 + 5]);
+      int p2 = s2 + 5 + WritableUtils.decodeVIntSize(b2[s2 + 5]);
+      for (int i = 0; i < fields; i++) {
+        RawField field = schema.fields[i];
+        boolean has1 = has(written1, i);
+        boolean has2 = has(written2, i);
+        int l1 = has1 ? field.length(b1, p1) : 0;
+        int l2 = has2 ? field.length(b2, p2) : 0;
+        if (l1 < 0 || l2 < 0) {
+          return UNKNOWN;
+        }
+        int order = fieldOrders == null ? 1 : fieldOrders[i];
+        if (order != 0) {
+          if (has1 && !has2) {
+            return order;
+          } else if (!has1 && has2) {
+            return -order;
+          } else if (has1) {
+            long cmp = field.compare(b1, p1, l1, b2, p2, l2);
+            if (cmp == UNKNOWN) {
+              return UNKNOWN;
+            } else if (cmp != 0) {
+              return order * (int) cmp;
+            }
+          }
+        }
+        p1 += l1;
+        p2 += l2;
+      }
+      return 0;
+    } catch (IOException e) {
+      return UNKNOWN;
+    }
+  }
+}
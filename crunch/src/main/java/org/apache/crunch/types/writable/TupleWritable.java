@@ -20,22 +20,69 @@ package org.apache.crunch.types.writable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * A straight copy of the TupleWritable implementation in the join package,
  * added here because of its package visibility restrictions.
- * 
+ * <p>
+ * The tuples that the tuple {@code PType}s in {@link Writables} write to the
+ * shuffle are written in a compact form that identifies the classes of their
+ * fields by a schema id instead of writing the name of each field's class with
+ * every record. The {@code PType}s list their field classes in the job
+ * configuration when they are configured, and tuples and their
+ * {@link Comparator} resolve schema ids from the configuration that they are
+ * given, so compact tuples can be read before any {@code PType} is
+ * initialized. Tuples that are written anywhere else, such as to output files,
+ * are written in the self-describing form. Reading a compact tuple reuses the
+ * field instances of the previous read.
  */
-public class TupleWritable implements WritableComparable<TupleWritable> {
+public class TupleWritable implements WritableComparable<TupleWritable>, Configurable {
+
+  /**
+   * The count that marks a tuple written in the compact form.
+   */
+  static final int COMPACT = -1;
+
+  /**
+   * The configuration key under which the field classes of compact tuples are
+   * listed.
+   */
+  static final String SCHEMAS_KEY = "crunch.tuplewritable.schemas";
 
+  private static final ConcurrentMap<Integer, Class<? extends Writable>[]> SCHEMAS = Maps.newConcurrentMap();
+  // The last list of schemas that was loaded from a configuration.
+  private static volatile String loadedSchemas;
+
+  static {
+    WritableComparator.define(TupleWritable.class, new Comparator());
+  }
+
+  private Configuration conf;
   private long written;
   private Writable[] values;
+  private Class<? extends Writable>[] fieldClasses;
+  private int schemaId;
+  private boolean compact;
 
   /**
    * Create an empty tuple with no allocated storage for writables.
@@ -52,6 +99,124 @@ public class TupleWritable implements WritableComparable<TupleWritable> {
     values = vals;
   }
 
+  /**
+   * Initialize tuple with storage for fields of the given classes, which lets
+   * a {@link #compactView(TupleWritable) compact view} of it be written in the
+   * compact form.
+   */
+  public TupleWritable(Writable[] vals, Class<? extends Writable>[] fieldClasses) {
+    this(vals);
+    if (fieldClasses != null) {
+      this.fieldClasses = fieldClasses;
+      this.schemaId = register(fieldClasses);
+    }
+  }
+
+  /**
+   * Registers the given field classes so that tuples written with them can be
+   * read in this JVM, and returns their schema id.
+   */
+  static int register(Class<? extends Writable>[] fieldClasses) {
+    int id = 17;
+    for (Class<? extends Writable> fieldClass : fieldClasses) {
+      id = 31 * id + fieldClass.getName().hashCode();
+    }
+    Class<? extends Writable>[] registered = SCHEMAS.putIfAbsent(id, fieldClasses);
+    if (registered != null && !Arrays.equals(registered, fieldClasses)) {
+      throw new IllegalStateException("TupleWritable schema id collision between " + Arrays.toString(registered)
+          + " and " + Arrays.toString(fieldClasses));
+    }
+    return id;
+  }
+
+  /**
+   * Returns the field classes registered for the given schema id, or null if
+   * none are registered in this JVM.
+   */
+  static Class<? extends Writable>[] getFieldClasses(int schemaId) {
+    return SCHEMAS.get(schemaId);
+  }
+
+  /**
+   * Registers the given field classes and lists them in the given
+   * configuration, so that tuples written with them can be read by the tasks
+   * of a job that is run with it.
+   */
+  static void addSchema(Configuration conf, Class<? extends Writable>[] fieldClasses) {
+    register(fieldClasses);
+    List<String> names = Lists.newArrayListWithCapacity(fieldClasses.length);
+    for (Class<? extends Writable> fieldClass : fieldClasses) {
+      names.add(fieldClass.getName());
+    }
+    String schema = Joiner.on(',').join(names);
+    String schemas = conf.get(SCHEMAS_KEY);
+    if (schemas == null || schemas.isEmpty()) {
+      conf.set(SCHEMAS_KEY, schema);
+    } else if (!Lists.newArrayList(Splitter.on(';').split(schemas)).contains(schema)) {
+      conf.set(SCHEMAS_KEY, schemas + ";" + schema);
+    }
+  }
+
+  /**
+   * Registers the field classes that are listed in the given configuration.
+   */
+  static void loadSchemas(Configuration conf) {
+    String schemas = conf.get(SCHEMAS_KEY);
+    if (schemas == null || schemas.equals(loadedSchemas)) {
+      return;
+    }
+    for (String schema : Splitter.on(';').omitEmptyStrings().split(schemas)) {
+      List<String> names = Lists.newArrayList(Splitter.on(',').split(schema));
+      @SuppressWarnings("unchecked")
+      Class<? extends Writable>[] fieldClasses = new Class[names.size()];
+      for (int i = 0; i < fieldClasses.length; i++) {
+        try {
+          fieldClasses[i] = conf.getClassByName(names.get(i)).asSubclass(Writable.class);
+        } catch (ClassNotFoundException e) {
+          throw new CrunchRuntimeException(e);
+        }
+      }
+      register(fieldClasses);
+    }
+    loadedSchemas = schemas;
+  }
+
+  /**
+   * Forgets every registered schema, for tests.
+   */
+  static void clearSchemas() {
+    SCHEMAS.clear();
+    loadedSchemas = null;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf != null) {
+      loadSchemas(conf);
+    }
+  }
+
+  /**
+   * Makes this tuple a view of the fields of the given one that is written in
+   * the compact form when the given tuple was created with the classes of its
+   * fields, along with any nested tuples that were. Compact views are only
+   * written to the shuffle, where the tasks that read them have the
+   * configuration that lists their schemas.
+   */
+  void compactView(TupleWritable tuple) {
+    this.values = tuple.values;
+    this.written = tuple.written;
+    this.fieldClasses = tuple.fieldClasses;
+    this.schemaId = tuple.schemaId;
+    this.compact = true;
+  }
+
   /**
    * Return true if tuple has an element at the position provided.
    */
@@ -123,10 +288,35 @@ public class TupleWritable implements WritableComparable<TupleWritable> {
   /**
    * Writes each Writable to <code>out</code>. TupleWritable format:
    * {@code
-   *  <count><type1><type2>...<typen><obj1><obj2>...<objn>
+   *  <count><written><type1><type2>...<typen><obj1><obj2>...<objn>
+   * }
+   * or, for a compact view of a tuple that knows the classes of its fields
+   * when every present field is of exactly that class:
+   * {@code
+   *  <-1><schema id><written><obj1><obj2>...<objn>
    * }
    */
   public void write(DataOutput out) throws IOException {
+    write(out, compact);
+  }
+
+  private void write(DataOutput out, boolean compact) throws IOException {
+    if (compact && isCompact()) {
+      WritableUtils.writeVInt(out, COMPACT);
+      out.writeInt(schemaId);
+      WritableUtils.writeVLong(out, written);
+      for (int i = 0; i < values.length; ++i) {
+        if (!has(i)) {
+          continue;
+        }
+        if (values[i] instanceof TupleWritable) {
+          ((TupleWritable) values[i]).write(out, true);
+        } else {
+          values[i].write(out);
+        }
+      }
+      return;
+    }
     WritableUtils.writeVInt(out, values.length);
     WritableUtils.writeVLong(out, written);
     for (int i = 0; i < values.length; ++i) {
@@ -148,6 +338,10 @@ public class TupleWritable implements WritableComparable<TupleWritable> {
   // No static typeinfo on Tuples
   public void readFields(DataInput in) throws IOException {
     int card = WritableUtils.readVInt(in);
+    if (card == COMPACT) {
+      readCompactFields(in);
+      return;
+    }
     values = new Writable[card];
     written = WritableUtils.readVLong(in);
     Class<? extends Writable>[] cls = new Class[card];
@@ -172,6 +366,41 @@ public class TupleWritable implements WritableComparable<TupleWritable> {
     }
   }
 
+  private boolean isCompact() {
+    if (fieldClasses == null || fieldClasses.length != values.length) {
+      return false;
+    }
+    for (int i = 0; i < values.length; ++i) {
+      if (has(i) && values[i].getClass() != fieldClasses[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void readCompactFields(DataInput in) throws IOException {
+    int id = in.readInt();
+    Class<? extends Writable>[] classes = SCHEMAS.get(id);
+    if (classes == null) {
+      throw new IOException("Unknown TupleWritable schema id " + id
+          + "; it is not listed in the configuration under " + SCHEMAS_KEY);
+    }
+    written = WritableUtils.readVLong(in);
+    if (values == null || values.length != classes.length) {
+      values = new Writable[classes.length];
+    }
+    for (int i = 0; i < classes.length; ++i) {
+      if (has(i)) {
+        if (values[i] == null || values[i].getClass() != classes[i]) {
+          values[i] = ReflectionUtils.newInstance(classes[i], null);
+        }
+        values[i].readFields(in);
+      }
+    }
+    fieldClasses = classes;
+    schemaId = id;
+  }
+
   /**
    * Record that the tuple contains an element at the position provided.
    */
@@ -221,4 +450,69 @@ public class TupleWritable implements WritableComparable<TupleWritable> {
     }
     return values.length - o.values.length;
   }
-}
\ No newline at end of file
+
+  /**
+   * A {@code RawComparator} for tuples. Two compact tuples of the same schema
+   * are compared field by field in place, using the raw comparators of the
+   * fields' classes; other tuples are deserialized and compared with
+   * {@link #compare(WritableComparable, WritableComparable)}.
+   */
+  public static class Comparator extends WritableComparator implements Configurable {
+
+    private final RawTupleComparison.SchemaCache schemas = new RawTupleComparison.SchemaCache();
+    private Configuration conf;
+    private int[] fieldOrders;
+
+    public Comparator() {
+      super(TupleWritable.class);
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    /**
+     * Registers the schemas listed in the given configuration, so that the
+     * compact tuples written by a job's tasks can be compared.
+     */
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+      if (conf != null) {
+        loadSchemas(conf);
+      }
+    }
+
+    /**
+     * Sets the orders of the fields to compare in place: 1 for ascending, -1
+     * for descending and 0 to ignore a field. Fields past the end of the given
+     * orders are not compared. By default, tuples are compared in place in the
+     * same way as {@link TupleWritable#compareTo(TupleWritable)}.
+     */
+    protected void setFieldOrders(int[] fieldOrders) {
+      this.fieldOrders = fieldOrders;
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      long cmp = RawTupleComparison.compareCompact(b1, s1, b2, s2, fieldOrders, schemas);
+      if (cmp != RawTupleComparison.UNKNOWN) {
+        return (int) cmp;
+      }
+      // Registered comparators are shared among threads, so nothing is reused here.
+      TupleWritable t1 = new TupleWritable();
+      TupleWritable t2 = new TupleWritable();
+      try {
+        DataInputBuffer buffer = new DataInputBuffer();
+        buffer.reset(b1, s1, l1);
+        t1.readFields(buffer);
+        buffer.reset(b2, s2, l2);
+        t2.readFields(buffer);
+      } catch (IOException e) {
+        throw new CrunchRuntimeException(e);
+      }
+      return compare(t1, t2);
+    }
+  }
+}
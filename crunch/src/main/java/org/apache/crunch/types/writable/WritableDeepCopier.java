@@ -17,24 +17,49 @@
  */
 package org.apache.crunch.types.writable;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.util.Arrays;
 
 import org.apache.crunch.CrunchRuntimeException;
 import org.apache.crunch.types.DeepCopier;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * Performs deep copies of Writable values.
+ * <p>
+ * The common Writables from {@code org.apache.hadoop.io} are copied field by
+ * field; other Writables are serialized and deserialized through buffers that
+ * are reused by each thread.
  * 
  * @param <T> The type of Writable that can be copied
  */
 public class WritableDeepCopier<T extends Writable> implements DeepCopier<T> {
 
+  private static final ThreadLocal<DataOutputBuffer> OUTPUT_BUFFER = new ThreadLocal<DataOutputBuffer>() {
+    @Override
+    protected DataOutputBuffer initialValue() {
+      return new DataOutputBuffer();
+    }
+  };
+
+  private static final ThreadLocal<DataInputBuffer> INPUT_BUFFER = new ThreadLocal<DataInputBuffer>() {
+    @Override
+    protected DataInputBuffer initialValue() {
+      return new DataInputBuffer();
+    }
+  };
+
   private Class<T> writableClass;
 
   public WritableDeepCopier(Class<T> writableClass) {
@@ -51,20 +76,51 @@ public class WritableDeepCopier<T extends Writable> implements DeepCopier<T> {
     if (source == null) {
       return null;
     }
-    
-    ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-    DataOutputStream dataOut = new DataOutputStream(byteOutStream);
+
+    Writable copy = copyFields(source);
+    if (copy != null) {
+      return writableClass.cast(copy);
+    }
+
+    DataOutputBuffer out = OUTPUT_BUFFER.get();
+    DataInputBuffer in = INPUT_BUFFER.get();
     T copiedValue = null;
     try {
-      source.write(dataOut);
-      dataOut.flush();
-      ByteArrayInputStream byteInStream = new ByteArrayInputStream(byteOutStream.toByteArray());
-      DataInput dataInput = new DataInputStream(byteInStream);
-      copiedValue = writableClass.newInstance();
-      copiedValue.readFields(dataInput);
+      out.reset();
+      source.write(out);
+      in.reset(out.getData(), out.getLength());
+      copiedValue = ReflectionUtils.newInstance(writableClass, null);
+      copiedValue.readFields(in);
     } catch (Exception e) {
       throw new CrunchRuntimeException("Error while deep copying " + source, e);
     }
     return copiedValue;
   }
+
+  /**
+   * Copies the common Writables without serializing them, or returns null for
+   * any other Writable.
+   */
+  private static Writable copyFields(Writable source) {
+    Class<?> sourceClass = source.getClass();
+    if (sourceClass == Text.class) {
+      return new Text((Text) source);
+    } else if (sourceClass == LongWritable.class) {
+      return new LongWritable(((LongWritable) source).get());
+    } else if (sourceClass == IntWritable.class) {
+      return new IntWritable(((IntWritable) source).get());
+    } else if (sourceClass == DoubleWritable.class) {
+      return new DoubleWritable(((DoubleWritable) source).get());
+    } else if (sourceClass == FloatWritable.class) {
+      return new FloatWritable(((FloatWritable) source).get());
+    } else if (sourceClass == BooleanWritable.class) {
+      return new BooleanWritable(((BooleanWritable) source).get());
+    } else if (sourceClass == NullWritable.class) {
+      return source;
+    } else if (sourceClass == BytesWritable.class) {
+      BytesWritable bytes = (BytesWritable) source;
+      return new BytesWritable(Arrays.copyOf(bytes.getBytes(), bytes.getLength()));
+    }
+    return null;
+  }
 }
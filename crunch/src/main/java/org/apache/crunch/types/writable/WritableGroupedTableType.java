@@ -38,7 +38,7 @@ class WritableGroupedTableType<K, V> extends PGroupedTableType<K, V> {
     WritableType valueType = (WritableType) tableType.getValueType();
     this.inputFn = new PairIterableMapFn(keyType.getInputMapFn(), valueType.getInputMapFn());
     this.outputFn = tableType.getOutputMapFn();
-    this.converter = new WritablePairConverter(keyType.getSerializationClass(),
+    this.converter = new WritableShuffleConverter(keyType.getSerializationClass(),
         valueType.getSerializationClass());
   }
 
@@ -81,5 +81,11 @@ class WritableGroupedTableType<K, V> extends PGroupedTableType<K, V> {
     WritableType valueType = (WritableType) tableType.getValueType();
     job.setMapOutputKeyClass(keyType.getSerializationClass());
     job.setMapOutputValueClass(valueType.getSerializationClass());
+    if (keyType.getSerializationClass() == TupleWritable.class
+        && (options == null || options.getSortComparatorClass() == null)) {
+      // The registered comparator isn't given the configuration that lists the
+      // schemas of compact keys.
+      job.setSortComparatorClass(TupleWritable.Comparator.class);
+    }
   }
 }
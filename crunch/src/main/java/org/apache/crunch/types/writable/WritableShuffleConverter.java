@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types.writable;
+
+import org.apache.crunch.Pair;
+
+/**
+ * The grouping converter of {@link WritableGroupedTableType}, which writes
+ * tuple keys and values to the shuffle as compact views.
+ */
+class WritableShuffleConverter<K, V> extends WritablePairConverter<K, V> {
+
+  private transient TupleWritable keyView;
+  private transient TupleWritable valueView;
+
+  public WritableShuffleConverter(Class<K> keyClass, Class<V> valueClass) {
+    super(keyClass, valueClass);
+  }
+
+  @Override
+  public K outputKey(Pair<K, V> value) {
+    K key = value.first();
+    if (key instanceof TupleWritable) {
+      if (keyView == null) {
+        keyView = new TupleWritable();
+      }
+      keyView.compactView((TupleWritable) key);
+      return (K) keyView;
+    }
+    return key;
+  }
+
+  @Override
+  public V outputValue(Pair<K, V> value) {
+    V v = value.second();
+    if (v instanceof TupleWritable) {
+      if (valueView == null) {
+        valueView = new TupleWritable();
+      }
+      valueView.compactView((TupleWritable) v);
+      return (V) valueView;
+    }
+    return v;
+  }
+}
@@ -27,17 +27,19 @@ import org.apache.crunch.io.ReadableSourceTarget;
 import org.apache.crunch.io.seq.SeqFileTableSourceTarget;
 import org.apache.crunch.lib.PTables;
 import org.apache.crunch.types.Converter;
+import org.apache.crunch.types.ImmutabilityAware;
 import org.apache.crunch.types.PGroupedTableType;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypeUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 
 import com.google.common.collect.ImmutableList;
 
-class WritableTableType<K, V> implements PTableType<K, V> {
+class WritableTableType<K, V> implements PTableType<K, V>, ImmutabilityAware {
 
   private final WritableType<K, Writable> keyType;
   private final WritableType<V, Writable> valueType;
@@ -113,6 +115,11 @@ class WritableTableType<K, V> implements PTableType<K, V> {
     return PTables.getDetachedValue(this, value);
   }
 
+  @Override
+  public boolean isImmutable() {
+    return PTypeUtils.isImmutable(getKeyType()) && PTypeUtils.isImmutable(getValueType());
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (obj == null || !(obj instanceof WritableTableType)) {
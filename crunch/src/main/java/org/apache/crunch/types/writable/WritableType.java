@@ -25,15 +25,17 @@ import org.apache.crunch.io.ReadableSourceTarget;
 import org.apache.crunch.io.seq.SeqFileSourceTarget;
 import org.apache.crunch.types.Converter;
 import org.apache.crunch.types.DeepCopier;
+import org.apache.crunch.types.ImmutabilityAware;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.PTypeUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 
 import com.google.common.collect.ImmutableList;
 
-public class WritableType<T, W extends Writable> implements PType<T> {
+public class WritableType<T, W extends Writable> implements PType<T>, ImmutabilityAware {
 
   private final Class<T> typeClass;
   private final Class<W> writableClass;
@@ -42,6 +44,7 @@ public class WritableType<T, W extends Writable> implements PType<T> {
   private final MapFn<T, W> outputFn;
   private final DeepCopier<W> deepCopier;
   private final List<PType> subTypes;
+  private final boolean immutable;
   private boolean initialized = false;
 
   public WritableType(Class<T> typeClass, Class<W> writableClass, MapFn<W, T> inputDoFn,
@@ -53,6 +56,7 @@ public class WritableType<T, W extends Writable> implements PType<T> {
     this.converter = new WritableValueConverter(writableClass);
     this.deepCopier = new WritableDeepCopier<W>(writableClass);
     this.subTypes = ImmutableList.<PType> builder().add(subTypes).build();
+    this.immutable = PTypeUtils.isImmutable(typeClass, this.subTypes);
   }
 
   @Override
@@ -119,11 +123,19 @@ public class WritableType<T, W extends Writable> implements PType<T> {
     if (!initialized) {
       throw new IllegalStateException("Cannot call getDetachedValue on an uninitialized PType");
     }
+    if (immutable) {
+      return value;
+    }
     W writableValue = outputFn.map(value);
     W deepCopy = this.deepCopier.deepCopy(writableValue);
     return inputFn.map(deepCopy);
   }
 
+  @Override
+  public boolean isImmutable() {
+    return immutable;
+  }
+
   @Override
   public int hashCode() {
     HashCodeBuilder hcb = new HashCodeBuilder();
@@ -33,6 +33,7 @@ import org.apache.crunch.fn.IdentityFn;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.PTypes;
 import org.apache.crunch.types.TupleFactory;
+import org.apache.crunch.util.QuantileSketch;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.BytesWritable;
@@ -273,6 +274,21 @@ public class Writables {
     return new WritableTableType((WritableType) key, (WritableType) value);
   }
 
+  /**
+   * Returns the serialization classes of the given {@code PType}s, or null if
+   * any of them is not a {@link WritableType}.
+   */
+  private static Class<? extends Writable>[] getFieldClasses(PType<?>... ptypes) {
+    Class<? extends Writable>[] fieldClasses = new Class[ptypes.length];
+    for (int i = 0; i < ptypes.length; i++) {
+      if (!(ptypes[i] instanceof WritableType)) {
+        return null;
+      }
+      fieldClasses[i] = ((WritableType<?, ?>) ptypes[i]).getSerializationClass();
+    }
+    return fieldClasses;
+  }
+
   /**
    * For mapping from {@link TupleWritable} instances to {@link Tuple}s.
    * 
@@ -280,6 +296,7 @@ public class Writables {
   private static class TWTupleMapFn extends MapFn<TupleWritable, Tuple> {
     private final TupleFactory<?> tupleFactory;
     private final List<MapFn> fns;
+    private final Class<? extends Writable>[] fieldClasses;
 
     private transient Object[] values;
 
@@ -289,6 +306,7 @@ public class Writables {
       for (PType ptype : ptypes) {
         fns.add(ptype.getInputMapFn());
       }
+      this.fieldClasses = getFieldClasses(ptypes);
     }
 
     @Override
@@ -296,6 +314,9 @@ public class Writables {
       for (MapFn fn : fns) {
         fn.configure(conf);
       }
+      if (fieldClasses != null) {
+        TupleWritable.addSchema(conf, fieldClasses);
+      }
     }
 
     @Override
@@ -315,6 +336,9 @@ public class Writables {
       // uses Tuple.tuplify which does a copy
       this.values = new Object[fns.size()];
       tupleFactory.initialize();
+      if (fieldClasses != null) {
+        TupleWritable.register(fieldClasses);
+      }
     }
 
     @Override
@@ -340,12 +364,14 @@ public class Writables {
     private transient Writable[] values;
 
     private final List<MapFn> fns;
+    private final Class<? extends Writable>[] fieldClasses;
 
     public TupleTWMapFn(PType<?>... ptypes) {
       this.fns = Lists.newArrayList();
       for (PType<?> ptype : ptypes) {
         fns.add(ptype.getOutputMapFn());
       }
+      this.fieldClasses = getFieldClasses(ptypes);
     }
 
     @Override
@@ -353,6 +379,9 @@ public class Writables {
       for (MapFn fn : fns) {
         fn.configure(conf);
       }
+      if (fieldClasses != null) {
+        TupleWritable.addSchema(conf, fieldClasses);
+      }
     }
 
     @Override
@@ -365,7 +394,7 @@ public class Writables {
     @Override
     public void initialize() {
       this.values = new Writable[fns.size()];
-      this.writable = new TupleWritable(values);
+      this.writable = new TupleWritable(values, fieldClasses);
       for (MapFn fn : fns) {
         fn.initialize();
       }
@@ -582,6 +611,14 @@ public class Writables {
     return PTypes.jsonString(clazz, WritableTypeFamily.getInstance());
   }
 
+  /**
+   * Returns a PType for {@link QuantileSketch}es, which are stored in their
+   * serialized form so that they can be merged again when they're read.
+   */
+  public static PType<QuantileSketch> quantileSketches() {
+    return PTypes.quantileSketches(WritableTypeFamily.getInstance());
+  }
+
   // Not instantiable
   private Writables() {
   }
@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct 64-bit hashes
+ * that are offered to it in {@code 2^precision} small registers, with a
+ * relative standard error of about {@code 1.04 / sqrt(2^precision)}.
+ * <p>
+ * Sketches with few distinct hashes only store the registers that are set, so
+ * that a sketch of a single hash is a few bytes. Sketches of the same precision
+ * can be merged, and are serialized to {@code ByteBuffer}s with
+ * {@link #toByteBuffer()} so that they can be combined in a shuffle.
+ */
+public final class HyperLogLog {
+
+  public static final int MIN_PRECISION = 4;
+
+  public static final int MAX_PRECISION = 16;
+
+  /** The default precision, whose relative standard error is about 0.8%. */
+  public static final int DEFAULT_PRECISION = 14;
+
+  private static final byte SPARSE = 1;
+  private static final byte DENSE = 2;
+
+  private final int precision;
+  private final int m;
+  // The registers, or null while the sketch is sparse.
+  private byte[] registers;
+  // While the sketch is sparse, the set registers as (index << 8 | rank),
+  // sorted by index.
+  private int[] sparse;
+  private int sparseSize;
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION
+          + ", not " + precision);
+    }
+    this.precision = precision;
+    this.m = 1 << precision;
+    this.sparse = new int[4];
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Resets this sketch to the state of a new one.
+   */
+  public void clear() {
+    registers = null;
+    sparseSize = 0;
+  }
+
+  /**
+   * Adds a hash to this sketch. The hashes of distinct elements should be
+   * uniformly distributed over all 64 bits, such as those of {@link #hash}.
+   */
+  public void offerHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    long rest = hash << precision;
+    int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+    update(index, rank);
+  }
+
+  private void update(int index, int rank) {
+    if (registers != null) {
+      if (registers[index] < rank) {
+        registers[index] = (byte) rank;
+      }
+      return;
+    }
+    int low = 0;
+    int high = sparseSize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midIndex = sparse[mid] >>> 8;
+      if (midIndex < index) {
+        low = mid + 1;
+      } else if (midIndex > index) {
+        high = mid - 1;
+      } else {
+        if ((sparse[mid] & 0xff) < rank) {
+          sparse[mid] = (index << 8) | rank;
+        }
+        return;
+      }
+    }
+    if (sparseSize == sparse.length) {
+      if (sparseSize >= m / 8) {
+        // The sparse entries would take more than half the size of the registers.
+        toDense();
+        registers[index] = (byte) rank;
+        return;
+      }
+      int[] grown = new int[Math.min(2 * sparse.length, m / 8)];
+      System.arraycopy(sparse, 0, grown, 0, sparseSize);
+      sparse = grown;
+    }
+    System.arraycopy(sparse, low, sparse, low + 1, sparseSize - low);
+    sparse[low] = (index << 8) | rank;
+    sparseSize++;
+  }
+
+  private void toDense() {
+    registers = new byte[m];
+    for (int i = 0; i < sparseSize; i++) {
+      registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xff);
+    }
+    sparseSize = 0;
+  }
+
+  /**
+   * Adds the hashes of another sketch of the same precision to this one.
+   */
+  public void merge(HyperLogLog other) {
+    checkPrecision(other.precision);
+    if (other.registers != null) {
+      for (int i = 0; i < m; i++) {
+        if (other.registers[i] != 0) {
+          update(i, other.registers[i]);
+        }
+      }
+    } else {
+      for (int i = 0; i < other.sparseSize; i++) {
+        update(other.sparse[i] >>> 8, other.sparse[i] & 0xff);
+      }
+    }
+  }
+
+  /**
+   * Adds the hashes of a sketch that was serialized with
+   * {@link #toByteBuffer()} to this one, without deserializing it first. The
+   * position of the buffer isn't changed.
+   */
+  public void merge(ByteBuffer buffer) {
+    ByteBuffer in = buffer.duplicate();
+    byte format = in.get();
+    checkPrecision(in.get());
+    if (format == DENSE) {
+      for (int i = 0; i < m; i++) {
+        byte rank = in.get();
+        if (rank != 0) {
+          update(i, rank);
+        }
+      }
+    } else if (format == SPARSE) {
+      int size = in.getInt();
+      for (int i = 0; i < size; i++) {
+        int entry = in.getInt();
+        update(entry >>> 8, entry & 0xff);
+      }
+    } else {
+      throw new IllegalArgumentException("Not a HyperLogLog sketch: unknown format " + format);
+    }
+  }
+
+  private void checkPrecision(int otherPrecision) {
+    if (otherPrecision != precision) {
+      throw new IllegalArgumentException("Cannot merge a sketch of precision " + otherPrecision
+          + " into one of precision " + precision);
+    }
+  }
+
+  /**
+   * Returns the estimated number of distinct hashes in this sketch.
+   */
+  public long cardinality() {
+    double sum = 0.0;
+    int zeros;
+    if (registers != null) {
+      zeros = 0;
+      for (int i = 0; i < m; i++) {
+        sum += 1.0 / (1L << registers[i]);
+        if (registers[i] == 0) {
+          zeros++;
+        }
+      }
+    } else {
+      zeros = m - sparseSize;
+      sum = zeros;
+      for (int i = 0; i < sparseSize; i++) {
+        sum += 1.0 / (1L << (sparse[i] & 0xff));
+      }
+    }
+    double estimate = alpha() * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // Linear counting is more accurate for small cardinalities.
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private double alpha() {
+    switch (m) {
+    case 16:
+      return 0.673;
+    case 32:
+      return 0.697;
+    case 64:
+      return 0.709;
+    default:
+      return 0.7213 / (1.0 + 1.079 / m);
+    }
+  }
+
+  /**
+   * Serializes this sketch, storing only the registers that are set if that
+   * takes less space.
+   */
+  public ByteBuffer toByteBuffer() {
+    ByteBuffer out;
+    if (registers != null) {
+      out = ByteBuffer.allocate(2 + m);
+      out.put(DENSE).put((byte) precision).put(registers);
+    } else {
+      out = ByteBuffer.allocate(6 + 4 * sparseSize);
+      out.put(SPARSE).put((byte) precision).putInt(sparseSize);
+      for (int i = 0; i < sparseSize; i++) {
+        out.putInt(sparse[i]);
+      }
+    }
+    out.flip();
+    return out;
+  }
+
+  /**
+   * Deserializes a sketch that was serialized with {@link #toByteBuffer()}.
+   */
+  public static HyperLogLog fromByteBuffer(ByteBuffer buffer) {
+    HyperLogLog hll = new HyperLogLog(buffer.get(buffer.position() + 1));
+    hll.merge(buffer);
+    return hll;
+  }
+
+  /**
+   * Returns a 64-bit MurmurHash2 (MurmurHash64A) of the given bytes.
+   */
+  public static long hash(byte[] data, int offset, int length) {
+    final long mul = 0xc6a4a7935bd1e995L;
+    final int r = 47;
+    long h = 0x9747b28cL ^ (length * mul);
+    int end = offset + (length & ~7);
+    for (int i = offset; i < end; i += 8) {
+      long k = (data[i] & 0xffL) | (data[i + 1] & 0xffL) << 8 | (data[i + 2] & 0xffL) << 16
+          | (data[i + 3] & 0xffL) << 24 | (data[i + 4] & 0xffL) << 32 | (data[i + 5] & 0xffL) << 40
+          | (data[i + 6] & 0xffL) << 48 | (data[i + 7] & 0xffL) << 56;
+      k *= mul;
+      k ^= k >>> r;
+      k *= mul;
+      h ^= k;
+      h *= mul;
+    }
+    int tail = length & 7;
+    if (tail > 0) {
+      for (int i = tail - 1; i >= 0; i--) {
+        h ^= (data[end + i] & 0xffL) << (8 * i);
+      }
+      h *= mul;
+    }
+    h ^= h >>> r;
+    h *= mul;
+    h ^= h >>> r;
+    return h;
+  }
+}
@@ -28,7 +28,11 @@ public class PartitionUtils {
   public static final long DEFAULT_BYTES_PER_REDUCE_TASK = 1000L * 1000L * 1000L;
   
   public static <T> int getRecommendedPartitions(PCollection<T> pcollection, Configuration conf) {
+    return getRecommendedPartitions(pcollection.getSize(), conf);
+  }
+
+  public static int getRecommendedPartitions(long sizeInBytes, Configuration conf) {
     long bytesPerTask = conf.getLong(BYTES_PER_REDUCE_TASK, DEFAULT_BYTES_PER_REDUCE_TASK);
-    return 1 + (int) (pcollection.getSize() / bytesPerTask);
+    return 1 + (int) (sizeInBytes / bytesPerTask);
   }
 }
@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A KLL sketch, which estimates the quantiles of the values that are added to
+ * it while keeping only {@code O(k)} of them, so that the rank of each
+ * estimate is usually within about {@code 1.7 / k} of the rank that was asked
+ * for.
+ * <p>
+ * The values that are kept are stored in levels, where each value in level
+ * {@code h} stands for {@code 2^h} of the values that were added. When the
+ * sketch is full, a level is sorted and every other value in it is promoted to
+ * the next level, starting from the first and second values in turn, so that
+ * the same values added in the same order always give the same sketch.
+ * Sketches can be merged, and are serialized to {@code ByteBuffer}s with
+ * {@link #toByteBuffer()} so that they can be combined in a shuffle or
+ * persisted and merged again later.
+ */
+public final class QuantileSketch {
+
+  public static final int MIN_K = 8;
+
+  /** The default value of k, which gives a rank error of about 1%. */
+  public static final int DEFAULT_K = 200;
+
+  private static final byte FORMAT = 1;
+  private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+  private final int k;
+  // The bit for each level flips each time it is compacted.
+  private long offsets;
+  private long count;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  private double[][] levels;
+  private int[] sizes;
+
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  public QuantileSketch(int k) {
+    if (k < MIN_K) {
+      throw new IllegalArgumentException("k must be at least " + MIN_K + ", not " + k);
+    }
+    this.k = k;
+    this.levels = new double[1][];
+    this.sizes = new int[1];
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  /**
+   * Returns the number of values that were added to this sketch.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the smallest value that was added to this sketch, or
+   * {@code Double.NaN} if it's empty.
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * Returns the largest value that was added to this sketch, or
+   * {@code Double.NaN} if it's empty.
+   */
+  public double getMax() {
+    return max;
+  }
+
+  /**
+   * Adds a value to this sketch.
+   */
+  public void update(double value) {
+    if (Double.isNaN(value)) {
+      throw new IllegalArgumentException("Cannot add NaN to a quantile sketch");
+    }
+    updateRange(value, value);
+    count++;
+    add(0, value);
+    compress();
+  }
+
+  /**
+   * Adds the values of another sketch to this one.
+   */
+  public void merge(QuantileSketch other) {
+    if (other.count == 0) {
+      return;
+    }
+    updateRange(other.min, other.max);
+    count += other.count;
+    for (int h = 0; h < other.levels.length; h++) {
+      for (int i = 0; i < other.sizes[h]; i++) {
+        add(h, other.levels[h][i]);
+      }
+    }
+    compress();
+  }
+
+  private void updateRange(double otherMin, double otherMax) {
+    if (count == 0) {
+      min = otherMin;
+      max = otherMax;
+    } else {
+      min = Math.min(min, otherMin);
+      max = Math.max(max, otherMax);
+    }
+  }
+
+  private void add(int h, double value) {
+    if (h >= levels.length) {
+      levels = Arrays.copyOf(levels, h + 1);
+      sizes = Arrays.copyOf(sizes, h + 1);
+    }
+    if (levels[h] == null) {
+      levels[h] = new double[4];
+    } else if (sizes[h] == levels[h].length) {
+      levels[h] = Arrays.copyOf(levels[h], 2 * sizes[h]);
+    }
+    levels[h][sizes[h]++] = value;
+  }
+
+  private int capacity(int h) {
+    return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, levels.length - 1 - h)));
+  }
+
+  private void compress() {
+    while (true) {
+      int retained = 0;
+      int capacity = 0;
+      for (int h = 0; h < levels.length; h++) {
+        retained += sizes[h];
+        capacity += capacity(h);
+      }
+      if (retained <= capacity) {
+        return;
+      }
+      // Some level must be over its capacity, and the lowest one is compacted.
+      int h = 0;
+      while (sizes[h] < capacity(h)) {
+        h++;
+      }
+      compact(h);
+    }
+  }
+
+  private void compact(int h) {
+    double[] level = levels[h];
+    int size = sizes[h];
+    Arrays.sort(level, 0, size);
+    // An odd value out stays in this level, so that the weight is preserved.
+    int pairs = size / 2;
+    long bit = 1L << (h % Long.SIZE);
+    int offset = (offsets & bit) == 0 ? 0 : 1;
+    offsets ^= bit;
+    for (int i = 0; i < pairs; i++) {
+      add(h + 1, level[2 * i + offset]);
+    }
+    if (size % 2 == 1) {
+      level[0] = level[size - 1];
+      sizes[h] = 1;
+    } else {
+      sizes[h] = 0;
+    }
+  }
+
+  /**
+   * Returns the estimated value at the given quantile, between 0 and 1, or
+   * {@code Double.NaN} if this sketch is empty.
+   */
+  public double getQuantile(double quantile) {
+    return getQuantiles(quantile)[0];
+  }
+
+  /**
+   * Returns the estimated values at each of the given quantiles, each between
+   * 0 and 1, in the same order.
+   */
+  public double[] getQuantiles(double... quantiles) {
+    for (double q : quantiles) {
+      if (!(q >= 0.0 && q <= 1.0)) {
+        throw new IllegalArgumentException("Quantiles must be between 0 and 1, not " + q);
+      }
+    }
+    double[] results = new double[quantiles.length];
+    if (count == 0) {
+      Arrays.fill(results, Double.NaN);
+      return results;
+    }
+
+    // Merge the sorted levels into one sorted array with cumulative weights.
+    double[] values = new double[0];
+    long[] ranks = new long[0];
+    for (int h = 0; h < levels.length; h++) {
+      int size = sizes[h];
+      if (size == 0) {
+        continue;
+      }
+      double[] level = levels[h];
+      Arrays.sort(level, 0, size);
+      double[] mergedValues = new double[values.length + size];
+      long[] mergedRanks = new long[values.length + size];
+      long weight = 1L << h;
+      int i = 0;
+      int j = 0;
+      long rank = 0;
+      for (int n = 0; n < mergedValues.length; n++) {
+        if (j == size || (i < values.length && values[i] <= level[j])) {
+          rank += ranks[i] - (i == 0 ? 0 : ranks[i - 1]);
+          mergedValues[n] = values[i++];
+        } else {
+          rank += weight;
+          mergedValues[n] = level[j++];
+        }
+        mergedRanks[n] = rank;
+      }
+      values = mergedValues;
+      ranks = mergedRanks;
+    }
+
+    for (int n = 0; n < quantiles.length; n++) {
+      double q = quantiles[n];
+      if (q == 0.0) {
+        results[n] = min;
+      } else if (q == 1.0) {
+        results[n] = max;
+      } else {
+        long target = (long) Math.ceil(q * count);
+        int index = Arrays.binarySearch(ranks, target);
+        results[n] = values[index < 0 ? Math.min(-index - 1, values.length - 1) : index];
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Serializes this sketch.
+   */
+  public ByteBuffer toByteBuffer() {
+    int retained = 0;
+    for (int h = 0; h < levels.length; h++) {
+      retained += sizes[h];
+    }
+    ByteBuffer out = ByteBuffer.allocate(30 + 4 * levels.length + 8 * retained);
+    out.put(FORMAT).putInt(k).putLong(count).putDouble(min).putDouble(max);
+    out.put((byte) levels.length);
+    for (int h = 0; h < levels.length; h++) {
+      out.putInt(sizes[h]);
+      for (int i = 0; i < sizes[h]; i++) {
+        out.putDouble(levels[h][i]);
+      }
+    }
+    out.flip();
+    return out;
+  }
+
+  /**
+   * Deserializes a sketch that was serialized with {@link #toByteBuffer()}. The
+   * position of the buffer isn't changed.
+   */
+  public static QuantileSketch fromByteBuffer(ByteBuffer buffer) {
+    ByteBuffer in = buffer.duplicate();
+    byte format = in.get();
+    if (format != FORMAT) {
+      throw new IllegalArgumentException("Not a quantile sketch: unknown format " + format);
+    }
+    QuantileSketch sketch = new QuantileSketch(in.getInt());
+    sketch.count = in.getLong();
+    sketch.min = in.getDouble();
+    sketch.max = in.getDouble();
+    int numLevels = in.get();
+    sketch.levels = new double[numLevels][];
+    sketch.sizes = new int[numLevels];
+    for (int h = 0; h < numLevels; h++) {
+      int size = in.getInt();
+      sketch.levels[h] = new double[Math.max(4, size)];
+      for (int i = 0; i < size; i++) {
+        sketch.levels[h][i] = in.getDouble();
+      }
+      sketch.sizes[h] = size;
+    }
+    return sketch;
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.crunch.Pair;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A Space-Saving summary, which finds the most frequent items of a stream
+ * while counting at most {@code capacity} of them.
+ * <p>
+ * Once the summary is full, an item that isn't counted takes the place of the
+ * item with the smallest count and inherits that count, so that counts are
+ * never underestimated. If the items that were offered have a total count of
+ * {@code N}, each count is overestimated by at most {@code N / capacity}, and
+ * every item whose true count is larger than that is counted. Summaries are
+ * merged by offering the counts of one to another, which adds their errors.
+ */
+public final class SpaceSaving<T> {
+
+  private static class Counter<T> implements Comparable<Counter<T>> {
+    private final T item;
+    private final long sequence;
+    private long count;
+
+    Counter(T item, long count, long sequence) {
+      this.item = item;
+      this.count = count;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Counter<T> other) {
+      if (count != other.count) {
+        return count < other.count ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+  }
+
+  private final int capacity;
+  private final Map<T, Counter<T>> counters = Maps.newHashMap();
+  // The counters ordered by count, so that the smallest one can be replaced.
+  private final TreeSet<Counter<T>> byCount = new TreeSet<Counter<T>>();
+  private long sequence;
+
+  public SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive, not " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of items that are counted.
+   */
+  public int size() {
+    return counters.size();
+  }
+
+  /**
+   * Returns whether the given item is counted, in which case offering it
+   * again doesn't keep a reference to it.
+   */
+  public boolean contains(T item) {
+    return counters.containsKey(item);
+  }
+
+  /**
+   * Resets this summary to the state of a new one.
+   */
+  public void clear() {
+    counters.clear();
+    byCount.clear();
+  }
+
+  /**
+   * Adds the given count to the count of an item.
+   */
+  public void offer(T item, long count) {
+    Counter<T> counter = counters.get(item);
+    if (counter != null) {
+      byCount.remove(counter);
+      counter.count += count;
+    } else if (counters.size() < capacity) {
+      counter = new Counter<T>(item, count, sequence++);
+      counters.put(item, counter);
+    } else {
+      Counter<T> smallest = byCount.pollFirst();
+      counters.remove(smallest.item);
+      counter = new Counter<T>(item, smallest.count + count, sequence++);
+      counters.put(item, counter);
+    }
+    byCount.add(counter);
+  }
+
+  /**
+   * Returns the {@code n} counted items with the largest counts, with their
+   * counts, from the largest count to the smallest.
+   */
+  public List<Pair<T, Long>> top(int n) {
+    List<Pair<T, Long>> top = Lists.newArrayListWithCapacity(Math.min(n, counters.size()));
+    for (Counter<T> counter : byCount.descendingSet()) {
+      if (top.size() == n) {
+        break;
+      }
+      top.add(Pair.of(counter.item, counter.count));
+    }
+    return top;
+  }
+}
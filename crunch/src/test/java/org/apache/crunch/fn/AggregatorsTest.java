@@ -46,11 +46,16 @@ import java.util.List;
 
 import org.apache.crunch.Aggregator;
 import org.apache.crunch.CombineFn;
+import org.apache.crunch.MapFn;
 import org.apache.crunch.Pair;
 import org.apache.crunch.Tuple3;
 import org.apache.crunch.Tuple4;
 import org.apache.crunch.TupleN;
 import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 import org.junit.Test;
 
 import com.google.common.base.Function;
@@ -190,6 +195,39 @@ public class AggregatorsTest {
     assertThat(sapply(STRING_CONCAT(" ", true, 9, 6), "foo", "foobar", "bar"), is("foo bar"));
   }
 
+  @Test
+  public void testEmptyMinMax() {
+    assertEquals(ImmutableList.<Long> of(), apply(MAX_LONGS(), ImmutableList.<Long> of()));
+    assertEquals(ImmutableList.<Double> of(), apply(MIN_DOUBLES(), ImmutableList.<Double> of()));
+  }
+
+  @Test
+  public void testPrimitiveUpdates() {
+    LongAggregator sum = (LongAggregator) SUM_LONGS();
+    sum.update(3L);
+    sum.update(Long.valueOf(4L));
+    assertEquals(7L, sum.result());
+    IntAggregator max = (IntAggregator) MAX_INTS();
+    assertThat(max.hasResult(), is(false));
+    max.update(-5);
+    max.update(-7);
+    assertEquals(-5, max.result());
+  }
+
+  @Test
+  public void testSerializedWritableValues() {
+    PTableType<String, Long> ptype = Writables.tableOf(Writables.strings(), Writables.longs());
+    MapFn<Object, Pair<String, Iterable<Long>>> inputFn = ptype.getGroupedTableType().getInputMapFn();
+    inputFn.initialize();
+    Pair<String, Iterable<Long>> grouped = inputFn.map(Pair.of(new Text("k"),
+        ImmutableList.of(new LongWritable(1L), new LongWritable(2L), new LongWritable(39L))));
+
+    CombineFn<String, Long> fn = Aggregators.toCombineFn(SUM_LONGS());
+    InMemoryEmitter<Pair<String, Long>> emitter = new InMemoryEmitter<Pair<String, Long>>();
+    fn.process(grouped, emitter);
+    assertEquals(ImmutableList.of(Pair.of("k", 42L)), emitter.getOutput());
+  }
+
   @Test(expected = NullPointerException.class)
   public void testConcatenationNullException() {
     sapply(STRING_CONCAT(" ", false), Arrays.asList(null, "" ));
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.hadoop.mapreduce.lib.jobcontrol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob.State;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Test;
+
+public class CrunchJobControlTest {
+
+  private static final CrunchControlledJob.Hook NO_OP = new CrunchControlledJob.Hook() {
+    @Override
+    public void run() throws IOException {
+    }
+  };
+
+  private static class BlockingHook implements CrunchControlledJob.Hook {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void run() throws IOException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  private static Job finishedJob(String name) throws Exception {
+    Job job = mock(Job.class);
+    when(job.getJobName()).thenReturn(name);
+    when(job.getConfiguration()).thenReturn(new Configuration());
+    when(job.isComplete()).thenReturn(true);
+    when(job.isSuccessful()).thenReturn(true);
+    return job;
+  }
+
+  private static Job runningJob(String name) throws Exception {
+    Job job = mock(Job.class);
+    when(job.getJobName()).thenReturn(name);
+    when(job.getConfiguration()).thenReturn(new Configuration());
+    when(job.isComplete()).thenReturn(false);
+    return job;
+  }
+
+  private static void poll(CrunchJobControl control) throws Exception {
+    control.pollJobStatusAndStartNewOnes();
+    control.awaitEvent(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testDependentWaitsForAsyncCompletionHook() throws Exception {
+    BlockingHook hook = new BlockingHook();
+    CrunchControlledJob parent = new CrunchControlledJob(1, finishedJob("parent"), NO_OP, hook);
+    CrunchControlledJob child = new CrunchControlledJob(2, finishedJob("child"), NO_OP, NO_OP);
+    child.addDependingJob(parent);
+
+    CrunchJobControl control = new CrunchJobControl("test", 2);
+    control.addJob(parent);
+    control.addJob(child);
+
+    // Submits the parent.
+    poll(control);
+    assertEquals(State.RUNNING, parent.getJobState());
+
+    // Finds that the parent has finished and starts its completion hook, which
+    // must not block the polling thread.
+    control.pollJobStatusAndStartNewOnes();
+    assertTrue(hook.started.await(5, TimeUnit.SECONDS));
+    assertTrue(parent.isAwaitingCompletion());
+    control.pollJobStatusAndStartNewOnes();
+    assertEquals(State.WAITING, child.getJobState());
+
+    hook.release.countDown();
+    assertTrue(control.awaitEvent(5, TimeUnit.SECONDS));
+    for (int i = 0; i < 10 && !control.allFinished(); i++) {
+      poll(control);
+    }
+    assertTrue(control.allFinished());
+    assertEquals(2, control.getSuccessfulJobList().size());
+    control.shutdown();
+  }
+
+  @Test
+  public void testFailingCompletionHookFailsJob() throws Exception {
+    CrunchControlledJob.Hook failing = new CrunchControlledJob.Hook() {
+      @Override
+      public void run() throws IOException {
+        throw new IOException("could not move outputs");
+      }
+    };
+    CrunchControlledJob job = new CrunchControlledJob(1, finishedJob("job"), NO_OP, failing);
+    CrunchJobControl control = new CrunchJobControl("test", 1);
+    control.addJob(job);
+    for (int i = 0; i < 10 && !control.allFinished(); i++) {
+      poll(control);
+    }
+    assertTrue(control.allFinished());
+    assertEquals(State.FAILED, job.getJobState());
+    assertFalse(control.getFailedJobList().isEmpty());
+    control.shutdown();
+  }
+
+  @Test
+  public void testBudgetStartsHighestPriorityJobsFirst() throws Exception {
+    CrunchControlledJob low = new CrunchControlledJob(1, runningJob("low"), NO_OP, NO_OP);
+    CrunchControlledJob high = new CrunchControlledJob(2, runningJob("high"), NO_OP, NO_OP);
+    CrunchControlledJob middle = new CrunchControlledJob(3, runningJob("middle"), NO_OP, NO_OP);
+    low.setPriority(1L);
+    high.setPriority(100L);
+    middle.setPriority(10L);
+
+    CrunchJobControl control = new CrunchJobControl("test", 2, 2);
+    control.addJob(low);
+    control.addJob(high);
+    control.addJob(middle);
+    poll(control);
+    poll(control);
+
+    assertEquals(State.RUNNING, high.getJobState());
+    assertEquals(State.RUNNING, middle.getJobState());
+    assertEquals(State.READY, low.getJobState());
+    assertEquals(2, control.getRunningJobList().size());
+    assertEquals(1, control.getReadyJobsList().size());
+    control.shutdown();
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class DoFnRunnerTest {
+
+  private static final int PARALLELISM = 4;
+
+  private Configuration original;
+
+  @Before
+  public void setUp() {
+    original = MemPipeline.getInstance().getConfiguration();
+    Configuration conf = new Configuration(original);
+    conf.setInt(MemPipeline.PARALLELISM, PARALLELISM);
+    MemPipeline.getInstance().setConfiguration(conf);
+    MemPipeline.clearCounters();
+  }
+
+  @After
+  public void tearDown() {
+    MemPipeline.getInstance().setConfiguration(original);
+    MemPipeline.clearCounters();
+  }
+
+  private static class CountingDoFn extends DoFn<Integer, Integer> {
+    private transient int processed;
+
+    @Override
+    public void initialize() {
+      processed = 0;
+      increment(Lifecycle.INITIALIZED);
+    }
+
+    @Override
+    public void process(Integer input, Emitter<Integer> emitter) {
+      processed++;
+      emitter.emit(input * 2);
+    }
+
+    @Override
+    public void cleanup(Emitter<Integer> emitter) {
+      emitter.emit(-processed);
+      increment(Lifecycle.CLEANED_UP);
+    }
+  }
+
+  private static class FailingDoFn extends DoFn<Integer, Integer> {
+    @Override
+    public void process(Integer input, Emitter<Integer> emitter) {
+      if (input == 9) {
+        throw new IllegalStateException("boom");
+      }
+      emitter.emit(input);
+    }
+  }
+
+  private enum Lifecycle {
+    INITIALIZED,
+    CLEANED_UP
+  }
+
+  private static List<Integer> range(int size) {
+    List<Integer> values = Lists.newArrayList();
+    for (int i = 0; i < size; i++) {
+      values.add(i);
+    }
+    return values;
+  }
+
+  @Test
+  public void testChunkOutputsAreMergedInOrder() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), range(100));
+    List<Integer> output = ImmutableList.copyOf(
+        input.parallelDo(new CountingDoFn(), Writables.ints()).materialize());
+
+    List<Integer> expected = Lists.newArrayList();
+    for (int chunk = 0; chunk < PARALLELISM; chunk++) {
+      for (int i = chunk * 25; i < (chunk + 1) * 25; i++) {
+        expected.add(i * 2);
+      }
+      expected.add(-25);
+    }
+    assertEquals(expected, output);
+  }
+
+  @Test
+  public void testEachChunkIsInitializedAndCleanedUp() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), range(10));
+    input.parallelDo(new CountingDoFn(), Writables.ints()).materialize();
+
+    assertEquals(PARALLELISM, MemPipeline.getCounters().findCounter(Lifecycle.INITIALIZED).getValue());
+    assertEquals(PARALLELISM, MemPipeline.getCounters().findCounter(Lifecycle.CLEANED_UP).getValue());
+  }
+
+  @Test
+  public void testPoolsAreKeptPerParallelism() {
+    ExecutorService pool = DoFnRunner.getExecutor(PARALLELISM);
+    assertSame(pool, DoFnRunner.getExecutor(PARALLELISM));
+    // A run at another parallelism doesn't shut down a pool that may be in use.
+    DoFnRunner.getExecutor(PARALLELISM + 1);
+    assertFalse(pool.isShutdown());
+    assertSame(pool, DoFnRunner.getExecutor(PARALLELISM));
+  }
+
+  @Test
+  public void testSerialWhenSingleElement() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 7);
+    List<Integer> output = ImmutableList.copyOf(
+        input.parallelDo(new CountingDoFn(), Writables.ints()).materialize());
+
+    assertEquals(ImmutableList.of(14, -1), output);
+    assertEquals(1, MemPipeline.getCounters().findCounter(Lifecycle.INITIALIZED).getValue());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExceptionsArePropagated() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), range(10));
+    input.parallelDo(new FailingDoFn(), Writables.ints()).materialize();
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.writable.Writables;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MemCollectionTest {
+
+  private enum Calls {
+    PROCESS
+  }
+
+  private static class AddOneFn extends MapFn<Integer, Integer> {
+    @Override
+    public Integer map(Integer input) {
+      increment(Calls.PROCESS);
+      return input + 1;
+    }
+  }
+
+  private static class EvenFn extends FilterFn<Integer> {
+    @Override
+    public boolean accept(Integer input) {
+      return input % 2 == 0;
+    }
+  }
+
+  private static class TrailerFn extends DoFn<Integer, Integer> {
+    @Override
+    public void process(Integer input, Emitter<Integer> emitter) {
+      emitter.emit(input);
+    }
+
+    @Override
+    public void cleanup(Emitter<Integer> emitter) {
+      emitter.emit(100);
+    }
+  }
+
+  private static class ToStringFn extends MapFn<Integer, String> {
+    @Override
+    public String map(Integer input) {
+      return input.toString();
+    }
+  }
+
+  private static long processCalls() {
+    return MemPipeline.getCounters().findCounter(Calls.PROCESS).getValue();
+  }
+
+  @Before
+  public void setUp() {
+    MemPipeline.clearCounters();
+  }
+
+  @Test
+  public void testParallelDoIsDeferredUntilMaterialize() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 1, 2, 3);
+    PCollection<Integer> output = input.parallelDo(new AddOneFn(), Writables.ints())
+        .parallelDo(new AddOneFn(), Writables.ints());
+    assertEquals(0L, processCalls());
+
+    assertEquals(ImmutableList.of(3, 4, 5), ImmutableList.copyOf(output.materialize()));
+    assertEquals(6L, processCalls());
+
+    output.materialize();
+    assertEquals(6L, processCalls());
+  }
+
+  @Test
+  public void testFusedChain() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 1, 2, 3, 4, 5);
+    PTable<String, Integer> output = input.parallelDo(new AddOneFn(), Writables.ints())
+        .parallelDo(new TrailerFn(), Writables.ints())
+        .filter(new EvenFn())
+        .by(new ToStringFn(), Writables.strings());
+
+    assertEquals(
+        ImmutableList.of(Pair.of("2", 2), Pair.of("4", 4), Pair.of("6", 6), Pair.of("100", 100)),
+        ImmutableList.copyOf(output.materialize()));
+  }
+
+  @Test
+  public void testBranchFromMaterializedCollection() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 1, 2, 3);
+    PCollection<Integer> shared = input.parallelDo(new AddOneFn(), Writables.ints());
+    shared.materialize();
+
+    PCollection<Integer> branch = shared.parallelDo(new AddOneFn(), Writables.ints());
+    assertEquals(ImmutableList.of(3, 4, 5), ImmutableList.copyOf(branch.materialize()));
+    assertEquals(6L, processCalls());
+  }
+
+  @Test
+  public void testBranchFromPendingCollection() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 1, 2, 3);
+    PCollection<Integer> shared = input.parallelDo(new AddOneFn(), Writables.ints())
+        .parallelDo(new AddOneFn(), Writables.ints());
+    PCollection<Integer> left = shared.parallelDo(new AddOneFn(), Writables.ints());
+    PCollection<Integer> right = shared.filter(new EvenFn());
+    assertEquals(0L, processCalls());
+
+    assertEquals(ImmutableList.of(4, 5, 6), ImmutableList.copyOf(left.materialize()));
+    assertEquals(ImmutableList.of(4), ImmutableList.copyOf(right.materialize()));
+    // The shared chain is applied once, and not once for each branch.
+    assertEquals(9L, processCalls());
+    assertEquals(ImmutableList.of(3, 4, 5), ImmutableList.copyOf(shared.materialize()));
+    assertEquals(9L, processCalls());
+  }
+
+  @Test
+  public void testFusedAncestorsAreNotRecomputed() {
+    PCollection<Integer> input = MemPipeline.typedCollectionOf(Writables.ints(), 1, 2, 3);
+    PCollection<Integer> parent = input.parallelDo(new AddOneFn(), Writables.ints());
+    PCollection<Integer> child = parent.parallelDo(new AddOneFn(), Writables.ints());
+    assertEquals(ImmutableList.of(3, 4, 5), ImmutableList.copyOf(child.materialize()));
+    assertEquals(6L, processCalls());
+
+    // The parent was fused into the child's chain, and its contents were
+    // cached then, so neither materializing it nor branching from it applies
+    // its DoFn again.
+    assertEquals(ImmutableList.of(2, 3, 4), ImmutableList.copyOf(parent.materialize()));
+    PCollection<Integer> branch = parent.filter(new EvenFn());
+    assertEquals(ImmutableList.of(2, 4), ImmutableList.copyOf(branch.materialize()));
+    assertEquals(6L, processCalls());
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.fn.Aggregators.SimpleAggregator;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+public class PartitionedShufflerTest {
+
+  private static final AtomicInteger DESERIALIZED = new AtomicInteger();
+
+  private static class CountingSumFn extends SimpleAggregator<Long> {
+    private long sum;
+
+    @Override
+    public void reset() {
+      sum = 0;
+    }
+
+    @Override
+    public void update(Long value) {
+      sum += value;
+    }
+
+    @Override
+    public Iterable<Long> results() {
+      return ImmutableList.of(sum);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      DESERIALIZED.incrementAndGet();
+    }
+  }
+
+  private static final AtomicInteger MAX_UPDATES = new AtomicInteger();
+
+  private static class MaxUpdatesFn extends SimpleAggregator<Long> {
+    private long sum;
+    private int updates;
+
+    @Override
+    public void reset() {
+      sum = 0;
+      updates = 0;
+    }
+
+    @Override
+    public void update(Long value) {
+      sum += value;
+      updates++;
+      synchronized (MAX_UPDATES) {
+        MAX_UPDATES.set(Math.max(MAX_UPDATES.get(), updates));
+      }
+    }
+
+    @Override
+    public Iterable<Long> results() {
+      return ImmutableList.of(sum);
+    }
+  }
+
+  private static final AtomicInteger PROCESSED = new AtomicInteger();
+
+  private static class CountingFn extends MapFn<Pair<String, Long>, Pair<String, Long>> {
+    @Override
+    public Pair<String, Long> map(Pair<String, Long> input) {
+      PROCESSED.incrementAndGet();
+      return input;
+    }
+  }
+
+  private Configuration original;
+  private PTable<String, Long> table;
+
+  @Before
+  public void setUp() {
+    original = MemPipeline.getInstance().getConfiguration();
+    Configuration conf = new Configuration(original);
+    conf.setInt(MemPipeline.PARALLELISM, 4);
+    MemPipeline.getInstance().setConfiguration(conf);
+
+    List<Pair<String, Long>> pairs = Lists.newArrayList();
+    for (long i = 0; i < 100; i++) {
+      pairs.add(Pair.of("k" + (i % 7), i));
+    }
+    table = MemPipeline.typedTableOf(Writables.tableOf(Writables.strings(), Writables.longs()), pairs);
+  }
+
+  @After
+  public void tearDown() {
+    MemPipeline.getInstance().setConfiguration(original);
+  }
+
+  @Test
+  public void testGroupKeepsKeyAndValueOrder() {
+    List<Pair<String, Iterable<Long>>> groups = Lists.newArrayList(table.groupByKey().materialize());
+    assertEquals(7, groups.size());
+    for (int k = 0; k < 7; k++) {
+      Pair<String, Iterable<Long>> group = groups.get(k);
+      assertEquals("k" + k, group.first());
+      List<Long> expected = Lists.newArrayList();
+      for (long i = k; i < 100; i += 7) {
+        expected.add(i);
+      }
+      assertEquals(expected, Lists.newArrayList(group.second()));
+    }
+  }
+
+  @Test
+  public void testCombineAggregatesEagerly() {
+    List<Pair<String, Long>> sums = Lists.newArrayList(
+        table.groupByKey().combineValues(Aggregators.SUM_LONGS()).materialize());
+    assertEquals(7, sums.size());
+    for (int k = 0; k < 7; k++) {
+      long expected = 0;
+      for (long i = k; i < 100; i += 7) {
+        expected += i;
+      }
+      assertEquals(Pair.of("k" + k, expected), sums.get(k));
+    }
+  }
+
+  @Test
+  public void testCombineMergesPartialsInInputOrder() {
+    List<Pair<String, Long>> firsts = Lists.newArrayList(
+        table.groupByKey().combineValues(Aggregators.<Long>FIRST_N(2)).materialize());
+    List<Pair<String, Long>> lasts = Lists.newArrayList(
+        table.groupByKey().combineValues(Aggregators.<Long>LAST_N(2)).materialize());
+    assertEquals(ImmutableList.of(Pair.of("k0", 0L), Pair.of("k0", 7L)), firsts.subList(0, 2));
+    assertEquals(ImmutableList.of(Pair.of("k0", 91L), Pair.of("k0", 98L)), lasts.subList(0, 2));
+  }
+
+  @Test
+  public void testCombineDeserializesOneAggregatorPerPartition() {
+    DESERIALIZED.set(0);
+    Aggregator<Long> aggregator = new CountingSumFn();
+    List<Pair<String, Long>> sums = Lists.newArrayList(
+        table.groupByKey().combineValues(aggregator).materialize());
+    assertEquals(7, sums.size());
+    assertEquals(Pair.of("k0", 0L + 7 + 14 + 21 + 28 + 35 + 42 + 49 + 56 + 63 + 70 + 77 + 84 + 91 + 98),
+        sums.get(0));
+    assertTrue(DESERIALIZED.get() <= 4);
+  }
+
+  @Test
+  public void testCombineFoldsValuesAsTheyArrive() {
+    List<Pair<String, Long>> pairs = Lists.newArrayList();
+    for (long i = 0; i < 10000; i++) {
+      pairs.add(Pair.of("k", i));
+    }
+    PTable<String, Long> oneKey = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.longs()), pairs);
+    MAX_UPDATES.set(0);
+    assertEquals(ImmutableList.of(Pair.of("k", 10000L * 9999 / 2)),
+        ImmutableList.copyOf(oneKey.groupByKey().combineValues(new MaxUpdatesFn()).materialize()));
+    assertTrue(MAX_UPDATES.get() <= PartitionedShuffler.FOLD_THRESHOLD + 1);
+  }
+
+  @Test
+  public void testCombineIsLazy() {
+    PROCESSED.set(0);
+    PTable<String, Long> sums = table.parallelDo(new CountingFn(), table.getPTableType())
+        .groupByKey().combineValues(Aggregators.SUM_LONGS());
+    assertEquals(0, PROCESSED.get());
+    assertEquals(7, Iterables.size(sums.materialize()));
+    assertEquals(100, PROCESSED.get());
+  }
+}
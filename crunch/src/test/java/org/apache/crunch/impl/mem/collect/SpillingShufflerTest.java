@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mem.collect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.lib.SecondarySort;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PTypeFamily;
+import org.apache.crunch.types.avro.AvroTypeFamily;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.WritableTypeFamily;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class SpillingShufflerTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private Configuration original;
+  private File spillDir;
+
+  @Before
+  public void setUp() throws Exception {
+    original = MemPipeline.getInstance().getConfiguration();
+    spillDir = tmpDir.getFile("spills");
+    spillDir.mkdirs();
+    Configuration conf = new Configuration(original);
+    conf.setLong(MemPipeline.SHUFFLE_BUFFER_BYTES, 1024);
+    conf.set(MemPipeline.SHUFFLE_SPILL_DIR, spillDir.getAbsolutePath());
+    MemPipeline.getInstance().setConfiguration(conf);
+  }
+
+  @After
+  public void tearDown() {
+    MemPipeline.getInstance().setConfiguration(original);
+  }
+
+  private static List<Pair<String, Long>> data() {
+    List<Pair<String, Long>> data = Lists.newArrayList();
+    for (long i = 0; i < 1000; i++) {
+      data.add(Pair.of("key" + (i % 7), i));
+    }
+    return data;
+  }
+
+  private static List<Pair<String, Long>> expectedSums() {
+    List<Pair<String, Long>> expected = Lists.newArrayList();
+    for (int k = 0; k < 7; k++) {
+      long sum = 0;
+      for (long i = k; i < 1000; i += 7) {
+        sum += i;
+      }
+      expected.add(Pair.of("key" + k, sum));
+    }
+    return expected;
+  }
+
+  private void testGroupAndCombine(PTypeFamily tf) {
+    PTableType<String, Long> tableType = tf.tableOf(tf.strings(), tf.longs());
+    PTable<String, Long> input = MemPipeline.typedTableOf(tableType, data());
+    PTable<String, Long> sums = input.groupByKey().combineValues(Aggregators.<Long>SUM_LONGS());
+
+    assertEquals(expectedSums(), ImmutableList.copyOf(sums.materialize()));
+    assertEquals("Expected the runs to be deleted once read", 0, spillDir.list().length);
+  }
+
+  private SpillingShuffler<String, Long> spill() {
+    PTypeFamily tf = WritableTypeFamily.getInstance();
+    SpillingShuffler<String, Long> shuffler = new SpillingShuffler<String, Long>(
+        tf.tableOf(tf.strings(), tf.longs()), null, MemPipeline.getInstance().getConfiguration(), 1024);
+    for (Pair<String, Long> pair : data()) {
+      shuffler.add(pair);
+    }
+    assertFalse("Expected the shuffle to spill", spillDir.list().length == 0);
+    return shuffler;
+  }
+
+  @Test
+  public void testRunsDeletedWhenExhausted() {
+    Iterator<Pair<String, Iterable<Long>>> iter = spill().iterator();
+    int groups = 0;
+    while (iter.hasNext()) {
+      iter.next();
+      groups++;
+    }
+    assertEquals(7, groups);
+    assertEquals(0, spillDir.list().length);
+  }
+
+  @Test
+  public void testRunsDeletedWhenClosed() throws Exception {
+    Iterator<Pair<String, Iterable<Long>>> iter = spill().iterator();
+    iter.next();
+    ((Closeable) iter).close();
+    assertFalse(iter.hasNext());
+    assertEquals(0, spillDir.list().length);
+  }
+
+  @Test
+  public void testWritables() {
+    testGroupAndCombine(WritableTypeFamily.getInstance());
+  }
+
+  @Test
+  public void testAvro() {
+    testGroupAndCombine(AvroTypeFamily.getInstance());
+  }
+
+  @Test
+  public void testGroupedTableIsReiterable() {
+    PTypeFamily tf = WritableTypeFamily.getInstance();
+    PTable<String, Long> input = MemPipeline.typedTableOf(tf.tableOf(tf.strings(), tf.longs()), data());
+    PCollection<Pair<String, Iterable<Long>>> grouped = input.groupByKey();
+
+    int groups = 0;
+    for (Pair<String, Iterable<Long>> group : grouped.materialize()) {
+      groups++;
+    }
+    for (Pair<String, Iterable<Long>> group : grouped.materialize()) {
+      groups++;
+    }
+    assertEquals(14, groups);
+  }
+
+  @Test
+  public void testUnreadGroupedTableLeavesNoRuns() {
+    PTypeFamily tf = WritableTypeFamily.getInstance();
+    PTable<String, Long> input = MemPipeline.typedTableOf(tf.tableOf(tf.strings(), tf.longs()), data());
+    input.groupByKey().materialize();
+    assertEquals(0, spillDir.list().length);
+  }
+
+  @Test
+  public void testSecondarySort() {
+    List<Pair<Long, Pair<Long, String>>> data = Lists.newArrayList();
+    for (long i = 0; i < 500; i++) {
+      data.add(Pair.of(i % 2, Pair.of(500 - i, "v")));
+    }
+    PTable<Long, Pair<Long, String>> input = MemPipeline.typedTableOf(
+        Avros.tableOf(Avros.longs(), Avros.pairs(Avros.longs(), Avros.strings())), data);
+    PCollection<String> orders = SecondarySort.sortAndApply(input, new CheckOrderFn(), Avros.strings());
+
+    assertEquals(ImmutableList.of("0:250", "1:250"), ImmutableList.copyOf(orders.materialize()));
+  }
+
+  private static class CheckOrderFn extends DoFn<Pair<Long, Iterable<Pair<Long, String>>>, String> {
+    @Override
+    public void process(Pair<Long, Iterable<Pair<Long, String>>> input, Emitter<String> emitter) {
+      long last = Long.MIN_VALUE;
+      int count = 0;
+      for (Pair<Long, String> p : input.second()) {
+        if (p.first() < last) {
+          throw new IllegalStateException("Values out of order for key " + input.first());
+        }
+        last = p.first();
+        count++;
+      }
+      emitter.emit(input.first() + ":" + count);
+    }
+  }
+}
@@ -23,8 +23,10 @@ import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import org.apache.crunch.impl.mr.run.RTNode;
+import org.apache.crunch.impl.mr.run.RuntimeParameters;
 import org.apache.crunch.test.StringWrapper;
 import org.apache.crunch.types.PType;
 import org.apache.crunch.types.avro.Avros;
@@ -80,4 +82,42 @@ public class IntermediateEmitterTest {
     assertNotSame(stringWrapper, argumentCaptorB.getValue());
   }
 
+  @Test
+  public void testEmit_MultipleChildren_SharingChild() {
+    RTNode childA = mock(RTNode.class);
+    RTNode childB = mock(RTNode.class);
+    when(childA.canShareInputs()).thenReturn(true);
+    IntermediateEmitter emitter = new IntermediateEmitter(ptype, Lists.newArrayList(childA, childB),
+        new Configuration());
+    emitter.emit(stringWrapper);
+
+    ArgumentCaptor<StringWrapper> argumentCaptorA = ArgumentCaptor.forClass(StringWrapper.class);
+    ArgumentCaptor<StringWrapper> argumentCaptorB = ArgumentCaptor.forClass(StringWrapper.class);
+
+    verify(childA).process(argumentCaptorA.capture());
+    verify(childB).process(argumentCaptorB.capture());
+
+    assertSame(stringWrapper, argumentCaptorA.getValue());
+    assertEquals(stringWrapper, argumentCaptorB.getValue());
+    assertNotSame(stringWrapper, argumentCaptorB.getValue());
+  }
+
+  @Test
+  public void testEmit_MultipleChildren_DeepCopyDisabled() {
+    RTNode childA = mock(RTNode.class);
+    RTNode childB = mock(RTNode.class);
+    Configuration conf = new Configuration();
+    conf.setBoolean(RuntimeParameters.DISABLE_DEEP_COPY, true);
+    IntermediateEmitter emitter = new IntermediateEmitter(ptype, Lists.newArrayList(childA, childB), conf);
+    emitter.emit(stringWrapper);
+
+    ArgumentCaptor<StringWrapper> argumentCaptorA = ArgumentCaptor.forClass(StringWrapper.class);
+    ArgumentCaptor<StringWrapper> argumentCaptorB = ArgumentCaptor.forClass(StringWrapper.class);
+
+    verify(childA).process(argumentCaptorA.capture());
+    verify(childB).process(argumentCaptorB.capture());
+
+    assertSame(stringWrapper, argumentCaptorA.getValue());
+    assertSame(stringWrapper, argumentCaptorB.getValue());
+  }
 }
@@ -19,10 +19,27 @@ package org.apache.crunch.impl.mr.exec;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+
+import org.apache.crunch.io.PartitionFileNamingScheme;
+import org.apache.crunch.io.PathTarget;
+import org.apache.crunch.io.seq.SeqFileTarget;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
 public class CrunchJobHooksTest {
 
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
   @Test
   public void testExtractPartitionNumber() {
     assertEquals(0, CrunchJobHooks.extractPartitionNumber("out1-r-00000"));
@@ -39,4 +56,20 @@ public class CrunchJobHooksTest {
   public void testExtractPartitionNumber_MapOutputFile() {
     CrunchJobHooks.extractPartitionNumber("out1-m-00000");
   }
+
+  @Test
+  public void testPartitionNamingKeepsEmptyPartitionsOut() throws Exception {
+    // Reducers of empty partitions write no file, so partitions 0 and 2 are missing.
+    File working = tmpDir.getFile("working");
+    working.mkdirs();
+    new File(working, "out0-r-00001").createNewFile();
+    new File(working, "out0-r-00003").createNewFile();
+    File output = tmpDir.getFile("output");
+
+    SeqFileTarget target = new SeqFileTarget(new Path(output.getAbsolutePath()), new PartitionFileNamingScheme());
+    new CrunchJobHooks.CompletionHook(new Job(tmpDir.getDefaultConfiguration()),
+        new Path(working.getAbsolutePath()), ImmutableMap.<Integer, PathTarget>of(0, target), false).run();
+
+    assertEquals(ImmutableSet.of("part-r-00001", "part-r-00003"), Sets.newHashSet(output.list()));
+  }
 }
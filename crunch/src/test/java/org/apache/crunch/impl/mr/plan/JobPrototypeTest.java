@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.crunch.hadoop.mapreduce.lib.jobcontrol.CrunchControlledJob;
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.impl.mr.run.CrunchCombiner;
+import org.apache.crunch.impl.mr.run.InMapperCombineFn;
+import org.apache.crunch.impl.mr.run.NodeContext;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.util.DistCache;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JobPrototypeTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private Job planCount(Configuration conf) throws Exception {
+    MRPipeline pipeline = new MRPipeline(JobPrototypeTest.class, conf);
+    pipeline.writeTextFile(Aggregate.count(pipeline.readTextFile(tmpDir.getFileName("input"))),
+        tmpDir.getFileName("output"));
+    List<CrunchControlledJob> jobs = pipeline.plan().getWaitingJobs();
+    assertEquals(1, jobs.size());
+    return jobs.get(0).getJob();
+  }
+
+  private static String getMapPlan(Job job) throws Exception {
+    Configuration conf = job.getConfiguration();
+    Path path = new Path(conf.get(PlanningParameters.CRUNCH_WORKING_DIRECTORY), NodeContext.MAP.toString());
+    return String.valueOf(DistCache.read(conf, path));
+  }
+
+  @Test
+  public void testCombinerByDefault() throws Exception {
+    Job job = planCount(tmpDir.getDefaultConfiguration());
+    assertEquals(CrunchCombiner.class, job.getCombinerClass());
+    assertFalse(getMapPlan(job).contains(InMapperCombineFn.class.getName()));
+  }
+
+  @Test
+  public void testInMapperCombine() throws Exception {
+    Configuration conf = tmpDir.getDefaultConfiguration();
+    conf.setBoolean(PlanningParameters.IN_MAPPER_COMBINE, true);
+    Job job = planCount(conf);
+    assertNull(job.getCombinerClass());
+    assertTrue(getMapPlan(job).contains(InMapperCombineFn.class.getName()));
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.impl.mr.MRPipeline;
+import org.apache.crunch.lib.Aggregate;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MSCRPlannerTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private static class LengthFn extends MapFn<String, Integer> {
+    @Override
+    public Integer map(String input) {
+      return input.length();
+    }
+  }
+
+  private int planSiblingGroupings(Configuration conf) throws Exception {
+    MRPipeline pipeline = new MRPipeline(MSCRPlannerTest.class, conf);
+    PCollection<String> lines = pipeline.readTextFile(tmpDir.getFileName("input"));
+    pipeline.writeTextFile(Aggregate.count(lines), tmpDir.getFileName("lines"));
+    pipeline.writeTextFile(Aggregate.count(lines.parallelDo(new LengthFn(), Writables.ints())),
+        tmpDir.getFileName("lengths"));
+    return pipeline.plan().getWaitingJobs().size();
+  }
+
+  @Test
+  public void testSiblingJobsNotFusedByDefault() throws Exception {
+    assertEquals(2, planSiblingGroupings(tmpDir.getDefaultConfiguration()));
+  }
+
+  @Test
+  public void testFuseSiblingJobs() throws Exception {
+    Configuration conf = tmpDir.getDefaultConfiguration();
+    conf.setBoolean(PlanningParameters.FUSE_SIBLING_JOBS, true);
+    assertEquals(1, planSiblingGroupings(conf));
+  }
+}
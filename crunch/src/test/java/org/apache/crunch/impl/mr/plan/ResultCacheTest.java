@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.crunch.SourceTarget;
+import org.apache.crunch.io.PathTarget;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ResultCacheTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.set(PlanningParameters.RESULT_CACHE_DIR, tmpDir.getFileName("cache"));
+    conf.setLong(PlanningParameters.RESULT_CACHE_MAX_BYTES, 25);
+  }
+
+  private void write(ResultCache cache, String fingerprint, boolean succeeded) throws IOException {
+    SourceTarget<String> target = cache.create(fingerprint, Writables.strings());
+    Path path = new Path(((PathTarget) target).getPath(), "part-m-00000");
+    OutputStream out = FileSystem.getLocal(conf).create(path);
+    out.write(new byte[10]);
+    out.close();
+
+    Job job = mock(Job.class);
+    when(job.isSuccessful()).thenReturn(succeeded);
+    cache.getCommitHook(job, ImmutableMap.<String, SourceTarget<?>> of(fingerprint, target)).run();
+  }
+
+  @Test
+  public void testDisabledWithoutDirectory() {
+    assertNull(ResultCache.load(new Configuration()));
+  }
+
+  @Test
+  public void testOnlyCommitsOutputsOfSuccessfulJobs() throws IOException {
+    ResultCache first = ResultCache.load(conf);
+    write(first, "a", true);
+    write(first, "b", false);
+
+    ResultCache second = ResultCache.load(conf);
+    assertNotNull(second.lookup("a", Writables.strings()));
+    assertNull(second.lookup("b", Writables.strings()));
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedOutputsNotInUse() throws IOException {
+    ResultCache first = ResultCache.load(conf);
+    write(first, "a", true);
+    write(first, "b", true);
+
+    // The second run reads "a", so "b" is evicted to make room for "c".
+    ResultCache second = ResultCache.load(conf);
+    assertNotNull(second.lookup("a", Writables.strings()));
+    write(second, "c", true);
+
+    ResultCache third = ResultCache.load(conf);
+    assertNotNull(third.lookup("a", Writables.strings()));
+    assertNull(third.lookup("b", Writables.strings()));
+    assertNotNull(third.lookup("c", Writables.strings()));
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.plan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ScaleFactorHistoryTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  @Test
+  public void testInMemoryWithoutPath() {
+    ScaleFactorHistory history = ScaleFactorHistory.load(new Configuration());
+    assertNull(history.get("p:S0>GBK"));
+    history.record("p:S0>GBK", 0.25);
+    assertEquals(0.25, history.get("p:S0>GBK"), 0.0);
+  }
+
+  @Test
+  public void testPersistsAcrossRuns() {
+    Configuration conf = new Configuration();
+    conf.set(PlanningParameters.SCALE_FACTOR_HISTORY, tmpDir.getFileName("scale-factors"));
+
+    ScaleFactorHistory first = ScaleFactorHistory.load(conf);
+    first.record("p:S0>GBK", 0.25);
+    first.record("p:S1>S2>GBK,S3>GBK", 4.0);
+
+    ScaleFactorHistory second = ScaleFactorHistory.load(conf);
+    assertEquals(0.25, second.get("p:S0>GBK"), 0.0);
+    assertEquals(4.0, second.get("p:S1>S2>GBK,S3>GBK"), 0.0);
+    assertNull(second.get("p:S4>GBK"));
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.crunch.test.CrunchTestSupport;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+public class InMapperCombineFnTest {
+
+  private static List<Pair<String, Long>> run(int maxKeys, List<String> keys) {
+    InMapperCombineFn<String, Long> fn = new InMapperCombineFn<String, Long>(
+        Aggregators.<String, Long> toCombineFn(Aggregators.SUM_LONGS()),
+        Writables.tableOf(Writables.strings(), Writables.longs()));
+    Configuration conf = new Configuration();
+    conf.setInt(RuntimeParameters.IN_MAPPER_COMBINE_MAX_KEYS, maxKeys);
+    fn.setContext(CrunchTestSupport.getTestContext(conf));
+    fn.initialize();
+    InMemoryEmitter<Pair<String, Long>> emitter = new InMemoryEmitter<Pair<String, Long>>();
+    for (String key : keys) {
+      fn.process(Pair.of(key, 1L), emitter);
+    }
+    fn.cleanup(emitter);
+    return emitter.getOutput();
+  }
+
+  private static Map<String, Long> sum(List<Pair<String, Long>> pairs) {
+    Map<String, Long> sums = Maps.newHashMap();
+    for (Pair<String, Long> p : pairs) {
+      Long sum = sums.get(p.first());
+      sums.put(p.first(), sum == null ? p.second() : sum + p.second());
+    }
+    return sums;
+  }
+
+  @Test
+  public void testOnePartialPerKey() {
+    ImmutableList.Builder<String> keys = ImmutableList.builder();
+    for (int i = 0; i < 100; i++) {
+      keys.add("a", "b", "b");
+    }
+    List<Pair<String, Long>> output = run(10, keys.build());
+    assertEquals(2, output.size());
+    assertEquals(ImmutableMap.of("a", 100L, "b", 200L), sum(output));
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUpdated() {
+    List<Pair<String, Long>> output = run(2, ImmutableList.of("a", "b", "a", "c", "a", "b"));
+    // Adding c evicts b, and adding b again evicts c.
+    assertEquals(ImmutableList.of(Pair.of("b", 1L), Pair.of("c", 1L)), output.subList(0, 2));
+    assertEquals(4, output.size());
+    assertEquals(ImmutableMap.of("a", 3L, "b", 2L, "c", 1L), sum(output));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.impl.mr.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TaggedKeyTest {
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.setStrings(TaggedKey.CLASSES, Text.class.getName(), IntWritable.class.getName());
+    conf.setStrings(TaggedValue.CLASSES, IntWritable.class.getName(), Text.class.getName());
+  }
+
+  private static byte[] serialize(Writable writable) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private <T extends TaggedWritable> T deserialize(byte[] bytes, T writable) throws IOException {
+    writable.setConf(conf);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    writable.readFields(in);
+    return writable;
+  }
+
+  @Test
+  public void testRoundTripChangesValueClassWithTag() throws IOException {
+    TaggedValue value = deserialize(serialize(new TaggedValue(0, new IntWritable(7))), new TaggedValue());
+    assertEquals(new IntWritable(7), value.get());
+    deserialize(serialize(new TaggedValue(1, new Text("seven"))), value);
+    assertEquals(1, value.getTag());
+    assertEquals(new Text("seven"), value.get());
+  }
+
+  @Test
+  public void testRawComparatorOrdersByTagThenKey() throws IOException {
+    TaggedKey.Comparator comparator = new TaggedKey.Comparator();
+    comparator.setConf(conf);
+    byte[] apple = serialize(new TaggedKey(0, new Text("apple")));
+    byte[] banana = serialize(new TaggedKey(0, new Text("banana")));
+    byte[] one = serialize(new TaggedKey(1, new IntWritable(1)));
+    byte[] two = serialize(new TaggedKey(1, new IntWritable(2)));
+
+    assertTrue(comparator.compare(apple, 0, apple.length, banana, 0, banana.length) < 0);
+    assertTrue(comparator.compare(banana, 0, banana.length, one, 0, one.length) < 0);
+    assertTrue(comparator.compare(two, 0, two.length, one, 0, one.length) > 0);
+    assertEquals(0, comparator.compare(one, 0, one.length, one, 0, one.length));
+
+    TaggedKey key = deserialize(two, new TaggedKey());
+    assertEquals(new TaggedKey(1, new IntWritable(2)), key);
+    assertTrue(key.compareTo(deserialize(apple, new TaggedKey())) > 0);
+  }
+}
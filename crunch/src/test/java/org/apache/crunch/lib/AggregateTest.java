@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.crunch.util.QuantileSketch;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AggregateTest {
+
+  @Test
+  public void testApproxDistinct() {
+    List<String> data = Lists.newArrayList();
+    for (int i = 0; i < 30000; i++) {
+      data.add("element" + (i % 10000));
+    }
+    PCollection<String> input = MemPipeline.typedCollectionOf(Writables.strings(), data);
+    long estimate = Aggregate.approxDistinct(input).getValue();
+    assertTrue("Estimate " + estimate, Math.abs(estimate - 10000) < 300);
+  }
+
+  @Test
+  public void testApproxDistinctValues() {
+    List<Pair<String, Integer>> data = Lists.newArrayList();
+    for (int i = 0; i < 3000; i++) {
+      data.add(Pair.of("a", i % 5));
+      data.add(Pair.of("b", i));
+    }
+    PTable<String, Integer> input = MemPipeline.typedTableOf(Avros.tableOf(Avros.strings(), Avros.ints()), data);
+    Map<String, Long> estimates = Aggregate.approxDistinctValues(input).materializeToMap();
+    assertEquals(5L, estimates.get("a").longValue());
+    assertTrue("Estimate " + estimates.get("b"), Math.abs(estimates.get("b") - 3000) < 100);
+  }
+
+  @Test
+  public void testApproxDistinctValuesOfManyKeys() {
+    List<Pair<Integer, String>> data = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      for (int key = 0; key < 2500; key++) {
+        data.add(Pair.of(key, "v" + (key % 4 == 0 ? 0 : i)));
+      }
+    }
+    PTable<Integer, String> input = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.ints(), Writables.strings()), data);
+    Map<Integer, Long> estimates = Aggregate.approxDistinctValues(input).materializeToMap();
+    assertEquals(2500, estimates.size());
+    for (int key : new int[] { 0, 1, 1234, 2499 }) {
+      assertEquals(key % 4 == 0 ? 1L : 3L, estimates.get(key).longValue());
+    }
+  }
+
+  @Test
+  public void testQuantiles() {
+    List<Pair<String, Double>> data = Lists.newArrayList();
+    for (int i = 1; i <= 100; i++) {
+      data.add(Pair.of("small", (double) i));
+    }
+    for (int i = 0; i < 50000; i++) {
+      data.add(Pair.of("large", (double) ((i * 7919L) % 50000)));
+    }
+    PTable<String, Double> input = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.doubles()), data);
+    Map<String, Collection<Double>> quantiles = Aggregate.quantiles(input, 0.5, 0.99, 1.0).materializeToMap();
+    assertEquals(ImmutableList.of(50.0, 99.0, 100.0), quantiles.get("small"));
+    List<Double> large = Lists.newArrayList(quantiles.get("large"));
+    assertTrue("Median " + large.get(0), Math.abs(large.get(0) - 25000) < 1000);
+    assertTrue("99th percentile " + large.get(1), Math.abs(large.get(1) - 49500) < 1000);
+    assertEquals(49999.0, large.get(2), 0.0);
+  }
+
+  @Test
+  public void testQuantileSketchesOfManyKeys() {
+    List<Pair<Integer, Integer>> data = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      for (int key = 0; key < 2500; key++) {
+        data.add(Pair.of(key, key + i));
+      }
+    }
+    PTable<Integer, Integer> input = MemPipeline.typedTableOf(Avros.tableOf(Avros.ints(), Avros.ints()), data);
+    Map<Integer, QuantileSketch> sketches = Aggregate.quantileSketches(input).materializeToMap();
+    assertEquals(2500, sketches.size());
+    for (int key : new int[] { 0, 1234, 2499 }) {
+      assertEquals(3L, sketches.get(key).getCount());
+      assertEquals(key + 1.0, sketches.get(key).getQuantile(0.5), 0.0);
+    }
+  }
+
+  @Test
+  public void testMergeQuantileSketches() {
+    List<Pair<String, Integer>> today = Lists.newArrayList();
+    List<Pair<String, Integer>> yesterday = Lists.newArrayList();
+    for (int i = 1; i <= 10; i++) {
+      today.add(Pair.of("a", i));
+      yesterday.add(Pair.of("a", 10 + i));
+    }
+    PTable<String, QuantileSketch> sketches = Aggregate.quantileSketches(
+        MemPipeline.typedTableOf(Avros.tableOf(Avros.strings(), Avros.ints()), today)).union(
+        Aggregate.quantileSketches(MemPipeline.typedTableOf(Avros.tableOf(Avros.strings(), Avros.ints()), yesterday)));
+    QuantileSketch merged = sketches.groupByKey().combineValues(Aggregators.QUANTILES()).materializeToMap().get("a");
+    assertEquals(20L, merged.getCount());
+    assertEquals(10.0, merged.getQuantile(0.5), 0.0);
+  }
+
+  @Test
+  public void testApproxTop() {
+    List<String> data = Lists.newArrayList();
+    for (int i = 0; i < 10000; i++) {
+      data.add("rare" + i);
+      if (i % 2 == 0) {
+        data.add("common");
+      }
+      if (i % 5 == 0) {
+        data.add("frequent");
+      }
+    }
+    PCollection<String> input = MemPipeline.typedCollectionOf(Avros.strings(), data);
+    List<Pair<String, Long>> top = Lists.newArrayList(Aggregate.approxTop(input, 2, 100).materialize());
+    assertEquals(2, top.size());
+    assertEquals("common", top.get(0).first());
+    assertEquals("frequent", top.get(1).first());
+    assertTrue(top.get(0).second() >= 5000 && top.get(0).second() <= 5000 + 17000 / 100);
+  }
+}
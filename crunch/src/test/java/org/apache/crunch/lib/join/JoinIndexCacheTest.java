@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.crunch.Pair;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class JoinIndexCacheTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private File file;
+  private int loads;
+
+  @Before
+  public void setUp() throws Exception {
+    file = tmpDir.getFile("index");
+    MappedJoinIndex.write(ImmutableList.of(Pair.of("a", 1)), ptype(), new Configuration(), file);
+  }
+
+  private static PTableType<String, Integer> ptype() {
+    return Writables.tableOf(Writables.strings(), Writables.ints());
+  }
+
+  private JoinIndexCache.Loader<String, Integer> loader() {
+    return new JoinIndexCache.Loader<String, Integer>() {
+      @Override
+      public MappedJoinIndex<String, Integer> load() throws IOException {
+        loads++;
+        return new MappedJoinIndex<String, Integer>(file, ptype(), new Configuration());
+      }
+    };
+  }
+
+  @Test
+  public void testShared() throws Exception {
+    MappedJoinIndex<String, Integer> first = JoinIndexCache.acquire("shared", loader());
+    MappedJoinIndex<String, Integer> second = JoinIndexCache.acquire("shared", loader());
+    assertSame(first, second);
+    assertFalse(JoinIndexCache.release("shared"));
+    assertTrue(JoinIndexCache.release("shared"));
+
+    // A later task in the same JVM reuses the unreferenced index.
+    assertSame(first, JoinIndexCache.acquire("shared", loader()));
+    JoinIndexCache.release("shared");
+    assertEquals(1, loads);
+    assertEquals(ImmutableList.of(1), first.get("a"));
+  }
+
+  @Test
+  public void testEvictUnreferenced() throws Exception {
+    JoinIndexCache.acquire("old", loader());
+    JoinIndexCache.release("old");
+    JoinIndexCache.acquire("new", loader());
+    assertEquals(1, JoinIndexCache.size());
+    JoinIndexCache.release("new");
+    assertEquals(2, loads);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReleaseUnacquired() {
+    JoinIndexCache.release("unacquired");
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.crunch.Pair;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Lists;
+
+public class MappedJoinIndexTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private void testIndex(PTableType<String, Long> ptype) throws Exception {
+    Configuration conf = new Configuration();
+    ptype.initialize(conf);
+    List<Pair<String, Long>> pairs = Lists.newArrayList();
+    for (long i = 0; i < 1000; i++) {
+      pairs.add(Pair.of("key" + (i % 300), i));
+    }
+    File file = tmpDir.getFile("index");
+    MappedJoinIndex.write(pairs, ptype, conf, file);
+    MappedJoinIndex<String, Long> index = new MappedJoinIndex<String, Long>(file, ptype, conf);
+
+    assertEquals(ImmutableMultiset.of(7L, 307L, 607L, 907L), ImmutableMultiset.copyOf(index.get("key7")));
+    assertEquals(ImmutableMultiset.of(299L, 599L, 899L), ImmutableMultiset.copyOf(index.get("key299")));
+    assertTrue(index.get("key300").isEmpty());
+  }
+
+  @Test
+  public void testWritables() throws Exception {
+    testIndex(Writables.tableOf(Writables.strings(), Writables.longs()));
+  }
+
+  @Test
+  public void testAvros() throws Exception {
+    testIndex(Avros.tableOf(Avros.strings(), Avros.longs()));
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    Configuration conf = new Configuration();
+    PTableType<String, Long> ptype = Writables.tableOf(Writables.strings(), Writables.longs());
+    File file = tmpDir.getFile("index");
+    MappedJoinIndex.write(ImmutableList.<Pair<String, Long>> of(), ptype, conf, file);
+    assertTrue(new MappedJoinIndex<String, Long>(file, ptype, conf).get("key").isEmpty());
+  }
+}
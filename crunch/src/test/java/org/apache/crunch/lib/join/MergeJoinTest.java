@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.io.At;
+import org.apache.crunch.io.PartitionFileNamingScheme;
+import org.apache.crunch.io.seq.SeqFileTableSourceTarget;
+import org.apache.crunch.test.TemporaryPath;
+import org.apache.crunch.test.TemporaryPaths;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class MergeJoinTest {
+
+  @Rule
+  public TemporaryPath tmpDir = TemporaryPaths.create();
+
+  private static void writePartition(Path path, Object... keysAndValues) throws IOException {
+    Configuration conf = new Configuration();
+    SequenceFile.Writer writer = SequenceFile.createWriter(FileSystem.getLocal(conf), conf, path, Text.class,
+        IntWritable.class);
+    try {
+      for (int i = 0; i < keysAndValues.length; i += 2) {
+        writer.append(new Text((String) keysAndValues[i]), new IntWritable((Integer) keysAndValues[i + 1]));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testJoin() throws Exception {
+    Path left = tmpDir.getPath("left");
+    writePartition(new Path(left, "part-r-00000"), "a", 1, "b", 2, "b", 3, "d", 4);
+    writePartition(new Path(left, "part-r-00001"), "e", 5, "f", 6);
+    Path right = tmpDir.getPath("right");
+    writePartition(new Path(right, "part-r-00000"), "b", 10, "b", 20, "c", 30, "d", 40);
+    writePartition(new Path(right, "part-r-00001"));
+
+    HashMultiset<Pair<String, Pair<Integer, Integer>>> joined = HashMultiset.create(MergeJoin.join(
+        MemPipeline.getInstance(), left, Writables.tableOf(Writables.strings(), Writables.ints()), right,
+        Writables.tableOf(Writables.strings(), Writables.ints())).materialize());
+
+    assertEquals(HashMultiset.create(ImmutableList.of(
+        Pair.of("b", Pair.of(2, 10)), Pair.of("b", Pair.of(2, 20)),
+        Pair.of("b", Pair.of(3, 10)), Pair.of("b", Pair.of(3, 20)),
+        Pair.of("d", Pair.of(4, 40)))), joined);
+  }
+
+  public static class ReverseTextComparator extends Text.Comparator {
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      return -super.compare(b1, s1, l1, b2, s2, l2);
+    }
+  }
+
+  @Test
+  public void testJoinWithSortComparator() throws Exception {
+    Path left = tmpDir.getPath("left");
+    writePartition(new Path(left, "part-r-00000"), "d", 4, "b", 2, "a", 1);
+    Path right = tmpDir.getPath("right");
+    writePartition(new Path(right, "part-r-00000"), "d", 40, "c", 30, "b", 20);
+
+    GroupingOptions options = GroupingOptions.builder().sortComparatorClass(ReverseTextComparator.class).build();
+    HashMultiset<Pair<String, Pair<Integer, Integer>>> joined = HashMultiset.create(MergeJoin.join(
+        MemPipeline.getInstance(), left, Writables.tableOf(Writables.strings(), Writables.ints()), right,
+        Writables.tableOf(Writables.strings(), Writables.ints()), options).materialize());
+
+    assertEquals(HashMultiset.create(ImmutableList.of(
+        Pair.of("b", Pair.of(2, 20)), Pair.of("d", Pair.of(4, 40)))), joined);
+  }
+
+  @Test
+  public void testEmptyPartitionsWithoutFiles() throws Exception {
+    Path left = tmpDir.getPath("left");
+    writePartition(new Path(left, "part-r-00000"), "a", 1);
+    writePartition(new Path(left, "part-r-00002"), "c", 3);
+    Path right = tmpDir.getPath("right");
+    writePartition(new Path(right, "part-r-00001"), "b", 20);
+    writePartition(new Path(right, "part-r-00002"), "c", 30);
+
+    HashMultiset<Pair<String, Pair<Integer, Integer>>> joined = HashMultiset.create(MergeJoin.join(
+        MemPipeline.getInstance(), left, Writables.tableOf(Writables.strings(), Writables.ints()), right,
+        Writables.tableOf(Writables.strings(), Writables.ints())).materialize());
+
+    assertEquals(HashMultiset.create(ImmutableList.of(Pair.of("c", Pair.of(3, 30)))), joined);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMorePartitionsThanReducers() throws Exception {
+    Path left = tmpDir.getPath("left");
+    writePartition(new Path(left, "part-r-00000"), "a", 1);
+    writePartition(new Path(left, "part-r-00001"), "b", 2);
+    Path right = tmpDir.getPath("right");
+    writePartition(new Path(right, "part-r-00000"), "a", 1);
+
+    MergeJoin.join(MemPipeline.getInstance(), left, Writables.tableOf(Writables.strings(), Writables.ints()),
+        right, Writables.tableOf(Writables.strings(), Writables.ints()),
+        GroupingOptions.builder().numReducers(1).build());
+  }
+
+  @Test
+  public void testPartitionFilesByNumber() throws Exception {
+    Path dir = tmpDir.getPath("dir");
+    writePartition(new Path(dir, "part-r-00000"), "a", 1);
+    writePartition(new Path(dir, "part-r-00002"), "b", 2);
+
+    assertEquals(ImmutableSet.of(0, 2), MergeJoin.getPartitionFiles(dir, new Configuration()).keySet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSequentialNamingRejected() throws Exception {
+    PTableType<String, Integer> tableType = Writables.tableOf(Writables.strings(), Writables.ints());
+    MergeJoin.join(MemPipeline.getInstance(), At.sequenceFile(tmpDir.getPath("left"), Writables.strings(), Writables.ints()),
+        new SeqFileTableSourceTarget<String, Integer>(tmpDir.getPath("right"), tableType,
+            new PartitionFileNamingScheme()));
+  }
+}
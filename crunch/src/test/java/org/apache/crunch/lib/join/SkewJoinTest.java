@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.impl.mem.MemPipeline;
+import org.apache.crunch.impl.mem.emit.InMemoryEmitter;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.test.CrunchTestSupport;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class SkewJoinTest {
+
+  private static PTable<String, Integer> skewedTable() {
+    List<Pair<String, Integer>> leftValues = Lists.newArrayList();
+    for (int i = 0; i < 200; i++) {
+      leftValues.add(Pair.of("hot", i));
+    }
+    leftValues.add(Pair.of("cold", 1));
+    leftValues.add(Pair.of("left-only", 2));
+    return MemPipeline.typedTableOf(Writables.tableOf(Writables.strings(), Writables.ints()), leftValues);
+  }
+
+  @Test
+  public void testHotKeys() {
+    assertEquals(ImmutableSet.of("hot"), ImmutableSet.copyOf(SkewJoin.hotKeys(skewedTable(), 100, 0.1).materialize()));
+  }
+
+  @Test
+  public void testJoinMatchesJoin() {
+    PTable<String, Integer> left = skewedTable();
+    PTable<String, String> right = MemPipeline.typedTableOf(
+        Writables.tableOf(Writables.strings(), Writables.strings()),
+        ImmutableList.of(Pair.of("hot", "a"), Pair.of("hot", "b"), Pair.of("cold", "c"), Pair.of("right-only", "d")));
+
+    HashMultiset<Pair<String, Pair<Integer, String>>> expected = HashMultiset.create(
+        Join.join(left, right, new InnerJoinFn<String, Integer, String>(Writables.strings(), Writables.ints()))
+            .materialize());
+    HashMultiset<Pair<String, Pair<Integer, String>>> actual = HashMultiset.create(
+        SkewJoin.join(left, right, 100, 0.1, 4).materialize());
+    assertEquals(401, expected.size());
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testCopyToEveryShard() {
+    SkewJoin.CopyFn<String, String> copyFn = new SkewJoin.CopyFn<String, String>(
+        new SkewJoin.HotKeys<String>(ImmutableSet.of("hot")), 3);
+    copyFn.setContext(CrunchTestSupport.getTestContext(new Configuration()));
+    copyFn.initialize();
+    Emitter<Pair<Pair<String, Integer>, String>> emitter = mock(Emitter.class);
+
+    copyFn.process(Pair.of("hot", "a"), emitter);
+    copyFn.process(Pair.of("cold", "b"), emitter);
+
+    verify(emitter).emit(Pair.of(Pair.of("hot", 0), "a"));
+    verify(emitter).emit(Pair.of(Pair.of("hot", 1), "a"));
+    verify(emitter).emit(Pair.of(Pair.of("hot", 2), "a"));
+    verify(emitter).emit(Pair.of(Pair.of("cold", 0), "b"));
+    verifyNoMoreInteractions(emitter);
+  }
+
+  @Test
+  public void testSplitSpreadsHotKeys() {
+    SkewJoin.SplitFn<String, Integer> splitFn = new SkewJoin.SplitFn<String, Integer>(
+        new SkewJoin.HotKeys<String>(ImmutableSet.of("hot")), 4);
+    splitFn.setContext(CrunchTestSupport.getTestContext(new Configuration()));
+    splitFn.initialize();
+    InMemoryEmitter<Pair<Pair<String, Integer>, Integer>> emitter =
+        new InMemoryEmitter<Pair<Pair<String, Integer>, Integer>>();
+
+    for (int i = 0; i < 200; i++) {
+      splitFn.process(Pair.of("hot", i), emitter);
+      splitFn.process(Pair.of("cold", i), emitter);
+    }
+
+    Set<Integer> hotShards = Sets.newHashSet();
+    for (Pair<Pair<String, Integer>, Integer> p : emitter.getOutput()) {
+      if ("hot".equals(p.first().first())) {
+        hotShards.add(p.first().second());
+      } else {
+        assertEquals(Integer.valueOf(0), p.first().second());
+      }
+    }
+    assertEquals(400, emitter.getOutput().size());
+    assertTrue("Expected the hot key to be spread over several shards: " + hotShards, hotShards.size() > 1);
+    assertTrue(ImmutableSet.of(0, 1, 2, 3).containsAll(hotShards));
+  }
+}
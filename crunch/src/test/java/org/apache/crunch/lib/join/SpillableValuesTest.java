@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.lib.join;
+
+import static org.apache.crunch.test.StringWrapper.wrap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.crunch.Emitter;
+import org.apache.crunch.Pair;
+import org.apache.crunch.test.CrunchTestSupport;
+import org.apache.crunch.test.StringWrapper;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class SpillableValuesTest {
+
+  private static Configuration spillAfter(int threshold) {
+    Configuration conf = new Configuration();
+    conf.setInt(JoinFn.SPILL_THRESHOLD, threshold);
+    return conf;
+  }
+
+  private static <T> SpillableValues<T> newValues(PType<T> ptype, Configuration conf) {
+    ptype.initialize(conf);
+    return new SpillableValues<T>(ptype, conf);
+  }
+
+  @Test
+  public void testInMemory() {
+    SpillableValues<String> values = newValues(Writables.strings(), spillAfter(10));
+    assertTrue(values.isEmpty());
+    values.add("a");
+    values.add("b");
+    assertFalse(values.isEmpty());
+    assertEquals(ImmutableList.of("a", "b"), Lists.newArrayList(values));
+    values.close();
+  }
+
+  @Test
+  public void testSpilledWritables() {
+    SpillableValues<Pair<String, Long>> values = newValues(
+        Writables.pairs(Writables.strings(), Writables.longs()), spillAfter(1));
+    List<Pair<String, Long>> expected = Lists.newArrayList();
+    for (long i = 0; i < 5; i++) {
+      Pair<String, Long> value = Pair.of("v" + i, i);
+      values.add(value);
+      expected.add(value);
+    }
+    assertEquals(expected, Lists.newArrayList(values));
+    // Spilled values can be read more than once.
+    assertEquals(expected, Lists.newArrayList(values));
+    values.close();
+  }
+
+  @Test
+  public void testSpilledAvros() {
+    SpillableValues<StringWrapper> values = newValues(Avros.reflects(StringWrapper.class), spillAfter(2));
+    values.add(wrap("a"));
+    values.add(wrap("b"));
+    values.add(wrap("c"));
+    values.add(wrap("d"));
+    assertEquals(ImmutableList.of(wrap("a"), wrap("b"), wrap("c"), wrap("d")), Lists.newArrayList(values));
+    values.close();
+  }
+
+  @Test
+  public void testClearTruncatesSpill() {
+    SpillableValues<String> values = newValues(Avros.strings(), spillAfter(1));
+    values.add("a");
+    values.add("b");
+    values.add("c");
+    values.clear();
+    assertTrue(values.isEmpty());
+    values.add("d");
+    values.add("e");
+    assertEquals(ImmutableList.of("d", "e"), Lists.newArrayList(values));
+    values.close();
+  }
+
+  @Test
+  public void testCloseIterators() {
+    SpillableValues<String> values = newValues(Writables.strings(), spillAfter(1));
+    values.add("a");
+    values.add("b");
+    values.add("c");
+    Iterator<String> stopped = values.iterator();
+    assertEquals("a", stopped.next());
+    assertEquals("b", stopped.next());
+    values.closeIterators();
+    assertFalse(stopped.hasNext());
+    // The values can still be read again from the start.
+    assertEquals(ImmutableList.of("a", "b", "c"), Lists.newArrayList(values));
+    values.close();
+  }
+
+  @Test
+  public void testJoinClosesSpillWhenEmitterFails() {
+    final int[] closed = new int[1];
+    JoinFn<String, String, String> joinFn = new InnerJoinFn<String, String, String>(Writables.strings(),
+        Writables.strings()) {
+      @Override
+      protected void closeSpilledValues() {
+        super.closeSpilledValues();
+        closed[0]++;
+      }
+    };
+    joinFn.setContext(CrunchTestSupport.getTestContext(spillAfter(1)));
+    joinFn.initialize();
+    Emitter<Pair<String, Pair<String, String>>> emitter = mock(Emitter.class);
+    doThrow(new IllegalStateException()).when(emitter).emit(Pair.of("k", Pair.of("l2", "r1")));
+
+    joinFn.process(Pair.of(Pair.of("k", 0), (Iterable<Pair<String, String>>) ImmutableList.of(
+        Pair.of("l1", (String) null), Pair.of("l2", (String) null), Pair.of("l3", (String) null))), emitter);
+    try {
+      joinFn.process(Pair.of(Pair.of("k", 1),
+          (Iterable<Pair<String, String>>) ImmutableList.of(Pair.of((String) null, "r1"))), emitter);
+      fail("Expected the emitter to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(2, closed[0]);
+    // The spill file was closed, so the same key's values are read again
+    // from the start.
+    joinFn.process(Pair.of(Pair.of("k", 1),
+        (Iterable<Pair<String, String>>) ImmutableList.of(Pair.of((String) null, "r2"))), emitter);
+    joinFn.cleanup(emitter);
+
+    for (String left : new String[] { "l1", "l2", "l3" }) {
+      verify(emitter).emit(Pair.of("k", Pair.of(left, "r2")));
+    }
+  }
+
+  @Test
+  public void testJoinWithSpilledLeftValues() {
+    JoinFn<String, String, String> joinFn = new FullOuterJoinFn<String, String, String>(Writables.strings(),
+        Writables.strings());
+    joinFn.setContext(CrunchTestSupport.getTestContext(spillAfter(1)));
+    joinFn.initialize();
+    Emitter<Pair<String, Pair<String, String>>> emitter = mock(Emitter.class);
+
+    joinFn.join("k", 0, ImmutableList.of(Pair.of("l1", (String) null), Pair.of("l2", (String) null),
+        Pair.of("l3", (String) null)), emitter);
+    joinFn.join("k", 1, ImmutableList.of(Pair.of((String) null, "r1"), Pair.of((String) null, "r2")), emitter);
+    joinFn.join("left-only", 0, ImmutableList.of(Pair.of("l4", (String) null), Pair.of("l5", (String) null)),
+        emitter);
+    joinFn.cleanup(emitter);
+
+    for (String left : new String[] { "l1", "l2", "l3" }) {
+      for (String right : new String[] { "r1", "r2" }) {
+        verify(emitter).emit(Pair.of("k", Pair.of(left, right)));
+      }
+    }
+    verify(emitter).emit(Pair.of("left-only", Pair.of("l4", (String) null)));
+    verify(emitter).emit(Pair.of("left-only", Pair.of("l5", (String) null)));
+    verifyNoMoreInteractions(emitter);
+  }
+}
@@ -22,6 +22,8 @@ import static org.junit.Assert.assertEquals;
 import java.util.UUID;
 
 import org.apache.crunch.types.avro.AvroTypeFamily;
+import org.apache.crunch.types.writable.WritableTypeFamily;
+import org.apache.crunch.util.QuantileSketch;
 import org.junit.Test;
 
 public class PTypesTest {
@@ -31,4 +33,20 @@ public class PTypesTest {
     PType<UUID> ptype = PTypes.uuid(AvroTypeFamily.getInstance());
     assertEquals(uuid, ptype.getInputMapFn().map(ptype.getOutputMapFn().map(uuid)));
   }
+
+  @Test
+  public void testQuantileSketches() throws Exception {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 1; i <= 100; i++) {
+      sketch.update(i);
+    }
+    for (PTypeFamily ptf : new PTypeFamily[] { AvroTypeFamily.getInstance(), WritableTypeFamily.getInstance() }) {
+      PType<QuantileSketch> ptype = PTypes.quantileSketches(ptf);
+      ptype.getInputMapFn().initialize();
+      ptype.getOutputMapFn().initialize();
+      QuantileSketch copy = ptype.getInputMapFn().map(ptype.getOutputMapFn().map(sketch));
+      assertEquals(100L, copy.getCount());
+      assertEquals(50.0, copy.getQuantile(0.5), 0.0);
+    }
+  }
 }
@@ -61,6 +61,39 @@ public class AvroDeepCopierTest {
     assertNotSame(record, deepCopyRecord);
   }
 
+  @Test
+  public void testDeepCopySpecific_NestedValues() {
+    Person person = new Person();
+    person.name = "John Doe";
+    person.age = 42;
+    person.siblingnames = Lists.<CharSequence> newArrayList("Jimmy", "Jane");
+
+    Person deepCopyPerson = new AvroSpecificDeepCopier<Person>(Person.class, Person.SCHEMA$)
+        .deepCopy(person);
+    person.siblingnames.add("Joe");
+
+    assertEquals(2, deepCopyPerson.siblingnames.size());
+    assertEquals("Jimmy", deepCopyPerson.siblingnames.get(0).toString());
+    assertNotSame(person.siblingnames, deepCopyPerson.siblingnames);
+  }
+
+  @Test
+  public void testDeepCopyGeneric_NestedValues() {
+    Record record = new Record(Person.SCHEMA$);
+    record.put("name", "John Doe");
+    record.put("age", 42);
+    List<CharSequence> siblingnames = Lists.<CharSequence> newArrayList("Jimmy", "Jane");
+    record.put("siblingnames", siblingnames);
+
+    Record deepCopyRecord = new AvroDeepCopier.AvroGenericDeepCopier(Person.SCHEMA$)
+        .deepCopy(record);
+    siblingnames.add("Joe");
+
+    assertEquals(2, ((List<?>) deepCopyRecord.get("siblingnames")).size());
+    assertEquals("Jimmy", ((List<?>) deepCopyRecord.get("siblingnames")).get(0).toString());
+    assertEquals(42, deepCopyRecord.get("age"));
+  }
+
   static class ReflectedPerson {
     String name;
     int age;
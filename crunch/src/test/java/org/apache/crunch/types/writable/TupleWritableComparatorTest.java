@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types.writable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+public class TupleWritableComparatorTest {
+
+  private static <T> byte[] serialize(PType<T> ptype, T value) throws IOException {
+    ptype.initialize(new Configuration());
+    Writable writable = (Writable) ptype.getOutputMapFn().map(value);
+    if (writable instanceof TupleWritable) {
+      // Write the compact form, as the shuffle does.
+      TupleWritable view = new TupleWritable();
+      view.compactView((TupleWritable) writable);
+      writable = view;
+    }
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static int sign(int cmp) {
+    return Integer.signum(cmp);
+  }
+
+  private static int compare(WritableComparator comparator, byte[] b1, byte[] b2) {
+    return sign(comparator.compare(b1, 0, b1.length, b2, 0, b2.length));
+  }
+
+  private static final PType<Pair<String, Long>> STRING_LONG = Writables.pairs(Writables.strings(),
+      Writables.longs());
+
+  @Test
+  public void testRegisteredForTupleWritable() {
+    assertSame(TupleWritable.Comparator.class, WritableComparator.get(TupleWritable.class).getClass());
+  }
+
+  @Test
+  public void testNaturalOrder() throws Exception {
+    WritableComparator comparator = new TupleWritable.Comparator();
+    byte[] a1 = serialize(STRING_LONG, Pair.of("a", 1L));
+    byte[] a2 = serialize(STRING_LONG, Pair.of("a", 2L));
+    byte[] b1 = serialize(STRING_LONG, Pair.of("b", 1L));
+    byte[] longer = serialize(STRING_LONG, Pair.of("ab", 0L));
+    assertEquals(0, compare(comparator, a1, a1));
+    assertEquals(-1, compare(comparator, a1, a2));
+    assertEquals(1, compare(comparator, a2, a1));
+    assertEquals(-1, compare(comparator, a2, b1));
+    assertEquals(-1, compare(comparator, a2, longer));
+    assertEquals(-1, compare(comparator, longer, b1));
+  }
+
+  @Test
+  public void testNullFieldsSortFirst() throws Exception {
+    WritableComparator comparator = new TupleWritable.Comparator();
+    byte[] withNull = serialize(STRING_LONG, Pair.of("a", (Long) null));
+    byte[] withValue = serialize(STRING_LONG, Pair.of("a", 1L));
+    assertEquals(-1, compare(comparator, withNull, withValue));
+    assertEquals(1, compare(comparator, withValue, withNull));
+  }
+
+  @Test
+  public void testFieldOrders() throws Exception {
+    TupleWritable.Comparator comparator = new TupleWritable.Comparator();
+    comparator.setFieldOrders(new int[] { 0, -1 });
+    byte[] a1 = serialize(STRING_LONG, Pair.of("a", 1L));
+    byte[] b2 = serialize(STRING_LONG, Pair.of("b", 2L));
+    byte[] c1 = serialize(STRING_LONG, Pair.of("c", 1L));
+    assertEquals(1, compare(comparator, a1, b2));
+    assertEquals(0, compare(comparator, a1, c1));
+  }
+
+  @Test
+  public void testNestedTuples() throws Exception {
+    PType<Pair<Pair<String, Long>, Long>> nested = Writables.pairs(STRING_LONG, Writables.longs());
+    WritableComparator comparator = new TupleWritable.Comparator();
+    byte[] a = serialize(nested, Pair.of(Pair.of("a", 2L), 5L));
+    byte[] b = serialize(nested, Pair.of(Pair.of("b", 1L), 1L));
+    byte[] c = serialize(nested, Pair.of(Pair.of("a", 2L), 6L));
+    assertEquals(-1, compare(comparator, a, b));
+    assertEquals(-1, compare(comparator, a, c));
+    assertEquals(1, compare(comparator, b, c));
+  }
+
+  @Test
+  public void testMatchesObjectComparison() throws Exception {
+    WritableComparator comparator = new TupleWritable.Comparator();
+    String[] strings = { "", "a", "ab", "b", "é" };
+    long[] longs = { Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE };
+    for (String s1 : strings) {
+      for (long l1 : longs) {
+        for (String s2 : strings) {
+          for (long l2 : longs) {
+            byte[] b1 = serialize(STRING_LONG, Pair.of(s1, l1));
+            byte[] b2 = serialize(STRING_LONG, Pair.of(s2, l2));
+            assertEquals(sign(Pair.of(s1, l1).compareTo(Pair.of(s2, l2))), compare(comparator, b1, b2));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSchemasFromConfiguration() throws Exception {
+    Configuration conf = new Configuration();
+    STRING_LONG.getOutputMapFn().configure(conf);
+    byte[] a1 = serialize(STRING_LONG, Pair.of("a", 1L));
+    byte[] b1 = serialize(STRING_LONG, Pair.of("b", 1L));
+    byte[] a2 = serialize(STRING_LONG, Pair.of("a", 2L));
+
+    // As in a reducer that merges its inputs before any PType is initialized.
+    TupleWritable.clearSchemas();
+    WritableComparator comparator = ReflectionUtils.newInstance(TupleWritable.Comparator.class, conf);
+    assertEquals(-1, compare(comparator, a1, b1));
+    assertEquals(1, compare(comparator, a2, a1));
+    assertEquals(0, compare(comparator, a2, a2));
+  }
+
+  @Test
+  public void testSelfDescribingTuples() throws Exception {
+    WritableComparator comparator = new TupleWritable.Comparator();
+    TupleWritable t1 = new TupleWritable(new Writable[] { new Text("a"), new LongWritable(2L) });
+    TupleWritable t2 = new TupleWritable(new Writable[] { new Text("b"), new LongWritable(1L) });
+    for (TupleWritable t : new TupleWritable[] { t1, t2 }) {
+      t.setWritten(0);
+      t.setWritten(1);
+    }
+    DataOutputBuffer out1 = new DataOutputBuffer();
+    t1.write(out1);
+    DataOutputBuffer out2 = new DataOutputBuffer();
+    t2.write(out2);
+    assertEquals(-1, sign(comparator.compare(out1.getData(), 0, out1.getLength(), out2.getData(), 0,
+        out2.getLength())));
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.types.writable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.crunch.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+public class TupleWritableTest {
+
+  @SuppressWarnings("unchecked")
+  private static final Class<? extends Writable>[] LONG_PAIR = new Class[] { LongWritable.class, LongWritable.class };
+
+  private static TupleWritable longPair(long first, long second, Class<? extends Writable>[] fieldClasses) {
+    TupleWritable tuple = new TupleWritable(
+        new Writable[] { new LongWritable(first), new LongWritable(second) }, fieldClasses);
+    tuple.setWritten(0);
+    tuple.setWritten(1);
+    return tuple;
+  }
+
+  private static TupleWritable compact(TupleWritable tuple) {
+    TupleWritable view = new TupleWritable();
+    view.compactView(tuple);
+    return view;
+  }
+
+  private static byte[] serialize(Writable writable) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static void deserialize(byte[] bytes, Writable writable) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    writable.readFields(in);
+  }
+
+  @Test
+  public void testCompactRoundTrip() throws Exception {
+    TupleWritable tuple = longPair(1L, 2L, LONG_PAIR);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(compact(tuple)), copy);
+    assertEquals(tuple, copy);
+  }
+
+  @Test
+  public void testCompactIsSmallerThanSelfDescribing() throws Exception {
+    byte[] compact = serialize(compact(longPair(1L, 2L, LONG_PAIR)));
+    byte[] selfDescribing = serialize(longPair(1L, 2L, null));
+    // A marker, a schema id, the written bits and two longs.
+    assertEquals(1 + 4 + 1 + 16, compact.length);
+    assertTrue(compact.length < selfDescribing.length);
+  }
+
+  @Test
+  public void testOnlyCompactViewsAreCompact() throws Exception {
+    TupleWritable tuple = longPair(1L, 2L, LONG_PAIR);
+    assertEquals(serialize(longPair(1L, 2L, null)).length, serialize(tuple).length);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(compact(tuple)), copy);
+    // A tuple that was read from the compact form is written in the self-describing one.
+    assertEquals(serialize(tuple).length, serialize(copy).length);
+  }
+
+  @Test
+  public void testReadsSelfDescribingTuples() throws Exception {
+    TupleWritable tuple = longPair(1L, 2L, null);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(tuple), copy);
+    assertEquals(tuple, copy);
+  }
+
+  @Test
+  public void testCompactReadReusesFields() throws Exception {
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(compact(longPair(1L, 2L, LONG_PAIR))), copy);
+    Writable first = copy.get(0);
+    deserialize(serialize(compact(longPair(3L, 4L, LONG_PAIR))), copy);
+    assertSame(first, copy.get(0));
+    assertEquals(new LongWritable(3L), copy.get(0));
+    assertEquals(new LongWritable(4L), copy.get(1));
+  }
+
+  @Test
+  public void testCompactNullField() throws Exception {
+    TupleWritable tuple = longPair(1L, 2L, LONG_PAIR);
+    tuple.clearWritten(1);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(compact(tuple)), copy);
+    assertTrue(copy.has(0));
+    assertFalse(copy.has(1));
+    assertEquals(new LongWritable(1L), copy.get(0));
+  }
+
+  @Test
+  public void testFieldOfAnotherClassIsSelfDescribing() throws Exception {
+    TupleWritable tuple = new TupleWritable(new Writable[] { new LongWritable(1L), new Text("a") }, LONG_PAIR);
+    tuple.setWritten(0);
+    tuple.setWritten(1);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(compact(tuple)), copy);
+    assertEquals(tuple, copy);
+  }
+
+  @Test
+  public void testNestedPairsThroughPType() throws Exception {
+    WritableType<Pair<Pair<Long, String>, Long>, TupleWritable> ptype = Writables.pairs(
+        Writables.pairs(Writables.longs(), Writables.strings()), Writables.longs());
+    ptype.initialize(new Configuration());
+    Pair<Pair<Long, String>, Long> value = Pair.of(Pair.of(1L, "a"), 2L);
+    TupleWritable tuple = (TupleWritable) ptype.getOutputMapFn().map(value);
+    TupleWritable copy = new TupleWritable();
+    deserialize(serialize(tuple), copy);
+    assertEquals(value, ptype.getInputMapFn().map(copy));
+    byte[] compact = serialize(compact(tuple));
+    assertTrue(compact.length < serialize(tuple).length);
+    deserialize(compact, copy);
+    assertEquals(value, ptype.getInputMapFn().map(copy));
+  }
+
+  @Test
+  public void testSchemasFromConfiguration() throws Exception {
+    WritableType<Pair<Long, String>, TupleWritable> ptype = Writables.pairs(Writables.longs(), Writables.strings());
+    Configuration conf = new Configuration();
+    ptype.getOutputMapFn().configure(conf);
+    ptype.initialize(conf);
+    Pair<Long, String> value = Pair.of(1L, "a");
+    byte[] bytes = serialize(compact((TupleWritable) ptype.getOutputMapFn().map(value)));
+
+    TupleWritable.clearSchemas();
+    TupleWritable copy = ReflectionUtils.newInstance(TupleWritable.class, conf);
+    deserialize(bytes, copy);
+    assertEquals(value, ptype.getInputMapFn().map(copy));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownSchemaId() throws Exception {
+    byte[] bytes = serialize(compact(longPair(1L, 2L, LONG_PAIR)));
+    // Corrupt the schema id that follows the one byte marker.
+    bytes[1] ^= 0x7F;
+    deserialize(bytes, new TupleWritable());
+  }
+}
@@ -21,6 +21,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.junit.Before;
 import org.junit.Test;
@@ -51,4 +54,24 @@ public class WritableDeepCopierTest {
     assertNull(deepCopy);
   }
 
+  @Test
+  public void testDeepCopy_BytesWritable() {
+    BytesWritable bytes = new BytesWritable(new byte[] { 1, 2, 3 });
+    bytes.setCapacity(10);
+    BytesWritable deepCopy = new WritableDeepCopier<BytesWritable>(BytesWritable.class).deepCopy(bytes);
+
+    assertEquals(bytes, deepCopy);
+    assertNotSame(bytes.getBytes(), deepCopy.getBytes());
+  }
+
+  @Test
+  public void testDeepCopy_SerializedWritable() {
+    MapWritable map = new MapWritable();
+    map.put(new Text("key"), new LongWritable(42L));
+    MapWritable deepCopy = new WritableDeepCopier<MapWritable>(MapWritable.class).deepCopy(map);
+
+    // MapWritable doesn't define equals, so the entries are compared.
+    assertEquals(map.entrySet(), deepCopy.entrySet());
+    assertNotSame(map.get(new Text("key")), deepCopy.get(new Text("key")));
+  }
 }
@@ -18,7 +18,10 @@
 package org.apache.crunch.types.writable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.Map;
@@ -94,4 +97,19 @@ public class WritableTypeTest {
     assertNotSame(stringTextMap.get("key"), detachedMap.get("key"));
   }
 
+  @Test
+  public void testGetDetachedValue_Immutable() {
+    Pair<String, Long> pair = Pair.of("a", 1L);
+    WritableType<Pair<String, Long>, TupleWritable> ptype = Writables.pairs(Writables.strings(), Writables.longs());
+    ptype.initialize(new Configuration());
+
+    assertTrue(ptype.isImmutable());
+    assertSame(pair, ptype.getDetachedValue(pair));
+  }
+
+  @Test
+  public void testIsImmutable_MutableSubType() {
+    assertFalse(Writables.pairs(Writables.strings(), Writables.writables(Text.class)).isImmutable());
+    assertFalse(Writables.collections(Writables.strings()).isImmutable());
+  }
 }
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+  private static HyperLogLog sketch(int precision, long start, long end) {
+    HyperLogLog hll = new HyperLogLog(precision);
+    byte[] bytes = new byte[8];
+    for (long i = start; i < end; i++) {
+      ByteBuffer.wrap(bytes).putLong(i);
+      hll.offerHash(HyperLogLog.hash(bytes, 0, bytes.length));
+    }
+    return hll;
+  }
+
+  private static void assertWithin(long expected, long actual, double error) {
+    assertTrue("Estimate " + actual + " is not within " + error + " of " + expected,
+        Math.abs(actual - expected) <= error * expected);
+  }
+
+  @Test
+  public void testSmallCardinality() {
+    assertEquals(0L, new HyperLogLog(14).cardinality());
+    assertEquals(10L, sketch(14, 0, 10).cardinality());
+  }
+
+  @Test
+  public void testLargeCardinality() {
+    assertWithin(200000, sketch(14, 0, 200000).cardinality(), 0.03);
+    assertWithin(200000, sketch(10, 0, 200000).cardinality(), 0.1);
+  }
+
+  @Test
+  public void testDuplicates() {
+    HyperLogLog hll = sketch(12, 0, 1000);
+    hll.merge(sketch(12, 0, 1000));
+    assertEquals(sketch(12, 0, 1000).cardinality(), hll.cardinality());
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog merged = sketch(14, 0, 50000);
+    merged.merge(sketch(14, 50000, 50010));
+    merged.merge(sketch(14, 25000, 100000).toByteBuffer());
+    assertEquals(sketch(14, 0, 100000).cardinality(), merged.cardinality());
+  }
+
+  @Test
+  public void testSerialization() {
+    for (long n : new long[] { 0, 1, 100, 100000 }) {
+      HyperLogLog hll = sketch(14, 0, n);
+      ByteBuffer bytes = hll.toByteBuffer();
+      assertEquals(hll.cardinality(), HyperLogLog.fromByteBuffer(bytes).cardinality());
+    }
+    // A sketch of one hash only stores one register.
+    assertEquals(10, sketch(14, 0, 1).toByteBuffer().remaining());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentPrecision() {
+    new HyperLogLog(12).merge(new HyperLogLog(14));
+  }
+
+  @Test
+  public void testHashSpread() {
+    Random random = new Random(42);
+    byte[] bytes = new byte[13];
+    int highBits = 0;
+    for (int i = 0; i < 1000; i++) {
+      random.nextBytes(bytes);
+      if (HyperLogLog.hash(bytes, 0, bytes.length) < 0) {
+        highBits++;
+      }
+    }
+    assertTrue(highBits > 400 && highBits < 600);
+  }
+}
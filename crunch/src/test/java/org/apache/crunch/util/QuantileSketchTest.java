@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+  private static QuantileSketch sketch(long start, long end) {
+    QuantileSketch sketch = new QuantileSketch();
+    for (long i = start; i < end; i++) {
+      // Add the values out of order.
+      sketch.update(start + (i * 7919L) % (end - start));
+    }
+    return sketch;
+  }
+
+  private static void assertRankWithin(long count, double quantile, double actual, double error) {
+    assertTrue("Estimate " + actual + " of quantile " + quantile + " is not within " + error,
+        Math.abs(actual - quantile * count) <= error * count);
+  }
+
+  @Test
+  public void testEmpty() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertEquals(0L, sketch.getCount());
+    assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+  }
+
+  @Test
+  public void testExactWhenSmall() {
+    QuantileSketch sketch = sketch(1, 101);
+    assertArrayEquals(new double[] { 1.0, 1.0, 50.0, 99.0, 100.0 },
+        sketch.getQuantiles(0.0, 0.01, 0.5, 0.99, 1.0), 0.0);
+  }
+
+  @Test
+  public void testLargeCount() {
+    QuantileSketch sketch = sketch(0, 100000);
+    assertEquals(100000L, sketch.getCount());
+    assertEquals(0.0, sketch.getMin(), 0.0);
+    assertEquals(99999.0, sketch.getMax(), 0.0);
+    for (double q = 0.05; q < 1.0; q += 0.05) {
+      assertRankWithin(100000, q, sketch.getQuantile(q), 0.02);
+    }
+    assertTrue(sketch.toByteBuffer().remaining() < 8 * 1000);
+  }
+
+  @Test
+  public void testDeterministic() {
+    assertEquals(sketch(0, 100000).toByteBuffer(), sketch(0, 100000).toByteBuffer());
+  }
+
+  @Test
+  public void testMerge() {
+    QuantileSketch merged = new QuantileSketch();
+    for (int i = 0; i < 100; i++) {
+      merged.merge(sketch(1000 * i, 1000 * (i + 1)));
+    }
+    assertEquals(100000L, merged.getCount());
+    for (double q : new double[] { 0.1, 0.5, 0.9, 0.99 }) {
+      assertRankWithin(100000, q, merged.getQuantile(q), 0.02);
+    }
+  }
+
+  @Test
+  public void testSerialization() {
+    for (long n : new long[] { 0, 1, 100, 100000 }) {
+      QuantileSketch sketch = sketch(0, n);
+      ByteBuffer bytes = sketch.toByteBuffer();
+      QuantileSketch copy = QuantileSketch.fromByteBuffer(bytes);
+      assertEquals(0, bytes.position());
+      assertEquals(sketch.getCount(), copy.getCount());
+      assertArrayEquals(sketch.getQuantiles(0.0, 0.5, 0.9, 1.0), copy.getQuantiles(0.0, 0.5, 0.9, 1.0), 0.0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidQuantile() {
+    sketch(0, 10).getQuantile(1.5);
+  }
+}
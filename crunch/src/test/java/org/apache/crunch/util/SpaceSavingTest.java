@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crunch.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.crunch.Pair;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SpaceSavingTest {
+
+  @Test
+  public void testExactWhenSmall() {
+    SpaceSaving<String> summary = new SpaceSaving<String>(10);
+    for (String item : new String[] { "a", "b", "a", "c", "a", "b" }) {
+      summary.offer(item, 1L);
+    }
+    assertEquals(3, summary.size());
+    assertEquals(ImmutableList.of(Pair.of("a", 3L), Pair.of("b", 2L)), summary.top(2));
+  }
+
+  @Test
+  public void testHeavyHitters() {
+    SpaceSaving<Integer> summary = new SpaceSaving<Integer>(20);
+    int total = 0;
+    for (int i = 0; i < 10000; i++) {
+      summary.offer(i, 1L);
+      summary.offer(-(i % 3) - 1, 1L);
+      total += 2;
+    }
+    assertEquals(20, summary.size());
+    List<Pair<Integer, Long>> top = summary.top(3);
+    for (Pair<Integer, Long> counted : top) {
+      assertTrue(counted.first() < 0);
+      assertTrue(counted.second() >= 3333 && counted.second() <= 3334 + total / 20);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    SpaceSaving<String> left = new SpaceSaving<String>(2);
+    left.offer("a", 5L);
+    left.offer("b", 1L);
+    SpaceSaving<String> right = new SpaceSaving<String>(2);
+    right.offer("a", 2L);
+    right.offer("c", 4L);
+    for (Pair<String, Long> counted : right.top(2)) {
+      left.offer(counted.first(), counted.second());
+    }
+    // "c" replaces "b" and inherits its count.
+    assertEquals(ImmutableList.of(Pair.of("a", 7L), Pair.of("c", 5L)), left.top(2));
+  }
+}